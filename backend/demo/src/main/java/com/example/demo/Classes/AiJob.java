@@ -0,0 +1,91 @@
+package com.example.demo.Classes;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+/**
+ * A long-running AI request (a full agent analysis) accepted by {@code POST /api/agent/jobs}
+ * and executed in the background. The row is the queue: any instance can claim a
+ * {@link AiJobStatus#QUEUED} job, and a {@link AiJobStatus#RUNNING} job whose instance died
+ * is queued again once its lease expires, so jobs survive restarts.
+ */
+@Entity
+@Table(name = "ai_jobs", indexes = {
+        @Index(name = "idx_ai_jobs_status_created", columnList = "status, createdAt"),
+        @Index(name = "idx_ai_jobs_user_created", columnList = "userId, createdAt"),
+})
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class AiJob {
+
+    /** Random UUID handed to the client as the job id. */
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    /** Job type, e.g. {@code agent-analyze}. */
+    @Column(nullable = false, length = 32)
+    private String kind;
+
+    @Column(nullable = false)
+    private Integer userId;
+
+    /** Principal name used for the {@code /user/queue/jobs} push. */
+    @Column(nullable = false)
+    private String userEmail;
+
+    /** Subscription tier the request was submitted under. */
+    @Column(length = 32)
+    private String tier;
+
+    /** Plain VARCHAR rather than a MySQL ENUM, matching {@code V2__create_ai_jobs.sql}. */
+    @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.VARCHAR)
+    @Column(nullable = false, length = 16)
+    private AiJobStatus status;
+
+    /** JSON request body forwarded upstream. */
+    @Lob
+    @Column(nullable = false)
+    private String request;
+
+    /** JSON upstream answer, once {@link AiJobStatus#SUCCEEDED}. */
+    @Lob
+    private String result;
+
+    /** Machine-readable failure reason, e.g. {@code agent_unavailable}. */
+    @Column(length = 64)
+    private String error;
+
+    /** Upstream calls started so far, including ones lost to a restart. */
+    @Column(nullable = false)
+    private int attempts;
+
+    /** AI queries reserved at submit; refunded if the job fails or is cancelled. */
+    @Column(nullable = false)
+    private int chargedQueries;
+
+    /** Subscription the queries were reserved on; {@code null} when free trials paid. */
+    private Long chargedSubscriptionId;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime finishedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) createdAt = LocalDateTime.now();
+    }
+}
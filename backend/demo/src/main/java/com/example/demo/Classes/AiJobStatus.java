@@ -0,0 +1,27 @@
+package com.example.demo.Classes;
+
+/**
+ * Lifecycle of an asynchronous AI job
+ */
+public enum AiJobStatus {
+
+    QUEUED("Waiting for a worker"),
+    RUNNING("Upstream call in progress"),
+    SUCCEEDED("Result available"),
+    FAILED("Upstream call failed"),
+    CANCELLED("Cancelled by the user");
+
+    private final String description;
+
+    AiJobStatus(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public boolean isTerminal() {
+        return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+    }
+}
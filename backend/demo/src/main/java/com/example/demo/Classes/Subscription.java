@@ -102,6 +102,14 @@ public class Subscription {
         if (aiQueriesUsed == null) aiQueriesUsed = 0;
         aiQueriesUsed++;
     }
+
+    /**
+     * Add {@code count} AI queries to the used count (batch analysis)
+     */
+    public void incrementQueryCount(int count) {
+        if (aiQueriesUsed == null) aiQueriesUsed = 0;
+        aiQueriesUsed += count;
+    }
     
     /**
      * Get remaining AI queries
@@ -140,6 +140,19 @@ public enum SubscriptionPlan {
     public boolean isSingleCase() {
         return singleCase;
     }
+
+    /**
+     * Tier the AI agent serves this plan at (free / unlimited / court); also the plan's share
+     * of AI capacity in {@link com.example.demo.Config.AiTierScheduler}.
+     */
+    public String getAiTier() {
+        return switch (this) {
+            case FREE -> "free";
+            case BASIC -> "unlimited";          // Single-case purchase gets full AI lawyer for that case
+            case PRO, PRO_YEARLY -> "unlimited"; // Pro gets full access
+            case UNLIMITED, UNLIMITED_YEARLY -> "court"; // Unlimited gets court-tier (audit trail + docs)
+        };
+    }
     
     public List<String> getFeatures() {
         return features;
@@ -1,5 +1,6 @@
 package com.example.demo.Classes;
 
+import com.example.demo.Implementation.UserCacheEvictionListener;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
@@ -18,6 +19,7 @@ import java.util.Set;
 
 @Entity
 @Table(name = "app_user")
+@EntityListeners(UserCacheEvictionListener.class)
 @AllArgsConstructor
 @NoArgsConstructor
 @Getter
@@ -0,0 +1,155 @@
+package com.example.demo.Config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive cap on concurrent AI proxy requests, sized from the upstream latency that
+ * {@link AiResilienceInterceptor} measures.
+ *
+ * <p>The limit follows a gradient rule (in the style of TCP Vegas / Netflix Gradient2):
+ * a slowly moving <em>long</em> RTT average is the latency baseline, each new sample is the
+ * <em>short</em> RTT, and
+ * <pre>
+ *   gradient = clamp(tolerance * longRtt / shortRtt, 0.5, 1.0)
+ *   newLimit = limit * gradient + sqrt(limit)
+ * </pre>
+ * smoothed into the current limit. While the Python service answers at its usual speed the
+ * gradient is 1 and the limit creeps up by about {@code sqrt(limit)}; once it slows down (requests
+ * queueing behind its workers) the gradient drops and the limit shrinks towards what the
+ * upstream can actually serve. Upstream failures and timeouts back the limit off
+ * multiplicatively. Growth is skipped while less than half the limit is in use, so a quiet
+ * period cannot inflate the limit to a value that was never tested.
+ *
+ * <p>Admission is a lock-free check-and-increment of the in-flight count; requests over the
+ * limit are rejected immediately rather than queued, which is the point — a caller that would
+ * otherwise wait out a 120s read timeout gets a fast 503 instead. The current limit and
+ * in-flight count are exported as the {@code ai.concurrency.limit} and
+ * {@code ai.concurrency.inflight} gauges.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF = 0.9;
+    private static final int LONG_WINDOW = 100;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inflight = new AtomicInteger();
+    // A lock rather than synchronized: contended monitors pin virtual-thread carriers on JDK 21.
+    private final ReentrantLock sampleLock = new ReentrantLock();
+    private volatile double limit;
+    private double longRttNanos;
+    private volatile Runnable slotListener = () -> { };
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, MeterRegistry meterRegistry) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        meterRegistry.gauge("ai.concurrency.limit", this, AdaptiveConcurrencyLimiter::getLimit);
+        meterRegistry.gauge("ai.concurrency.inflight", inflight);
+    }
+
+    /** Limiter without exported metrics, for tests. */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Claim an in-flight slot.
+     *
+     * @return {@code true} if admitted, in which case the caller must {@link #release()} exactly once
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        inflight.decrementAndGet();
+        slotListener.run();
+    }
+
+    /**
+     * Called whenever a slot may have become free: after a release and after each sample, which
+     * can raise the limit. {@link AiTierScheduler} uses it to admit queued calls.
+     */
+    public void setSlotListener(Runnable slotListener) {
+        this.slotListener = slotListener;
+    }
+
+    /**
+     * Feed one upstream call into the limit.
+     *
+     * @param rttNanos how long the upstream call took
+     * @param failed   whether it failed (I/O error, timeout, 5xx)
+     */
+    public void onSample(long rttNanos, boolean failed) {
+        sampleLock.lock();
+        try {
+            updateLimit(rttNanos, failed);
+        } finally {
+            sampleLock.unlock();
+        }
+        slotListener.run();
+    }
+
+    private void updateLimit(long rttNanos, boolean failed) {
+        if (failed) {
+            limit = clamp(limit * BACKOFF);
+            return;
+        }
+        double shortRtt = Math.max(1, rttNanos);
+        if (longRttNanos == 0) {
+            longRttNanos = shortRtt;
+        } else {
+            longRttNanos += (shortRtt - longRttNanos) / LONG_WINDOW;
+        }
+        // Once latency has recovered, don't let a long tail of slow samples hold the baseline up.
+        if (longRttNanos / shortRtt > 2) {
+            longRttNanos *= 0.95;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / shortRtt));
+        double target = limit * gradient + Math.sqrt(limit);
+        if (target > limit && inflight.get() * 2 < limit) {
+            return; // app-limited: no evidence the upstream can take more
+        }
+        limit = clamp(limit * (1 - SMOOTHING) + target * SMOOTHING);
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    /** Rough time until a slot frees up: the typical upstream latency, at least one second. */
+    public long retryAfterSeconds() {
+        double baseline;
+        sampleLock.lock();
+        try {
+            baseline = longRttNanos;
+        } finally {
+            sampleLock.unlock();
+        }
+        return Math.max(1L, Math.min(60L, (long) Math.ceil(baseline / TimeUnit.SECONDS.toNanos(1))));
+    }
+
+    private double clamp(double value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+}
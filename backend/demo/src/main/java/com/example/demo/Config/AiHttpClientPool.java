@@ -0,0 +1,169 @@
+package com.example.demo.Config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * Pooled, keep-alive HTTP client behind the shared {@link org.springframework.web.client.RestTemplate}
+ * used for the Python AI service and Gemini.
+ *
+ * <p>{@code SimpleClientHttpRequestFactory} left connection reuse to {@code HttpURLConnection}'s
+ * hidden keep-alive cache, with no cap per host and no way to see how many sockets were open.
+ * This Apache HttpClient 5 pool keeps TLS connections warm between calls, caps connections per
+ * host and in total, bounds how long a caller may wait for a free connection (the acquire
+ * timeout), and evicts connections that sat idle long enough for Render's proxy to have
+ * dropped them. Automatic retries are off: {@link AiResilienceInterceptor} must see every
+ * failure, and a retried 120s analysis is worse than a fast 503.
+ *
+ * <p>Per-host pool usage is exported as {@code ai.http.pool.connections{host,state}}, with
+ * {@code state} one of {@code leased}, {@code available} or {@code pending} (callers waiting
+ * for a connection), plus {@code ai.http.pool.max{host}}. Hosts are registered the first
+ * time a request is routed to them.
+ */
+@Slf4j
+public class AiHttpClientPool implements AutoCloseable {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final RequestConfig defaultRequestConfig;
+    private final MeterRegistry meterRegistry;
+    private final Set<String> trackedHosts = ConcurrentHashMap.newKeySet();
+
+    public AiHttpClientPool(Settings settings, MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(settings.maxTotal())
+                .setMaxConnPerRoute(settings.maxPerHost())
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(settings.connectTimeoutMs()))
+                        .setSocketTimeout(Timeout.ofMilliseconds(settings.readTimeoutMs()))
+                        // Re-check a pooled socket before reuse if it has been quiet this long.
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+        this.defaultRequestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(settings.acquireTimeoutMs()))
+                .setResponseTimeout(Timeout.ofMilliseconds(settings.readTimeoutMs()))
+                // Used when the server sends no Keep-Alive header of its own.
+                .setConnectionKeepAlive(TimeValue.ofSeconds(settings.keepAliveSeconds()))
+                .build();
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(defaultRequestConfig)
+                .evictIdleConnections(TimeValue.ofSeconds(settings.idleEvictSeconds()))
+                .evictExpiredConnections()
+                .disableAutomaticRetries()
+                .addExecInterceptorFirst("pool-metrics", (request, scope, chain) -> {
+                    track(scope.route);
+                    return chain.proceed(request, scope);
+                })
+                .build();
+    }
+
+    /** Request factory for a {@code RestTemplate}; timeouts come from the pool's own config. */
+    public ClientHttpRequestFactory requestFactory() {
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    /**
+     * Request factory whose read timeout is the one {@link AiResilienceInterceptor} chose from
+     * {@code timeouts} for the call, or the pool's own when it chose none.
+     */
+    public ClientHttpRequestFactory requestFactory(AiTimeoutPolicy timeouts) {
+        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        factory.setHttpContextFactory((method, uri) -> {
+            Long timeoutMs = timeouts.pendingTimeoutMs();
+            if (timeoutMs == null) {
+                return null;
+            }
+            HttpClientContext context = HttpClientContext.create();
+            context.setRequestConfig(requestConfig(timeoutMs));
+            return context;
+        });
+        return factory;
+    }
+
+    /** The pool's request settings with a read timeout of {@code responseTimeoutMs}. */
+    RequestConfig requestConfig(long responseTimeoutMs) {
+        return RequestConfig.copy(defaultRequestConfig)
+                .setResponseTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+                .build();
+    }
+
+    /** The pooled client itself, for callers that read a response as it arrives. */
+    CloseableHttpClient httpClient() {
+        return httpClient;
+    }
+
+    /** Current pool stats for {@code host}, summed over its routes (http and https). */
+    public PoolStats statsFor(String host) {
+        int leased = 0;
+        int pending = 0;
+        int available = 0;
+        int max = 0;
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            if (host.equals(route.getTargetHost().getHostName())) {
+                PoolStats stats = connectionManager.getStats(route);
+                leased += stats.getLeased();
+                pending += stats.getPending();
+                available += stats.getAvailable();
+                max += stats.getMax();
+            }
+        }
+        return new PoolStats(leased, pending, available, max);
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    private void track(HttpRoute route) {
+        String host = route.getTargetHost().getHostName();
+        if (!trackedHosts.add(host)) {
+            return;
+        }
+        gauge(host, "leased", PoolStats::getLeased);
+        gauge(host, "available", PoolStats::getAvailable);
+        gauge(host, "pending", PoolStats::getPending);
+        Gauge.builder("ai.http.pool.max", this, pool -> pool.statsFor(host).getMax())
+                .tag("host", host)
+                .description("Connection cap for this host")
+                .register(meterRegistry);
+        log.debug("Tracking HTTP connection pool for {}", host);
+    }
+
+    private void gauge(String host, String state, ToIntFunction<PoolStats> value) {
+        Gauge.builder("ai.http.pool.connections", this, pool -> value.applyAsInt(pool.statsFor(host)))
+                .tag("host", host)
+                .tag("state", state)
+                .description("Outbound AI connections per host by pool state")
+                .register(meterRegistry);
+    }
+
+    /** Pool sizing and timeouts, bound from {@code ai.http.*}. */
+    public record Settings(int maxTotal, int maxPerHost, long connectTimeoutMs, long readTimeoutMs,
+                           long acquireTimeoutMs, long keepAliveSeconds, long idleEvictSeconds) {
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.demo.Config;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Map;
+
+/**
+ * Relays an AI service reply that the backend does not look at ({@code /api/agent/chat},
+ * {@code /generate-document}, {@code /session/{id}}, {@code /api/ai-analysis/analyze/quick}).
+ *
+ * <p>In passthrough mode ({@code ai.passthrough.enabled}, the default) the upstream JSON bytes
+ * are copied to the client as they are, with the upstream {@code Content-Type}: nothing is
+ * parsed into a {@code Map} only to be written back out by Jackson. Otherwise the reply is read
+ * as a {@code Map}, as the controllers used to. The call goes through the same
+ * {@link RestTemplate}, so breakers, the adaptive limit and error statuses are unchanged, and
+ * a 2xx reply is answered with {@code 200} in both modes.
+ */
+public class AiJsonRelay {
+
+    private final RestTemplate restTemplate;
+    private final boolean passthrough;
+
+    public AiJsonRelay(RestTemplate restTemplate, boolean passthrough) {
+        this.restTemplate = restTemplate;
+        this.passthrough = passthrough;
+    }
+
+    public boolean isPassthrough() {
+        return passthrough;
+    }
+
+    /** Call {@code url} and answer with its reply body; failures throw as the template does. */
+    public ResponseEntity<?> relay(String url, HttpMethod method, HttpEntity<?> request) throws RestClientException {
+        if (!passthrough) {
+            return ResponseEntity.ok(restTemplate.exchange(url, method, request, Map.class).getBody());
+        }
+        return restTemplate.execute(url, method, restTemplate.httpEntityCallback(request), response -> {
+            MediaType contentType = response.getHeaders().getContentType();
+            return ResponseEntity.ok()
+                    .contentType(contentType != null ? contentType : MediaType.APPLICATION_JSON)
+                    .body(StreamUtils.copyToByteArray(response.getBody()));
+        });
+    }
+}
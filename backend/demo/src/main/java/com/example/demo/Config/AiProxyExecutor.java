@@ -0,0 +1,174 @@
+package com.example.demo.Config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the blocking upstream half of the AI proxy endpoints off the Tomcat worker pool.
+ *
+ * <p>Handlers do their cheap work (auth, subscription checks) on the request thread and then
+ * hand the upstream call to {@link #submit}, returning the {@link CompletableFuture} to Spring
+ * MVC. The servlet thread goes back to Tomcat immediately, so a burst of 120s analyses can no
+ * longer starve unrelated endpoints such as {@code /api/chat/list}. The pool is bounded —
+ * threads and queue — and a full pool answers {@code 503} with {@code Retry-After} instead of
+ * queueing without limit.
+ *
+ * <p>With {@code ai.async.enabled=false} the work runs inline on the request thread (the old
+ * blocking behaviour), which keeps a one-flag rollback. Pool usage is exported under
+ * {@code executor.*{name=ai.proxy}}.
+ *
+ * <p>In virtual-thread mode ({@code spring.threads.virtual.enabled=true}) each call gets its own
+ * virtual thread instead of a pooled platform thread. The same bound still applies, as a
+ * semaphore of {@code threads + queueCapacity} permits, and is exported as
+ * {@code ai.proxy.inflight}.
+ */
+@Slf4j
+public class AiProxyExecutor implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final Semaphore virtualPermits;
+
+    public AiProxyExecutor(boolean enabled, int threads, int queueCapacity, MeterRegistry meterRegistry) {
+        this(enabled, false, threads, queueCapacity, meterRegistry);
+    }
+
+    public AiProxyExecutor(boolean enabled, boolean virtualThreads, int threads, int queueCapacity,
+                           MeterRegistry meterRegistry) {
+        if (!enabled) {
+            this.executor = null;
+            this.virtualPermits = null;
+            return;
+        }
+        if (virtualThreads) {
+            int bound = threads + Math.max(0, queueCapacity);
+            this.virtualPermits = new Semaphore(bound);
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ai-proxy-", 1).factory());
+            meterRegistry.gauge("ai.proxy.inflight", virtualPermits, permits -> bound - permits.availablePermits());
+            return;
+        }
+        this.virtualPermits = null;
+        AtomicInteger sequence = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "ai-proxy-" + sequence.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = ExecutorServiceMetrics.monitor(meterRegistry, pool, "ai.proxy");
+    }
+
+    /**
+     * Run {@code work} on the proxy pool. The returned future always completes with a response:
+     * a rejected submission becomes a {@code 503}, and anything {@code work} throws that it did
+     * not map itself becomes a {@code 500}, matching the controllers' existing fallbacks.
+     */
+    public CompletableFuture<ResponseEntity<?>> submit(Supplier<ResponseEntity<?>> work) {
+        if (executor == null) {
+            return CompletableFuture.completedFuture(work.get());
+        }
+        if (virtualPermits != null) {
+            if (!virtualPermits.tryAcquire()) {
+                return overloaded();
+            }
+            Supplier<ResponseEntity<?>> inner = work;
+            work = () -> {
+                try {
+                    return inner.get();
+                } finally {
+                    virtualPermits.release();
+                }
+            };
+        }
+        try {
+            return CompletableFuture.supplyAsync(work, executor)
+                    .exceptionally(AiProxyExecutor::internalError);
+        } catch (RejectedExecutionException e) {
+            if (virtualPermits != null) {
+                virtualPermits.release(); // the wrapped work never ran
+            }
+            return overloaded();
+        }
+    }
+
+    /**
+     * Run {@code work} on the proxy pool for endpoints that write their own output (SSE
+     * streams). Returns {@code false} without running it when the pool is saturated; with the
+     * pool disabled it runs inline.
+     */
+    public boolean execute(Runnable work) {
+        if (executor == null) {
+            work.run();
+            return true;
+        }
+        if (virtualPermits != null && !virtualPermits.tryAcquire()) {
+            log.warn("AI proxy pool saturated; shedding stream");
+            return false;
+        }
+        Runnable task = virtualPermits == null ? work : () -> {
+            try {
+                work.run();
+            } finally {
+                virtualPermits.release();
+            }
+        };
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            if (virtualPermits != null) {
+                virtualPermits.release();
+            }
+            log.warn("AI proxy pool saturated; shedding stream");
+            return false;
+        }
+    }
+
+    public boolean isAsync() {
+        return executor != null;
+    }
+
+    public boolean isVirtual() {
+        return virtualPermits != null;
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static CompletableFuture<ResponseEntity<?>> overloaded() {
+        log.warn("AI proxy pool saturated; shedding request");
+        return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "5")
+                .body(Map.of(
+                        "error", "ai_overloaded",
+                        "message", "The AI service is busy. Please retry in 5s.")));
+    }
+
+    private static ResponseEntity<?> internalError(Throwable e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        log.error("AI proxy task failed: {}", cause.getMessage(), cause);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                "error", "analysis_failed",
+                "message", String.valueOf(cause.getMessage())));
+    }
+}
@@ -3,6 +3,7 @@ package com.example.demo.Config;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpRequest;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.client.ClientHttpRequestExecution;
@@ -10,8 +11,13 @@ import org.springframework.http.client.ClientHttpRequestInterceptor;
 import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.lang.NonNull;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
 
 /**
  * Wraps every outbound {@link org.springframework.web.client.RestTemplate} call in a
@@ -33,15 +39,56 @@ import java.util.concurrent.TimeUnit;
  *       of hanging.</li>
  *   <li>Breakers are keyed by host, so an outage of the ML service never trips the
  *       Gemini breaker and vice versa.</li>
+ *   <li>Every call that reached the upstream reports its latency (and whether it failed) to
+ *       the {@link AdaptiveConcurrencyLimiter}, if one is configured, so the AI in-flight limit
+ *       tracks how fast the upstream is actually answering.</li>
+ *   <li>Each such call is also reported to the {@link AiUpstreamActivity}, if one is
+ *       configured, which is how the warm-up service learns when the ML service was last
+ *       reached and how long a wake-up took.</li>
+ *   <li>With {@link AiUpstreamMetrics} configured, every call that reached the upstream is
+ *       timed per host, path template, status and outcome, with request and response sizes.
+ *       The response is then wrapped to count the bytes the caller reads from it.</li>
+ *   <li>With an {@link AiTimeoutPolicy}, each call gets the read timeout of its route, sent
+ *       along as {@code X-Request-Timeout-Ms} and {@code X-Request-Deadline}, and reports how
+ *       long it waited so adaptive timeouts follow the route's latency. Warm-up pings keep the
+ *       default timeout, since a cold start is not what the route usually takes.</li>
  * </ul>
  */
 @Slf4j
 public class AiResilienceInterceptor implements ClientHttpRequestInterceptor {
 
     private final CircuitBreakerRegistry registry;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final AiUpstreamActivity activity;
+    private final AiUpstreamMetrics metrics;
+    private final AiTimeoutPolicy timeouts;
 
     public AiResilienceInterceptor(CircuitBreakerRegistry registry) {
+        this(registry, null);
+    }
+
+    public AiResilienceInterceptor(CircuitBreakerRegistry registry, AdaptiveConcurrencyLimiter limiter) {
+        this(registry, limiter, null);
+    }
+
+    public AiResilienceInterceptor(CircuitBreakerRegistry registry, AdaptiveConcurrencyLimiter limiter,
+                                   AiUpstreamActivity activity) {
+        this(registry, limiter, activity, null);
+    }
+
+    public AiResilienceInterceptor(CircuitBreakerRegistry registry, AdaptiveConcurrencyLimiter limiter,
+                                   AiUpstreamActivity activity, AiUpstreamMetrics metrics) {
+        this(registry, limiter, activity, metrics, null);
+    }
+
+    public AiResilienceInterceptor(CircuitBreakerRegistry registry, AdaptiveConcurrencyLimiter limiter,
+                                   AiUpstreamActivity activity, AiUpstreamMetrics metrics,
+                                   AiTimeoutPolicy timeouts) {
         this.registry = registry;
+        this.limiter = limiter;
+        this.activity = activity;
+        this.metrics = metrics;
+        this.timeouts = timeouts;
     }
 
     @Override
@@ -61,6 +108,15 @@ public class AiResilienceInterceptor implements ClientHttpRequestInterceptor {
             throw new IOException("AI dependency circuit open for host " + host);
         }
 
+        long startedAtMillis = System.currentTimeMillis();
+        boolean warmup = (activity != null || timeouts != null)
+                && request.getHeaders().containsKey(AiUpstreamActivity.WARMUP_HEADER);
+        if (timeouts != null) {
+            long timeoutMs = warmup ? timeouts.defaultTimeoutMs() : timeouts.timeoutMs(host, request.getURI().getPath());
+            request.getHeaders().set(AiTimeoutPolicy.TIMEOUT_HEADER, Long.toString(timeoutMs));
+            request.getHeaders().set(AiTimeoutPolicy.DEADLINE_HEADER, Long.toString(startedAtMillis + timeoutMs));
+            timeouts.begin(timeoutMs);
+        }
         long start = System.nanoTime();
         try {
             ClientHttpResponse response = execution.execute(request, body);
@@ -72,11 +128,135 @@ public class AiResilienceInterceptor implements ClientHttpRequestInterceptor {
             } else {
                 breaker.onSuccess(durationNanos, TimeUnit.NANOSECONDS);
             }
-            return response;
+            sample(durationNanos, status.is5xxServerError());
+            report(host, startedAtMillis, durationNanos, status.is5xxServerError(), warmup);
+            waited(host, request, durationNanos, warmup);
+            if (metrics == null) {
+                return response;
+            }
+            String method = String.valueOf(request.getMethod());
+            String path = request.getURI().getPath();
+            metrics.recordResponse(host, method, path, status.value(), durationNanos, body.length);
+            return new MeteredResponse(response, bytes -> metrics.recordResponseSize(host, method, path, bytes));
         } catch (IOException | RuntimeException e) {
             long durationNanos = System.nanoTime() - start;
             breaker.onError(durationNanos, TimeUnit.NANOSECONDS, e);
+            sample(durationNanos, true);
+            report(host, startedAtMillis, durationNanos, true, warmup);
+            if (e instanceof SocketTimeoutException) {
+                waited(host, request, durationNanos, warmup);
+            }
+            if (metrics != null) {
+                metrics.recordError(host, String.valueOf(request.getMethod()), request.getURI().getPath(),
+                        durationNanos, body.length);
+            }
             throw e;
+        } finally {
+            if (timeouts != null) {
+                timeouts.end();
+            }
+        }
+    }
+
+    private void sample(long durationNanos, boolean failed) {
+        if (limiter != null) {
+            limiter.onSample(durationNanos, failed);
+        }
+    }
+
+    private void waited(String host, HttpRequest request, long durationNanos, boolean warmup) {
+        if (timeouts != null && !warmup) {
+            timeouts.record(host, request.getURI().getPath(), durationNanos);
+        }
+    }
+
+    private void report(String host, long startedAtMillis, long durationNanos, boolean failed, boolean warmup) {
+        if (activity != null) {
+            activity.record(host, startedAtMillis, durationNanos, failed, warmup);
+        }
+    }
+
+    /** A response that reports, once, how many body bytes were read before it was closed. */
+    private static final class MeteredResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse delegate;
+        private final LongConsumer onClose;
+        private long bytesRead;
+        private InputStream body;
+        private boolean closed;
+
+        MeteredResponse(ClientHttpResponse delegate, LongConsumer onClose) {
+            this.delegate = delegate;
+            this.onClose = onClose;
+        }
+
+        @Override
+        @NonNull
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        @NonNull
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        @NonNull
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        @NonNull
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = new FilterInputStream(delegate.getBody()) {
+                    @Override
+                    public int read() throws IOException {
+                        int b = super.read();
+                        if (b >= 0) {
+                            bytesRead++;
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(@NonNull byte[] buffer, int off, int len) throws IOException {
+                        int n = super.read(buffer, off, len);
+                        if (n > 0) {
+                            bytesRead += n;
+                        }
+                        return n;
+                    }
+
+                    // Let the wrapped stream read everything its own way (a byte array copies at once).
+                    @Override
+                    public byte[] readAllBytes() throws IOException {
+                        byte[] all = in.readAllBytes();
+                        bytesRead += all.length;
+                        return all;
+                    }
+
+                    @Override
+                    public long transferTo(OutputStream out) throws IOException {
+                        long n = in.transferTo(out);
+                        bytesRead += n;
+                        return n;
+                    }
+                };
+            }
+            return body;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                onClose.accept(bytesRead);
+            }
+            delegate.close();
         }
     }
 }
@@ -0,0 +1,329 @@
+package com.example.demo.Config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relays a streaming AI upstream (Gemini {@code streamGenerateContent?alt=sse}, the agent's
+ * chunked chat) to the browser as Server-Sent Events while it is still generating, instead of
+ * waiting for the whole completion like the {@code RestTemplate} endpoints do.
+ *
+ * <p>Each upstream chunk becomes an {@code event: token} with {@code {"text": ...}}; the stream
+ * ends with {@code event: done} ({@code {"chunks": n}}) or {@code event: error} (the usual
+ * {@code error}/{@code message} body). The relay runs on the {@link AiProxyExecutor} and uses
+ * the pooled client from {@link AiHttpClientPool}, so it is bounded and timed like every other
+ * AI call.
+ *
+ * <ul>
+ *   <li><b>Backpressure</b> — a token is read from the upstream only after the previous one
+ *       was written to the browser. Servlet writes block while the client is slow, so a slow
+ *       reader throttles the upstream through TCP instead of filling a buffer here.</li>
+ *   <li><b>Cancellation</b> — when the browser disconnects (a failed write, or the emitter
+ *       completing, timing out or erroring) the upstream request is aborted and its pooled
+ *       connection discarded, so the model stops generating for nobody.</li>
+ *   <li><b>Circuit breaker</b> — the same per-host breakers as {@link AiResilienceInterceptor}:
+ *       an open breaker fails fast, 5xx and broken streams count as failures, a completed
+ *       stream counts as a success, and a client-side cancel counts as neither. Time to the
+ *       first response header feeds the {@link AdaptiveConcurrencyLimiter}.</li>
+ *   <li><b>Metrics</b> — with {@link AiUpstreamMetrics} configured, the time to the response
+ *       status is recorded like a {@code RestTemplate} call (or as {@code IO_ERROR} when none
+ *       arrived), and the bytes read from the stream when it ends, however it ends.</li>
+ * </ul>
+ */
+@Slf4j
+public class AiStreamingClient {
+
+    /** Turns one upstream data payload into the text to forward, or {@code null} to skip it. */
+    @FunctionalInterface
+    public interface ChunkMapper {
+        String textOf(String data) throws IOException;
+    }
+
+    private final CloseableHttpClient httpClient;
+    private final CircuitBreakerRegistry registry;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final AiProxyExecutor executor;
+    private final ObjectMapper objectMapper;
+    private final AiUpstreamMetrics metrics;
+
+    public AiStreamingClient(AiHttpClientPool pool, CircuitBreakerRegistry registry,
+                             AdaptiveConcurrencyLimiter limiter, AiProxyExecutor executor,
+                             ObjectMapper objectMapper) {
+        this(pool, registry, limiter, executor, objectMapper, null);
+    }
+
+    public AiStreamingClient(AiHttpClientPool pool, CircuitBreakerRegistry registry,
+                             AdaptiveConcurrencyLimiter limiter, AiProxyExecutor executor,
+                             ObjectMapper objectMapper, AiUpstreamMetrics metrics) {
+        this.httpClient = pool.httpClient();
+        this.registry = registry;
+        this.limiter = limiter;
+        this.executor = executor;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+    }
+
+    /** POST {@code body} as JSON to {@code url} and relay the streamed reply as SSE. */
+    public ResponseEntity<SseEmitter> stream(String url, Map<String, String> headers, Object body,
+                                             ChunkMapper mapper) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            return failed(HttpStatus.BAD_REQUEST, Map.of("error", "invalid_request", "message", e.getOriginalMessage()));
+        }
+        // No explicit timeout: the emitter inherits spring.mvc.async.request-timeout.
+        SseEmitter emitter = new SseEmitter();
+        Relay relay = new Relay(url, headers, json, mapper, emitter);
+        emitter.onCompletion(relay::cancel);
+        emitter.onTimeout(relay::cancel);
+        emitter.onError(e -> relay.cancel());
+        if (!executor.execute(relay)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .contentType(MediaType.TEXT_EVENT_STREAM)
+                    .body(errorEvent(Map.of(
+                            "error", "ai_overloaded",
+                            "message", "The AI service is busy. Please retry in 5s.")));
+        }
+        return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(emitter);
+    }
+
+    /** A stream that carries a single {@code error} event, for requests rejected up front. */
+    public static ResponseEntity<SseEmitter> failed(HttpStatus status, Map<String, ?> error) {
+        return ResponseEntity.status(status).contentType(MediaType.TEXT_EVENT_STREAM).body(errorEvent(error));
+    }
+
+    private static SseEmitter errorEvent(Map<String, ?> error) {
+        SseEmitter emitter = new SseEmitter();
+        try {
+            emitter.send(SseEmitter.event().name("error").data(error, MediaType.APPLICATION_JSON));
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    /**
+     * The payload of one upstream line: the value of an SSE {@code data:} field, or the whole
+     * line for newline-delimited JSON. Blank lines, other SSE fields and {@code [DONE]} are
+     * skipped.
+     */
+    static String dataOf(String line) {
+        String data;
+        if (line.startsWith("data:")) {
+            data = line.substring(5).strip();
+        } else if (line.isBlank() || line.startsWith(":") || line.startsWith("event:")
+                || line.startsWith("id:") || line.startsWith("retry:")) {
+            return null;
+        } else {
+            data = line.strip();
+        }
+        return data.isEmpty() || "[DONE]".equals(data) ? null : data;
+    }
+
+    private final class Relay implements Runnable {
+
+        private final String url;
+        private final Map<String, String> headers;
+        private final byte[] json;
+        private final ChunkMapper mapper;
+        private final SseEmitter emitter;
+        private volatile HttpPost request;
+        private volatile boolean cancelled;
+        private volatile boolean finished;
+
+        Relay(String url, Map<String, String> headers, byte[] json, ChunkMapper mapper, SseEmitter emitter) {
+            this.url = url;
+            this.headers = headers;
+            this.json = json;
+            this.mapper = mapper;
+            this.emitter = emitter;
+        }
+
+        /** Abort the upstream call; a no-op once the stream has finished. */
+        void cancel() {
+            if (finished) {
+                return;
+            }
+            cancelled = true;
+            HttpPost post = request;
+            if (post != null) {
+                post.cancel();
+            }
+        }
+
+        @Override
+        public void run() {
+            URI uri = URI.create(url);
+            String host = uri.getHost();
+            CircuitBreaker breaker = registry.circuitBreaker(host);
+            if (!breaker.tryAcquirePermission()) {
+                log.warn("Circuit breaker OPEN for {} - failing stream fast without calling upstream", host);
+                finishWithError("ai_unavailable", "AI service temporarily unavailable");
+                return;
+            }
+
+            HttpPost post = new HttpPost(url);
+            headers.forEach(post::setHeader);
+            post.setHeader(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE);
+            post.setEntity(new ByteArrayEntity(json, ContentType.APPLICATION_JSON));
+            request = post;
+            if (cancelled) {
+                breaker.releasePermission();
+                return;
+            }
+
+            long start = System.nanoTime();
+            boolean recorded = false;
+            boolean responded = false;
+            CountingInputStream body = null;
+            try (ClassicHttpResponse response = httpClient.executeOpen(null, post, null)) {
+                long headersNanos = System.nanoTime() - start;
+                int status = response.getCode();
+                responded = true;
+                if (metrics != null) {
+                    metrics.recordResponse(host, "POST", uri.getPath(), status, headersNanos, json.length);
+                }
+                sample(headersNanos, status >= 500);
+                if (status >= 400) {
+                    if (status >= 500) {
+                        breaker.onError(headersNanos, TimeUnit.NANOSECONDS,
+                                new IOException("Upstream " + host + " returned " + status));
+                    } else {
+                        breaker.onSuccess(headersNanos, TimeUnit.NANOSECONDS);
+                    }
+                    recorded = true;
+                    log.error("AI stream upstream {} returned {}", host, status);
+                    finishWithError("ai_unavailable", "AI service returned " + status);
+                    return;
+                }
+
+                body = new CountingInputStream(response.getEntity().getContent());
+                int chunks = relay(body);
+                breaker.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                recorded = true;
+                send(SseEmitter.event().name("done").data(Map.of("chunks", chunks), MediaType.APPLICATION_JSON));
+                finished = true;
+                emitter.complete();
+            } catch (IOException | RuntimeException e) {
+                long durationNanos = System.nanoTime() - start;
+                if (cancelled) {
+                    if (!recorded) {
+                        breaker.releasePermission(); // the browser left; not the upstream's fault
+                    }
+                    log.info("AI stream from {} cancelled by client after {} ms", host,
+                            TimeUnit.NANOSECONDS.toMillis(durationNanos));
+                    return;
+                }
+                if (!recorded) {
+                    breaker.onError(durationNanos, TimeUnit.NANOSECONDS, e);
+                }
+                if (metrics != null && !responded) {
+                    metrics.recordError(host, "POST", uri.getPath(), durationNanos, json.length);
+                }
+                log.error("AI stream from {} failed: {}", host, e.getMessage());
+                finishWithError("stream_failed", "AI response stream was interrupted");
+            } finally {
+                if (metrics != null && body != null) {
+                    metrics.recordResponseSize(host, "POST", uri.getPath(), body.count);
+                }
+            }
+        }
+
+        private int relay(InputStream body) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+            int chunks = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String data = dataOf(line);
+                String text = data == null ? null : mapper.textOf(data);
+                if (text == null || text.isEmpty()) {
+                    continue;
+                }
+                send(SseEmitter.event().name("token").data(Map.of("text", text), MediaType.APPLICATION_JSON));
+                chunks++;
+            }
+            return chunks;
+        }
+
+        /** Write one event; a failed write means the browser is gone, so abort the upstream. */
+        private void send(SseEmitter.SseEventBuilder event) throws IOException {
+            try {
+                emitter.send(event);
+            } catch (IOException | IllegalStateException e) {
+                cancel();
+                throw new IOException("Client disconnected from AI stream", e);
+            }
+        }
+
+        private void finishWithError(String error, String message) {
+            finished = true;
+            try {
+                emitter.send(SseEmitter.event().name("error")
+                        .data(Map.of("error", error, "message", message), MediaType.APPLICATION_JSON));
+                emitter.complete();
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Could not deliver AI stream error: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void sample(long durationNanos, boolean failed) {
+        if (limiter != null) {
+            limiter.onSample(durationNanos, failed);
+        }
+    }
+
+    /** Counts the bytes read from the upstream stream, for {@code ai.upstream.response.size}. */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int off, int len) throws IOException {
+            int n = super.read(buffer, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
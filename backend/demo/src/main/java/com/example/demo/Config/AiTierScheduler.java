@@ -0,0 +1,311 @@
+package com.example.demo.Config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Shares the upstream AI capacity between subscription tiers ({@code court}, {@code unlimited},
+ * {@code free}) by weighted fair queueing, so a burst of free-trial analyses cannot push paying
+ * court-tier users to the back of one FIFO line.
+ *
+ * <p>The capacity is the {@link AdaptiveConcurrencyLimiter}'s current limit. A call that finds a
+ * free slot, with nobody queued, runs at once. Otherwise it waits in its tier's queue, and each
+ * freed slot goes to the tier with the lowest virtual time (stride scheduling): a tier's virtual
+ * time advances by {@code 1/weight} per admitted call, so under contention tiers are served in
+ * proportion to their weights, and an idle tier rejoins at the current virtual time rather than
+ * with credit it saved up while idle.
+ *
+ * <p>Each tier has a bounded queue ({@code max-queue}) and a longest wait ({@code max-wait-ms}).
+ * A call over either bound is shed with the usual {@code 503 ai_overloaded} and
+ * {@code Retry-After}, so free-tier callers are turned away quickly instead of holding their
+ * request open for the whole read timeout.
+ *
+ * <p>With {@code ai.scheduler.enabled=false} calls run at once and the
+ * {@link ConcurrencyLimitFilter} alone bounds them, first come first served.
+ *
+ * <p>Exported per tier: {@code ai.scheduler.queue.depth}, {@code ai.scheduler.wait} (time from
+ * arrival to a slot), and {@code ai.scheduler.shed{reason=queue_full|max_wait}}.
+ */
+@Slf4j
+public class AiTierScheduler implements AutoCloseable {
+
+    /** Scheduling settings for one tier. */
+    public record Tier(String name, int weight, int maxQueue, long maxWaitMs) {
+    }
+
+    /** Tier for callers whose plan maps to no configured tier. */
+    static final String FALLBACK_TIER = "free";
+
+    private final boolean enabled;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final Map<String, Lane> lanes = new LinkedHashMap<>();
+    // A lock rather than synchronized: contended monitors pin virtual-thread carriers on JDK 21.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ScheduledExecutorService timer;
+    private double virtualTime;
+
+    public AiTierScheduler(boolean enabled, AdaptiveConcurrencyLimiter limiter, List<Tier> tiers,
+                           MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.limiter = limiter;
+        for (Tier tier : tiers) {
+            lanes.put(tier.name(), new Lane(tier, meterRegistry));
+        }
+        if (!lanes.containsKey(FALLBACK_TIER)) {
+            lanes.put(FALLBACK_TIER, new Lane(new Tier(FALLBACK_TIER, 1, 100, 10_000), meterRegistry));
+        }
+        if (!enabled) {
+            this.timer = null;
+            return;
+        }
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ai-scheduler-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleWithFixedDelay(this::expireWaiters, 50, 50, TimeUnit.MILLISECONDS);
+        // Slots also free up when calls outside the scheduler finish or the limit grows.
+        limiter.setSlotListener(this::dispatch);
+    }
+
+    /**
+     * Run {@code call} once {@code tier} is granted an upstream slot, and hold the slot until the
+     * call's future completes. A shed call completes with {@code 503} without running.
+     * Cancelling the returned future while the call still waits takes it out of the queue; once
+     * it runs, it keeps its slot until it is done.
+     */
+    public CompletableFuture<ResponseEntity<?>> submit(String tier, Supplier<CompletableFuture<ResponseEntity<?>>> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        CompletableFuture<Permit> acquired = acquire(tier);
+        CompletableFuture<ResponseEntity<?>> submitted = acquired.thenCompose(permit -> {
+            if (permit == null) {
+                return CompletableFuture.completedFuture(overloaded());
+            }
+            CompletableFuture<ResponseEntity<?>> result;
+            try {
+                result = call.get();
+            } catch (RuntimeException e) {
+                permit.release();
+                throw e;
+            }
+            return result.whenComplete((response, error) -> permit.release());
+        });
+        submitted.whenComplete((response, error) -> {
+            if (submitted.isCancelled()) {
+                acquired.cancel(false);
+            }
+        });
+        return submitted;
+    }
+
+    /**
+     * A slot for {@code tier}, now or when one frees up; completes with {@code null} if the call
+     * was shed. The caller must {@link Permit#release()} a granted permit exactly once, or
+     * cancel the future before it is granted to leave the queue.
+     */
+    public CompletableFuture<Permit> acquire(String tier) {
+        Lane lane = lanes.getOrDefault(tier, lanes.get(FALLBACK_TIER));
+        Waiter waiter = new Waiter(lane, System.nanoTime());
+        lock.lock();
+        try {
+            if (queued() == 0 && limiter.tryAcquire()) {
+                admit(lane);
+                lane.waitTimer.record(0, TimeUnit.NANOSECONDS);
+                return CompletableFuture.completedFuture(new Permit());
+            }
+            if (lane.queue.size() >= lane.tier.maxQueue()) {
+                lane.shedQueueFull.increment();
+                return CompletableFuture.completedFuture(null);
+            }
+            if (lane.queue.isEmpty()) {
+                lane.pass = Math.max(lane.pass, virtualTime);
+            }
+            lane.queue.addLast(waiter);
+        } finally {
+            lock.unlock();
+        }
+        waiter.future.whenComplete((permit, error) -> {
+            if (waiter.future.isCancelled()) {
+                withdraw(waiter);
+            }
+        });
+        dispatch(); // a slot may have freed between the failed tryAcquire and the enqueue
+        return waiter.future;
+    }
+
+    /** Hand free slots to waiting calls, lowest virtual time first. */
+    void dispatch() {
+        List<Waiter> granted = new ArrayList<>();
+        lock.lock();
+        try {
+            while (queued() > 0) {
+                Lane next = null;
+                for (Lane lane : lanes.values()) {
+                    if (!lane.queue.isEmpty() && (next == null || lane.pass < next.pass)) {
+                        next = lane;
+                    }
+                }
+                if (!limiter.tryAcquire()) {
+                    break;
+                }
+                Waiter waiter = next.queue.pollFirst();
+                virtualTime = next.pass;
+                admit(next);
+                next.waitTimer.record(System.nanoTime() - waiter.enqueuedAt, TimeUnit.NANOSECONDS);
+                granted.add(waiter);
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Complete outside the lock: the continuation submits the upstream call.
+        for (Waiter waiter : granted) {
+            Permit permit = new Permit();
+            if (!waiter.future.complete(permit)) {
+                permit.release(); // cancelled after it was picked; the release hands the slot on
+            }
+        }
+    }
+
+    /** Take a cancelled waiter out of its queue. */
+    private void withdraw(Waiter waiter) {
+        lock.lock();
+        try {
+            waiter.lane.queue.remove(waiter);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Shed waiters that have queued longer than their tier allows. */
+    void expireWaiters() {
+        List<Waiter> expired = new ArrayList<>();
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            for (Lane lane : lanes.values()) {
+                long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(lane.tier.maxWaitMs());
+                while (!lane.queue.isEmpty() && now - lane.queue.peekFirst().enqueuedAt >= maxWaitNanos) {
+                    expired.add(lane.queue.pollFirst());
+                    lane.shedMaxWait.increment();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!expired.isEmpty()) {
+            log.warn("Shed {} queued AI calls that waited past their tier's limit", expired.size());
+        }
+        for (Waiter waiter : expired) {
+            waiter.future.complete(null);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    int queued(String tier) {
+        lock.lock();
+        try {
+            Lane lane = lanes.get(tier);
+            return lane == null ? 0 : lane.queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int queued() {
+        int total = 0;
+        for (Lane lane : lanes.values()) {
+            total += lane.queue.size();
+        }
+        return total;
+    }
+
+    private static void admit(Lane lane) {
+        lane.pass += 1.0 / Math.max(1, lane.tier.weight());
+    }
+
+    @Override
+    public void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+
+    private static ResponseEntity<?> overloaded() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "5")
+                .body(Map.of(
+                        "error", "ai_overloaded",
+                        "message", "The AI service is busy. Please retry in 5s."));
+    }
+
+    /** An upstream slot; releasing it more than once is a no-op. */
+    public final class Permit {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                limiter.release();
+            }
+        }
+    }
+
+    private record Waiter(Lane lane, long enqueuedAt, CompletableFuture<Permit> future) {
+        Waiter(Lane lane, long enqueuedAt) {
+            this(lane, enqueuedAt, new CompletableFuture<>());
+        }
+    }
+
+    private static final class Lane {
+
+        private final Tier tier;
+        private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+        private final Timer waitTimer;
+        private final Counter shedQueueFull;
+        private final Counter shedMaxWait;
+        private double pass;
+
+        Lane(Tier tier, MeterRegistry meterRegistry) {
+            this.tier = tier;
+            meterRegistry.gauge("ai.scheduler.queue.depth", Tags.of("tier", tier.name()), queue, ArrayDeque::size);
+            this.waitTimer = Timer.builder("ai.scheduler.wait")
+                    .tag("tier", tier.name())
+                    .description("Time AI calls waited for an upstream slot")
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry);
+            this.shedQueueFull = shed(meterRegistry, tier, "queue_full");
+            this.shedMaxWait = shed(meterRegistry, tier, "max_wait");
+        }
+
+        private static Counter shed(MeterRegistry meterRegistry, Tier tier, String reason) {
+            return Counter.builder("ai.scheduler.shed")
+                    .tag("tier", tier.name())
+                    .tag("reason", reason)
+                    .description("AI calls turned away by the tier scheduler")
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.demo.Config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read timeout of each upstream AI call, chosen per route instead of one 120s value for
+ * everything: {@code /agent/document-types} answers in about 100 ms and should not hold a
+ * thread for two minutes when it hangs, while {@code /agent/analyze-with-docs} legitimately
+ * takes 90 s.
+ *
+ * <ul>
+ *   <li>A route's <b>cap</b> is the timeout of the longest {@code ai.timeouts.routes} path
+ *       prefix matching it ({@code /agent/session} covers {@code /agent/session/42}), or
+ *       {@code ai.timeouts.default-ms}.</li>
+ *   <li>In <b>adaptive</b> mode, once a route (host and path template) has
+ *       {@code min-samples} calls, its timeout becomes the {@code percentile} of its last
+ *       {@code window} call times times {@code factor}, between {@code min-ms} and the cap.
+ *       Calls that timed out count at the time they waited, so a route that slows down
+ *       raises its own timeout by {@code factor} each refresh until it is back under it or at
+ *       the cap. Connection failures do not count: they say nothing about how long the route
+ *       takes.</li>
+ *   <li>Adapted timeouts are learned while the service is warm. A host with no call for
+ *       {@code idleMs} ({@code ai.warmup.idle-sleep-seconds}) may have been spun down, and its
+ *       next call may wait out a 30–60 s cold start, so its routes get their cap again until
+ *       a call returns. Calls that started on such a host are not sampled.</li>
+ * </ul>
+ *
+ * <p>{@link AiResilienceInterceptor} and {@link AiUploadClient} apply the timeout to the
+ * request and send it as {@link #TIMEOUT_HEADER} (milliseconds) and {@link #DEADLINE_HEADER}
+ * (epoch milliseconds), so the AI service can give up on work nobody waits for any more. The
+ * relative value is there for services whose clock is not in sync with ours.
+ *
+ * <p>Current timeouts are exported as {@code ai.upstream.timeout{host,uri}}. After
+ * {@link #MAX_ROUTES} routes, further ones use their cap and are not tracked.
+ */
+public class AiTimeoutPolicy {
+
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+    public static final String DEADLINE_HEADER = "X-Request-Deadline";
+    static final int MAX_ROUTES = 100;
+
+    /**
+     * Bound from {@code ai.timeouts.*}; {@code routes} maps path prefixes to their cap, and
+     * {@code idleMs} is how long a host may go without calls before it is treated as cold
+     * (0 never).
+     */
+    public record Settings(long defaultTimeoutMs, Map<String, Long> routes, boolean adaptive, double percentile,
+                           double factor, long minTimeoutMs, int minSamples, int window, long idleMs) {
+    }
+
+    private record Key(String host, String uri) {
+    }
+
+    private final Settings settings;
+    private final List<Map.Entry<String, Long>> prefixes;
+    private final Map<Key, Route> routes = new ConcurrentHashMap<>();
+    // When each host last answered (or timed out), in epoch milliseconds.
+    private final Map<String, Long> lastCalls = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    // Handed from the interceptor to the request factory, which only sees the method and URI.
+    private final ThreadLocal<Long> pending = new ThreadLocal<>();
+
+    public AiTimeoutPolicy(Settings settings, MeterRegistry meterRegistry) {
+        if (settings.adaptive() && (settings.percentile() <= 0 || settings.percentile() > 1)) {
+            throw new IllegalArgumentException("ai.timeouts.adaptive.percentile must be in (0, 1]");
+        }
+        if (settings.window() < 1) {
+            throw new IllegalArgumentException("ai.timeouts.adaptive.window must be positive");
+        }
+        this.settings = settings;
+        this.prefixes = settings.routes().entrySet().stream()
+                .sorted(Comparator.comparingInt((Map.Entry<String, Long> e) -> e.getKey().length()).reversed())
+                .toList();
+        this.meterRegistry = meterRegistry;
+    }
+
+    public long defaultTimeoutMs() {
+        return settings.defaultTimeoutMs();
+    }
+
+    /** Read timeout for a call to {@code path} on {@code host}. */
+    public long timeoutMs(String host, String path) {
+        Route route = route(host, path);
+        return route != null && !idleSince(host, System.currentTimeMillis()) ? route.timeoutMs : cap(path);
+    }
+
+    /**
+     * How long a call waited for its reply: the full call when it got one, the time until it
+     * gave up when it timed out.
+     */
+    public void record(String host, String path, long durationNanos) {
+        if (!settings.adaptive()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long millis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        boolean cold = idleSince(host, now - millis);
+        lastCalls.merge(host, now, Math::max);
+        Route route = cold ? null : route(host, path);
+        if (route != null) {
+            route.add(millis);
+        }
+    }
+
+    /** Whether {@code host} had gone {@code idleMs} without a call at {@code atMillis}. */
+    private boolean idleSince(String host, long atMillis) {
+        if (settings.idleMs() <= 0) {
+            return false;
+        }
+        Long last = lastCalls.get(host);
+        return last != null && atMillis - last > settings.idleMs();
+    }
+
+    /** Timeout for the request about to be created on this thread. */
+    void begin(long timeoutMs) {
+        pending.set(timeoutMs);
+    }
+
+    void end() {
+        pending.remove();
+    }
+
+    /** The timeout passed to {@link #begin} on this thread, or {@code null}. */
+    Long pendingTimeoutMs() {
+        return pending.get();
+    }
+
+    private Route route(String host, String path) {
+        Key key = new Key(host, AiUpstreamMetrics.uriTemplate(path));
+        Route route = routes.get(key);
+        if (route == null && routes.size() < MAX_ROUTES) {
+            route = routes.computeIfAbsent(key, k -> register(k, new Route(cap(path))));
+        }
+        return route;
+    }
+
+    private Route register(Key key, Route route) {
+        if (meterRegistry != null) {
+            TimeGauge.builder("ai.upstream.timeout", route, TimeUnit.MILLISECONDS, r -> r.timeoutMs)
+                    .tag("host", key.host())
+                    .tag("uri", key.uri())
+                    .description("Read timeout currently applied to calls to this upstream route")
+                    .register(meterRegistry);
+        }
+        return route;
+    }
+
+    private long cap(String path) {
+        String p = path == null || path.isEmpty() ? "/" : path;
+        for (Map.Entry<String, Long> prefix : prefixes) {
+            String key = prefix.getKey();
+            if (p.equals(key) || p.startsWith(key.endsWith("/") ? key : key + "/")) {
+                return prefix.getValue();
+            }
+        }
+        return settings.defaultTimeoutMs();
+    }
+
+    /** {@code /path=ms,/other=ms}; blank entries are skipped. */
+    static Map<String, Long> parseRoutes(String spec) {
+        Map<String, Long> routes = new LinkedHashMap<>();
+        for (String entry : spec.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int eq = trimmed.lastIndexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("ai.timeouts.routes entry must be <path>=<ms>: " + trimmed);
+            }
+            routes.put(trimmed.substring(0, eq).trim(), Long.parseLong(trimmed.substring(eq + 1).trim()));
+        }
+        return routes;
+    }
+
+    /** Recent call times of one route and the timeout derived from them. */
+    private final class Route {
+
+        private final long capMs;
+        private final long[] samples = new long[settings.window()];
+        private final int refreshEvery = Math.max(1, settings.window() / 16);
+        private long count;
+        private int sinceRefresh;
+        private volatile long timeoutMs;
+
+        Route(long capMs) {
+            this.capMs = capMs;
+            this.timeoutMs = capMs;
+        }
+
+        synchronized void add(long millis) {
+            samples[(int) (count % samples.length)] = millis;
+            count++;
+            sinceRefresh++;
+            if (count >= settings.minSamples() && sinceRefresh >= refreshEvery) {
+                sinceRefresh = 0;
+                long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(settings.percentile() * sorted.length) - 1;
+                long derived = Math.round(sorted[Math.max(0, index)] * settings.factor());
+                timeoutMs = Math.min(capMs, Math.max(settings.minTimeoutMs(), derived));
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.demo.Config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.entity.mime.AbstractContentBody;
+import org.apache.hc.client5.http.entity.mime.HttpMultipartMode;
+import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwards uploaded documents to the AI agent as a multipart request without holding them on
+ * the heap. The {@code RestTemplate} path cannot do this: {@link AiResilienceInterceptor} and
+ * {@code FormHttpMessageConverter} both need the whole body as a {@code byte[]}, so a 30 MB
+ * case bundle used to be copied into memory two or three times per request.
+ *
+ * <p>Each file part is copied from {@link MultipartFile#getInputStream()} straight into the
+ * upstream socket in {@code chunkSize} pieces. Tomcat spills parts larger than
+ * {@code spring.servlet.multipart.file-size-threshold} to a temp file, so that stream reads
+ * from disk and the memory used per upload is one chunk buffer. Part lengths are known up
+ * front, so the upstream gets a {@code Content-Length} rather than a chunked body.
+ *
+ * <p>Calls go through the same per-host circuit breakers and adaptive limit as
+ * {@link AiResilienceInterceptor}, and failures surface as the same
+ * {@link RestClientException} subtypes the {@code RestTemplate} would throw, so the agent
+ * controller keeps its existing {@code 503} fallbacks. With an {@link AiTimeoutPolicy} the
+ * upload also gets its route's read timeout and deadline headers, and with
+ * {@link AiUpstreamMetrics} it is timed and sized like a {@code RestTemplate} call.
+ */
+@Slf4j
+public class AiUploadClient {
+
+    private final AiHttpClientPool pool;
+    private final CloseableHttpClient httpClient;
+    private final CircuitBreakerRegistry registry;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+    private final AiTimeoutPolicy timeouts;
+    private final AiUpstreamMetrics metrics;
+
+    public AiUploadClient(AiHttpClientPool pool, CircuitBreakerRegistry registry,
+                          AdaptiveConcurrencyLimiter limiter, ObjectMapper objectMapper, int chunkSize) {
+        this(pool, registry, limiter, objectMapper, chunkSize, null, null);
+    }
+
+    public AiUploadClient(AiHttpClientPool pool, CircuitBreakerRegistry registry,
+                          AdaptiveConcurrencyLimiter limiter, ObjectMapper objectMapper, int chunkSize,
+                          AiTimeoutPolicy timeouts, AiUpstreamMetrics metrics) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.pool = pool;
+        this.httpClient = pool.httpClient();
+        this.registry = registry;
+        this.limiter = limiter;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+        this.timeouts = timeouts;
+        this.metrics = metrics;
+    }
+
+    /**
+     * POST {@code fields} and {@code files} (as repeated {@code files} parts) to {@code url} and
+     * return the JSON reply. Empty files are skipped.
+     */
+    public Map<String, Object> post(String url, HttpHeaders headers, Map<String, String> fields,
+                                    List<MultipartFile> files) {
+        MultipartEntityBuilder multipart = MultipartEntityBuilder.create()
+                .setMode(HttpMultipartMode.EXTENDED)
+                .setCharset(StandardCharsets.UTF_8);
+        ContentType text = ContentType.TEXT_PLAIN.withCharset(StandardCharsets.UTF_8);
+        fields.forEach((name, value) -> multipart.addTextBody(name, value, text));
+        for (MultipartFile file : files) {
+            if (!file.isEmpty()) {
+                multipart.addPart("files", new UploadedFileBody(file, chunkSize));
+            }
+        }
+
+        HttpPost post = new HttpPost(url);
+        headers.forEach((name, values) -> {
+            if (!HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(name)) {
+                values.forEach(value -> post.addHeader(name, value));
+            }
+        });
+        HttpEntity entity = multipart.build();
+        post.setEntity(entity);
+        int requestBytes = (int) Math.min(Integer.MAX_VALUE, Math.max(0, entity.getContentLength()));
+
+        URI uri = URI.create(url);
+        String host = uri.getHost();
+        if (timeouts != null) {
+            long timeoutMs = timeouts.timeoutMs(host, uri.getPath());
+            post.setConfig(pool.requestConfig(timeoutMs));
+            post.setHeader(AiTimeoutPolicy.TIMEOUT_HEADER, Long.toString(timeoutMs));
+            post.setHeader(AiTimeoutPolicy.DEADLINE_HEADER, Long.toString(System.currentTimeMillis() + timeoutMs));
+        }
+        CircuitBreaker breaker = registry.circuitBreaker(host);
+        if (!breaker.tryAcquirePermission()) {
+            log.warn("Circuit breaker OPEN for {} - failing upload fast without calling upstream", host);
+            throw new ResourceAccessException("AI dependency circuit open for host " + host);
+        }
+
+        long start = System.nanoTime();
+        boolean responded = false;
+        try (ClassicHttpResponse response = httpClient.executeOpen(null, post, null)) {
+            responded = true;
+            if (metrics != null) {
+                metrics.recordResponse(host, "POST", uri.getPath(), response.getCode(), System.nanoTime() - start,
+                        requestBytes);
+            }
+            byte[] body = read(response.getEntity());
+            long durationNanos = System.nanoTime() - start;
+            if (metrics != null) {
+                metrics.recordResponseSize(host, "POST", uri.getPath(), body.length);
+            }
+            HttpStatusCode status = HttpStatusCode.valueOf(response.getCode());
+            if (status.is5xxServerError()) {
+                breaker.onError(durationNanos, TimeUnit.NANOSECONDS,
+                        new IOException("Upstream " + host + " returned " + status.value()));
+            } else {
+                breaker.onSuccess(durationNanos, TimeUnit.NANOSECONDS);
+            }
+            sample(durationNanos, status.is5xxServerError());
+            waited(host, uri, durationNanos);
+
+            if (status.is5xxServerError()) {
+                throw HttpServerErrorException.create(status, reason(response), null, body, StandardCharsets.UTF_8);
+            }
+            if (status.is4xxClientError()) {
+                throw HttpClientErrorException.create(status, reason(response), null, body, StandardCharsets.UTF_8);
+            }
+            return body.length == 0 ? Map.of() : objectMapper.readValue(body, Map.class);
+        } catch (IOException e) {
+            long durationNanos = System.nanoTime() - start;
+            breaker.onError(durationNanos, TimeUnit.NANOSECONDS, e);
+            sample(durationNanos, true);
+            if (e instanceof SocketTimeoutException) {
+                waited(host, uri, durationNanos);
+            }
+            if (metrics != null && !responded) {
+                metrics.recordError(host, "POST", uri.getPath(), durationNanos, requestBytes);
+            }
+            throw new ResourceAccessException("Upload to " + host + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static byte[] read(HttpEntity entity) throws IOException {
+        return entity == null ? new byte[0] : EntityUtils.toByteArray(entity);
+    }
+
+    private static String reason(ClassicHttpResponse response) {
+        String reason = response.getReasonPhrase();
+        if (reason != null && !reason.isEmpty()) {
+            return reason;
+        }
+        HttpStatus status = HttpStatus.resolve(response.getCode());
+        return status != null ? status.getReasonPhrase() : "";
+    }
+
+    private void waited(String host, URI uri, long durationNanos) {
+        if (timeouts != null) {
+            timeouts.record(host, uri.getPath(), durationNanos);
+        }
+    }
+
+    private void sample(long durationNanos, boolean failed) {
+        if (limiter != null) {
+            limiter.onSample(durationNanos, failed);
+        }
+    }
+
+    /**
+     * A file part that copies the upload in fixed-size chunks when the request is written.
+     * Nothing is read before then, and nothing is kept afterwards.
+     */
+    static final class UploadedFileBody extends AbstractContentBody {
+
+        private final MultipartFile file;
+        private final int chunkSize;
+
+        UploadedFileBody(MultipartFile file, int chunkSize) {
+            super(file.getContentType() != null
+                    ? ContentType.parseLenient(file.getContentType())
+                    : ContentType.APPLICATION_OCTET_STREAM);
+            this.file = file;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public String getFilename() {
+            return file.getOriginalFilename();
+        }
+
+        @Override
+        public long getContentLength() {
+            return file.getSize();
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            byte[] chunk = new byte[chunkSize];
+            try (InputStream in = file.getInputStream()) {
+                int read;
+                while ((read = in.read(chunk)) != -1) {
+                    out.write(chunk, 0, read);
+                }
+            }
+        }
+    }
+}
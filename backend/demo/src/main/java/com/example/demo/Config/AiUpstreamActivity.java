@@ -0,0 +1,34 @@
+package com.example.demo.Config;
+
+/**
+ * Where {@link AiResilienceInterceptor} reports each upstream call it made, so that a component
+ * built after the {@link org.springframework.web.client.RestTemplate} (the warm-up service, which
+ * itself calls through it) can observe upstream traffic without a bean cycle.
+ *
+ * <p>Calls sent with the {@link #WARMUP_HEADER} are reported as warm-up pings, so they never
+ * count as user demand.
+ */
+public class AiUpstreamActivity {
+
+    /** Request header marking a warm-up ping; its value is the reason for the ping. */
+    public static final String WARMUP_HEADER = "X-AI-Warmup";
+
+    /** Receives every reported call. */
+    public interface Listener {
+        void onCall(String host, long startedAtMillis, long durationNanos, boolean failed, boolean warmup);
+    }
+
+    private volatile Listener listener;
+
+    /** Replace the listener; {@code null} stops reporting. */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void record(String host, long startedAtMillis, long durationNanos, boolean failed, boolean warmup) {
+        Listener current = listener;
+        if (current != null) {
+            current.onCall(host, startedAtMillis, durationNanos, failed, warmup);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.demo.Config;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency, payload size and status of every upstream AI call, recorded by
+ * {@link AiResilienceInterceptor} for the {@link org.springframework.web.client.RestTemplate},
+ * and by {@link AiUploadClient} and {@link AiStreamingClient} for the calls that bypass it.
+ *
+ * <ul>
+ *   <li>{@code ai.upstream.requests{host,method,uri,status,outcome}}: a timer from sending the
+ *       request to the response status. {@code outcome} is the status class
+ *       ({@code SUCCESS}, {@code CLIENT_ERROR}, {@code SERVER_ERROR}, ...) or {@code IO_ERROR}
+ *       when no response arrived, in which case {@code status} is {@code IO_ERROR} too.</li>
+ *   <li>{@code ai.upstream.request.size} and {@code ai.upstream.response.size}
+ *       ({@code host,method,uri}): bytes sent, and bytes the caller read from the reply.</li>
+ *   <li>{@code ai.upstream.breakers.open}: breakers currently open, across all hosts.</li>
+ * </ul>
+ *
+ * <p>{@code uri} is the path with ids replaced by {@code {id}} ({@code /agent/session/{id}}):
+ * numbers, UUIDs and long word tokens containing digits. The query string is dropped, since
+ * Gemini takes the API key there. After {@link #MAX_URIS} distinct paths, further ones are
+ * recorded as {@code OTHER}, so a path this misses cannot grow the registry without bound.
+ *
+ * <p>Timers publish a percentile histogram (p50/p95/p99 in Prometheus with
+ * {@code histogram_quantile}) plus the {@code ai.metrics.upstream.slo-ms} buckets, so an SLO
+ * such as "95% under 2.5 s" is read straight off {@code le="2.5"}. Sizes use the
+ * {@code ai.metrics.upstream.size-buckets-bytes} buckets.
+ */
+public class AiUpstreamMetrics {
+
+    static final String REQUESTS = "ai.upstream.requests";
+    static final String REQUEST_SIZE = "ai.upstream.request.size";
+    static final String RESPONSE_SIZE = "ai.upstream.response.size";
+    static final String OPEN_BREAKERS = "ai.upstream.breakers.open";
+    static final String IO_ERROR = "IO_ERROR";
+    static final String OTHER = "OTHER";
+    static final int MAX_URIS = 100;
+
+    private record Key(String host, String method, String uri, int status) {
+    }
+
+    private final Set<String> uris = ConcurrentHashMap.newKeySet();
+    // Meters by tags, so a call costs a map lookup rather than building and registering an id.
+    private final Map<Key, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<Key, DistributionSummary> requestSizes = new ConcurrentHashMap<>();
+    private final Map<Key, DistributionSummary> responseSizes = new ConcurrentHashMap<>();
+    private final Meter.MeterProvider<Timer> requests;
+    private final Meter.MeterProvider<DistributionSummary> requestSize;
+    private final Meter.MeterProvider<DistributionSummary> responseSize;
+
+    public AiUpstreamMetrics(MeterRegistry meterRegistry, CircuitBreakerRegistry breakers,
+                             long[] sloMillis, long[] sizeBuckets) {
+        this.requests = Timer.builder(REQUESTS)
+                .description("Upstream AI calls from request to response status")
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(Arrays.stream(sloMillis).mapToObj(Duration::ofMillis).toArray(Duration[]::new))
+                .withRegistry(meterRegistry);
+        double[] buckets = Arrays.stream(sizeBuckets).asDoubleStream().toArray();
+        this.requestSize = DistributionSummary.builder(REQUEST_SIZE)
+                .description("Bytes sent to the upstream AI service per call")
+                .baseUnit("bytes")
+                .serviceLevelObjectives(buckets)
+                .withRegistry(meterRegistry);
+        this.responseSize = DistributionSummary.builder(RESPONSE_SIZE)
+                .description("Bytes read from the upstream AI service per call")
+                .baseUnit("bytes")
+                .serviceLevelObjectives(buckets)
+                .withRegistry(meterRegistry);
+        Gauge.builder(OPEN_BREAKERS, breakers, AiUpstreamMetrics::openBreakers)
+                .description("AI upstream circuit breakers currently open")
+                .register(meterRegistry);
+    }
+
+    /** One call that got a response: its status and time to the status line. */
+    public void recordResponse(String host, String method, String path, int status, long durationNanos,
+                               int requestBytes) {
+        record(host, method, uri(path), status, durationNanos, requestBytes);
+    }
+
+    /** One call that failed before a response arrived (connect or read error, timeout). */
+    public void recordError(String host, String method, String path, long durationNanos, int requestBytes) {
+        record(host, method, uri(path), 0, durationNanos, requestBytes);
+    }
+
+    /** Bytes of a reply body read by the caller, reported when the response is closed. */
+    public void recordResponseSize(String host, String method, String path, long bytes) {
+        Key key = new Key(host, method, uri(path), 0);
+        responseSizes.computeIfAbsent(key, k -> responseSize.withTags(sizeTags(k))).record(bytes);
+    }
+
+    private void record(String host, String method, String uri, int status, long durationNanos, int requestBytes) {
+        Key key = new Key(host, method, uri, status);
+        timers.computeIfAbsent(key, k -> requests.withTags(sizeTags(k).and(
+                "status", k.status() == 0 ? IO_ERROR : Integer.toString(k.status()),
+                "outcome", k.status() == 0 ? IO_ERROR : outcome(k.status()))))
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+        requestSizes.computeIfAbsent(new Key(host, method, uri, 0), k -> requestSize.withTags(sizeTags(k)))
+                .record(requestBytes);
+    }
+
+    private static Tags sizeTags(Key key) {
+        return Tags.of("host", key.host(), "method", key.method(), "uri", key.uri());
+    }
+
+    private String uri(String path) {
+        String template = uriTemplate(path);
+        if (uris.contains(template) || (uris.size() < MAX_URIS && uris.add(template))) {
+            return template;
+        }
+        return OTHER;
+    }
+
+    /** The path with id-like segments replaced by {@code {id}}; "/" when empty. */
+    static String uriTemplate(String path) {
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        StringBuilder template = null;
+        int start = 0;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (isId(path, start, end)) {
+                if (template == null) {
+                    template = new StringBuilder(path.length()).append(path, 0, start);
+                }
+                template.append("{id}");
+            } else if (template != null) {
+                template.append(path, start, end);
+            }
+            if (template != null && end < path.length()) {
+                template.append('/');
+            }
+            start = end + 1;
+        }
+        return template == null ? path : template.toString();
+    }
+
+    /** Numbers, UUIDs, and word tokens of 16 or more characters that contain a digit. */
+    private static boolean isId(String path, int start, int end) {
+        int length = end - start;
+        if (length == 0) {
+            return false;
+        }
+        boolean digits = true;
+        boolean anyDigit = false;
+        boolean word = true;
+        boolean uuid = length == 36;
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            boolean digit = c >= '0' && c <= '9';
+            boolean hex = digit || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+            int at = i - start;
+            boolean dash = at == 8 || at == 13 || at == 18 || at == 23;
+            digits &= digit;
+            anyDigit |= digit;
+            word &= digit || c == '_' || c == '-' || Character.isLetter(c);
+            uuid &= dash ? c == '-' : hex;
+        }
+        return digits || uuid || (length >= 16 && word && anyDigit);
+    }
+
+    static String outcome(int status) {
+        return switch (status / 100) {
+            case 1 -> "INFORMATIONAL";
+            case 2 -> "SUCCESS";
+            case 3 -> "REDIRECTION";
+            case 4 -> "CLIENT_ERROR";
+            case 5 -> "SERVER_ERROR";
+            default -> "UNKNOWN";
+        };
+    }
+
+    static long[] parseList(String values) {
+        return Arrays.stream(values.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .mapToLong(Long::parseLong)
+                .sorted()
+                .toArray();
+    }
+
+    private static double openBreakers(CircuitBreakerRegistry breakers) {
+        return breakers.getAllCircuitBreakers().stream()
+                .map(CircuitBreaker::getState)
+                .filter(state -> state == CircuitBreaker.State.OPEN || state == CircuitBreaker.State.FORCED_OPEN)
+                .count();
+    }
+}
@@ -1,16 +1,21 @@
 package com.example.demo.Config;
 
 
+import com.example.demo.Implementation.UserCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.DispatcherType;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.MediaType;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.lang.NonNull;
@@ -26,6 +31,7 @@ import org.springframework.web.client.RestTemplate;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import java.time.Duration;
@@ -51,10 +57,27 @@ public class AppConfig implements WebMvcConfigurer {
             }
         }
     }
+    @Autowired
+    private ObjectProvider<UserCache> userCache;
+
+    /**
+     * Lets handlers take a {@link VerifiedClaims} parameter instead of re-parsing the JWT
+     * header, and a {@link CurrentUser @CurrentUser} {@code User} served from {@link UserCache}.
+     */
+    @Override
+    public void addArgumentResolvers(@NonNull List<HandlerMethodArgumentResolver> resolvers) {
+        resolvers.add(new VerifiedClaimsArgumentResolver());
+        resolvers.add(new CurrentUserArgumentResolver(userCache));
+    }
+
     @Bean
-    SecurityFilterChain securityFilterChain(HttpSecurity http, RateLimitFilter rateLimitFilter) throws Exception{
+    SecurityFilterChain securityFilterChain(HttpSecurity http, RateLimitFilter rateLimitFilter,
+                                            ConcurrencyLimitFilter concurrencyLimitFilter) throws Exception{
         http.sessionManagement(management-> management.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
         http.authorizeHttpRequests(Authorize -> Authorize
+                // The async re-dispatch that writes a CompletableFuture result (AI proxy
+                // endpoints) belongs to a request that was already authorized.
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                 .requestMatchers("/auth/**").permitAll()
                 .requestMatchers("/api/verification/**").permitAll()
                 .requestMatchers("/api/subscription/plans").permitAll()
@@ -73,6 +96,8 @@ public class AppConfig implements WebMvcConfigurer {
                 // Run after JwtValidator so the authenticated principal is available for
                 // per-user limiting on the AI endpoints.
                 .addFilterAfter(rateLimitFilter, JwtValidator.class)
+                // Only requests that passed their per-user rate limit take an in-flight AI slot.
+                .addFilterAfter(concurrencyLimitFilter, RateLimitFilter.class)
                 .csrf(csrf -> csrf.disable())
                 .cors(cors-> cors.configurationSource(corsConfigurationSource()));
         return http.build();
@@ -118,6 +143,28 @@ public class AppConfig implements WebMvcConfigurer {
         return registration;
     }
 
+    /** Same as {@link #rateLimitFilterRegistration}: run only inside the security chain. */
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilterRegistration(ConcurrencyLimitFilter filter) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setEnabled(false);
+        return registration;
+    }
+
+    /**
+     * Adaptive in-flight limit for the AI proxy routes, fed by upstream latency from
+     * {@link AiResilienceInterceptor}. Starts at {@code initial-limit} and moves between
+     * {@code min-limit} and {@code max-limit}; see {@link AdaptiveConcurrencyLimiter}.
+     */
+    @Bean
+    public AdaptiveConcurrencyLimiter aiConcurrencyLimiter(
+            @Value("${ai.concurrency.initial-limit:20}") int initialLimit,
+            @Value("${ai.concurrency.min-limit:2}") int minLimit,
+            @Value("${ai.concurrency.max-limit:200}") int maxLimit,
+            MeterRegistry meterRegistry) {
+        return new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, meterRegistry);
+    }
+
     /**
      * Per-host circuit breaker registry guarding outbound AI calls. Defaults are
      * conservative so heavy-but-healthy analysis traffic never trips the breaker:
@@ -155,19 +202,168 @@ public class AppConfig implements WebMvcConfigurer {
     }
 
     /**
-     * Shared RestTemplate with explicit connect/read timeouts. Used for all
+     * Weighted fair queueing of AI calls by subscription tier over the adaptive limit, configured
+     * per tier by {@code ai.scheduler.<tier>.weight|max-queue|max-wait-ms}.
+     */
+    @Bean
+    public AiTierScheduler aiTierScheduler(
+            @Value("${ai.scheduler.enabled:true}") boolean enabled,
+            @Value("${ai.scheduler.court.weight:8}") int courtWeight,
+            @Value("${ai.scheduler.court.max-queue:200}") int courtMaxQueue,
+            @Value("${ai.scheduler.court.max-wait-ms:60000}") long courtMaxWaitMs,
+            @Value("${ai.scheduler.unlimited.weight:4}") int unlimitedWeight,
+            @Value("${ai.scheduler.unlimited.max-queue:100}") int unlimitedMaxQueue,
+            @Value("${ai.scheduler.unlimited.max-wait-ms:30000}") long unlimitedMaxWaitMs,
+            @Value("${ai.scheduler.free.weight:1}") int freeWeight,
+            @Value("${ai.scheduler.free.max-queue:50}") int freeMaxQueue,
+            @Value("${ai.scheduler.free.max-wait-ms:10000}") long freeMaxWaitMs,
+            AdaptiveConcurrencyLimiter aiConcurrencyLimiter,
+            MeterRegistry meterRegistry) {
+        return new AiTierScheduler(enabled, aiConcurrencyLimiter, List.of(
+                new AiTierScheduler.Tier("court", courtWeight, courtMaxQueue, courtMaxWaitMs),
+                new AiTierScheduler.Tier("unlimited", unlimitedWeight, unlimitedMaxQueue, unlimitedMaxWaitMs),
+                new AiTierScheduler.Tier("free", freeWeight, freeMaxQueue, freeMaxWaitMs)), meterRegistry);
+    }
+
+    /**
+     * Bounded pool that runs the blocking upstream half of the AI proxy endpoints so Tomcat
+     * workers are released while the AI service thinks. {@code ai.async.enabled=false}
+     * runs the calls inline instead; in virtual-thread mode each call gets a virtual thread.
+     */
+    @Bean
+    public AiProxyExecutor aiProxyExecutor(
+            @Value("${ai.async.enabled:true}") boolean enabled,
+            @Value("${ai.async.threads:64}") int threads,
+            @Value("${ai.async.queue-capacity:100}") int queueCapacity,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            MeterRegistry meterRegistry) {
+        return new AiProxyExecutor(enabled, virtualThreads, threads, queueCapacity, meterRegistry);
+    }
+
+    /**
+     * Keep-alive connection pool for outbound AI calls, sized and timed by {@code ai.http.*}.
+     * Closed with the context so pooled sockets are released on shutdown.
+     */
+    @Bean
+    public AiHttpClientPool aiHttpClientPool(
+            @Value("${ai.http.max-total:100}") int maxTotal,
+            @Value("${ai.http.max-per-host:50}") int maxPerHost,
+            @Value("${ai.http.connect-timeout-ms:10000}") long connectTimeoutMs,
+            @Value("${ai.http.read-timeout-ms:120000}") long readTimeoutMs,
+            @Value("${ai.http.acquire-timeout-ms:5000}") long acquireTimeoutMs,
+            @Value("${ai.http.keep-alive-seconds:60}") long keepAliveSeconds,
+            @Value("${ai.http.idle-evict-seconds:30}") long idleEvictSeconds,
+            MeterRegistry meterRegistry) {
+        return new AiHttpClientPool(new AiHttpClientPool.Settings(maxTotal, maxPerHost, connectTimeoutMs,
+                readTimeoutMs, acquireTimeoutMs, keepAliveSeconds, idleEvictSeconds), meterRegistry);
+    }
+
+    /**
+     * Read timeout per upstream route: the {@code ai.timeouts.routes} caps, and in adaptive mode
+     * the route's {@code percentile} latency times {@code factor} within them, except on a host
+     * idle for {@code ai.warmup.idle-sleep-seconds}, which may be cold.
+     */
+    @Bean
+    public AiTimeoutPolicy aiTimeoutPolicy(
+            @Value("${ai.timeouts.default-ms:${ai.http.read-timeout-ms:120000}}") long defaultTimeoutMs,
+            @Value("${ai.timeouts.routes:}") String routes,
+            @Value("${ai.timeouts.adaptive.enabled:false}") boolean adaptive,
+            @Value("${ai.timeouts.adaptive.percentile:0.99}") double percentile,
+            @Value("${ai.timeouts.adaptive.factor:3}") double factor,
+            @Value("${ai.timeouts.adaptive.min-ms:1000}") long minTimeoutMs,
+            @Value("${ai.timeouts.adaptive.min-samples:20}") int minSamples,
+            @Value("${ai.timeouts.adaptive.window:256}") int window,
+            @Value("${ai.warmup.idle-sleep-seconds:900}") long idleSleepSeconds,
+            MeterRegistry meterRegistry) {
+        return new AiTimeoutPolicy(new AiTimeoutPolicy.Settings(defaultTimeoutMs, AiTimeoutPolicy.parseRoutes(routes),
+                adaptive, percentile, factor, minTimeoutMs, minSamples, window,
+                Duration.ofSeconds(idleSleepSeconds).toMillis()), meterRegistry);
+    }
+
+    /**
+     * SSE relay for the streaming AI endpoints. Shares the connection pool, circuit breakers,
+     * adaptive limit and proxy pool with the {@link RestTemplate} path.
+     */
+    @Bean
+    public AiStreamingClient aiStreamingClient(AiHttpClientPool aiHttpClientPool,
+                                               CircuitBreakerRegistry aiCircuitBreakerRegistry,
+                                               AdaptiveConcurrencyLimiter aiConcurrencyLimiter,
+                                               AiProxyExecutor aiProxyExecutor,
+                                               ObjectMapper objectMapper,
+                                               AiUpstreamMetrics aiUpstreamMetrics) {
+        return new AiStreamingClient(aiHttpClientPool, aiCircuitBreakerRegistry, aiConcurrencyLimiter,
+                aiProxyExecutor, objectMapper, aiUpstreamMetrics);
+    }
+
+    /**
+     * Streams uploaded documents to the AI agent in {@code ai.upload.chunk-size-bytes} pieces
+     * instead of buffering them for the {@link RestTemplate}.
+     */
+    @Bean
+    public AiUploadClient aiUploadClient(AiHttpClientPool aiHttpClientPool,
+                                         CircuitBreakerRegistry aiCircuitBreakerRegistry,
+                                         AdaptiveConcurrencyLimiter aiConcurrencyLimiter,
+                                         ObjectMapper objectMapper,
+                                         AiTimeoutPolicy aiTimeoutPolicy,
+                                         AiUpstreamMetrics aiUpstreamMetrics,
+                                         @Value("${ai.upload.chunk-size-bytes:65536}") int chunkSize) {
+        return new AiUploadClient(aiHttpClientPool, aiCircuitBreakerRegistry, aiConcurrencyLimiter,
+                objectMapper, chunkSize, aiTimeoutPolicy, aiUpstreamMetrics);
+    }
+
+    /**
+     * Relays AI replies the backend does not inspect; with {@code ai.passthrough.enabled} the
+     * upstream bytes are copied to the client instead of round-tripping through a {@code Map}.
+     */
+    @Bean
+    public AiJsonRelay aiJsonRelay(RestTemplate restTemplate,
+                                   @Value("${ai.passthrough.enabled:true}") boolean passthrough) {
+        return new AiJsonRelay(restTemplate, passthrough);
+    }
+
+    /**
+     * Upstream calls made through the {@link RestTemplate}, as seen by its interceptor; the
+     * warm-up service listens here to learn when the ML service was last reached.
+     */
+    @Bean
+    public AiUpstreamActivity aiUpstreamActivity() {
+        return new AiUpstreamActivity();
+    }
+
+    /**
+     * Per-host, per-path latency histograms (with {@code ai.metrics.upstream.slo-ms} buckets),
+     * payload sizes and status of upstream AI calls, plus a gauge of open circuit breakers.
+     */
+    @Bean
+    public AiUpstreamMetrics aiUpstreamMetrics(
+            MeterRegistry meterRegistry,
+            CircuitBreakerRegistry aiCircuitBreakerRegistry,
+            @Value("${ai.metrics.upstream.slo-ms:250,500,1000,2500,5000,10000,30000,60000}") String sloMillis,
+            @Value("${ai.metrics.upstream.size-buckets-bytes:1024,10240,102400,1048576,10485760}") String sizeBuckets) {
+        return new AiUpstreamMetrics(meterRegistry, aiCircuitBreakerRegistry,
+                AiUpstreamMetrics.parseList(sloMillis), AiUpstreamMetrics.parseList(sizeBuckets));
+    }
+
+    /**
+     * Shared RestTemplate with explicit connect/read timeouts over a pooled keep-alive
+     * client ({@link AiHttpClientPool}). Used for all
      * outbound calls to the Python AI service and external APIs so a slow or
      * sleeping upstream cannot exhaust the servlet thread pool by hanging
      * indefinitely. The {@link AiResilienceInterceptor} adds a per-host circuit
-     * breaker so sustained failures fail fast instead of queueing behind the timeout.
+     * breaker so sustained failures fail fast instead of queueing behind the timeout,
+     * reports each call's latency to the AI concurrency limiter and records it in
+     * {@link AiUpstreamMetrics}. Read timeouts are per route ({@link AiTimeoutPolicy}).
      */
     @Bean
-    public RestTemplate restTemplate(CircuitBreakerRegistry aiCircuitBreakerRegistry) {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(10_000);   // 10s to establish a connection
-        factory.setReadTimeout(120_000);     // 120s for heavy AI analysis responses
-        RestTemplate restTemplate = new RestTemplate(factory);
-        restTemplate.getInterceptors().add(new AiResilienceInterceptor(aiCircuitBreakerRegistry));
+    public RestTemplate restTemplate(CircuitBreakerRegistry aiCircuitBreakerRegistry,
+                                     AdaptiveConcurrencyLimiter aiConcurrencyLimiter,
+                                     AiHttpClientPool aiHttpClientPool,
+                                     AiUpstreamActivity aiUpstreamActivity,
+                                     AiUpstreamMetrics aiUpstreamMetrics,
+                                     AiTimeoutPolicy aiTimeoutPolicy) {
+        RestTemplate restTemplate = new RestTemplate(aiHttpClientPool.requestFactory(aiTimeoutPolicy));
+        restTemplate.getInterceptors().add(new AiResilienceInterceptor(aiCircuitBreakerRegistry, aiConcurrencyLimiter,
+                aiUpstreamActivity, aiUpstreamMetrics, aiTimeoutPolicy));
         return restTemplate;
     }
 }
@@ -0,0 +1,154 @@
+package com.example.demo.Config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sheds AI proxy requests ({@code /api/ai/**}, {@code /api/agent/**},
+ * {@code /api/ai-analysis/**}) once the number in flight reaches the
+ * {@link AdaptiveConcurrencyLimiter}'s current limit.
+ *
+ * <p>{@link RateLimitFilter} bounds how often each user may call the AI service; this bounds
+ * how many calls the whole instance has outstanding against it. When the Python service
+ * slows down the limit shrinks, and surplus requests get an immediate {@code 503} with a
+ * {@code Retry-After} hint instead of each holding a servlet thread for up to the 120s read
+ * timeout. Health probes are never shed. Rejections are counted in
+ * {@code ai.concurrency.rejected}; the slot is held until the response completes, including
+ * for async handlers.
+ *
+ * <p>The analysis endpoints whose upstream calls go through {@link AiTierScheduler} are not
+ * shed here: the scheduler takes their slots from the same limiter, per call, and queues them
+ * by subscription tier instead of rejecting whoever arrives when the limit is reached.
+ */
+@Component
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    /** POST routes whose upstream calls {@link AiTierScheduler} admits. */
+    static final Set<String> TIER_SCHEDULED = Set.of(
+            "/api/agent/analyze",
+            "/api/ai-analysis/analyze",
+            "/api/ai-analysis/analyze/batch");
+
+    private final boolean enabled;
+    private final boolean tierScheduling;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final Counter rejected;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    public ConcurrencyLimitFilter(@Value("${ai.concurrency.enabled:true}") boolean enabled,
+                                  @Value("${ai.scheduler.enabled:true}") boolean tierScheduling,
+                                  AdaptiveConcurrencyLimiter limiter,
+                                  MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.tierScheduling = tierScheduling;
+        this.limiter = limiter;
+        this.rejected = meterRegistry.counter("ai.concurrency.rejected");
+    }
+
+    /** Convenience constructor for unit tests: throwaway {@link SimpleMeterRegistry}. */
+    public ConcurrencyLimitFilter(AdaptiveConcurrencyLimiter limiter) {
+        this(true, false, limiter, new SimpleMeterRegistry());
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        String path = request.getRequestURI();
+        if (!enabled || "OPTIONS".equalsIgnoreCase(request.getMethod()) || path.endsWith("/health")) {
+            return true;
+        }
+        // AI job status polls and cancels, and the warm-up hint, never wait on the AI service.
+        if (path.equals("/api/agent/prewarm")
+                || path.startsWith("/api/agent/jobs/") && !"POST".equalsIgnoreCase(request.getMethod())) {
+            return true;
+        }
+        if (tierScheduling && "POST".equalsIgnoreCase(request.getMethod()) && TIER_SCHEDULED.contains(path)) {
+            return true;
+        }
+        return !(path.startsWith("/api/ai/")
+                || path.startsWith("/api/agent/")
+                || path.startsWith("/api/ai-analysis/"));
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+                                    @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        if (!limiter.tryAcquire()) {
+            rejected.increment();
+            rejectOverloaded(response);
+            return;
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                limiter.release();
+            }
+        };
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                // The upstream call is still running on another thread; free the slot when it ends.
+                request.getAsyncContext().addListener(new ReleaseOnComplete(release));
+            } else {
+                release.run();
+            }
+        }
+    }
+
+    private void rejectOverloaded(HttpServletResponse response) throws IOException {
+        long retryAfterSeconds = limiter.retryAfterSeconds();
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("success", false);
+        body.put("error", "ai_overloaded");
+        body.put("message", "The AI service is busy. Please retry in " + retryAfterSeconds + "s.");
+        objectMapper.writeValue(response.getWriter(), body);
+    }
+
+    /** {@code onComplete} fires after timeouts and errors too, so it is the only release point. */
+    private record ReleaseOnComplete(Runnable release) implements AsyncListener {
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // A re-dispatched async request starts again; keep listening on the new cycle.
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
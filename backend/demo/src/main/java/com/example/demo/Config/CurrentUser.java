@@ -0,0 +1,21 @@
+package com.example.demo.Config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link com.example.demo.Classes.User} handler parameter to be filled with the
+ * authenticated caller, resolved by {@link CurrentUserArgumentResolver} from the request's
+ * {@link VerifiedClaims} through the bounded {@link com.example.demo.Implementation.UserCache}.
+ *
+ * <p>The parameter is {@code null} when the token is valid but no user row matches its
+ * email, so handlers keep their existing "User not found" responses.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CurrentUser {
+}
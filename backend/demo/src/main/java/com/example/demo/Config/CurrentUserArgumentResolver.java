@@ -0,0 +1,67 @@
+package com.example.demo.Config;
+
+import com.example.demo.Classes.User;
+import com.example.demo.Implementation.UserCache;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.MethodParameter;
+import org.springframework.lang.NonNull;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+/**
+ * Resolves {@link CurrentUser @CurrentUser} {@link User} parameters.
+ *
+ * <p>The email comes from the {@link VerifiedClaims} published by {@link JwtValidator}, and
+ * the entity from {@link UserCache}, so the {@code searchByEmail} query that used to open
+ * nearly every authenticated handler is served from memory on repeat calls. The resolved
+ * user is also memoised on the request, making any further lookups in the same request free.
+ *
+ * <p>The cache is obtained lazily: argument resolvers are registered while the MVC
+ * infrastructure is built, before the JPA repositories behind the cache need to exist.
+ */
+public class CurrentUserArgumentResolver implements HandlerMethodArgumentResolver {
+
+    /** Request attribute holding the user resolved for this request. */
+    public static final String REQUEST_ATTRIBUTE = CurrentUserArgumentResolver.class.getName() + ".USER";
+
+    private final ObjectProvider<UserCache> userCache;
+
+    public CurrentUserArgumentResolver(ObjectProvider<UserCache> userCache) {
+        this.userCache = userCache;
+    }
+
+    @Override
+    public boolean supportsParameter(@NonNull MethodParameter parameter) {
+        return parameter.hasParameterAnnotation(CurrentUser.class)
+                && User.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public Object resolveArgument(@NonNull MethodParameter parameter,
+                                  ModelAndViewContainer mavContainer,
+                                  @NonNull NativeWebRequest webRequest,
+                                  WebDataBinderFactory binderFactory) {
+        Object memoised = webRequest.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (memoised != null) {
+            return memoised;
+        }
+
+        Object claims = webRequest.getAttribute(VerifiedClaims.REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (!(claims instanceof VerifiedClaims verified)) {
+            if (parameter.isOptional()) {
+                return null;
+            }
+            throw new BadCredentialsException("Missing or invalid token");
+        }
+
+        User user = userCache.getObject().findByEmail(verified.email());
+        if (user != null) {
+            webRequest.setAttribute(REQUEST_ATTRIBUTE, user, RequestAttributes.SCOPE_REQUEST);
+        }
+        return user;
+    }
+}
@@ -1,30 +1,115 @@
 package com.example.demo.Config;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Iterator;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 /**
  * Per-process {@link RateLimitStore}. Holds one {@link TokenBucket} per key in a
  * {@link ConcurrentHashMap}, lazily creating buckets on first use and evicting idle
  * ones so the map cannot grow without bound under a flood of distinct clients.
  *
+ * <p>Eviction never runs on the request path. Keys are filed into a hashed timing wheel
+ * by the tick in which they were last used; a key only changes slot once per tick, so the
+ * hot path stays O(1). A background sweeper visits one slot per tick — exactly the keys
+ * whose idle deadline has passed — instead of scanning the whole map. If a flood of
+ * distinct keys pushes the map past {@code maxBuckets} before they go idle, the sweeper
+ * also evicts the least recently used slots early ({@code reason=pressure}); an evicted
+ * client simply starts again from a full bucket.
+ *
+ * <p>Evictions are exported as {@code ratelimit.buckets.evicted{reason=idle|pressure}} and
+ * the live key count as the {@code ratelimit.buckets} gauge.
+ *
  * <p>This is the default store and also serves as the in-memory fallback for
  * {@link RedisRateLimitStore} when Redis is unreachable, so per-instance protection
  * never disappears even during a Redis outage.
  */
-public class InMemoryRateLimitStore implements RateLimitStore {
+@Slf4j
+public class InMemoryRateLimitStore implements RateLimitStore, AutoCloseable {
 
-    private static final int MAX_BUCKETS = 50_000;
-    private static final long STALE_AGE_MS = 600_000L; // evict buckets idle > 10 min
+    static final int DEFAULT_MAX_BUCKETS = 50_000;
+    static final long DEFAULT_IDLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+    static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /** One daemon thread sweeps every store in the JVM; sweeps are short and infrequent. */
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ratelimit-bucket-sweeper");
+        t.setDaemon(true);
+        return t;
+    });
 
     private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Set<String>[] wheel;
+    private final long idleNanos;
+    private final long idleTicks;
+    private final int maxBuckets;
+    private final LongSupplier clock;
+    private final Counter idleEvictions;
+    private final Counter pressureEvictions;
+    private final AtomicBoolean pressureSweepQueued = new AtomicBoolean();
+    private final ScheduledFuture<?> sweepTask;
+    private long lastSweptTick;
+
+    /** Store with default limits and no exported metrics (tests, Redis fallback wiring). */
+    public InMemoryRateLimitStore() {
+        this(new SimpleMeterRegistry());
+    }
+
+    public InMemoryRateLimitStore(MeterRegistry meterRegistry) {
+        this(meterRegistry, DEFAULT_MAX_BUCKETS, DEFAULT_IDLE_NANOS);
+    }
+
+    public InMemoryRateLimitStore(MeterRegistry meterRegistry, int maxBuckets, long idleNanos) {
+        this(meterRegistry, maxBuckets, idleNanos, System::nanoTime, true);
+    }
+
+    /**
+     * Full constructor. Tests pass a manual {@code clock} and {@code scheduleSweeps = false}
+     * and drive {@link #sweep()} themselves.
+     */
+    @SuppressWarnings("unchecked")
+    InMemoryRateLimitStore(MeterRegistry meterRegistry, int maxBuckets, long idleNanos,
+                           LongSupplier clock, boolean scheduleSweeps) {
+        this.maxBuckets = maxBuckets;
+        this.idleNanos = idleNanos;
+        this.idleTicks = Math.max(1L, (idleNanos + TICK_NANOS - 1) / TICK_NANOS);
+        this.clock = clock;
+        // idleTicks + 2 slots: the slot being swept is never the slot currently being filled.
+        this.wheel = new Set[(int) idleTicks + 2];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = ConcurrentHashMap.newKeySet();
+        }
+        this.lastSweptTick = tickOf(clock.getAsLong()) - idleTicks - 1;
+        this.idleEvictions = meterRegistry.counter("ratelimit.buckets.evicted", "reason", "idle");
+        this.pressureEvictions = meterRegistry.counter("ratelimit.buckets.evicted", "reason", "pressure");
+        meterRegistry.gauge("ratelimit.buckets", this, store -> store.buckets.size());
+        this.sweepTask = scheduleSweeps
+                ? SWEEPER.scheduleWithFixedDelay(this::sweepQuietly, TICK_NANOS, TICK_NANOS, TimeUnit.NANOSECONDS)
+                : null;
+    }
 
     @Override
     public long tryConsume(String key, long capacity, double refillTokensPerMs) {
-        if (buckets.size() > MAX_BUCKETS) {
-            evictStale();
+        long now = clock.getAsLong();
+        TokenBucket bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(capacity, refillTokensPerMs, now));
+        touch(key, bucket, tickOf(now));
+        if (buckets.size() > maxBuckets && sweepTask != null && pressureSweepQueued.compareAndSet(false, true)) {
+            // Don't wait for the next tick, but don't evict on the caller's thread either.
+            SWEEPER.execute(this::sweepQuietly);
         }
-        TokenBucket bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(capacity, refillTokensPerMs));
-        return bucket.tryConsume();
+        return bucket.tryConsume(clock);
     }
 
     @Override
@@ -32,25 +117,123 @@ public class InMemoryRateLimitStore implements RateLimitStore {
         return "memory";
     }
 
-    private void evictStale() {
-        long cutoff = System.currentTimeMillis() - STALE_AGE_MS;
-        buckets.entrySet().removeIf(entry -> entry.getValue().lastAccessMs < cutoff);
+    @Override
+    public void close() {
+        if (sweepTask != null) {
+            sweepTask.cancel(false);
+        }
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    /**
+     * Re-file {@code key} under {@code tick} if it is still filed under an older one. Races
+     * between concurrent requests only ever add the key to an extra slot, which the sweeper
+     * tolerates, so this needs no lock.
+     */
+    private void touch(String key, TokenBucket bucket, long tick) {
+        long filedTick = bucket.wheelTick;
+        if (filedTick == tick) {
+            return;
+        }
+        wheel[slotOf(tick)].add(key);
+        bucket.wheelTick = tick;
+        if (filedTick != TokenBucket.UNFILED) {
+            wheel[slotOf(filedTick)].remove(key);
+        }
     }
 
-    /** A classic token bucket: continuous refill, capped at capacity. */
+    /**
+     * Evict buckets whose idle deadline has passed, then, if the map is still over
+     * {@code maxBuckets}, evict the least recently used slots until it is back under.
+     * Called by the background sweeper; single-threaded by construction.
+     */
+    synchronized void sweep() {
+        pressureSweepQueued.set(false);
+        long now = clock.getAsLong();
+        long currentTick = tickOf(now);
+        long dueTick = currentTick - idleTicks - 1;
+        long cutoff = now - idleNanos;
+
+        // Catch up on every slot that came due since the last run (at most one full turn).
+        long from = Math.max(lastSweptTick + 1, dueTick - wheel.length + 1);
+        for (long tick = from; tick <= dueTick; tick++) {
+            Iterator<String> it = wheel[slotOf(tick)].iterator();
+            while (it.hasNext()) {
+                String key = it.next();
+                it.remove();
+                TokenBucket bucket = buckets.get(key);
+                if (bucket == null || bucket.wheelTick > tick) {
+                    continue; // already gone, or used since and filed in a newer slot
+                }
+                if (bucket.isIdleSince(cutoff) && buckets.remove(key, bucket)) {
+                    idleEvictions.increment();
+                } else if (buckets.get(key) == bucket) {
+                    // Still draining a long refill: check it again a full idle period from now.
+                    touch(key, bucket, currentTick);
+                }
+            }
+        }
+        lastSweptTick = Math.max(lastSweptTick, dueTick);
+
+        for (long tick = dueTick + 1; buckets.size() > maxBuckets && tick <= currentTick; tick++) {
+            Iterator<String> it = wheel[slotOf(tick)].iterator();
+            while (it.hasNext() && buckets.size() > maxBuckets) {
+                String key = it.next();
+                it.remove();
+                TokenBucket bucket = buckets.get(key);
+                if (bucket != null && bucket.wheelTick <= tick && buckets.remove(key, bucket)) {
+                    pressureEvictions.increment();
+                }
+            }
+        }
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (RuntimeException e) {
+            // Never let one failure cancel the fixed-delay schedule.
+            log.warn("Rate-limit bucket sweep failed: {}", e.getMessage());
+        }
+    }
+
+    private int slotOf(long tick) {
+        return (int) Math.floorMod(tick, (long) wheel.length);
+    }
+
+    private static long tickOf(long nanos) {
+        return Math.floorDiv(nanos, TICK_NANOS);
+    }
+
+    /**
+     * Lock-free token bucket implemented as GCRA (generic cell rate algorithm).
+     *
+     * <p>The whole bucket state is a single {@code long}: the <em>theoretical arrival time</em>
+     * (TAT) of the next request, in {@link System#nanoTime()} units. Each token costs one
+     * emission interval {@code T = 1 / refillRate}; a request is admitted while the new TAT
+     * stays within {@code capacity * T} of now, which is exactly a bucket of {@code capacity}
+     * tokens refilling continuously. Consuming a token is a single compare-and-set, so
+     * concurrent requests for one key never block each other (nor pin a virtual thread's
+     * carrier, as the previous {@code synchronized} bucket did) and admissions stay exact:
+     * every successful CAS accounts for precisely one token.
+     */
     static final class TokenBucket {
-        private final long capacity;
-        private final double refillTokensPerMs;
-        private double tokens;
-        private long lastRefillNanos;
-        volatile long lastAccessMs;
-
-        TokenBucket(long capacity, double refillTokensPerMs) {
-            this.capacity = capacity;
-            this.refillTokensPerMs = refillTokensPerMs;
-            this.tokens = capacity;
-            this.lastRefillNanos = System.nanoTime();
-            this.lastAccessMs = System.currentTimeMillis();
+        static final long UNFILED = Long.MIN_VALUE;
+
+        private final long emissionIntervalNanos;
+        private final long burstToleranceNanos;
+        private final AtomicLong theoreticalArrivalNanos;
+        /** Timing-wheel tick this key is filed under; written by whichever request moves it. */
+        volatile long wheelTick = UNFILED;
+
+        TokenBucket(long capacity, double refillTokensPerMs, long nowNanos) {
+            this.emissionIntervalNanos = Math.max(1L, Math.round(1_000_000.0 / refillTokensPerMs));
+            this.burstToleranceNanos = saturatedMultiply(Math.max(1L, capacity), emissionIntervalNanos);
+            // A TAT in the past means "full bucket".
+            this.theoreticalArrivalNanos = new AtomicLong(nowNanos);
         }
 
         /**
@@ -59,25 +242,32 @@ public class InMemoryRateLimitStore implements RateLimitStore {
          * @return {@code -1} if a token was available (request allowed), otherwise the number of
          *         milliseconds to wait before the next token becomes available.
          */
-        synchronized long tryConsume() {
-            lastAccessMs = System.currentTimeMillis();
-            refill();
-            if (tokens >= 1.0) {
-                tokens -= 1.0;
-                return -1L;
+        long tryConsume(LongSupplier clock) {
+            while (true) {
+                long now = clock.getAsLong();
+                long tat = theoreticalArrivalNanos.get();
+                // nanoTime may wrap, so compare by difference rather than Math.max.
+                long newTat = (tat - now > 0 ? tat : now) + emissionIntervalNanos;
+                long overshoot = newTat - now - burstToleranceNanos;
+                if (overshoot > 0) {
+                    return Math.max(1L, (overshoot + 999_999L) / 1_000_000L);
+                }
+                if (theoreticalArrivalNanos.compareAndSet(tat, newTat)) {
+                    return -1L;
+                }
+                // Lost the race to another request on the same key: re-read and retry.
             }
-            double needed = 1.0 - tokens;
-            return (long) Math.ceil(needed / refillTokensPerMs);
         }
 
-        private void refill() {
-            long now = System.nanoTime();
-            double elapsedMs = (now - lastRefillNanos) / 1_000_000.0;
-            if (elapsedMs <= 0) {
-                return;
-            }
-            tokens = Math.min(capacity, tokens + elapsedMs * refillTokensPerMs);
-            lastRefillNanos = now;
+        /** True once the bucket has been full since before {@code cutoffNanos}. */
+        boolean isIdleSince(long cutoffNanos) {
+            return theoreticalArrivalNanos.get() - cutoffNanos < 0;
+        }
+
+        private static long saturatedMultiply(long a, long b) {
+            long hi = Math.multiplyHigh(a, b);
+            long lo = a * b;
+            return (hi == 0 && lo >= 0) ? lo : Long.MAX_VALUE;
         }
     }
 }
@@ -1,6 +1,7 @@
 package com.example.demo.Config;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.security.core.Authentication;
@@ -20,6 +21,9 @@ public class JwtProvider {
     private static final SecretKey key = Keys.hmacShaKeyFor(JwtConstants.SECRET_KEY.getBytes());
     private static final String ISSUER = "AI-Court";
     private static final long EXPIRATION_TIME = 86400000; // 24 hours
+    // JwtParser is immutable and thread-safe; building it (key import, deserializer
+    // lookup) per call was measurable on chat-heavy traffic, so share one instance.
+    private static final JwtParser PARSER = Jwts.parser().verifyWith(key).build();
 
     public static String generateToken(Authentication authentication) {
         String roles = authentication.getAuthorities().stream()
@@ -35,18 +39,30 @@ public class JwtProvider {
                 .compact();
     }
 
-    public static String getEmailFromJwt(String jwt) {
-        if (jwt.startsWith("Bearer ")) {
-            jwt = jwt.substring(7);
+    /**
+     * Verifies {@code jwt} (with or without the {@code Bearer } prefix) and returns its
+     * claims. This is the only place a token's signature is checked; {@link JwtValidator}
+     * calls it once per request and publishes the result for controllers.
+     */
+    public static VerifiedClaims parse(String jwt) {
+        if (jwt.startsWith(JwtConstants.TOKEN_PREFIX)) {
+            jwt = jwt.substring(JwtConstants.TOKEN_PREFIX.length());
         }
-        
-        Claims claims = Jwts.parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(jwt)
-                .getPayload();
-        
-        return String.valueOf(claims.get("email"));
+
+        Claims claims = PARSER.parseSignedClaims(jwt).getPayload();
+        Date expiration = claims.getExpiration();
+        return new VerifiedClaims(
+                String.valueOf(claims.get("email")),
+                authoritiesFrom(claims),
+                expiration != null ? expiration.getTime() : 0L);
+    }
+
+    public static String getEmailFromJwt(String jwt) {
+        return parse(jwt).email();
+    }
+
+    public static List<GrantedAuthority> getAuthoritiesFromJwt(String jwt) {
+        return parse(jwt).authorities();
     }
 
     /**
@@ -55,17 +71,7 @@ public class JwtProvider {
      * claim) fall back to the baseline CITIZEN authority so general endpoints
      * keep working; role-restricted endpoints will require a fresh login.
      */
-    public static List<GrantedAuthority> getAuthoritiesFromJwt(String jwt) {
-        if (jwt.startsWith("Bearer ")) {
-            jwt = jwt.substring(7);
-        }
-
-        Claims claims = Jwts.parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(jwt)
-                .getPayload();
-
+    private static List<GrantedAuthority> authoritiesFrom(Claims claims) {
         List<GrantedAuthority> authorities = new ArrayList<>();
         Object roles = claims.get("roles");
         if (roles != null) {
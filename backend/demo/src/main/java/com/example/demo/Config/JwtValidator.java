@@ -8,12 +8,10 @@ import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.List;
 
 public class JwtValidator extends OncePerRequestFilter {
 
@@ -31,10 +29,12 @@ public class JwtValidator extends OncePerRequestFilter {
         String jwt = request.getHeader(JwtConstants.HEADER);
         if (jwt != null) {
             try {
-                String email = JwtProvider.getEmailFromJwt(jwt);
-                List<GrantedAuthority> authorities = JwtProvider.getAuthoritiesFromJwt(jwt);
-                Authentication authentication = new UsernamePasswordAuthenticationToken(email, null, authorities);
+                // Verify once; controllers read the result via VerifiedClaimsArgumentResolver.
+                VerifiedClaims claims = JwtProvider.parse(jwt);
+                Authentication authentication =
+                        new UsernamePasswordAuthenticationToken(claims.email(), null, claims.authorities());
                 SecurityContextHolder.getContext().setAuthentication(authentication);
+                request.setAttribute(VerifiedClaims.REQUEST_ATTRIBUTE, claims);
             } catch (Exception e) {
                 throw new BadCredentialsException("Invalid token.....");
             }
@@ -32,7 +32,8 @@ import java.util.Map;
  *       are guessable, so they are the most expensive/abusable.</li>
  *   <li><b>ai</b> ({@code /api/ai/**}, {@code /api/agent/**}, {@code /api/ai-analysis/**}) -
  *       keyed by authenticated user (falling back to IP) because each call proxies to the
- *       Python AI service and is compute/cost heavy.</li>
+ *       Python AI service and is compute/cost heavy. Polling or cancelling an AI job
+ *       ({@code /api/agent/jobs/{id}}) only reads a row and is not limited.</li>
  * </ul>
  *
  * <p>Bucket state lives behind a pluggable {@link RateLimitStore}: the default
@@ -97,7 +98,7 @@ public class RateLimitFilter extends OncePerRequestFilter {
             return;
         }
 
-        Rule rule = resolveRule(request.getRequestURI());
+        Rule rule = resolveRule(request.getMethod(), request.getRequestURI());
         if (rule == null) {
             filterChain.doFilter(request, response);
             return;
@@ -114,7 +115,7 @@ public class RateLimitFilter extends OncePerRequestFilter {
         }
     }
 
-    private Rule resolveRule(String path) {
+    private Rule resolveRule(String method, String path) {
         if (path.startsWith("/auth/login") || path.startsWith("/auth/signup")) {
             return authRule;
         }
@@ -125,6 +126,14 @@ public class RateLimitFilter extends OncePerRequestFilter {
         if (path.endsWith("/health")) {
             return null;
         }
+        // The warm-up hint sends at most one ping for all users, whoever calls it.
+        if (path.equals("/api/agent/prewarm")) {
+            return null;
+        }
+        // Polling or cancelling an AI job reads a row; only submitting one calls the AI.
+        if (path.startsWith("/api/agent/jobs/") && !"POST".equalsIgnoreCase(method)) {
+            return null;
+        }
         if (path.startsWith("/api/ai/")
                 || path.startsWith("/api/agent/")
                 || path.startsWith("/api/ai-analysis/")) {
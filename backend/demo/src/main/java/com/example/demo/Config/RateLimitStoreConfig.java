@@ -1,12 +1,16 @@
 package com.example.demo.Config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Wires the {@link RateLimitStore} used by {@link RateLimitFilter}.
  *
@@ -17,25 +21,53 @@ import org.springframework.data.redis.core.StringRedisTemplate;
  *       infrastructure. Correct for a single Render instance.</li>
  *   <li><b>true</b> — {@link RedisRateLimitStore}: buckets shared across instances via Redis,
  *       with an in-memory fallback if Redis is unreachable. Required once the backend scales
- *       horizontally. Provision Redis and set {@code SPRING_DATA_REDIS_URL}.</li>
+ *       horizontally. Provision Redis and set {@code SPRING_DATA_REDIS_URL}. Tokens are leased
+ *       in small batches ({@code ratelimit.redis.lease-size}, capped at
+ *       {@code ratelimit.redis.max-lease-fraction} of each bucket) to save round-trips; a
+ *       lease size of 1 restores one exact Redis call per request.</li>
  * </ul>
+ *
+ * <p>In-memory buckets (including the Redis fallback) are bounded by
+ * {@code ratelimit.memory.max-buckets} and dropped after {@code ratelimit.memory.idle-seconds}
+ * without traffic; see {@link InMemoryRateLimitStore} for how eviction is amortized.
  */
 @Configuration
 public class RateLimitStoreConfig {
 
     private static final Logger log = LoggerFactory.getLogger(RateLimitStoreConfig.class);
 
+    @Value("${ratelimit.memory.max-buckets:50000}")
+    private int maxBuckets;
+
+    @Value("${ratelimit.memory.idle-seconds:600}")
+    private long idleSeconds;
+
+    @Value("${ratelimit.redis.lease-size:10}")
+    private int leaseSize;
+
+    @Value("${ratelimit.redis.max-lease-fraction:0.2}")
+    private double maxLeaseFraction;
+
+    @Value("${ratelimit.redis.lease-ttl-ms:1000}")
+    private long leaseTtlMs;
+
     @Bean
     @ConditionalOnProperty(name = "app.redis.enabled", havingValue = "false", matchIfMissing = true)
-    public RateLimitStore inMemoryRateLimitStore() {
+    public RateLimitStore inMemoryRateLimitStore(MeterRegistry meterRegistry) {
         log.info("Rate limiting backend: in-memory (per-instance). Set APP_REDIS_ENABLED=true to share across instances.");
-        return new InMemoryRateLimitStore();
+        return memoryStore(meterRegistry);
     }
 
     @Bean
     @ConditionalOnProperty(name = "app.redis.enabled", havingValue = "true")
-    public RateLimitStore redisRateLimitStore(StringRedisTemplate redisTemplate) {
-        log.info("Rate limiting backend: Redis (distributed) with in-memory fallback.");
-        return new RedisRateLimitStore(redisTemplate, new InMemoryRateLimitStore());
+    public RateLimitStore redisRateLimitStore(StringRedisTemplate redisTemplate, MeterRegistry meterRegistry) {
+        log.info("Rate limiting backend: Redis (distributed) with in-memory fallback; lease size {} (max {} of capacity, {} ms).",
+                leaseSize, maxLeaseFraction, leaseTtlMs);
+        return new RedisRateLimitStore(redisTemplate, memoryStore(meterRegistry),
+                leaseSize, maxLeaseFraction, leaseTtlMs);
+    }
+
+    private InMemoryRateLimitStore memoryStore(MeterRegistry meterRegistry) {
+        return new InMemoryRateLimitStore(meterRegistry, maxBuckets, TimeUnit.SECONDS.toNanos(idleSeconds));
     }
 }
@@ -0,0 +1,225 @@
+package com.example.demo.Config;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.lang.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares AI circuit-breaker openings between instances through Redis, so one instance finding
+ * the ML service down spares the others their own five failures and timeouts.
+ *
+ * <p>When a local breaker opens, this instance sets {@code aicourt:breaker:<host>} (expiring
+ * after the breaker's open wait) and publishes {@code OPEN} on {@link #CHANNEL}. The other
+ * instances open their breaker for that host, then probe it half-open on their own schedule as
+ * usual. When a breaker closes again after successful probes, {@code CLOSED} is published and
+ * the key deleted, and instances whose breaker was opened remotely close theirs. A breaker
+ * created after an opening (a new instance, or a host's first call) checks the key, and every
+ * {@code sync} interval all local breakers are checked against the keys, which covers
+ * messages missed while disconnected.
+ *
+ * <p>Breakers still decide locally: {@link AiResilienceInterceptor} never waits on Redis, and
+ * publishing runs on a background thread. If Redis is unreachable the breakers simply stay
+ * per-instance; failures are logged once and retried on the next event or sync.
+ */
+public class RedisCircuitBreakerSync implements MessageListener, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisCircuitBreakerSync.class);
+
+    public static final String CHANNEL = "aicourt:breaker-events";
+    static final String KEY_PREFIX = "aicourt:breaker:";
+    private static final String OPEN = "OPEN";
+    private static final String CLOSED = "CLOSED";
+
+    private final CircuitBreakerRegistry registry;
+    private final StringRedisTemplate redis;
+    private final String instanceId;
+    private final ScheduledExecutorService worker;
+    /** Hosts whose local breaker is open because another instance said so. */
+    private final Set<String> openedRemotely = ConcurrentHashMap.newKeySet();
+    // Set while this instance applies a remote state, so the transition is not published back.
+    private final ThreadLocal<Boolean> applying = ThreadLocal.withInitial(() -> false);
+    private final MeterRegistry meterRegistry;
+    private volatile boolean healthy = true;
+
+    public RedisCircuitBreakerSync(CircuitBreakerRegistry registry, StringRedisTemplate redis, String instanceId,
+                                   Duration sync, MeterRegistry meterRegistry) {
+        this.registry = registry;
+        this.redis = redis;
+        this.instanceId = instanceId;
+        this.meterRegistry = meterRegistry;
+        this.worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ai-breaker-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        registry.getEventPublisher().onEntryAdded(event -> watch(event.getAddedEntry()));
+        registry.getAllCircuitBreakers().forEach(this::watch);
+        if (!sync.isZero() && !sync.isNegative()) {
+            worker.scheduleWithFixedDelay(this::syncAll, sync.toMillis(), sync.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void watch(CircuitBreaker breaker) {
+        breaker.getEventPublisher().onStateTransition(event -> {
+            if (applying.get()) {
+                return;
+            }
+            switch (event.getStateTransition()) {
+                case CLOSED_TO_OPEN, HALF_OPEN_TO_OPEN -> worker.execute(() -> publishOpen(breaker));
+                case HALF_OPEN_TO_CLOSED -> worker.execute(() -> publishClosed(breaker.getName()));
+                default -> {
+                }
+            }
+        });
+        worker.execute(() -> sync(List.of(breaker)));
+    }
+
+    private void publishOpen(CircuitBreaker breaker) {
+        String host = breaker.getName();
+        long waitMs = breaker.getCircuitBreakerConfig().getWaitIntervalFunctionInOpenState().apply(1);
+        try {
+            redis.opsForValue().set(KEY_PREFIX + host, instanceId, Duration.ofMillis(Math.max(1, waitMs)));
+            redis.convertAndSend(CHANNEL, message(OPEN, host));
+            openedRemotely.remove(host);
+            count("published", OPEN);
+            recovered();
+        } catch (Exception e) {
+            degraded(e);
+        }
+    }
+
+    private void publishClosed(String host) {
+        try {
+            redis.delete(KEY_PREFIX + host);
+            redis.convertAndSend(CHANNEL, message(CLOSED, host));
+            count("published", CLOSED);
+            recovered();
+        } catch (Exception e) {
+            degraded(e);
+        }
+    }
+
+    /** A state published by an instance: {@code OPEN|host|instance} or {@code CLOSED|host|instance}. */
+    @Override
+    public void onMessage(@NonNull Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|", 3);
+        if (parts.length < 3 || parts[2].equals(instanceId)) {
+            return;
+        }
+        if (OPEN.equals(parts[0])) {
+            openLocally(registry.circuitBreaker(parts[1]));
+        } else if (CLOSED.equals(parts[0])) {
+            closeLocally(parts[1]);
+        }
+    }
+
+    /** Open breakers whose host another instance has marked open. */
+    void syncAll() {
+        sync(new ArrayList<>(registry.getAllCircuitBreakers()));
+    }
+
+    private void sync(List<CircuitBreaker> breakers) {
+        if (breakers.isEmpty()) {
+            return;
+        }
+        List<String> keys = breakers.stream().map(b -> KEY_PREFIX + b.getName()).toList();
+        try {
+            List<String> owners = redis.opsForValue().multiGet(keys);
+            recovered();
+            if (owners == null) {
+                return;
+            }
+            for (int i = 0; i < breakers.size(); i++) {
+                String owner = owners.get(i);
+                if (owner != null && !owner.equals(instanceId)) {
+                    openLocally(breakers.get(i));
+                }
+            }
+        } catch (Exception e) {
+            degraded(e);
+        }
+    }
+
+    private void openLocally(CircuitBreaker breaker) {
+        if (breaker.getState() != CircuitBreaker.State.CLOSED && breaker.getState() != CircuitBreaker.State.HALF_OPEN) {
+            return;
+        }
+        applying.set(true);
+        try {
+            breaker.transitionToOpenState();
+            openedRemotely.add(breaker.getName());
+            count("applied", OPEN);
+            log.warn("Circuit breaker for {} opened: another instance found it failing", breaker.getName());
+        } finally {
+            applying.set(false);
+        }
+    }
+
+    private void closeLocally(String host) {
+        if (!openedRemotely.remove(host)) {
+            return;
+        }
+        CircuitBreaker breaker = registry.circuitBreaker(host);
+        if (breaker.getState() != CircuitBreaker.State.OPEN && breaker.getState() != CircuitBreaker.State.HALF_OPEN) {
+            return;
+        }
+        applying.set(true);
+        try {
+            breaker.transitionToClosedState();
+            count("applied", CLOSED);
+            log.info("Circuit breaker for {} closed: another instance found it healthy again", host);
+        } finally {
+            applying.set(false);
+        }
+    }
+
+    private String message(String state, String host) {
+        return state + '|' + host + '|' + instanceId;
+    }
+
+    private void count(String direction, String state) {
+        Counter.builder("ai.resilience.shared.events")
+                .tag("direction", direction)
+                .tag("state", state)
+                .description("Circuit breaker states published to or applied from other instances")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private void recovered() {
+        if (!healthy) {
+            healthy = true;
+            log.info("RedisCircuitBreakerSync: Redis recovered; sharing circuit breaker state again");
+        }
+    }
+
+    private void degraded(Exception e) {
+        if (healthy) {
+            healthy = false;
+            log.warn("RedisCircuitBreakerSync: Redis call failed ({}); circuit breakers are per-instance until it recovers",
+                    e.toString());
+        }
+    }
+
+    @Override
+    public void close() {
+        worker.shutdownNow();
+    }
+}
@@ -7,6 +7,14 @@ import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.data.redis.core.script.RedisScript;
 
 import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Distributed {@link RateLimitStore} that keeps token buckets in Redis so the limit
@@ -20,20 +28,38 @@ import java.util.Collections;
  * <p><b>Graceful degradation:</b> any Redis error (unreachable, timeout, script failure)
  * falls back to the supplied in-memory store so requests are never failed by an
  * infrastructure blip and per-instance protection remains in place.
+ *
+ * <p><b>Token leasing:</b> with {@code leaseSize > 1}, a request that finds no local tokens
+ * takes a small batch from the Redis bucket in one round-trip and later requests on this
+ * instance spend it locally, so Redis sees roughly one call per {@code leaseSize} requests.
+ * A lease lives for {@code leaseTtl}; whatever is left is then credited back to the Redis
+ * bucket (on the next request for the key, or by a background reaper for keys that went
+ * quiet). Leased tokens are debited from Redis before they are spent, so leasing never
+ * admits more than the global bucket hands out, but tokens parked on one instance can
+ * be spent up to {@code leaseTtl} after Redis would have. Bursts may therefore exceed
+ * {@code capacity} by up to one lease per instance. Each lease is capped at
+ * {@code maxLeaseFraction × capacity}, which bounds that error to
+ * {@code capacity × instances × maxLeaseFraction}. Small buckets, such as OTP at 8, end up
+ * with a lease of 1 and stay exact.
  */
-public class RedisRateLimitStore implements RateLimitStore {
+public class RedisRateLimitStore implements RateLimitStore, AutoCloseable {
 
     private static final Logger log = LoggerFactory.getLogger(RedisRateLimitStore.class);
 
     private static final String KEY_PREFIX = "aicourt:ratelimit:";
 
-    // Atomic token bucket. KEYS[1]=bucket; ARGV: capacity, refillPerMs, ttlMs.
-    // Returns -1 when a token was consumed (allowed), else the ms to wait.
+    private static final int LOCK_STRIPES = 64;
+
+    // Atomic token bucket with leasing. KEYS[1]=bucket; ARGV: capacity, refillPerMs, ttlMs,
+    // want (tokens to take, 0 = only give back), giveBack (unused leased tokens to credit).
+    // Returns the number of tokens granted (> 0), 0 for a pure give-back, else -(ms to wait).
     private static final String LUA = """
             local key = KEYS[1]
             local capacity = tonumber(ARGV[1])
             local refillPerMs = tonumber(ARGV[2])
             local ttl = tonumber(ARGV[3])
+            local want = tonumber(ARGV[4])
+            local giveBack = tonumber(ARGV[5])
             local t = redis.call('TIME')
             local nowMs = (tonumber(t[1]) * 1000) + (tonumber(t[2]) / 1000)
             local data = redis.call('HMGET', key, 'tokens', 'ts')
@@ -45,27 +71,62 @@ public class RedisRateLimitStore implements RateLimitStore {
             end
             local elapsed = nowMs - ts
             if elapsed < 0 then elapsed = 0 end
-            tokens = math.min(capacity, tokens + elapsed * refillPerMs)
-            local wait = -1
-            if tokens >= 1 then
-              tokens = tokens - 1
-            else
-              wait = math.ceil((1 - tokens) / refillPerMs)
+            tokens = math.min(capacity, tokens + elapsed * refillPerMs + giveBack)
+            local result = 0
+            if want > 0 then
+              if tokens >= 1 then
+                result = math.min(want, math.floor(tokens))
+                tokens = tokens - result
+              else
+                result = -math.ceil((1 - tokens) / refillPerMs)
+              end
             end
             redis.call('HSET', key, 'tokens', tokens, 'ts', nowMs)
             redis.call('PEXPIRE', key, ttl)
-            return wait
+            return result
             """;
 
+    private static final ScheduledExecutorService REAPER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ratelimit-lease-reaper");
+        t.setDaemon(true);
+        return t;
+    });
+
     private final StringRedisTemplate redis;
     private final RateLimitStore fallback;
     private final RedisScript<Long> script;
+    private final int leaseSize;
+    private final double maxLeaseFraction;
+    private final long leaseTtlNanos;
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private final ScheduledFuture<?> reaperTask;
     private volatile boolean healthy = true;
 
+    /** Exact mode: one Redis round-trip per request. */
     public RedisRateLimitStore(StringRedisTemplate redis, RateLimitStore fallback) {
+        this(redis, fallback, 1, 1.0, 0L);
+    }
+
+    /**
+     * @param leaseSize        most tokens taken from Redis per round-trip; {@code 1} disables leasing
+     * @param maxLeaseFraction cap on a single lease as a fraction of the bucket capacity — the accuracy bound
+     * @param leaseTtlMs       how long an instance may hold leased tokens before crediting them back
+     */
+    public RedisRateLimitStore(StringRedisTemplate redis, RateLimitStore fallback,
+                               int leaseSize, double maxLeaseFraction, long leaseTtlMs) {
         this.redis = redis;
         this.fallback = fallback;
         this.script = new DefaultRedisScript<>(LUA, Long.class);
+        this.leaseSize = Math.max(1, leaseSize);
+        this.maxLeaseFraction = maxLeaseFraction;
+        this.leaseTtlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, leaseTtlMs));
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.reaperTask = this.leaseSize > 1 && leaseTtlMs > 0
+                ? REAPER.scheduleWithFixedDelay(this::returnExpiredLeases, leaseTtlMs, leaseTtlMs, TimeUnit.MILLISECONDS)
+                : null;
         probe();
     }
 
@@ -83,31 +144,179 @@ public class RedisRateLimitStore implements RateLimitStore {
 
     @Override
     public long tryConsume(String key, long capacity, double refillTokensPerMs) {
+        int lease = effectiveLeaseSize(capacity);
+        if (lease <= 1) {
+            return consumeFromRedis(key, capacity, refillTokensPerMs);
+        }
+        Lease current = leases.get(key);
+        if (current != null && current.tryTake(System.nanoTime())) {
+            return -1L;
+        }
+        // Slow path: one thread per key refills the lease while the others wait a round-trip.
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
         try {
-            double safeRefill = Math.max(refillTokensPerMs, 1e-9);
-            long ttlMs = Math.max(60_000L, (long) Math.ceil(capacity / safeRefill) * 2L);
-            Long result = redis.execute(
-                    script,
-                    Collections.singletonList(KEY_PREFIX + key),
-                    Long.toString(capacity),
-                    Double.toString(refillTokensPerMs),
-                    Long.toString(ttlMs));
-            if (!healthy) {
-                healthy = true;
-                log.info("RedisRateLimitStore: Redis recovered; resuming distributed rate limiting");
+            long now = System.nanoTime();
+            current = leases.get(key);
+            if (current != null && current.tryTake(now)) {
+                return -1L;
+            }
+            long giveBack = current == null ? 0L : current.drain();
+            long granted = callScript(key, capacity, refillTokensPerMs, lease, giveBack);
+            if (granted <= 0) {
+                leases.remove(key);
+                return -granted;
             }
-            return result == null ? -1L : result;
+            // One token is spent by this request; the rest stay local until the lease expires.
+            leases.put(key, new Lease(granted - 1, now + leaseTtlNanos, capacity, refillTokensPerMs));
+            return -1L;
+        } catch (Exception e) {
+            return degrade(e, key, capacity, refillTokensPerMs);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long consumeFromRedis(String key, long capacity, double refillTokensPerMs) {
+        try {
+            long granted = callScript(key, capacity, refillTokensPerMs, 1, 0L);
+            return granted > 0 ? -1L : -granted;
         } catch (Exception e) {
-            if (healthy) {
-                healthy = false;
-                log.warn("RedisRateLimitStore: Redis call failed ({}); using in-memory fallback", e.toString());
+            return degrade(e, key, capacity, refillTokensPerMs);
+        }
+    }
+
+    /** Runs the bucket script; returns granted tokens (> 0), 0 for a give-back, or -(ms to wait). */
+    private long callScript(String key, long capacity, double refillTokensPerMs, long want, long giveBack) {
+        double safeRefill = Math.max(refillTokensPerMs, 1e-9);
+        long ttlMs = Math.max(60_000L, (long) Math.ceil(capacity / safeRefill) * 2L);
+        Long result = redis.execute(
+                script,
+                Collections.singletonList(KEY_PREFIX + key),
+                Long.toString(capacity),
+                Double.toString(refillTokensPerMs),
+                Long.toString(ttlMs),
+                Long.toString(want),
+                Long.toString(giveBack));
+        if (!healthy) {
+            healthy = true;
+            log.info("RedisRateLimitStore: Redis recovered; resuming distributed rate limiting");
+        }
+        return result == null ? want : result;
+    }
+
+    private long degrade(Exception e, String key, long capacity, double refillTokensPerMs) {
+        if (healthy) {
+            healthy = false;
+            log.warn("RedisRateLimitStore: Redis call failed ({}); using in-memory fallback", e.toString());
+        }
+        return fallback.tryConsume(key, capacity, refillTokensPerMs);
+    }
+
+    /** Lease size for a bucket: the configured size, capped at {@code maxLeaseFraction} of capacity. */
+    int effectiveLeaseSize(long capacity) {
+        long cap = (long) Math.floor(capacity * maxLeaseFraction);
+        return (int) Math.max(1L, Math.min(leaseSize, cap));
+    }
+
+    /** Credit tokens from leases that expired without being spent back to their Redis buckets. */
+    void returnExpiredLeases() {
+        long now = System.nanoTime();
+        for (Map.Entry<String, Lease> entry : leases.entrySet()) {
+            if (!entry.getValue().isExpired(now)) {
+                continue;
+            }
+            String key = entry.getKey();
+            ReentrantLock lock = lockFor(key);
+            lock.lock();
+            try {
+                Lease lease = leases.get(key);
+                if (lease == null || !lease.isExpired(now) || !leases.remove(key, lease)) {
+                    continue;
+                }
+                long unused = lease.drain();
+                if (unused > 0) {
+                    callScript(key, lease.capacity, lease.refillTokensPerMs, 0, unused);
+                }
+            } catch (Exception e) {
+                // Redis is down: the tokens are lost, which only makes the limit stricter.
+                log.debug("RedisRateLimitStore: could not return leased tokens for {}: {}", key, e.toString());
+            } finally {
+                lock.unlock();
             }
-            return fallback.tryConsume(key, capacity, refillTokensPerMs);
         }
     }
 
+    @Override
+    public void close() {
+        if (reaperTask != null) {
+            reaperTask.cancel(false);
+            returnExpiredLeasesNow();
+        }
+        if (fallback instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                log.debug("RedisRateLimitStore: closing fallback store failed: {}", e.toString());
+            }
+        }
+    }
+
+    /** On shutdown, hand every outstanding lease back so other instances can use the tokens. */
+    private void returnExpiredLeasesNow() {
+        leases.values().forEach(Lease::expire);
+        returnExpiredLeases();
+    }
+
+    private ReentrantLock lockFor(String key) {
+        return locks[Math.floorMod(key.hashCode(), LOCK_STRIPES)];
+    }
+
     @Override
     public String backend() {
         return healthy ? "redis" : "redis-degraded";
     }
+
+    /** Tokens taken from Redis and not yet spent on this instance. */
+    static final class Lease {
+        private final AtomicLong remaining;
+        private volatile long expiresAtNanos;
+        final long capacity;
+        final double refillTokensPerMs;
+
+        Lease(long tokens, long expiresAtNanos, long capacity, double refillTokensPerMs) {
+            this.remaining = new AtomicLong(tokens);
+            this.expiresAtNanos = expiresAtNanos;
+            this.capacity = capacity;
+            this.refillTokensPerMs = refillTokensPerMs;
+        }
+
+        boolean tryTake(long nowNanos) {
+            if (isExpired(nowNanos)) {
+                return false;
+            }
+            while (true) {
+                long left = remaining.get();
+                if (left <= 0) {
+                    return false;
+                }
+                if (remaining.compareAndSet(left, left - 1)) {
+                    return true;
+                }
+            }
+        }
+
+        boolean isExpired(long nowNanos) {
+            return nowNanos - expiresAtNanos >= 0;
+        }
+
+        void expire() {
+            expiresAtNanos = System.nanoTime();
+        }
+
+        /** Take whatever is left so it can be credited back; later {@link #tryTake} calls fail. */
+        long drain() {
+            return remaining.getAndSet(0);
+        }
+    }
 }
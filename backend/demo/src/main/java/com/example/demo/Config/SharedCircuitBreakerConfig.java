@@ -0,0 +1,53 @@
+package com.example.demo.Config;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Shares AI circuit-breaker state across instances through Redis ({@link RedisCircuitBreakerSync})
+ * when {@code ai.resilience.shared.enabled=true} ({@code AI_CB_SHARED_ENABLED}). Off by default:
+ * a single Render instance has nobody to share with. Uses the same Redis connection as
+ * distributed rate limiting ({@code SPRING_DATA_REDIS_URL}).
+ */
+@Configuration
+@ConditionalOnProperty(name = "ai.resilience.shared.enabled", havingValue = "true")
+public class SharedCircuitBreakerConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedCircuitBreakerConfig.class);
+
+    @Bean
+    public RedisCircuitBreakerSync redisCircuitBreakerSync(
+            CircuitBreakerRegistry aiCircuitBreakerRegistry,
+            StringRedisTemplate redisTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${ai.resilience.shared.instance-id:}") String instanceId,
+            @Value("${ai.resilience.shared.sync-seconds:10}") long syncSeconds) {
+        String id = instanceId.isBlank() ? UUID.randomUUID().toString() : instanceId;
+        log.info("Circuit breaker state shared through Redis as instance {} (sync every {}s)", id, syncSeconds);
+        return new RedisCircuitBreakerSync(aiCircuitBreakerRegistry, redisTemplate, id,
+                Duration.ofSeconds(syncSeconds), meterRegistry);
+    }
+
+    /** Delivers other instances' breaker events; reconnects on its own after a Redis outage. */
+    @Bean
+    public RedisMessageListenerContainer aiBreakerListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                    RedisCircuitBreakerSync redisCircuitBreakerSync) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(redisCircuitBreakerSync, new ChannelTopic(RedisCircuitBreakerSync.CHANNEL));
+        return container;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.demo.Config;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.List;
+
+/**
+ * The claims of a JWT whose signature has already been verified by {@link JwtValidator}.
+ *
+ * <p>The filter parses the bearer token exactly once per request and stores the result
+ * under {@link #REQUEST_ATTRIBUTE}; controllers receive it as a handler argument through
+ * {@link VerifiedClaimsArgumentResolver} instead of re-verifying the raw header. That keeps
+ * HMAC verification and base64/JSON decoding off the controller path entirely.
+ *
+ * @param email       the {@code email} claim (the authenticated principal name)
+ * @param authorities authorities rebuilt from the {@code roles} claim
+ * @param expiresAtMs token expiry as epoch millis, or {@code 0} if the token carries none
+ */
+public record VerifiedClaims(String email, List<GrantedAuthority> authorities, long expiresAtMs) {
+
+    /** Request attribute under which {@link JwtValidator} publishes the verified claims. */
+    public static final String REQUEST_ATTRIBUTE = VerifiedClaims.class.getName();
+
+    public VerifiedClaims {
+        authorities = List.copyOf(authorities);
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.demo.Config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.MethodParameter;
+import org.springframework.lang.NonNull;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+/**
+ * Injects the {@link VerifiedClaims} that {@link JwtValidator} attached to the current
+ * request into any handler parameter of that type, so controllers never touch the raw
+ * {@code Authorization} header or re-run signature verification.
+ *
+ * <p>A required parameter with no verified token behind it is rejected with a
+ * {@link BadCredentialsException} (mapped to {@code 401} by {@link GlobalExceptionHandler}).
+ * Parameters marked {@code @Nullable} resolve to {@code null} instead, for endpoints whose
+ * behaviour merely varies with the caller.
+ */
+public class VerifiedClaimsArgumentResolver implements HandlerMethodArgumentResolver {
+
+    @Override
+    public boolean supportsParameter(@NonNull MethodParameter parameter) {
+        return VerifiedClaims.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public Object resolveArgument(@NonNull MethodParameter parameter,
+                                  ModelAndViewContainer mavContainer,
+                                  @NonNull NativeWebRequest webRequest,
+                                  WebDataBinderFactory binderFactory) {
+        Object claims = webRequest.getAttribute(VerifiedClaims.REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (claims == null && !parameter.isOptional()) {
+            HttpServletRequest request = webRequest.getNativeRequest(HttpServletRequest.class);
+            String path = request != null ? request.getRequestURI() : "request";
+            throw new BadCredentialsException("Missing or invalid token for " + path);
+        }
+        return claims;
+    }
+}
@@ -33,7 +33,11 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Override
     public void configureMessageBroker(@NonNull MessageBrokerRegistry registry){
         registry.setApplicationDestinationPrefixes("/app");
-        registry.enableSimpleBroker("/group","/user","/chat");
+        // "/user/..." is resolved by the user destination handler, not the broker:
+        // convertAndSendToUser(user, "/queue/x") is delivered on "/queue/x-user<session>".
+        // Letting the broker also see "/user" stored every user subscription twice under
+        // the same id, and the copies raced, so pushes were sometimes lost.
+        registry.enableSimpleBroker("/group","/chat","/queue");
         registry.setUserDestinationPrefix("/user");
     }
 
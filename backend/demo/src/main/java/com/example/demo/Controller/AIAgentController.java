@@ -1,37 +1,63 @@
 package com.example.demo.Controller;
 
+import com.example.demo.Classes.AiJob;
+import com.example.demo.Classes.AiJobStatus;
 import com.example.demo.Classes.Subscription;
 import com.example.demo.Classes.SubscriptionPlan;
 import com.example.demo.Classes.User;
-import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.AiJsonRelay;
+import com.example.demo.Config.AiProxyExecutor;
+import com.example.demo.Config.AiStreamingClient;
+import com.example.demo.Config.AiTierScheduler;
+import com.example.demo.Config.AiUploadClient;
+import com.example.demo.Config.CurrentUser;
+import com.example.demo.Config.VerifiedClaims;
+import com.example.demo.Implementation.AiDeferredResponse;
+import com.example.demo.Implementation.AiDocumentRegistry;
+import com.example.demo.Implementation.AiJobService;
+import com.example.demo.Implementation.AiMetadataCache;
+import com.example.demo.Implementation.AiQuotaLedger;
+import com.example.demo.Implementation.AiRequestFingerprint;
+import com.example.demo.Implementation.AiResponseCache;
+import com.example.demo.Implementation.AiSingleFlight;
+import com.example.demo.Implementation.AiWarmupService;
 import com.example.demo.Implementation.SubscriptionService;
-import com.example.demo.Repository.UserAll;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.*;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.net.URI;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * AI Agent Controller — Full AI Lawyer proxy to the Python agent service.
  *
  * Endpoints:
  *   POST /api/agent/analyze           — Full agent analysis (ML + LLM + Search + Statutes)
+ *   POST /api/agent/jobs              — Same as /analyze, as a background job (202 + job id)
+ *   GET  /api/agent/jobs/{id}         — Job status and result (also pushed on /user/queue/jobs)
+ *   DELETE /api/agent/jobs/{id}       — Cancel a queued or running job
  *   POST /api/agent/analyze-with-docs — Full analysis with uploaded documents
  *   POST /api/agent/chat              — Follow-up chat within case session
+ *   POST /api/agent/chat/stream       — Same, streamed token by token as Server-Sent Events
  *   POST /api/agent/upload-documents  — Upload documents for AI reading (OCR + processing)
  *   POST /api/agent/generate-document — Generate court-ready legal documents
  *   GET  /api/agent/document-types    — List available document types
  *   GET  /api/agent/session/{id}      — Get session info
  *   GET  /api/agent/health            — Agent health check
+ *   POST /api/agent/prewarm           — Hint that a user opened an AI page; wakes the agent
  */
 @Slf4j
 @RestController
@@ -39,9 +65,6 @@ import java.util.*;
 @CrossOrigin(origins = {"http://localhost:3000", "https://ai-court-room-iota.vercel.app", "https://ai-courtroom.vercel.app"})
 public class AIAgentController {
 
-    @Autowired
-    private UserAll userRepository;
-
     @Autowired
     private SubscriptionService subscriptionService;
 
@@ -54,6 +77,42 @@ public class AIAgentController {
     @Autowired
     private RestTemplate restTemplate;
 
+    @Autowired
+    private AiProxyExecutor aiProxyExecutor;
+
+    @Autowired
+    private AiTierScheduler aiTierScheduler;
+
+    @Autowired
+    private AiResponseCache aiResponseCache;
+
+    @Autowired
+    private AiSingleFlight aiSingleFlight;
+
+    @Autowired
+    private AiMetadataCache aiMetadataCache;
+
+    @Autowired
+    private AiWarmupService aiWarmupService;
+
+    @Autowired
+    private AiStreamingClient aiStreamingClient;
+
+    @Autowired
+    private AiUploadClient aiUploadClient;
+
+    @Autowired
+    private AiJsonRelay aiJsonRelay;
+
+    @Autowired
+    private AiDocumentRegistry aiDocumentRegistry;
+
+    @Autowired
+    private AiJobService aiJobService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /** Add the shared X-API-Key header for authenticated calls to the Python AI service. */
     private void applyAiAuth(HttpHeaders headers) {
         if (aiServiceApiKey != null && !aiServiceApiKey.isBlank()) {
@@ -71,43 +130,75 @@ public class AIAgentController {
     // ── Tier Mapping ─────────────────────────────────────────────────────
 
     private String mapPlanToTier(SubscriptionPlan plan) {
-        return switch (plan) {
-            case FREE -> "free";
-            case BASIC -> "unlimited";          // Single-case purchase gets full AI lawyer for that case
-            case PRO, PRO_YEARLY -> "unlimited"; // Pro gets full access
-            case UNLIMITED, UNLIMITED_YEARLY -> "court"; // Unlimited gets court-tier (audit trail + docs)
-        };
-    }
-
-    private User authenticateUser(String jwt) {
-        String email = JwtProvider.getEmailFromJwt(jwt);
-        return userRepository.searchByEmail(email);
+        return plan.getAiTier();
     }
 
     // ── POST /api/agent/analyze ──────────────────────────────────────────
 
+    /**
+     * Subscription checks run on the request thread; the upstream call runs on the
+     * {@link AiProxyExecutor} so the servlet thread is free while the agent works.
+     * Answers are cached per user and tier ({@link AiResponseCache}): the agent opens a
+     * session for each analysis, so one user's answer is never served to another. For the same
+     * reason, only a user's own identical concurrent requests (a double-click) share one
+     * upstream call ({@link AiSingleFlight}); each of them is charged a query. The call waits
+     * for upstream capacity in its tier's queue ({@link AiTierScheduler}). The query is
+     * reserved up front and refunded if the analysis fails, outlasts the async request timeout
+     * ({@link AiDeferredResponse}) or is answered from cache without
+     * {@code ai.cache.hit-consumes-quota}.
+     */
     @PostMapping("/analyze")
-    public ResponseEntity<?> agentAnalyze(
-            @RequestHeader("Authorization") String jwt,
+    public DeferredResult<ResponseEntity<?>> agentAnalyze(
+            @CurrentUser User user,
             @RequestBody Map<String, Object> body) {
+        String tier;
+        String fingerprint;
+        AiQuotaLedger.Reservation reservation = null;
         try {
-            User user = authenticateUser(jwt);
             if (user == null) {
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                        .body(Map.of("error", "User not found"));
+                return AiDeferredResponse.of(ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("error", "User not found")));
             }
 
-            Map<String, Object> accessInfo = subscriptionService.checkAccess(user);
-            if (!(boolean) accessInfo.getOrDefault("hasAccess", false)) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of(
+            reservation = subscriptionService.reserveAIQuery(user);
+            if (!reservation.granted()) {
+                return AiDeferredResponse.of(ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of(
                         "error", "subscription_required",
                         "message", "Subscribe to access the AI Lawyer"
-                ));
+                )));
             }
 
-            Optional<Subscription> sub = subscriptionService.getActiveSubscription(user);
-            String tier = sub.map(s -> mapPlanToTier(s.getPlan())).orElse("free");
+            tier = reservation.plan() != null ? mapPlanToTier(reservation.plan()) : "free";
 
+            fingerprint = AiRequestFingerprint.of(body, tier, user.getId());
+            Optional<Map<String, Object>> cached = aiResponseCache.get(AiResponseCache.AGENT_ANALYZE, fingerprint);
+            if (cached.isPresent()) {
+                if (!aiResponseCache.hitConsumesQuota()) {
+                    subscriptionService.refundAIQuery(user, reservation);
+                }
+                return AiDeferredResponse.of(ResponseEntity.ok()
+                        .header(AiResponseCache.HEADER, "HIT")
+                        .body(cached.get()));
+            }
+        } catch (Exception e) {
+            log.error("Agent analyze error: {}", e.getMessage(), e);
+            subscriptionService.refundAIQuery(user, reservation);
+            return AiDeferredResponse.of(analysisFailed(e));
+        }
+
+        AiQuotaLedger.Reservation paid = reservation;
+        CompletableFuture<ResponseEntity<?>> call = aiSingleFlight.execute(AiResponseCache.AGENT_ANALYZE, fingerprint,
+                () -> aiTierScheduler.submit(tier,
+                        () -> aiProxyExecutor.submit(() -> forwardAnalyze(user, tier, body, fingerprint))));
+        return AiDeferredResponse.of(call.whenComplete((upstream, error) -> {
+            if (error != null || !upstream.getStatusCode().is2xxSuccessful()) {
+                subscriptionService.refundAIQuery(user, paid);
+            }
+        }), call);
+    }
+
+    private ResponseEntity<?> forwardAnalyze(User user, String tier, Map<String, Object> body, String fingerprint) {
+        try {
             // Build request for Python agent
             body.put("tier", tier);
             body.put("user_id", user.getId().toString());
@@ -121,9 +212,11 @@ public class AIAgentController {
             log.info("Agent analyze for user {} (tier={})", user.getEmail(), tier);
 
             ResponseEntity<Map> response = restTemplate.exchange(endpoint, HttpMethod.POST, request, Map.class);
-            subscriptionService.useAIQuery(user);
+            @SuppressWarnings("unchecked")
+            Map<String, Object> result = response.getBody();
+            aiResponseCache.put(AiResponseCache.AGENT_ANALYZE, fingerprint, result);
 
-            return ResponseEntity.ok(response.getBody());
+            return ResponseEntity.ok(result);
 
         } catch (RestClientException e) {
             log.error("Agent service error: {}", e.getMessage());
@@ -133,86 +226,142 @@ public class AIAgentController {
             ));
         } catch (Exception e) {
             log.error("Agent analyze error: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
-                    "error", "analysis_failed",
-                    "message", e.getMessage()
-            ));
+            return analysisFailed(e);
+        }
+    }
+
+    private static ResponseEntity<?> analysisFailed(Exception e) {
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                "error", "analysis_failed",
+                "message", e.getMessage()
+        ));
+    }
+
+    // ── /api/agent/jobs ──────────────────────────────────────────────────
+
+    /**
+     * Same analysis as {@code /analyze}, run as a background job ({@link AiJobService}): answers
+     * {@code 202} with the job id at once. The result is fetched from {@code GET /jobs/{id}}
+     * or pushed on {@code /user/queue/jobs}. The query is reserved here, so queued jobs cannot
+     * outspend the quota, and refunded if the job fails or is cancelled.
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<?> submitAnalyzeJob(
+            @CurrentUser User user,
+            @RequestBody Map<String, Object> body) {
+        AiQuotaLedger.Reservation reservation = null;
+        try {
+            if (user == null) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("error", "User not found"));
+            }
+
+            reservation = subscriptionService.reserveAIQuery(user);
+            if (!reservation.granted()) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of(
+                        "error", "subscription_required",
+                        "message", "Subscribe to access the AI Lawyer"
+                ));
+            }
+
+            String tier = reservation.plan() != null ? mapPlanToTier(reservation.plan()) : "free";
+
+            AiJob job = aiJobService.submit(user, tier, reservation, body);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/agent/jobs/" + job.getId()))
+                    .body(aiJobService.view(job));
+
+        } catch (Exception e) {
+            log.error("Agent job submit error: {}", e.getMessage(), e);
+            subscriptionService.refundAIQuery(user, reservation);
+            return analysisFailed(e);
+        }
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<?> getJob(@CurrentUser User user, @PathVariable String id) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "User not found"));
         }
+        return aiJobService.find(id, user)
+                .<ResponseEntity<?>>map(job -> ResponseEntity.ok(aiJobService.view(job)))
+                .orElseGet(AIAgentController::jobNotFound);
+    }
+
+    /** Cancel a queued or running job; {@code 409} if it had already succeeded or failed. */
+    @DeleteMapping("/jobs/{id}")
+    public ResponseEntity<?> cancelJob(@CurrentUser User user, @PathVariable String id) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "User not found"));
+        }
+        return aiJobService.cancel(id, user)
+                .<ResponseEntity<?>>map(job -> job.getStatus() == AiJobStatus.CANCELLED
+                        ? ResponseEntity.ok(aiJobService.view(job))
+                        : ResponseEntity.status(HttpStatus.CONFLICT).body(aiJobService.view(job)))
+                .orElseGet(AIAgentController::jobNotFound);
+    }
+
+    private static ResponseEntity<?> jobNotFound() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "job_not_found"));
     }
 
     // ── POST /api/agent/analyze-with-docs ────────────────────────────────
 
     @PostMapping("/analyze-with-docs")
     public ResponseEntity<?> agentAnalyzeWithDocs(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User user,
             @RequestParam("query") String query,
             @RequestParam(value = "files", required = false) List<MultipartFile> files,
             @RequestParam(value = "documents_context", required = false) String documentsContext) {
+        AiQuotaLedger.Reservation reservation = null;
         try {
-            User user = authenticateUser(jwt);
             if (user == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                         .body(Map.of("error", "User not found"));
             }
 
-            Map<String, Object> accessInfo = subscriptionService.checkAccess(user);
-            if (!(boolean) accessInfo.getOrDefault("hasAccess", false)) {
+            reservation = subscriptionService.reserveAIQuery(user);
+            if (!reservation.granted()) {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of(
                         "error", "subscription_required",
                         "message", "Subscribe to access the AI Lawyer"
                 ));
             }
 
-            Optional<Subscription> sub = subscriptionService.getActiveSubscription(user);
-            String tier = sub.map(s -> mapPlanToTier(s.getPlan())).orElse("free");
+            String tier = reservation.plan() != null ? mapPlanToTier(reservation.plan()) : "free";
 
-            // Build multipart request for Python agent
+            // Multipart request for Python agent; files are streamed, not buffered
             HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
             applyAiAuth(headers);
 
-            MultiValueMap<String, Object> formData = new LinkedMultiValueMap<>();
-            formData.add("query", query);
-            formData.add("tier", tier);
-            formData.add("user_id", user.getId().toString());
+            Map<String, String> fields = new LinkedHashMap<>();
+            fields.put("query", query);
+            fields.put("tier", tier);
+            fields.put("user_id", user.getId().toString());
             if (documentsContext != null) {
-                formData.add("documents_context", documentsContext);
-            }
-
-            // Forward files
-            if (files != null) {
-                for (MultipartFile file : files) {
-                    if (!file.isEmpty()) {
-                        ByteArrayResource resource = new ByteArrayResource(file.getBytes()) {
-                            @Override
-                            public String getFilename() {
-                                return file.getOriginalFilename();
-                            }
-                        };
-                        formData.add("files", resource);
-                    }
-                }
+                fields.put("documents_context", documentsContext);
             }
 
-            HttpEntity<MultiValueMap<String, Object>> request = new HttpEntity<>(formData, headers);
             String endpoint = aiServiceUrl + "/agent/analyze-with-docs";
 
             log.info("Agent analyze-with-docs for user {} (tier={}, files={})",
                     user.getEmail(), tier, files != null ? files.size() : 0);
 
-            ResponseEntity<Map> response = restTemplate.exchange(endpoint, HttpMethod.POST, request, Map.class);
-            subscriptionService.useAIQuery(user);
+            Map<String, Object> response = uploadToAgent(user, endpoint, headers, fields,
+                    files != null ? files : List.of());
 
-            return ResponseEntity.ok(response.getBody());
+            return ResponseEntity.ok(response);
 
         } catch (RestClientException e) {
             log.error("Agent service error: {}", e.getMessage());
+            subscriptionService.refundAIQuery(user, reservation);
             return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
                     "error", "agent_unavailable",
                     "message", "AI Agent service temporarily unavailable"
             ));
         } catch (Exception e) {
             log.error("Agent analyze-with-docs error: {}", e.getMessage(), e);
+            subscriptionService.refundAIQuery(user, reservation);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
                     "error", "analysis_failed",
                     "message", e.getMessage()
@@ -220,14 +369,67 @@ public class AIAgentController {
         }
     }
 
+    /**
+     * Forward documents to the agent, sending ones it already ingested for this user as
+     * {@code document_refs} (a JSON list of {@code {sha256, filename, size}}) instead of their
+     * bytes. If the agent answers {@code 409} because it no longer has a referenced document,
+     * the references are forgotten and everything is uploaded once more in full.
+     */
+    private Map<String, Object> uploadToAgent(User user, String endpoint, HttpHeaders headers,
+                                              Map<String, String> fields, List<MultipartFile> files)
+            throws IOException {
+        if (!aiDocumentRegistry.isEnabled()) {
+            return aiUploadClient.post(endpoint, headers, fields, files);
+        }
+
+        Map<MultipartFile, String> hashes = new LinkedHashMap<>();
+        List<Map<String, Object>> refs = new ArrayList<>();
+        List<MultipartFile> upload = new ArrayList<>();
+        for (MultipartFile file : files) {
+            if (file.isEmpty()) {
+                continue;
+            }
+            String sha256 = aiDocumentRegistry.sha256(file);
+            hashes.put(file, sha256);
+            if (aiDocumentRegistry.isKnown(user.getId(), sha256)) {
+                Map<String, Object> ref = new LinkedHashMap<>();
+                ref.put("sha256", sha256);
+                ref.put("filename", Objects.toString(file.getOriginalFilename(), ""));
+                ref.put("size", file.getSize());
+                refs.add(ref);
+            } else {
+                upload.add(file);
+            }
+        }
+
+        Map<String, Object> response;
+        if (refs.isEmpty()) {
+            response = aiUploadClient.post(endpoint, headers, fields, upload);
+        } else {
+            Map<String, String> withRefs = new LinkedHashMap<>(fields);
+            withRefs.put("document_refs", objectMapper.writeValueAsString(refs));
+            try {
+                response = aiUploadClient.post(endpoint, headers, withRefs, upload);
+                refs.forEach(ref -> aiDocumentRegistry.recordReused((long) ref.get("size")));
+            } catch (HttpClientErrorException.Conflict e) {
+                log.info("Agent no longer has {} referenced document(s) for user {}; uploading in full",
+                        refs.size(), user.getEmail());
+                refs.forEach(ref -> aiDocumentRegistry.forget(user.getId(), (String) ref.get("sha256")));
+                upload = new ArrayList<>(hashes.keySet());
+                response = aiUploadClient.post(endpoint, headers, fields, upload);
+            }
+        }
+        upload.forEach(file -> aiDocumentRegistry.recordUploaded(user.getId(), hashes.get(file)));
+        return response;
+    }
+
     // ── POST /api/agent/chat ─────────────────────────────────────────────
 
     @PostMapping("/chat")
     public ResponseEntity<?> agentChat(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User user,
             @RequestBody Map<String, Object> body) {
         try {
-            User user = authenticateUser(jwt);
             if (user == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                         .body(Map.of("error", "User not found"));
@@ -240,9 +442,7 @@ public class AIAgentController {
             HttpEntity<Map<String, Object>> request = new HttpEntity<>(body, headers);
 
             String endpoint = aiServiceUrl + "/agent/chat";
-            ResponseEntity<Map> response = restTemplate.exchange(endpoint, HttpMethod.POST, request, Map.class);
-
-            return ResponseEntity.ok(response.getBody());
+            return aiJsonRelay.relay(endpoint, HttpMethod.POST, request);
 
         } catch (RestClientException e) {
             log.error("Agent chat error: {}", e.getMessage());
@@ -259,15 +459,51 @@ public class AIAgentController {
         }
     }
 
+    // ── POST /api/agent/chat/stream ──────────────────────────────────────
+
+    /**
+     * Streaming follow-up chat: relays the agent's chunked {@code /agent/chat/stream} reply as
+     * SSE {@code token} events while it is generated; see {@link AiStreamingClient}.
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> agentChatStream(
+            @CurrentUser User user,
+            @RequestBody Map<String, Object> body) {
+        if (user == null) {
+            return AiStreamingClient.failed(HttpStatus.UNAUTHORIZED, Map.of("error", "User not found"));
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        applyAiAuth(headers);
+        return aiStreamingClient.stream(aiServiceUrl + "/agent/chat/stream", headers.toSingleValueMap(), body,
+                this::agentChunkText);
+    }
+
+    /**
+     * Text of one agent stream chunk. The agent sends either plain text or a JSON object
+     * carrying the text as {@code text}, {@code token}, {@code delta} or {@code content}.
+     */
+    private String agentChunkText(String data) throws IOException {
+        if (!data.startsWith("{")) {
+            return data;
+        }
+        JsonNode chunk = objectMapper.readTree(data);
+        for (String field : List.of("text", "token", "delta", "content")) {
+            if (chunk.path(field).isTextual()) {
+                return chunk.path(field).asText();
+            }
+        }
+        return null;
+    }
+
     // ── POST /api/agent/upload-documents ─────────────────────────────────
 
     @PostMapping("/upload-documents")
     public ResponseEntity<?> uploadDocuments(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User user,
             @RequestParam("files") List<MultipartFile> files,
             @RequestParam(value = "session_id", required = false) String sessionId) {
         try {
-            User user = authenticateUser(jwt);
             if (user == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                         .body(Map.of("error", "User not found"));
@@ -279,33 +515,23 @@ public class AIAgentController {
             }
 
             HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
             applyAiAuth(headers);
 
-            MultiValueMap<String, Object> formData = new LinkedMultiValueMap<>();
+            Map<String, String> fields = new LinkedHashMap<>();
             if (sessionId != null) {
-                formData.add("session_id", sessionId);
+                fields.put("session_id", sessionId);
             }
 
-            for (MultipartFile file : files) {
-                if (!file.isEmpty() && file.getSize() <= 50 * 1024 * 1024) {
-                    ByteArrayResource resource = new ByteArrayResource(file.getBytes()) {
-                        @Override
-                        public String getFilename() {
-                            return file.getOriginalFilename();
-                        }
-                    };
-                    formData.add("files", resource);
-                }
-            }
+            List<MultipartFile> accepted = files.stream()
+                    .filter(file -> file.getSize() <= 50 * 1024 * 1024)
+                    .toList();
 
-            HttpEntity<MultiValueMap<String, Object>> request = new HttpEntity<>(formData, headers);
             String endpoint = aiServiceUrl + "/agent/upload-documents";
 
             log.info("Upload {} documents for user {}", files.size(), user.getEmail());
-            ResponseEntity<Map> response = restTemplate.exchange(endpoint, HttpMethod.POST, request, Map.class);
+            Map<String, Object> response = uploadToAgent(user, endpoint, headers, fields, accepted);
 
-            return ResponseEntity.ok(response.getBody());
+            return ResponseEntity.ok(response);
 
         } catch (RestClientException e) {
             log.error("Document upload error: {}", e.getMessage());
@@ -323,12 +549,16 @@ public class AIAgentController {
 
     // ── POST /api/agent/generate-document ────────────────────────────────
 
+    /**
+     * Document generation for Pro and higher plans. The query is reserved before the upstream
+     * call and refunded if it fails.
+     */
     @PostMapping("/generate-document")
     public ResponseEntity<?> generateDocument(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User user,
             @RequestBody Map<String, Object> body) {
+        AiQuotaLedger.Reservation reservation = null;
         try {
-            User user = authenticateUser(jwt);
             if (user == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                         .body(Map.of("error", "User not found"));
@@ -345,6 +575,16 @@ public class AIAgentController {
                 ));
             }
 
+            reservation = subscriptionService.reserveAIQuery(user);
+            if (!reservation.granted() || reservation.plan() == null) {
+                // The plan ran out, or lapsed since the check above: free trials do not pay for documents.
+                subscriptionService.refundAIQuery(user, reservation);
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of(
+                        "error", "quota_exhausted",
+                        "message", "No AI queries left on your subscription"
+                ));
+            }
+
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
             applyAiAuth(headers);
@@ -353,18 +593,22 @@ public class AIAgentController {
             String endpoint = aiServiceUrl + "/agent/generate-document";
             log.info("Generate document type={} for user {}", body.get("doc_type"), user.getEmail());
 
-            ResponseEntity<Map> response = restTemplate.exchange(endpoint, HttpMethod.POST, request, Map.class);
-            subscriptionService.useAIQuery(user);
+            ResponseEntity<?> response = aiJsonRelay.relay(endpoint, HttpMethod.POST, request);
+            if (!response.getStatusCode().is2xxSuccessful()) {
+                subscriptionService.refundAIQuery(user, reservation);
+            }
 
-            return ResponseEntity.ok(response.getBody());
+            return response;
 
         } catch (RestClientException e) {
             log.error("Document generation error: {}", e.getMessage());
+            subscriptionService.refundAIQuery(user, reservation);
             return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
                     "error", "service_unavailable"
             ));
         } catch (Exception e) {
             log.error("Generate document error: {}", e.getMessage(), e);
+            subscriptionService.refundAIQuery(user, reservation);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
                     "error", "generation_failed",
                     "message", e.getMessage()
@@ -378,8 +622,9 @@ public class AIAgentController {
     public ResponseEntity<?> getDocumentTypes() {
         try {
             String endpoint = aiServiceUrl + "/agent/document-types";
-            ResponseEntity<Map> response = restTemplate.exchange(endpoint, HttpMethod.GET, aiGetEntity(), Map.class);
-            return ResponseEntity.ok(response.getBody());
+            AiMetadataCache.Entry types = aiMetadataCache.get(AiMetadataCache.DOCUMENT_TYPES, endpoint,
+                    () -> restTemplate.exchange(endpoint, HttpMethod.GET, aiGetEntity(), Map.class).getBody());
+            return types.ok().body(types.body());
         } catch (Exception e) {
             log.error("Document types error: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
@@ -392,13 +637,11 @@ public class AIAgentController {
 
     @GetMapping("/session/{sessionId}")
     public ResponseEntity<?> getSession(
-            @RequestHeader("Authorization") String jwt,
+            VerifiedClaims claims,
             @PathVariable String sessionId) {
         try {
-            authenticateUser(jwt);
             String endpoint = aiServiceUrl + "/agent/session/" + sessionId;
-            ResponseEntity<Map> response = restTemplate.exchange(endpoint, HttpMethod.GET, aiGetEntity(), Map.class);
-            return ResponseEntity.ok(response.getBody());
+            return aiJsonRelay.relay(endpoint, HttpMethod.GET, aiGetEntity());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
                     "error", "service_unavailable"
@@ -406,16 +649,29 @@ public class AIAgentController {
         }
     }
 
+    // ── POST /api/agent/prewarm ──────────────────────────────────────────
+
+    /**
+     * Sent by the frontend when a user opens an AI page, so a sleeping agent starts waking up
+     * before the first analysis. Answers at once; the ping runs in the background and is
+     * skipped when the agent was reached recently ({@link AiWarmupService#hint()}).
+     */
+    @PostMapping("/prewarm")
+    public ResponseEntity<?> prewarm() {
+        return ResponseEntity.accepted().body(aiWarmupService.hint());
+    }
+
     // ── GET /api/agent/health ────────────────────────────────────────────
 
     @GetMapping("/health")
     public ResponseEntity<?> agentHealth() {
         try {
             String endpoint = aiServiceUrl + "/agent/health";
-            ResponseEntity<Map> response = restTemplate.exchange(endpoint, HttpMethod.GET, aiGetEntity(), Map.class);
-            Map<String, Object> result = new HashMap<>(response.getBody());
+            AiMetadataCache.Entry health = aiMetadataCache.get(AiMetadataCache.AGENT_HEALTH, endpoint,
+                    () -> restTemplate.exchange(endpoint, HttpMethod.GET, aiGetEntity(), Map.class).getBody());
+            Map<String, Object> result = new HashMap<>(health.body());
             result.put("java_proxy", "healthy");
-            return ResponseEntity.ok(result);
+            return health.ok().body(result);
         } catch (Exception e) {
             return ResponseEntity.ok(Map.of(
                     "java_proxy", "healthy",
@@ -1,11 +1,22 @@
 package com.example.demo.Controller;
 
-import com.example.demo.Classes.Subscription;
+import com.example.demo.Classes.Case;
 import com.example.demo.Classes.SubscriptionPlan;
 import com.example.demo.Classes.User;
-import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.AiJsonRelay;
+import com.example.demo.Config.AiProxyExecutor;
+import com.example.demo.Config.AiTierScheduler;
+import com.example.demo.Config.CurrentUser;
+import com.example.demo.Implementation.AiDeferredResponse;
+import com.example.demo.Implementation.AiMetadataCache;
+import com.example.demo.Implementation.AiQuotaLedger;
+import com.example.demo.Implementation.AiRequestFingerprint;
+import com.example.demo.Implementation.AiResponseCache;
+import com.example.demo.Implementation.AiSingleFlight;
 import com.example.demo.Implementation.SubscriptionService;
-import com.example.demo.Repository.UserAll;
+import com.example.demo.Repository.CaseAll;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -13,8 +24,13 @@ import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Subscription-aware AI Case Analysis Controller
@@ -26,9 +42,6 @@ import java.util.*;
 @CrossOrigin(origins = {"http://localhost:3000", "https://ai-court-room-iota.vercel.app", "https://ai-courtroom.vercel.app"})
 public class AICaseAnalysisController {
 
-    @Autowired
-    private UserAll userRepository;
-
     @Autowired
     private SubscriptionService subscriptionService;
 
@@ -41,6 +54,42 @@ public class AICaseAnalysisController {
     @Autowired
     private RestTemplate restTemplate;
 
+    @Autowired
+    private AiProxyExecutor aiProxyExecutor;
+
+    @Autowired
+    private AiJsonRelay aiJsonRelay;
+
+    @Autowired
+    private AiTierScheduler aiTierScheduler;
+
+    @Autowired
+    private AiResponseCache aiResponseCache;
+
+    @Autowired
+    private AiSingleFlight aiSingleFlight;
+
+    @Autowired
+    private AiMetadataCache aiMetadataCache;
+
+    @Autowired
+    private CaseAll caseRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${ai.batch.size:20}")
+    private int batchSize;
+
+    @Value("${ai.batch.parallelism:4}")
+    private int batchParallelism;
+
+    @Value("${ai.batch.max-cases:500}")
+    private int batchMaxCases;
+
+    @Value("${ai.batch.timeout-ms:1800000}")
+    private long batchTimeoutMs;
+
     /** Add the shared X-API-Key header for authenticated calls to the Python AI service. */
     private void applyAiAuth(HttpHeaders headers) {
         if (aiServiceApiKey != null && !aiServiceApiKey.isBlank()) {
@@ -60,41 +109,80 @@ public class AICaseAnalysisController {
      * FREE: Only confidence and basic prediction
      * BASIC/PRO: Confidence + key factors (top 3)
      * UNLIMITED: Full details - all key factors, explanations, implications
+     *
+     * Steps 1-3 run on the request thread; the ML call and enrichment run on the
+     * {@link AiProxyExecutor} so the servlet thread is released while the service works.
+     * The raw ML result is cached by case payload ({@link AiResponseCache}) and enriched per
+     * plan on every request, so a cached answer never leaks another plan's detail level.
+     * Identical payloads analyzed concurrently share one ML call ({@link AiSingleFlight});
+     * steps 5-7 still run once per caller. The ML call waits for capacity in the plan's tier
+     * queue ({@link AiTierScheduler}). Each caller's query is reserved in step 2 and refunded
+     * if the analysis fails or outlasts the async request timeout ({@link AiDeferredResponse}),
+     * or if it is answered from cache without
+     * {@code ai.cache.hit-consumes-quota}.
      */
     @PostMapping("/analyze")
-    public ResponseEntity<?> analyzeCase(
-            @RequestHeader("Authorization") String jwt,
+    public DeferredResult<ResponseEntity<?>> analyzeCase(
+            @CurrentUser User user,
             @RequestBody Map<String, Object> caseData) {
+        SubscriptionPlan plan;
+        String fingerprint;
+        AiQuotaLedger.Reservation reservation = null;
         try {
             // 1. Get user and check subscription
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User user = userRepository.searchByEmail(email);
-
             if (user == null) {
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                        .body(Map.of("error", "User not found"));
+                return AiDeferredResponse.of(ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("error", "User not found")));
             }
 
-            // 2. Check subscription access
-            Map<String, Object> accessInfo = subscriptionService.checkAccess(user);
-            boolean hasAccess = (boolean) accessInfo.getOrDefault("hasAccess", false);
+            // 2. Reserve one query from the subscription or free trials
+            reservation = subscriptionService.reserveAIQuery(user);
 
-            if (!hasAccess) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of(
+            if (!reservation.granted()) {
+                return AiDeferredResponse.of(ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of(
                         "error", "No active subscription or free trials available",
                         "message", "Please subscribe to access AI case analysis",
                         "hasAccess", false
-                ));
+                )));
             }
 
-            // 3. Get subscription plan to determine detail level
-            Optional<Subscription> subscriptionOpt = subscriptionService.getActiveSubscription(user);
-            SubscriptionPlan plan = subscriptionOpt
-                    .map(Subscription::getPlan)
-                    .orElse(SubscriptionPlan.FREE);
+            // 3. Subscription plan determines detail level
+            plan = reservation.plan() != null ? reservation.plan() : SubscriptionPlan.FREE;
+
+            fingerprint = AiRequestFingerprint.of(caseData);
+            Optional<Map<String, Object>> cached = aiResponseCache.get(AiResponseCache.CASE_ANALYSIS, fingerprint);
+            if (cached.isPresent()) {
+                log.info("User {} analyzing case with plan: {} (cached)", user.getEmail(), plan);
+                if (!aiResponseCache.hitConsumesQuota()) {
+                    subscriptionService.refundAIQuery(user, reservation);
+                }
+                return AiDeferredResponse.of(ResponseEntity.ok()
+                        .header(AiResponseCache.HEADER, "HIT")
+                        .body(enrichResponseForPlan(cached.get(), plan)));
+            }
+        } catch (Exception e) {
+            log.error("Error in analyzeCase: {}", e.getMessage(), e);
+            subscriptionService.refundAIQuery(user, reservation);
+            return AiDeferredResponse.of(analysisFailed(e));
+        }
 
-            log.info("User {} analyzing case with plan: {}", email, plan);
+        log.info("User {} analyzing case with plan: {}", user.getEmail(), plan);
+        AiQuotaLedger.Reservation paid = reservation;
+        CompletableFuture<ResponseEntity<?>> call = aiSingleFlight.execute(AiResponseCache.CASE_ANALYSIS, fingerprint,
+                () -> aiTierScheduler.submit(plan.getAiTier(),
+                        () -> aiProxyExecutor.submit(() -> fetchAnalysis(caseData, fingerprint))));
+        return AiDeferredResponse.of(call
+                .<ResponseEntity<?>>thenApply(upstream -> deliverAnalysis(user, plan, paid, upstream))
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        subscriptionService.refundAIQuery(user, paid);
+                    }
+                }), call);
+    }
 
+    /** Step 4, shared by coalesced callers: the raw ML result, or the error every caller gets. */
+    private ResponseEntity<?> fetchAnalysis(Map<String, Object> caseData, String fingerprint) {
+        try {
             // 4. Call Python ML service
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
@@ -129,45 +217,484 @@ public class AICaseAnalysisController {
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                         .body(Map.of("error", "Empty response from AI service"));
             }
+            aiResponseCache.put(AiResponseCache.CASE_ANALYSIS, fingerprint, mlResult);
+            return ResponseEntity.ok(mlResult);
+
+        } catch (Exception e) {
+            log.error("Error in analyzeCase: {}", e.getMessage(), e);
+            return analysisFailed(e);
+        }
+    }
+
+    /**
+     * Steps 5-7 for one caller; upstream errors are passed through unchanged and the caller's
+     * reserved query is refunded.
+     */
+    private ResponseEntity<?> deliverAnalysis(User user, SubscriptionPlan plan, AiQuotaLedger.Reservation reservation,
+                                              ResponseEntity<?> upstream) {
+        if (!upstream.getStatusCode().is2xxSuccessful()) {
+            subscriptionService.refundAIQuery(user, reservation);
+            return upstream;
+        }
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> mlResult = (Map<String, Object>) upstream.getBody();
 
             // 5. Enrich response based on subscription plan
             Map<String, Object> enrichedResult = enrichResponseForPlan(mlResult, plan);
 
-            // 6. Record AI query usage
-            subscriptionService.useAIQuery(user);
+            // 6. The query was reserved in step 2
 
             // 7. Return enriched result
             return ResponseEntity.ok(enrichedResult);
 
         } catch (Exception e) {
             log.error("Error in analyzeCase: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
-                    "error", "Failed to analyze case",
-                    "message", e.getMessage()
+            subscriptionService.refundAIQuery(user, reservation);
+            return analysisFailed(e);
+        }
+    }
+
+    private static ResponseEntity<?> analysisFailed(Exception e) {
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                "error", "Failed to analyze case",
+                "message", e.getMessage()
+        ));
+    }
+
+    /**
+     * Batch analysis for onboarding a backlog of cases. The body names stored cases
+     * ({@code "caseIds": [..]}), ready-made analysis payloads ({@code "cases": [{..}]}), or
+     * both, up to {@code ai.batch.max-cases} in total; items are numbered in that order.
+     *
+     * <p>Items go to the ML service's {@code /analyze/batch} in micro-batches of
+     * {@code ai.batch.size}, at most {@code ai.batch.parallelism} batches in flight, each queued
+     * for capacity in the plan's tier like a single analysis. The reply is NDJSON: one line per
+     * case as soon as its batch returns ({@code index}, {@code caseId}, {@code ok}, then
+     * {@code result} or {@code error}), and a last line with {@code done}.
+     * Results are cached and enriched per plan like {@link #analyzeCase}. One query per known
+     * case is reserved in one transaction before anything is sent; cases beyond what could be
+     * reserved get {@code quota_exhausted} and are never sent. Unused units are refunded:
+     * those of free cache hits at once, those of failed cases as their micro-batch finishes,
+     * and those of cases never sent when the run ends.
+     */
+    @PostMapping("/analyze/batch")
+    public ResponseEntity<?> analyzeBatch(
+            @CurrentUser User user,
+            @RequestBody Map<String, Object> body) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "User not found"));
+        }
+        List<BatchItem> items;
+        try {
+            items = batchItems(body, user);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "invalid_request", "message", e.getMessage()));
+        }
+        if (items.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", "invalid_request",
+                    "message", "Provide caseIds or cases to analyze"));
+        }
+        if (items.size() > batchMaxCases) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", "batch_too_large",
+                    "message", "At most " + batchMaxCases + " cases per request"));
+        }
+
+        // One query per known case is reserved in one go, before looking at what the cache
+        // answers, like a single analysis; the reservation also tells the plan. Unknown cases,
+        // cache hits and cases beyond what could be reserved are answered before anything is
+        // sent, and the units free cache hits did not need are given back straight away.
+        List<Optional<Map<String, Object>>> cached = new ArrayList<>();
+        int known = 0;
+        int freeHits = 0;
+        for (BatchItem item : items) {
+            Optional<Map<String, Object>> hit = item.payload() != null
+                    ? aiResponseCache.get(AiResponseCache.CASE_ANALYSIS, item.fingerprint())
+                    : Optional.empty();
+            cached.add(hit);
+            if (item.payload() != null) {
+                known++;
+                if (hit.isPresent() && !aiResponseCache.hitConsumesQuota()) {
+                    freeHits++;
+                }
+            }
+        }
+
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(batchTimeoutMs);
+        BatchRun run = new BatchRun(user, emitter, items.size());
+        run.reserve(known);
+        if (known > 0 && !run.granted() && freeHits == 0) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of(
+                    "error", "No active subscription or free trials available",
+                    "message", "Please subscribe to access AI case analysis",
+                    "hasAccess", false
             ));
         }
+        emitter.onCompletion(run::cancel);
+        emitter.onTimeout(run::cancel);
+        emitter.onError(e -> run.cancel());
+
+        SubscriptionPlan plan = run.plan;
+        List<BatchItem> toSend = new ArrayList<>();
+        for (BatchItem item : items) {
+            if (item.payload() == null) {
+                run.failed(item, "case_not_found", "No case with id " + item.caseId());
+                continue;
+            }
+            Optional<Map<String, Object>> hit = cached.get(item.index());
+            boolean charged = hit.isEmpty() || aiResponseCache.hitConsumesQuota();
+            if (charged && !run.pay(item)) {
+                run.failed(item, "quota_exhausted", "No AI queries left for this batch");
+                continue;
+            }
+            if (hit.isPresent()) {
+                run.succeeded(item, enrichResponseForPlan(hit.get(), plan));
+            } else {
+                toSend.add(item);
+            }
+        }
+        run.releaseUnassigned();
+
+        int size = Math.max(1, Math.min(batchSize, MAX_UPSTREAM_BATCH));
+        for (int from = 0; from < toSend.size(); from += size) {
+            run.pending.add(toSend.subList(from, Math.min(from + size, toSend.size())));
+        }
+        log.info("User {} batch-analyzing {} cases with plan {} ({} upstream batches)",
+                user.getEmail(), items.size(), plan, run.pending.size());
+
+        CompletableFuture<?>[] lanes = new CompletableFuture<?>[Math.max(1, batchParallelism)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = nextBatch(run);
+        }
+        CompletableFuture.allOf(lanes).whenComplete((ignored, e) -> run.finish());
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+    }
+
+    /** The ML service rejects {@code /analyze/batch} requests with more cases than this. */
+    private static final int MAX_UPSTREAM_BATCH = 50;
+
+    /** One case of a batch request; {@code payload} is null for an unknown case id
+     * or one the caller is not a party, advocate or judge on — the two are indistinguishable. */
+    private record BatchItem(int index, Integer caseId, Map<String, Object> payload, String fingerprint) {
+    }
+
+    private List<BatchItem> batchItems(Map<String, Object> body, User user) {
+        List<BatchItem> items = new ArrayList<>();
+        Object caseIds = body.get("caseIds");
+        Object cases = body.get("cases");
+        if (caseIds != null && !(caseIds instanceof List)) {
+            throw new IllegalArgumentException("caseIds must be a list of case ids");
+        }
+        if (cases != null && !(cases instanceof List)) {
+            throw new IllegalArgumentException("cases must be a list of case objects");
+        }
+        if (caseIds != null) {
+            List<Integer> ids = new ArrayList<>();
+            for (Object id : (List<?>) caseIds) {
+                try {
+                    ids.add(Integer.valueOf(String.valueOf(id)));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid case id: " + id);
+                }
+            }
+            Map<Integer, Case> found = new HashMap<>();
+            for (Case c : caseRepository.findAccessibleByIdIn(new HashSet<>(ids), user)) {
+                found.put(c.getId(), c);
+            }
+            for (Integer id : ids) {
+                Case c = found.get(id);
+                Map<String, Object> payload = c != null ? analysisPayload(c) : null;
+                items.add(new BatchItem(items.size(), id, payload,
+                        payload != null ? AiRequestFingerprint.of(payload) : null));
+            }
+        }
+        if (cases != null) {
+            for (Object payload : (List<?>) cases) {
+                if (!(payload instanceof Map)) {
+                    throw new IllegalArgumentException("cases must be a list of case objects");
+                }
+                @SuppressWarnings("unchecked")
+                Map<String, Object> caseData = (Map<String, Object>) payload;
+                items.add(new BatchItem(items.size(), null, caseData, AiRequestFingerprint.of(caseData)));
+            }
+        }
+        return items;
+    }
+
+    /** The analysis payload for a stored case, built the way the case details page builds it. */
+    private static Map<String, Object> analysisPayload(Case c) {
+        Case.CaseType type = c.getCaseType();
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("case_type", switch (type == null ? Case.CaseType.CRIMINAL : type) {
+            case CIVIL, CONSUMER, CONSTITUTIONAL -> "Civil";
+            case FAMILY -> "Family";
+            case LABOUR -> "Labor";
+            default -> "Criminal";
+        });
+        payload.put("parties", (c.getPlaintiffPetitioner() != null ? c.getPlaintiffPetitioner() : "Petitioner")
+                + " vs " + (c.getDefendantRespondent() != null ? c.getDefendantRespondent() : "Respondent"));
+        payload.put("description", c.getDescription() != null ? c.getDescription() : "");
+        if (type == Case.CaseType.CRIMINAL) {
+            payload.put("violence_level", "Unknown");
+            payload.put("weapon", "Unknown");
+            payload.put("police_report", "Unknown");
+            payload.put("witnesses", "Unknown");
+            payload.put("premeditation", "Unknown");
+        }
+        return payload;
+    }
+
+    /** One lane of the batch: send the next pending batch, deliver it, repeat until none are left. */
+    private CompletableFuture<Void> nextBatch(BatchRun run) {
+        List<BatchItem> batch = run.cancelled ? null : run.pending.poll();
+        if (batch == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return aiTierScheduler.submit(run.plan.getAiTier(), () -> aiProxyExecutor.submit(() -> fetchBatch(batch)))
+                .thenAccept(upstream -> {
+                    try {
+                        deliverBatch(run, batch, upstream);
+                    } catch (RuntimeException e) {
+                        log.error("Batch analysis failed: {}", e.getMessage(), e);
+                        batch.stream().filter(run::unanswered)
+                                .forEach(item -> run.failed(item, "analysis_failed", e.getMessage()));
+                    }
+                    run.settle(batch);
+                })
+                .thenCompose(ignored -> nextBatch(run));
+    }
+
+    /** One {@code /analyze/batch} call; the body is the per-case results, in request order. */
+    private ResponseEntity<?> fetchBatch(List<BatchItem> batch) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        applyAiAuth(headers);
+        Map<String, Object> request = Map.of(
+                "cases", batch.stream().map(BatchItem::payload).toList(),
+                "format", "full");
+        try {
+            ResponseEntity<Map> response = restTemplate.exchange(aiServiceUrl + "/analyze/batch", HttpMethod.POST,
+                    new HttpEntity<>(request, headers), Map.class);
+            Object results = response.getBody() != null ? response.getBody().get("results") : null;
+            if (!(results instanceof List<?> list) || list.size() != batch.size()) {
+                log.error("ML service returned {} results for a batch of {}",
+                        results instanceof List<?> list ? list.size() : "no", batch.size());
+                return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+                        .body(Map.of("error", "invalid_ai_response", "message", "Unexpected response from AI service"));
+            }
+            return ResponseEntity.ok(results);
+        } catch (RestClientException e) {
+            log.error("Failed to call ML service batch: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
+                    "error", "AI service temporarily unavailable",
+                    "message", "Please try again later"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliverBatch(BatchRun run, List<BatchItem> batch, ResponseEntity<?> upstream) {
+        if (!upstream.getStatusCode().is2xxSuccessful()) {
+            Map<String, Object> error = upstream.getBody() instanceof Map ? (Map<String, Object>) upstream.getBody() : Map.of();
+            for (BatchItem item : batch) {
+                run.failed(item, String.valueOf(error.getOrDefault("error", "analysis_failed")),
+                        String.valueOf(error.getOrDefault("message", "")));
+            }
+            return;
+        }
+        List<Object> results = (List<Object>) upstream.getBody();
+        List<Map<String, Object>> answers = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Map<String, Object> result = results.get(i) instanceof Map ? (Map<String, Object>) results.get(i) : null;
+            if (result != null && !result.containsKey("error")) {
+                aiResponseCache.put(AiResponseCache.CASE_ANALYSIS, batch.get(i).fingerprint(), result);
+            }
+            answers.add(result);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Map<String, Object> result = answers.get(i);
+            if (result == null) {
+                run.failed(batch.get(i), "analysis_failed", "Empty result from AI service");
+            } else if (result.containsKey("error")) {
+                run.failed(batch.get(i), "analysis_failed", String.valueOf(result.get("error")));
+            } else {
+                run.succeeded(batch.get(i), enrichResponseForPlan(result, run.plan));
+            }
+        }
+    }
+
+    /**
+     * State of one batch request, shared by its lanes; writes to the emitter are serialized.
+     * Each case that needs a query holds one unit of the batch's reservation until it is
+     * answered. Units of failed cases are refunded when their micro-batch finishes, and those
+     * of cases never sent (the client went away) when the run finishes.
+     */
+    private final class BatchRun {
+
+        private final User user;
+        private SubscriptionPlan plan = SubscriptionPlan.FREE;
+        private final ResponseBodyEmitter emitter;
+        private final int total;
+        private final Queue<List<BatchItem>> pending = new ConcurrentLinkedQueue<>();
+        private final Set<Integer> answered = new HashSet<>();
+        private final Set<Integer> paid = new HashSet<>();
+        private final Set<Integer> unused = new HashSet<>();
+        private AiQuotaLedger.Reservation reservation;
+        private int unassigned;
+        private int succeeded;
+        private int failed;
+        private int charged;
+        private volatile boolean cancelled;
+
+        BatchRun(User user, ResponseBodyEmitter emitter, int total) {
+            this.user = user;
+            this.emitter = emitter;
+            this.total = total;
+        }
+
+        /** The client went away or the request timed out: send no further batches. */
+        void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Reserve up to {@code count} queries for the cases of this batch; the plan they are
+         * charged to is the plan results are enriched and scheduled for.
+         */
+        synchronized void reserve(int count) {
+            if (count > 0) {
+                reservation = subscriptionService.reserveAIQueries(user, count);
+                unassigned = reservation.units();
+                charged = reservation.units();
+                if (reservation.plan() != null) {
+                    plan = reservation.plan();
+                }
+            }
+        }
+
+        synchronized boolean granted() {
+            return reservation != null && reservation.granted();
+        }
+
+        /** Give back the reserved queries no case needed (cache hits that are free). */
+        synchronized void releaseUnassigned() {
+            int count = unassigned;
+            unassigned = 0;
+            refund(count);
+        }
+
+        /** Give {@code item} one of the reserved queries; false when none are left. */
+        synchronized boolean pay(BatchItem item) {
+            if (unassigned <= 0) {
+                return false;
+            }
+            unassigned--;
+            paid.add(item.index());
+            return true;
+        }
+
+        /** Refund the queries of the cases of {@code batch} that failed. */
+        synchronized void settle(List<BatchItem> batch) {
+            refund((int) batch.stream().filter(item -> unused.remove(item.index())).count());
+        }
+
+        private void refund(int count) {
+            if (count > 0) {
+                subscriptionService.refundAIQueries(user, reservation, count);
+                charged -= count;
+            }
+        }
+
+        synchronized boolean unanswered(BatchItem item) {
+            return !answered.contains(item.index());
+        }
+
+        synchronized void succeeded(BatchItem item, Map<String, Object> result) {
+            answered.add(item.index());
+            paid.remove(item.index());
+            succeeded++;
+            Map<String, Object> line = line(item, true);
+            line.put("result", result);
+            write(line);
+        }
+
+        synchronized void failed(BatchItem item, String error, String message) {
+            answered.add(item.index());
+            if (paid.remove(item.index())) {
+                unused.add(item.index());
+            }
+            failed++;
+            Map<String, Object> line = line(item, false);
+            line.put("error", error);
+            line.put("message", message);
+            write(line);
+        }
+
+        synchronized void finish() {
+            int left = unused.size() + paid.size() + unassigned;
+            unused.clear();
+            paid.clear();
+            unassigned = 0;
+            try {
+                refund(left);
+            } catch (RuntimeException e) {
+                log.error("Could not refund {} AI queries to {}: {}", left, user.getEmail(), e.getMessage());
+            }
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("done", true);
+            summary.put("total", total);
+            summary.put("succeeded", succeeded);
+            summary.put("failed", failed);
+            summary.put("charged", charged);
+            write(summary);
+            if (!cancelled) {
+                emitter.complete();
+            }
+        }
+
+        private Map<String, Object> line(BatchItem item, boolean ok) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("index", item.index());
+            line.put("caseId", item.caseId());
+            line.put("ok", ok);
+            return line;
+        }
+
+        private void write(Map<String, Object> line) {
+            if (cancelled) {
+                return;
+            }
+            try {
+                emitter.send(objectMapper.writeValueAsString(line) + "\n", MediaType.APPLICATION_NDJSON);
+            } catch (JsonProcessingException e) {
+                log.error("Could not serialize batch line: {}", e.getMessage());
+            } catch (IOException | IllegalStateException e) {
+                log.info("Batch analysis client for {} went away: {}", user.getEmail(), e.getMessage());
+                cancel();
+            }
+        }
     }
 
     /**
-     * Quick analysis endpoint - lighter weight
+     * Quick analysis endpoint - lighter weight. The query is reserved before the ML call and
+     * refunded if it fails.
      */
     @PostMapping("/analyze/quick")
     public ResponseEntity<?> analyzeQuick(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User user,
             @RequestBody Map<String, Object> requestData) {
+        AiQuotaLedger.Reservation reservation = null;
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User user = userRepository.searchByEmail(email);
-
             if (user == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                         .body(Map.of("error", "User not found"));
             }
 
-            Map<String, Object> accessInfo = subscriptionService.checkAccess(user);
-            boolean hasAccess = (boolean) accessInfo.getOrDefault("hasAccess", false);
+            reservation = subscriptionService.reserveAIQuery(user);
 
-            if (!hasAccess) {
+            if (!reservation.granted()) {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of(
                         "error", "No active subscription",
                         "message", "Please subscribe for AI analysis"
@@ -180,19 +707,15 @@ public class AICaseAnalysisController {
             applyAiAuth(headers);
             HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestData, headers);
 
-            ResponseEntity<Map> mlResponse = restTemplate.exchange(
+            return aiJsonRelay.relay(
                     aiServiceUrl + "/analyze/quick",
                     HttpMethod.POST,
-                    request,
-                    Map.class
+                    request
             );
 
-            subscriptionService.useAIQuery(user);
-
-            return ResponseEntity.ok(mlResponse.getBody());
-
         } catch (Exception e) {
             log.error("Error in analyzeQuick: {}", e.getMessage());
+            subscriptionService.refundAIQuery(user, reservation);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
                     "error", "Failed to analyze case",
                     "message", e.getMessage()
@@ -201,22 +724,20 @@ public class AICaseAnalysisController {
     }
 
     /**
-     * Health check endpoint
+     * Health check endpoint. The ML service's answer is cached briefly and refreshed in the
+     * background ({@link AiMetadataCache}), so frequent probes do not each reach the service.
      */
     @GetMapping("/health")
     public ResponseEntity<?> health() {
         try {
             // Check if ML service is reachable
-            ResponseEntity<Map> healthResponse = restTemplate.exchange(
-                    aiServiceUrl + "/health",
-                    HttpMethod.GET,
-                    aiGetEntity(),
-                    Map.class
-            );
+            String endpoint = aiServiceUrl + "/health";
+            AiMetadataCache.Entry health = aiMetadataCache.get(AiMetadataCache.ML_HEALTH, endpoint,
+                    () -> restTemplate.exchange(endpoint, HttpMethod.GET, aiGetEntity(), Map.class).getBody());
 
-            return ResponseEntity.ok(Map.of(
+            return health.ok().body(Map.of(
                     "status", "ok",
-                    "mlService", healthResponse.getBody(),
+                    "mlService", health.body(),
                     "mlServiceUrl", aiServiceUrl
             ));
         } catch (Exception e) {
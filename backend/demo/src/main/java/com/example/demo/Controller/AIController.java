@@ -1,13 +1,23 @@
 package com.example.demo.Controller;
 
+import com.example.demo.Config.AiProxyExecutor;
+import com.example.demo.Config.AiStreamingClient;
+import com.example.demo.Implementation.AiRequestFingerprint;
+import com.example.demo.Implementation.AiResponseCache;
+import com.example.demo.Implementation.AiSimilarPromptIndex;
+import com.example.demo.Implementation.GeminiResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Controller for AI-powered legal assistance using Google Gemini API.
@@ -25,88 +35,139 @@ public class AIController {
     @Value("${gemini.api.model:gemini-1.5-flash}")
     private String geminiModel;
 
-    private static final String GEMINI_API_URL = "https://generativelanguage.googleapis.com/v1beta/models/%s:generateContent?key=%s";
+    @Value("${gemini.api.base-url:https://generativelanguage.googleapis.com/v1beta}")
+    private String geminiBaseUrl;
+
+    private static final String GEMINI_API_URL = "%s/models/%s:generateContent?key=%s";
+    private static final String GEMINI_STREAM_URL = "%s/models/%s:streamGenerateContent?alt=sse&key=%s";
 
     @Autowired
     private RestTemplate restTemplate;
 
+    @Autowired
+    private AiProxyExecutor aiProxyExecutor;
+
+    @Autowired
+    private AiResponseCache aiResponseCache;
+
+    @Autowired
+    private AiSimilarPromptIndex aiSimilarPromptIndex;
+
+    @Autowired
+    private AiStreamingClient aiStreamingClient;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
-     * Chat endpoint for AI legal assistant
+     * Chat endpoint for AI legal assistant. Input is validated on the request thread; the
+     * Gemini call runs on the {@link AiProxyExecutor} so the servlet thread is released.
+     * Repeated questions (same text up to whitespace, same model) are answered from
+     * {@link AiResponseCache} without calling Gemini. Rephrasings of a cached question are found
+     * through {@link AiSimilarPromptIndex} and answered with {@code X-AI-Cache: SIMILAR}.
      */
     @PostMapping("/chat")
-    public ResponseEntity<?> chat(@RequestBody Map<String, Object> request) {
+    public CompletableFuture<ResponseEntity<?>> chat(@RequestBody Map<String, Object> request) {
+        String userMessage;
         try {
             log.info("Received chat request: {}", request);
             
             if (geminiApiKey == null || geminiApiKey.isBlank()) {
                 log.error("Gemini API key not configured");
-                return ResponseEntity.badRequest()
-                    .body(Map.of("error", "Gemini API key not configured. Please set GEMINI_API_KEY in .env file"));
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(Map.of("error", "Gemini API key not configured. Please set GEMINI_API_KEY in .env file")));
             }
 
-            String userMessage = (String) request.get("message");
+            userMessage = (String) request.get("message");
             if (userMessage == null || userMessage.isBlank()) {
                 log.warn("Empty message received");
-                return ResponseEntity.badRequest()
-                    .body(Map.of("error", "Message is required"));
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(Map.of("error", "Message is required")));
             }
-            
-            log.info("Processing message: {}", userMessage.substring(0, Math.min(50, userMessage.length())));
+        } catch (Exception e) {
+            log.error("Error calling Gemini API: {} - {}", e.getClass().getSimpleName(), e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "AI service temporarily unavailable")));
+        }
 
-            // Create system instruction for simple, child-friendly legal explanations
-            String systemPrompt = """
-                You are a friendly legal assistant for kids. Your job is to explain legal concepts in the simplest way possible.
-                
-                Rules:
-                1. Keep your ENTIRE response under 50 words maximum
-                2. Use bullet points (•) to break down information
-                3. Explain like you're talking to a 10-year-old
-                4. Use simple words - no complex legal jargon
-                5. Be friendly and encouraging
-                6. If the topic is complex, give just the most important points
-                
-                Example format:
-                • [Simple point 1]
-                • [Simple point 2]
-                • [Simple point 3]
-                
-                Keep it SHORT and SIMPLE!
-                """;
+        String fingerprint = AiRequestFingerprint.of(userMessage, geminiModel);
+        Optional<Map<String, Object>> cached = aiResponseCache.get(AiResponseCache.CHAT, fingerprint);
+        if (cached.isPresent()) {
+            return CompletableFuture.completedFuture(ResponseEntity.ok()
+                .header(AiResponseCache.HEADER, "HIT")
+                .body(cached.get()));
+        }
+        Optional<AiSimilarPromptIndex.Match> similar = aiSimilarPromptIndex.find(geminiModel, userMessage);
+        if (similar.isPresent()) {
+            Optional<Map<String, Object>> answer = aiResponseCache.get(AiResponseCache.CHAT, similar.get().fingerprint());
+            if (answer.isPresent()) {
+                return CompletableFuture.completedFuture(ResponseEntity.ok()
+                    .header(AiResponseCache.HEADER, "SIMILAR")
+                    .body(answer.get()));
+            }
+            aiSimilarPromptIndex.remove(similar.get().fingerprint());
+        }
 
-            // Construct Gemini API request
-            String apiUrl = String.format(GEMINI_API_URL, geminiModel, geminiApiKey);
-            
-            Map<String, Object> geminiRequest = new HashMap<>();
-            geminiRequest.put("contents", List.of(
-                Map.of("parts", List.of(
-                    Map.of("text", systemPrompt + "\n\nUser question: " + userMessage)
-                ))
-            ));
-            
-            // Configure generation settings for concise responses
-            geminiRequest.put("generationConfig", Map.of(
-                "temperature", 0.7,
-                "maxOutputTokens", 150,  // Limit output to keep it under 50 words
-                "topP", 0.8,
-                "topK", 40
-            ));
+        return aiProxyExecutor.submit(() -> {
+            ResponseEntity<?> response = askGemini(userMessage);
+            if (response.getStatusCode().is2xxSuccessful() && response.getBody() instanceof Map<?, ?> body) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> answer = (Map<String, Object>) body;
+                aiResponseCache.put(AiResponseCache.CHAT, fingerprint, answer);
+                if (aiResponseCache.isEnabled(AiResponseCache.CHAT)) {
+                    aiSimilarPromptIndex.add(geminiModel, userMessage, fingerprint);
+                }
+            }
+            return response;
+        });
+    }
+
+    /**
+     * Streaming chat: relays Gemini's {@code streamGenerateContent} to the browser as SSE
+     * ({@code token} events, then {@code done} or {@code error}) so the first words appear while
+     * the rest is still generating. Not cached; see {@link AiStreamingClient}.
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> chatStream(@RequestBody Map<String, Object> request) {
+        if (geminiApiKey == null || geminiApiKey.isBlank()) {
+            log.error("Gemini API key not configured");
+            return AiStreamingClient.failed(HttpStatus.BAD_REQUEST,
+                Map.of("error", "Gemini API key not configured. Please set GEMINI_API_KEY in .env file"));
+        }
+        if (!(request.get("message") instanceof String userMessage) || userMessage.isBlank()) {
+            log.warn("Empty message received");
+            return AiStreamingClient.failed(HttpStatus.BAD_REQUEST, Map.of("error", "Message is required"));
+        }
+
+        String apiUrl = String.format(GEMINI_STREAM_URL, geminiBaseUrl, geminiModel, geminiApiKey);
+        return aiStreamingClient.stream(apiUrl, Map.of(), geminiRequest(userMessage), this::geminiChunkText);
+    }
+
+    /** Text of one {@code streamGenerateContent} chunk: all parts of the first candidate. */
+    private String geminiChunkText(String data) throws IOException {
+        GeminiResponse.Candidate candidate = GeminiResponse.read(objectMapper.getFactory(), data).first();
+        return candidate != null ? candidate.text() : "";
+    }
+
+    private ResponseEntity<?> askGemini(String userMessage) {
+        try {
+            log.info("Processing message: {}", userMessage.substring(0, Math.min(50, userMessage.length())));
+
+            String apiUrl = String.format(GEMINI_API_URL, geminiBaseUrl, geminiModel, geminiApiKey);
+            Map<String, Object> geminiRequest = geminiRequest(userMessage);
 
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
 
             HttpEntity<Map<String, Object>> entity = new HttpEntity<>(geminiRequest, headers);
 
-            // Call Gemini API - suppress warnings for dynamic JSON response parsing
-            @SuppressWarnings({"unchecked", "rawtypes"})
-            ResponseEntity<Map<String, Object>> response = (ResponseEntity) restTemplate.exchange(
+            // Call Gemini API; only the first candidate's text is read from the reply
+            GeminiResponse responseBody = restTemplate.execute(
                 apiUrl,
                 HttpMethod.POST,
-                entity,
-                Map.class
+                restTemplate.httpEntityCallback(entity),
+                response -> GeminiResponse.read(objectMapper.getFactory(), response.getBody())
             );
-
-            // Extract AI response
-            Map<String, Object> responseBody = response.getBody();
             
             if (responseBody == null) {
                 log.error("Gemini API returned null response body");
@@ -114,35 +175,29 @@ public class AIController {
                     .body(Map.of("error", "Empty response from AI service"));
             }
             
-            log.info("Gemini API response received. Has candidates: {}", responseBody.containsKey("candidates"));
+            log.info("Gemini API response received. Has candidates: {}", responseBody.candidates() != null);
             
-            if (responseBody.containsKey("candidates")) {
-                @SuppressWarnings("unchecked")
-                List<Map<String, Object>> candidates = (List<Map<String, Object>>) responseBody.get("candidates");
+            if (responseBody.candidates() != null) {
+                GeminiResponse.Candidate candidate = responseBody.first();
                 
-                if (candidates == null || candidates.isEmpty()) {
+                if (candidate == null) {
                     log.warn("Gemini returned empty candidates list");
                     return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                         .body(Map.of("error", "AI returned no response candidates"));
                 }
                 
-                Map<String, Object> candidate = candidates.get(0);
-                @SuppressWarnings("unchecked")
-                Map<String, Object> content = (Map<String, Object>) candidate.get("content");
-                
-                if (content == null) {
+                if (candidate.content() == null) {
                     log.warn("Candidate has no content field");
                     return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                         .body(Map.of("error", "Invalid AI response structure"));
                 }
                 
-                @SuppressWarnings("unchecked")
-                List<Map<String, Object>> parts = (List<Map<String, Object>>) content.get("parts");
+                List<GeminiResponse.Part> parts = candidate.content().parts();
                 
                 if (parts != null && !parts.isEmpty()) {
-                    String aiResponse = (String) parts.get(0).get("text");
+                    String aiResponse = candidate.text();
                     
-                    if (aiResponse == null || aiResponse.isBlank()) {
+                    if (aiResponse.isBlank()) {
                         log.warn("AI response text is empty");
                         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                             .body(Map.of("error", "AI returned empty text"));
@@ -158,7 +213,7 @@ public class AIController {
                 }
             }
             
-            // Log the full response for debugging
+            // Log the parsed response for debugging
             log.error("Unexpected Gemini API response structure: {}", responseBody);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(Map.of("error", "Failed to parse AI response - unexpected format"));
@@ -181,6 +236,46 @@ public class AIController {
         }
     }
 
+    /** Gemini request body for {@code userMessage}, shared by the blocking and streaming chat. */
+    private static Map<String, Object> geminiRequest(String userMessage) {
+        // Create system instruction for simple, child-friendly legal explanations
+        String systemPrompt = """
+            You are a friendly legal assistant for kids. Your job is to explain legal concepts in the simplest way possible.
+            
+            Rules:
+            1. Keep your ENTIRE response under 50 words maximum
+            2. Use bullet points (•) to break down information
+            3. Explain like you're talking to a 10-year-old
+            4. Use simple words - no complex legal jargon
+            5. Be friendly and encouraging
+            6. If the topic is complex, give just the most important points
+            
+            Example format:
+            • [Simple point 1]
+            • [Simple point 2]
+            • [Simple point 3]
+            
+            Keep it SHORT and SIMPLE!
+            """;
+
+        // Construct Gemini API request
+        Map<String, Object> geminiRequest = new HashMap<>();
+        geminiRequest.put("contents", List.of(
+            Map.of("parts", List.of(
+                Map.of("text", systemPrompt + "\n\nUser question: " + userMessage)
+            ))
+        ));
+        
+        // Configure generation settings for concise responses
+        geminiRequest.put("generationConfig", Map.of(
+            "temperature", 0.7,
+            "maxOutputTokens", 150,  // Limit output to keep it under 50 words
+            "topP", 0.8,
+            "topK", 40
+        ));
+        return geminiRequest;
+    }
+
     /**
      * Health check endpoint
      */
@@ -214,7 +309,7 @@ public class AIController {
             Map<String, Object> testRequest = Map.of("message", testMessage);
             
             log.info("Testing Gemini API with model: {}", geminiModel);
-            ResponseEntity<?> response = chat(testRequest);
+            ResponseEntity<?> response = chat(testRequest).join();
             
             return ResponseEntity.ok(Map.of(
                 "status", "Test successful",
@@ -2,9 +2,8 @@ package com.example.demo.Controller;
 
 import com.example.demo.Classes.AuditLog;
 import com.example.demo.Classes.User;
-import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.CurrentUser;
 import com.example.demo.Repository.AuditLogRepository;
-import com.example.demo.Repository.UserAll;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -30,9 +29,6 @@ public class AuditController {
     @Autowired
     private AuditLogRepository auditRepo;
 
-    @Autowired
-    private UserAll userRepository;
-
     private Map<String, Object> toMap(AuditLog a) {
         Map<String, Object> m = new LinkedHashMap<>();
         m.put("id", a.getId());
@@ -53,12 +49,10 @@ public class AuditController {
      */
     @GetMapping
     public ResponseEntity<?> getAuditLog(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User user,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "50") int size) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User user = userRepository.searchByEmail(email);
             if (user == null || !Boolean.TRUE.equals(user.getIsJudge())) {
                 return ResponseEntity.status(403).body(Map.of("error", "Judges only"));
             }
@@ -79,10 +73,8 @@ public class AuditController {
     @GetMapping("/entity/{type}/{id}")
     public ResponseEntity<?> byEntity(
             @PathVariable String type, @PathVariable Integer id,
-            @RequestHeader("Authorization") String jwt) {
+            @CurrentUser User user) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User user = userRepository.searchByEmail(email);
             if (user == null) return ResponseEntity.status(401).build();
             List<AuditLog> logs = auditRepo.findByEntity(type.toUpperCase(), id);
             return ResponseEntity.ok(logs.stream().map(this::toMap).collect(Collectors.toList()));
@@ -97,10 +89,8 @@ public class AuditController {
     @GetMapping("/range")
     public ResponseEntity<?> byDateRange(
             @RequestParam String from, @RequestParam String to,
-            @RequestHeader("Authorization") String jwt) {
+            @CurrentUser User user) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User user = userRepository.searchByEmail(email);
             if (user == null || !Boolean.TRUE.equals(user.getIsJudge())) {
                 return ResponseEntity.status(403).body(Map.of("error", "Judges only"));
             }
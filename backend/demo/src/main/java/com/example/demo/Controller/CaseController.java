@@ -19,8 +19,7 @@ import org.springframework.web.bind.annotation.*;
 import com.example.demo.Classes.Case;
 import com.example.demo.Classes.User;
 import com.example.demo.Method.CaseService;
-import com.example.demo.Repository.UserAll;
-import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.CurrentUser;
 
 @RestController
 @RequestMapping("/api/cases")
@@ -37,19 +36,13 @@ public class CaseController {
     @Autowired
     private CaseService caseService;
     
-    @Autowired
-    private UserAll userRepository;
-
     // Basic CRUD Operations
     
     @PostMapping
     public ResponseEntity<?> createCase(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User currentUser,
             @RequestBody Map<String, Object> caseData) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User currentUser = userRepository.searchByEmail(email);
-            
             if (currentUser == null) {
                 return ResponseEntity.badRequest().body(Map.of("error", "User not found"));
             }
@@ -79,12 +72,9 @@ public class CaseController {
     
     @PostMapping("/create-indian-case")
     public ResponseEntity<?> createIndianCase(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User currentUser,
             @RequestBody Map<String, Object> caseData) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User currentUser = userRepository.searchByEmail(email);
-            
             if (currentUser == null) {
                 return ResponseEntity.badRequest().body(Map.of("error", "User not found"));
             }
@@ -430,11 +420,9 @@ public class CaseController {
     @PostMapping("/{id}/actual-outcome")
     public ResponseEntity<?> recordActualOutcome(
             @PathVariable Integer id,
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User user,
             @RequestBody Map<String, Object> data) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User user = userRepository.searchByEmail(email);
             if (user == null) {
                 return ResponseEntity.status(401).body(Map.of("error", "Unauthorized"));
             }
@@ -557,12 +545,9 @@ public class CaseController {
     @PostMapping("/{id}/close")
     public ResponseEntity<?> closeCase(
             @PathVariable Integer id,
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User judge,
             @RequestBody(required = false) Map<String, Object> data) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User judge = userRepository.searchByEmail(email);
-            
             if (judge == null || judge.getIsJudge() == null || !judge.getIsJudge()) {
                 return ResponseEntity.badRequest().body(Map.of("error", "Only judges can close cases"));
             }
@@ -592,12 +577,9 @@ public class CaseController {
     @PostMapping("/{id}/judgement")
     public ResponseEntity<?> addJudgement(
             @PathVariable Integer id,
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User judge,
             @RequestBody Map<String, Object> data) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User judge = userRepository.searchByEmail(email);
-            
             if (judge == null || judge.getIsJudge() == null || !judge.getIsJudge()) {
                 return ResponseEntity.badRequest().body(Map.of("error", "Only judges can add judgements"));
             }
@@ -7,7 +7,8 @@ import com.example.demo.Repository.ChatRepository;
 import com.example.demo.Repository.MessageRepository;
 import com.example.demo.Repository.UserAll;
 import com.example.demo.Repository.UserChatDao;
-import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.CurrentUser;
+import com.example.demo.Config.VerifiedClaims;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
@@ -48,9 +49,9 @@ public class ChatController {
     @GetMapping("/api/chat/list")
     @ResponseBody
     @Transactional(readOnly = true)
-    public ResponseEntity<?> getUserChats(@RequestHeader("Authorization") String jwt) {
+    public ResponseEntity<?> getUserChats(VerifiedClaims claims) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
+            String email = claims.email();
             User user = userRepository.searchByEmail(email);
             
             if (user == null) {
@@ -96,12 +97,12 @@ public class ChatController {
     @ResponseBody
     @Transactional(readOnly = true)
     public ResponseEntity<?> getChatMessages(
-            @RequestHeader("Authorization") String jwt,
+            VerifiedClaims claims,
             @PathVariable Integer chatId,
             @RequestParam(defaultValue = "50") int limit,
             @RequestParam(defaultValue = "0") int page) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
+            String email = claims.email();
             User user = userRepository.searchByEmail(email);
             
             if (user == null) {
@@ -141,12 +142,9 @@ public class ChatController {
     @PostMapping("/api/chat/create")
     @ResponseBody
     public ResponseEntity<?> createChat(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User currentUser,
             @RequestBody Map<String, Object> chatData) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User currentUser = userRepository.searchByEmail(email);
-            
             if (currentUser == null) {
                 return ResponseEntity.badRequest().body(Map.of("error", "User not found"));
             }
@@ -204,11 +202,11 @@ public class ChatController {
     @ResponseBody
     @Transactional
     public ResponseEntity<?> sendMessage(
-            @RequestHeader("Authorization") String jwt,
+            VerifiedClaims claims,
             @PathVariable Integer chatId,
             @RequestBody Map<String, Object> messageData) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
+            String email = claims.email();
             User user = userRepository.searchByEmail(email);
             
             if (user == null) {
@@ -276,13 +274,10 @@ public class ChatController {
     @GetMapping("/api/chat/search-users")
     @ResponseBody
     public ResponseEntity<?> searchUsers(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User currentUser,
             @RequestParam String query,
             @RequestParam(defaultValue = "10") int limit) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User currentUser = userRepository.searchByEmail(email);
-            
             if (currentUser == null) {
                 return ResponseEntity.badRequest().body(Map.of("error", "User not found"));
             }
@@ -3,13 +3,13 @@ package com.example.demo.Controller;
 import com.example.demo.Classes.Case;
 import com.example.demo.Classes.CaseHearing;
 import com.example.demo.Classes.User;
-import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.CurrentUser;
 import com.example.demo.Method.CaseService;
 import com.example.demo.Repository.CaseHearingRepository;
-import com.example.demo.Repository.UserAll;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.*;
 
@@ -35,9 +35,6 @@ public class HearingController {
     @Autowired
     private CaseService caseService;
 
-    @Autowired
-    private UserAll userRepository;
-
     @Autowired(required = false)
     private SimpMessagingTemplate messagingTemplate;
 
@@ -82,11 +79,9 @@ public class HearingController {
      */
     @PostMapping
     public ResponseEntity<?> createHearing(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User judge,
             @RequestBody Map<String, Object> data) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User judge = userRepository.searchByEmail(email);
             if (judge == null || !Boolean.TRUE.equals(judge.getIsJudge())) {
                 return ResponseEntity.status(403).body(Map.of("error", "Only judges can schedule hearings"));
             }
@@ -157,13 +152,11 @@ public class HearingController {
      */
     @GetMapping("/upcoming")
     public ResponseEntity<?> getUpcoming(
-            @RequestHeader(value = "Authorization", required = false) String jwt) {
+            @Nullable @CurrentUser User judge) {
         List<CaseHearing> list;
-        if (jwt != null) {
+        if (judge != null) {
             try {
-                String email = JwtProvider.getEmailFromJwt(jwt);
-                User judge = userRepository.searchByEmail(email);
-                if (judge != null && Boolean.TRUE.equals(judge.getIsJudge())) {
+                if (Boolean.TRUE.equals(judge.getIsJudge())) {
                     list = hearingRepo.findByDateRange(LocalDateTime.now(),
                             LocalDateTime.now().plusDays(30)).stream()
                             .filter(h -> h.getPresidingJudge() != null
@@ -194,11 +187,9 @@ public class HearingController {
     @PutMapping("/{id}")
     public ResponseEntity<?> updateHearing(
             @PathVariable Integer id,
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User judge,
             @RequestBody Map<String, Object> data) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User judge = userRepository.searchByEmail(email);
             if (judge == null || !Boolean.TRUE.equals(judge.getIsJudge())) {
                 return ResponseEntity.status(403).body(Map.of("error", "Only judges can update hearings"));
             }
@@ -234,11 +225,9 @@ public class HearingController {
     @PostMapping("/{id}/adjourn")
     public ResponseEntity<?> adjournHearing(
             @PathVariable Integer id,
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User judge,
             @RequestBody Map<String, Object> data) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User judge = userRepository.searchByEmail(email);
             if (judge == null || !Boolean.TRUE.equals(judge.getIsJudge())) {
                 return ResponseEntity.status(403).body(Map.of("error", "Forbidden"));
             }
@@ -282,11 +271,9 @@ public class HearingController {
     @PostMapping("/{id}/complete")
     public ResponseEntity<?> completeHearing(
             @PathVariable Integer id,
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User judge,
             @RequestBody Map<String, Object> data) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User judge = userRepository.searchByEmail(email);
             if (judge == null || !Boolean.TRUE.equals(judge.getIsJudge())) {
                 return ResponseEntity.status(403).body(Map.of("error", "Forbidden"));
             }
@@ -3,8 +3,7 @@ package com.example.demo.Controller;
 import com.example.demo.Classes.Case;
 import com.example.demo.Classes.User;
 import com.example.demo.Repository.CaseAll;
-import com.example.demo.Repository.UserAll;
-import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.http.ResponseEntity;
@@ -25,9 +24,6 @@ import java.util.stream.Collectors;
 @CrossOrigin(origins = {"http://localhost:3000", "https://ai-court-room-iota.vercel.app", "https://ai-courtroom.vercel.app"})
 public class JudgeController {
     
-    @Autowired
-    private UserAll userRepository;
-    
     @Autowired
     private CaseAll caseRepository;
 
@@ -35,11 +31,8 @@ public class JudgeController {
      * Get dashboard statistics for the judge
      */
     @GetMapping("/dashboard")
-    public ResponseEntity<?> getDashboardStats(@RequestHeader("Authorization") String jwt) {
+    public ResponseEntity<?> getDashboardStats(@CurrentUser User judge) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User judge = userRepository.searchByEmail(email);
-            
             if (judge == null || !Boolean.TRUE.equals(judge.getIsJudge())) {
                 return ResponseEntity.badRequest().body(Map.of("error", "Judge not found or unauthorized"));
             }
@@ -89,11 +82,8 @@ public class JudgeController {
      * Get all pending cases for the judge
      */
     @GetMapping("/pending-cases")
-    public ResponseEntity<?> getPendingCases(@RequestHeader("Authorization") String jwt) {
+    public ResponseEntity<?> getPendingCases(@CurrentUser User judge) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User judge = userRepository.searchByEmail(email);
-            
             if (judge == null || !Boolean.TRUE.equals(judge.getIsJudge())) {
                 return ResponseEntity.badRequest().body(Map.of("error", "Judge not found or unauthorized"));
             }
@@ -124,12 +114,9 @@ public class JudgeController {
      */
     @GetMapping("/cases/{caseId}")
     public ResponseEntity<?> getCaseDetails(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User judge,
             @PathVariable Integer caseId) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User judge = userRepository.searchByEmail(email);
-            
             if (judge == null || !Boolean.TRUE.equals(judge.getIsJudge())) {
                 return ResponseEntity.badRequest().body(Map.of("error", "Judge not found or unauthorized"));
             }
@@ -160,13 +147,10 @@ public class JudgeController {
      */
     @PutMapping("/cases/{caseId}/status")
     public ResponseEntity<?> updateCaseStatus(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User judge,
             @PathVariable Integer caseId,
             @RequestBody Map<String, String> statusData) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User judge = userRepository.searchByEmail(email);
-            
             if (judge == null || !Boolean.TRUE.equals(judge.getIsJudge())) {
                 return ResponseEntity.badRequest().body(Map.of("error", "Judge not found or unauthorized"));
             }
@@ -202,13 +186,10 @@ public class JudgeController {
      */
     @PostMapping("/cases/{caseId}/judgment")
     public ResponseEntity<?> addJudgment(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User judge,
             @PathVariable Integer caseId,
             @RequestBody Map<String, String> judgmentData) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User judge = userRepository.searchByEmail(email);
-            
             if (judge == null || !Boolean.TRUE.equals(judge.getIsJudge())) {
                 return ResponseEntity.badRequest().body(Map.of("error", "Judge not found or unauthorized"));
             }
@@ -255,11 +236,8 @@ public class JudgeController {
      * Get all judgments delivered by the judge
      */
     @GetMapping("/judgments")
-    public ResponseEntity<?> getJudgments(@RequestHeader("Authorization") String jwt) {
+    public ResponseEntity<?> getJudgments(@CurrentUser User judge) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User judge = userRepository.searchByEmail(email);
-            
             if (judge == null || !Boolean.TRUE.equals(judge.getIsJudge())) {
                 return ResponseEntity.badRequest().body(Map.of("error", "Judge not found or unauthorized"));
             }
@@ -3,10 +3,9 @@ package com.example.demo.Controller;
 import com.example.demo.Classes.User;
 import com.example.demo.Classes.Case;
 import com.example.demo.Classes.CaseRequest;
-import com.example.demo.Repository.UserAll;
 import com.example.demo.Repository.CaseAll;
 import com.example.demo.Repository.CaseRequestRepository;
-import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -26,9 +25,6 @@ import java.util.stream.Collectors;
 @CrossOrigin(origins = {"http://localhost:3000", "https://ai-court-room-iota.vercel.app", "https://ai-courtroom.vercel.app"})
 public class LawyerController {
     
-    @Autowired
-    private UserAll userRepository;
-    
     @Autowired
     private CaseAll caseRepository;
     
@@ -36,11 +32,8 @@ public class LawyerController {
     private CaseRequestRepository caseRequestRepository;
 
     @GetMapping("/dashboard")
-    public ResponseEntity<?> getDashboardStats(@RequestHeader("Authorization") String jwt) {
+    public ResponseEntity<?> getDashboardStats(@CurrentUser User lawyer) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User lawyer = userRepository.searchByEmail(email);
-            
             if (lawyer == null || !lawyer.getIsLawyer()) {
                 return ResponseEntity.badRequest().body(Map.of("error", "Lawyer not found"));
             }
@@ -79,11 +72,8 @@ public class LawyerController {
     }
 
     @GetMapping("/case-requests")
-    public ResponseEntity<?> getCaseRequests(@RequestHeader("Authorization") String jwt) {
+    public ResponseEntity<?> getCaseRequests(@CurrentUser User lawyer) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User lawyer = userRepository.searchByEmail(email);
-            
             if (lawyer == null || !lawyer.getIsLawyer()) {
                 return ResponseEntity.badRequest().body(Map.of("error", "Lawyer not found"));
             }
@@ -129,13 +119,10 @@ public class LawyerController {
 
     @PostMapping("/case-requests/{requestId}/accept")
     public ResponseEntity<?> acceptCaseRequest(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User lawyer,
             @PathVariable Integer requestId,
             @RequestBody(required = false) Map<String, String> responseData) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User lawyer = userRepository.searchByEmail(email);
-            
             if (lawyer == null || !lawyer.getIsLawyer()) {
                 return ResponseEntity.badRequest().body(Map.of("error", "Lawyer not found"));
             }
@@ -163,13 +150,10 @@ public class LawyerController {
 
     @PostMapping("/case-requests/{requestId}/reject")
     public ResponseEntity<?> rejectCaseRequest(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User lawyer,
             @PathVariable Integer requestId,
             @RequestBody(required = false) Map<String, String> responseData) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User lawyer = userRepository.searchByEmail(email);
-            
             if (lawyer == null || !lawyer.getIsLawyer()) {
                 return ResponseEntity.badRequest().body(Map.of("error", "Lawyer not found"));
             }
@@ -196,11 +180,8 @@ public class LawyerController {
     }
 
     @GetMapping("/cases")
-    public ResponseEntity<?> getMyCases(@RequestHeader("Authorization") String jwt) {
+    public ResponseEntity<?> getMyCases(@CurrentUser User lawyer) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User lawyer = userRepository.searchByEmail(email);
-            
             if (lawyer == null || !lawyer.getIsLawyer()) {
                 return ResponseEntity.badRequest().body(Map.of("error", "Lawyer not found"));
             }
@@ -252,11 +233,8 @@ public class LawyerController {
     }
 
     @GetMapping("/chats")
-    public ResponseEntity<?> getChats(@RequestHeader("Authorization") String jwt) {
+    public ResponseEntity<?> getChats(@CurrentUser User lawyer) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User lawyer = userRepository.searchByEmail(email);
-            
             if (lawyer == null || !lawyer.getIsLawyer()) {
                 return ResponseEntity.badRequest().body(Map.of("error", "Lawyer not found"));
             }
@@ -1,9 +1,8 @@
 package com.example.demo.Controller;
 
 import com.example.demo.Classes.*;
-import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.CurrentUser;
 import com.example.demo.Implementation.SubscriptionService;
-import com.example.demo.Repository.UserAll;
 import com.razorpay.Order;
 import com.razorpay.RazorpayClient;
 import com.razorpay.RazorpayException;
@@ -28,9 +27,6 @@ public class SubscriptionController {
     @Autowired
     private SubscriptionService subscriptionService;
     
-    @Autowired
-    private UserAll userRepository;
-    
     @Value("${razorpay.key.id:}")
     private String razorpayKeyId;
     
@@ -63,11 +59,8 @@ public class SubscriptionController {
      * Check user's current access status
      */
     @GetMapping("/access")
-    public ResponseEntity<?> checkAccess(@RequestHeader("Authorization") String jwt) {
+    public ResponseEntity<?> checkAccess(@CurrentUser User user) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User user = userRepository.searchByEmail(email);
-            
             if (user == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("error", "User not found"));
@@ -87,11 +80,8 @@ public class SubscriptionController {
      * Get user's subscription history
      */
     @GetMapping("/history")
-    public ResponseEntity<?> getHistory(@RequestHeader("Authorization") String jwt) {
+    public ResponseEntity<?> getHistory(@CurrentUser User user) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User user = userRepository.searchByEmail(email);
-            
             if (user == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("error", "User not found"));
@@ -136,12 +126,9 @@ public class SubscriptionController {
      */
     @PostMapping("/create-order")
     public ResponseEntity<?> createOrder(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User user,
             @RequestBody Map<String, String> request) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User user = userRepository.searchByEmail(email);
-            
             if (user == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("error", "User not found"));
@@ -230,12 +217,9 @@ public class SubscriptionController {
      */
     @PostMapping("/verify-payment")
     public ResponseEntity<?> verifyPayment(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User user,
             @RequestBody Map<String, String> request) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User user = userRepository.searchByEmail(email);
-            
             if (user == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("error", "User not found"));
@@ -300,12 +284,9 @@ public class SubscriptionController {
      */
     @PostMapping("/{subscriptionId}/cancel")
     public ResponseEntity<?> cancelSubscription(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User user,
             @PathVariable Long subscriptionId) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User user = userRepository.searchByEmail(email);
-            
             if (user == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("error", "User not found"));
@@ -330,11 +311,8 @@ public class SubscriptionController {
      * Use an AI query (to be called before each AI request)
      */
     @PostMapping("/use-query")
-    public ResponseEntity<?> useQuery(@RequestHeader("Authorization") String jwt) {
+    public ResponseEntity<?> useQuery(@CurrentUser User user) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User user = userRepository.searchByEmail(email);
-            
             if (user == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("error", "User not found"));
@@ -6,7 +6,8 @@ import com.example.demo.Classes.CaseRequest;
 import com.example.demo.Repository.UserAll;
 import com.example.demo.Repository.CaseAll;
 import com.example.demo.Repository.CaseRequestRepository;
-import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.CurrentUser;
+import com.example.demo.Config.VerifiedClaims;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -43,11 +44,8 @@ public class UserControllerAPI {
     private CaseRequestRepository caseRequestRepository;
 
     @GetMapping("/profile")
-    public ResponseEntity<?> getUserProfile(@RequestHeader("Authorization") String jwt) {
+    public ResponseEntity<?> getUserProfile(@CurrentUser User user) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User user = userRepository.searchByEmail(email);
-            
             if (user == null) {
                 return ResponseEntity.notFound().build();
             }
@@ -93,10 +91,10 @@ public class UserControllerAPI {
 
     @PutMapping(value = "/profile", consumes = {"application/json", "application/json;charset=UTF-8"}, produces = "application/json")
     public ResponseEntity<?> updateUserProfile(
-            @RequestHeader("Authorization") String jwt,
+            VerifiedClaims claims,
             @RequestBody User updatedUser) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
+            String email = claims.email();
             User existingUser = userRepository.searchByEmail(email);
             
             if (existingUser == null) {
@@ -195,12 +193,10 @@ public class UserControllerAPI {
 
     @PostMapping(value = "/request-lawyer/{lawyerId}", consumes = {"application/json", "application/json;charset=UTF-8"}, produces = "application/json")
     public ResponseEntity<?> requestLawyer(
-            @RequestHeader("Authorization") String jwt,
+            @CurrentUser User user,
             @PathVariable Integer lawyerId,
             @RequestBody Map<String, Object> caseData) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User user = userRepository.searchByEmail(email);
             User lawyer = userRepository.findById(lawyerId).orElse(null);
             
             if (user == null || lawyer == null || !lawyer.getIsLawyer()) {
@@ -254,11 +250,8 @@ public class UserControllerAPI {
     }
 
     @GetMapping("/cases")
-    public ResponseEntity<?> getUserCases(@RequestHeader("Authorization") String jwt) {
+    public ResponseEntity<?> getUserCases(@CurrentUser User user) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User user = userRepository.searchByEmail(email);
-            
             if (user == null) {
                 return ResponseEntity.notFound().build();
             }
@@ -335,11 +328,8 @@ public class UserControllerAPI {
     }
 
     @GetMapping("/chats")
-    public ResponseEntity<?> getUserChats(@RequestHeader("Authorization") String jwt) {
+    public ResponseEntity<?> getUserChats(@CurrentUser User user) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
-            User user = userRepository.searchByEmail(email);
-            
             if (user == null) {
                 return ResponseEntity.notFound().build();
             }
@@ -357,9 +347,9 @@ public class UserControllerAPI {
     }
 
     @PostMapping("/decrement-attempts")
-    public ResponseEntity<?> decrementAttempts(@RequestHeader("Authorization") String jwt) {
+    public ResponseEntity<?> decrementAttempts(VerifiedClaims claims) {
         try {
-            String email = JwtProvider.getEmailFromJwt(jwt);
+            String email = claims.email();
             User user = userRepository.searchByEmail(email);
             
             if (user == null) {
@@ -0,0 +1,61 @@
+package com.example.demo.Implementation;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+
+/**
+ * Hands an AI analysis future to Spring MVC as a {@link DeferredResult} that gives up the call
+ * when {@code spring.mvc.async.request-timeout} expires.
+ *
+ * <p>A plain {@link CompletableFuture} return value keeps running after MVC has timed the
+ * request out, so the answer is cached and the query charged although nobody receives it. On
+ * timeout this cancels {@code call} instead: the caller's refund, chained onto the call, runs
+ * as for any other failure, and a call still queued in {@link com.example.demo.Config.AiTierScheduler}
+ * leaves the queue. The client gets {@code 504 ai_timeout}.
+ */
+public final class AiDeferredResponse {
+
+    private AiDeferredResponse() {
+    }
+
+    /**
+     * {@code response} as a deferred result; on timeout {@code call}, the future {@code response}
+     * is derived from, is cancelled.
+     */
+    public static DeferredResult<ResponseEntity<?>> of(CompletableFuture<? extends ResponseEntity<?>> response,
+                                                       Future<?> call) {
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+        result.onTimeout(() -> {
+            result.setResult(timedOut()); // before cancelling, which fails response at once
+            call.cancel(false);
+        });
+        response.whenComplete((value, error) -> {
+            if (error == null) {
+                result.setResult(value);
+            } else {
+                result.setErrorResult(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            }
+        });
+        return result;
+    }
+
+    /** An answer that is already known, such as a rejection or a cache hit. */
+    public static DeferredResult<ResponseEntity<?>> of(ResponseEntity<?> response) {
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+        result.setResult(response);
+        return result;
+    }
+
+    private static ResponseEntity<?> timedOut() {
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(Map.of(
+                "error", "ai_timeout",
+                "message", "The AI service did not answer in time. Please try again."));
+    }
+}
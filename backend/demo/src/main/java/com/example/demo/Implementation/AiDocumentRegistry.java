@@ -0,0 +1,137 @@
+package com.example.demo.Implementation;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+
+/**
+ * Content-addressed record of the documents the AI agent has already ingested (OCR plus
+ * processing) for each user, so a file uploaded again can be sent by its SHA-256 instead of
+ * by its bytes.
+ *
+ * <p>Files are hashed by reading them in {@code ai.upload.chunk-size-bytes} pieces. Large
+ * uploads are read from Tomcat's spill file, so hashing costs one chunk of heap. A hash is
+ * recorded only after the agent accepted the upload, and is kept for
+ * {@code ai.upload.dedup.ttl-seconds}. That should be shorter than the agent keeps documents.
+ * Even so, the agent may have dropped a document, so callers must be ready to
+ * {@link #forget} it and send the bytes again.
+ *
+ * <p>Off by default ({@code ai.upload.dedup.enabled}): an agent that does not know
+ * {@code document_refs} ignores it and analyses the case without the document, and nothing
+ * reports the loss.
+ *
+ * <p>Exported as {@code ai.upload.dedup.files{result=reused|uploaded}} and
+ * {@code ai.upload.dedup.bytes.saved}; registry size as {@code cache.*{cache=ai-documents}}.
+ */
+@Component
+public class AiDocumentRegistry {
+
+    static final String CACHE_NAME = "ai-documents";
+
+    private final boolean enabled;
+    private final int chunkSize;
+    private final Cache<String, Boolean> processed;
+    private final Counter reused;
+    private final Counter uploaded;
+    private final Counter bytesSaved;
+
+    @Autowired
+    public AiDocumentRegistry(MeterRegistry meterRegistry,
+                              @Value("${ai.upload.dedup.enabled:false}") boolean enabled,
+                              @Value("${ai.upload.dedup.max-size:100000}") long maxSize,
+                              @Value("${ai.upload.dedup.ttl-seconds:86400}") long ttlSeconds,
+                              @Value("${ai.upload.chunk-size-bytes:65536}") int chunkSize) {
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.processed = Caffeine.newBuilder()
+                .maximumSize(Math.max(0, maxSize))
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, ttlSeconds)))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, processed, CACHE_NAME);
+        this.reused = files(meterRegistry, "reused");
+        this.uploaded = files(meterRegistry, "uploaded");
+        this.bytesSaved = Counter.builder("ai.upload.dedup.bytes.saved")
+                .baseUnit("bytes")
+                .description("Upload bytes not sent to the AI agent because it already had the document")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Hex SHA-256 of the file's content, read in fixed-size chunks. */
+    public String sha256(MultipartFile file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] chunk = new byte[chunkSize];
+        try (InputStream in = file.getInputStream()) {
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                digest.update(chunk, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /** Whether the agent already ingested a document with this hash for the user. */
+    public boolean isKnown(Integer userId, String sha256) {
+        return enabled && processed.getIfPresent(key(userId, sha256)) != null;
+    }
+
+    /** The agent accepted an upload of this document for the user. */
+    public void recordUploaded(Integer userId, String sha256) {
+        uploaded.increment();
+        if (enabled) {
+            processed.put(key(userId, sha256), Boolean.TRUE);
+        }
+    }
+
+    /** A document of {@code size} bytes was sent by reference instead of uploaded again. */
+    public void recordReused(long size) {
+        reused.increment();
+        bytesSaved.increment(size);
+    }
+
+    /** The agent no longer has this document; the next upload must send its bytes. */
+    public void forget(Integer userId, String sha256) {
+        processed.invalidate(key(userId, sha256));
+    }
+
+    long size() {
+        processed.cleanUp();
+        return processed.estimatedSize();
+    }
+
+    private static String key(Integer userId, String sha256) {
+        return userId + "|" + sha256;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static Counter files(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("ai.upload.dedup.files")
+                .tag("result", result)
+                .description("Documents forwarded to the AI agent, by whether their bytes were sent")
+                .register(meterRegistry);
+    }
+}
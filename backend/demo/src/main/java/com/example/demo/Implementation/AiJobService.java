@@ -0,0 +1,407 @@
+package com.example.demo.Implementation;
+
+import com.example.demo.Classes.AiJob;
+import com.example.demo.Classes.AiJobStatus;
+import com.example.demo.Classes.User;
+import com.example.demo.Repository.AiJobRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs full agent analyses as background jobs so the browser does not hold an HTTP request
+ * open for the 30–120 s the agent needs. A proxy timeout can then no longer lose the result
+ * or the query it was charged for.
+ *
+ * <p>The {@code ai_jobs} table is the queue. {@link #submit} stores a {@link AiJobStatus#QUEUED}
+ * row and returns at once. A dispatcher thread on every instance claims queued jobs with a
+ * conditional update, up to {@code ai.jobs.workers} at a time, and runs them on its worker
+ * pool. A job still {@link AiJobStatus#RUNNING} after {@code ai.jobs.lease-seconds} belonged to
+ * an instance that died; it is queued again, up to {@code ai.jobs.max-attempts} calls in total.
+ * An instance that shuts down cleanly queues its running jobs again straight away.
+ *
+ * <p>The query is reserved through {@link AiQuotaLedger} before the job is stored, so queued
+ * jobs cannot spend more than the user has left, and the reservation is kept on the job. It is
+ * refunded exactly once when the job fails (including after its last lease) or is cancelled:
+ * every final update is conditional on the job still being active, and only the update that
+ * wins refunds. Every status change is pushed to the owner on {@code /user/queue/jobs}.
+ */
+@Slf4j
+@Service
+public class AiJobService {
+
+    public static final String AGENT_ANALYZE = "agent-analyze";
+    public static final String QUEUE = "/queue/jobs";
+
+    private static final List<AiJobStatus> ACTIVE = List.of(AiJobStatus.QUEUED, AiJobStatus.RUNNING);
+    private static final List<AiJobStatus> RUNNING = List.of(AiJobStatus.RUNNING);
+    private static final TypeReference<Map<String, Object>> JSON_OBJECT = new TypeReference<>() {};
+
+    @Autowired
+    private AiJobRepository jobRepository;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private AiResponseCache aiResponseCache;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ai.service.url}")
+    private String aiServiceUrl;
+
+    @Value("${ai.service.api.key:}")
+    private String aiServiceApiKey;
+
+    @Value("${ai.jobs.workers:4}")
+    private int workers;
+
+    @Value("${ai.jobs.poll-interval-ms:2000}")
+    private long pollIntervalMs;
+
+    @Value("${ai.jobs.lease-seconds:180}")
+    private long leaseSeconds;
+
+    @Value("${ai.jobs.max-attempts:2}")
+    private int maxAttempts;
+
+    /** Jobs this instance is executing, so a cancel can interrupt them. */
+    private final ConcurrentMap<String, FutureTask<Void>> running = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService dispatcher;
+    private ExecutorService workerPool;
+    private volatile boolean stopping;
+
+    @PostConstruct
+    void start() {
+        AtomicInteger workerIds = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(Math.max(1, workers), r -> {
+            Thread t = new Thread(r, "ai-job-worker-" + workerIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ai-job-dispatcher");
+            t.setDaemon(true);
+            return t;
+        });
+        dispatcher.scheduleWithFixedDelay(this::tick, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+        Gauge.builder("ai.jobs.running", running, Map::size)
+                .description("AI jobs executing on this instance")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        stopping = true;
+        List<String> interrupted = List.copyOf(running.keySet());
+        dispatcher.shutdownNow();
+        workerPool.shutdownNow();
+        for (String id : interrupted) {
+            jobRepository.findById(id).ifPresent(job -> {
+                if (jobRepository.requeue(id, AiJobStatus.RUNNING, AiJobStatus.QUEUED, job.getStartedAt()) == 1) {
+                    log.info("Re-queued AI job {} on shutdown", id);
+                }
+            });
+        }
+    }
+
+    /**
+     * Store a queued agent analysis for {@code user}, paid for by {@code reservation}. A request
+     * whose answer is already in the {@link AiResponseCache} becomes a job that has already
+     * succeeded; its query is refunded unless {@code ai.cache.hit-consumes-quota}.
+     */
+    public AiJob submit(User user, String tier, AiQuotaLedger.Reservation reservation, Map<String, Object> body)
+            throws JsonProcessingException {
+        AiJob job = new AiJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setKind(AGENT_ANALYZE);
+        job.setUserId(user.getId());
+        job.setUserEmail(user.getEmail());
+        job.setTier(tier);
+        job.setRequest(objectMapper.writeValueAsString(body));
+        job.setStatus(AiJobStatus.QUEUED);
+        job.setChargedQueries(reservation.units());
+        job.setChargedSubscriptionId(reservation.subscriptionId());
+
+        Optional<Map<String, Object>> cached = aiResponseCache.get(AiResponseCache.AGENT_ANALYZE,
+                AiRequestFingerprint.of(body, tier, user.getId()));
+        if (cached.isPresent()) {
+            job.setStatus(AiJobStatus.SUCCEEDED);
+            job.setResult(objectMapper.writeValueAsString(cached.get()));
+            job.setFinishedAt(LocalDateTime.now());
+            if (!aiResponseCache.hitConsumesQuota()) {
+                job.setChargedQueries(0);
+            }
+        }
+        jobRepository.save(job);
+        if (job.getChargedQueries() < reservation.units()) {
+            subscriptionService.refundAIQuery(user, reservation);
+        }
+        completed(job.getStatus());
+        if (job.getStatus() == AiJobStatus.QUEUED) {
+            kickDispatcher();
+        }
+        return job;
+    }
+
+    /** The job, if it exists and belongs to {@code user}. */
+    public Optional<AiJob> find(String id, User user) {
+        return jobRepository.findByIdAndUserId(id, user.getId());
+    }
+
+    /**
+     * Cancel a queued or running job of {@code user}. Returns the job as it is afterwards, so a
+     * caller can tell a cancelled job from one that had already finished.
+     */
+    public Optional<AiJob> cancel(String id, User user) {
+        Optional<AiJob> job = find(id, user);
+        if (job.isEmpty() || job.get().getStatus().isTerminal()) {
+            return job;
+        }
+        if (jobRepository.finish(id, ACTIVE, AiJobStatus.CANCELLED, null, "cancelled", LocalDateTime.now()) == 1) {
+            FutureTask<Void> task = running.get(id);
+            if (task != null) {
+                task.cancel(true);
+            }
+            completed(AiJobStatus.CANCELLED);
+            refund(job.get());
+            log.info("AI job {} cancelled by {}", id, user.getEmail());
+        }
+        Optional<AiJob> current = jobRepository.findById(id);
+        current.ifPresent(this::push);
+        return current;
+    }
+
+    /** The JSON shape returned by the job endpoints and pushed on {@link #QUEUE}. */
+    public Map<String, Object> view(AiJob job) {
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("jobId", job.getId());
+        view.put("kind", job.getKind());
+        view.put("status", job.getStatus().name());
+        view.put("createdAt", job.getCreatedAt());
+        view.put("startedAt", job.getStartedAt());
+        view.put("finishedAt", job.getFinishedAt());
+        view.put("attempts", job.getAttempts());
+        if (job.getResult() != null) {
+            try {
+                view.put("result", objectMapper.readValue(job.getResult(), JSON_OBJECT));
+            } catch (JsonProcessingException e) {
+                log.error("Stored result of AI job {} is not valid JSON: {}", job.getId(), e.getMessage());
+            }
+        }
+        if (job.getError() != null) {
+            view.put("error", job.getError());
+        }
+        return view;
+    }
+
+    private void tick() {
+        try {
+            recoverStale();
+            dispatch();
+        } catch (RuntimeException e) {
+            log.error("AI job dispatch failed: {}", e.getMessage());
+        }
+    }
+
+    /** Dispatch now rather than at the next poll. */
+    private void kickDispatcher() {
+        try {
+            dispatcher.execute(this::dispatch);
+        } catch (RejectedExecutionException e) {
+            // Shutting down; the job stays queued for another instance.
+        }
+    }
+
+    /** Claim as many queued jobs as there are idle workers. Runs on the dispatcher thread. */
+    private void dispatch() {
+        int idle = Math.max(1, workers) - running.size();
+        if (stopping || idle <= 0) {
+            return;
+        }
+        for (String id : jobRepository.findIdsByStatus(AiJobStatus.QUEUED, PageRequest.of(0, idle))) {
+            if (jobRepository.claim(id, AiJobStatus.QUEUED, AiJobStatus.RUNNING, LocalDateTime.now()) == 1) {
+                FutureTask<Void> task = new FutureTask<>(() -> run(id), null);
+                running.put(id, task);
+                workerPool.execute(task);
+            }
+        }
+    }
+
+    private void recoverStale() {
+        LocalDateTime cutoff = LocalDateTime.now().minusSeconds(leaseSeconds);
+        for (AiJob job : jobRepository.findStale(AiJobStatus.RUNNING, cutoff)) {
+            if (running.containsKey(job.getId())) {
+                continue; // still ours and alive
+            }
+            if (job.getAttempts() < maxAttempts) {
+                if (jobRepository.requeue(job.getId(), AiJobStatus.RUNNING, AiJobStatus.QUEUED, job.getStartedAt()) == 1) {
+                    log.warn("AI job {} outlived its lease; re-queued (attempt {} of {})",
+                            job.getId(), job.getAttempts(), maxAttempts);
+                }
+            } else {
+                finish(job, AiJobStatus.FAILED, null, "worker_lost");
+            }
+        }
+    }
+
+    private void run(String id) {
+        try {
+            AiJob job = jobRepository.findById(id).orElse(null);
+            if (job == null || job.getStatus() != AiJobStatus.RUNNING) {
+                return;
+            }
+            push(job);
+            try {
+                Map<String, Object> body = objectMapper.readValue(job.getRequest(), JSON_OBJECT);
+                String fingerprint = AiRequestFingerprint.of(body, job.getTier(), job.getUserId());
+                Map<String, Object> result = callAgent(job, body);
+                if (settle(job, AiJobStatus.SUCCEEDED, objectMapper.writeValueAsString(result), null)) {
+                    aiResponseCache.put(AiResponseCache.AGENT_ANALYZE, fingerprint, result);
+                    jobRepository.findById(id).ifPresent(this::push);
+                }
+            } catch (RestClientException e) {
+                if (stopping) {
+                    return; // stop() queues it again
+                }
+                if (job.getAttempts() < maxAttempts
+                        && jobRepository.requeue(id, AiJobStatus.RUNNING, AiJobStatus.QUEUED, job.getStartedAt()) == 1) {
+                    log.warn("AI job {} failed upstream ({}); re-queued", id, e.getMessage());
+                    push(jobRepository.findById(id).orElse(job));
+                } else {
+                    log.error("AI job {} failed upstream: {}", id, e.getMessage());
+                    finish(job, AiJobStatus.FAILED, null, "agent_unavailable");
+                }
+            } catch (Exception e) {
+                log.error("AI job {} failed: {}", id, e.getMessage(), e);
+                finish(job, AiJobStatus.FAILED, null, "analysis_failed");
+            }
+        } finally {
+            running.remove(id);
+            kickDispatcher();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> callAgent(AiJob job, Map<String, Object> body) {
+        Map<String, Object> request = new LinkedHashMap<>(body);
+        request.put("tier", job.getTier());
+        request.put("user_id", job.getUserId().toString());
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (aiServiceApiKey != null && !aiServiceApiKey.isBlank()) {
+            headers.set("X-API-Key", aiServiceApiKey);
+        }
+
+        log.info("AI job {} (agent analyze) for user {} (tier={}, attempt {})",
+                job.getId(), job.getUserEmail(), job.getTier(), job.getAttempts());
+        ResponseEntity<Map> response = restTemplate.exchange(aiServiceUrl + "/agent/analyze", HttpMethod.POST,
+                new HttpEntity<>(request, headers), Map.class);
+        return response.getBody() != null ? response.getBody() : Map.of();
+    }
+
+    /**
+     * Move a running job to a final status, refunding its query if it failed, and push it;
+     * false if it was cancelled or finished meanwhile.
+     */
+    private boolean finish(AiJob job, AiJobStatus status, String result, String error) {
+        if (!settle(job, status, result, error)) {
+            return false;
+        }
+        if (status == AiJobStatus.FAILED) {
+            refund(job);
+        }
+        jobRepository.findById(job.getId()).ifPresent(this::push);
+        return true;
+    }
+
+    /** Give back the queries reserved for {@code job}; call once, after the update that ended it. */
+    private void refund(AiJob job) {
+        if (job.getChargedQueries() <= 0) {
+            return;
+        }
+        User user = userCache.findByEmail(job.getUserEmail());
+        if (user == null) {
+            log.warn("AI job {} ended unpaid-for but its user {} is gone; {} queries not refunded",
+                    job.getId(), job.getUserEmail(), job.getChargedQueries());
+            return;
+        }
+        Long subscriptionId = job.getChargedSubscriptionId();
+        subscriptionService.refundAIQuery(user, new AiQuotaLedger.Reservation(job.getChargedQueries(),
+                subscriptionId != null ? AiQuotaLedger.SUBSCRIPTION : AiQuotaLedger.FREE_TRIAL,
+                subscriptionId, job.getUserId(), null, 0));
+    }
+
+    private boolean settle(AiJob job, AiJobStatus status, String result, String error) {
+        if (jobRepository.finish(job.getId(), RUNNING, status, result, error, LocalDateTime.now()) != 1) {
+            log.info("AI job {} was cancelled while running; discarding its {}", job.getId(), status);
+            return false;
+        }
+        completed(status);
+        return true;
+    }
+
+    private void push(AiJob job) {
+        try {
+            messagingTemplate.convertAndSendToUser(job.getUserEmail(), QUEUE, view(job));
+        } catch (Exception e) {
+            // Clients that are not connected poll GET /api/agent/jobs/{id} instead.
+            log.debug("Could not push AI job {} update: {}", job.getId(), e.getMessage());
+        }
+    }
+
+    private void completed(AiJobStatus status) {
+        if (status.isTerminal()) {
+            meterRegistry.counter("ai.jobs.completed", "status", status.name().toLowerCase()).increment();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.demo.Implementation;
+
+import com.example.demo.Config.AiProxyExecutor;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Stale-while-revalidate cache for the read-only AI upstream resources that are polled rather
+ * than asked: the agent's document types and the agent and ML health checks.
+ *
+ * <p>A value younger than {@code ai.metadata-cache.ttl-seconds} is served as is. An older one is
+ * still served, and a single background refresh is started on the AI proxy pool, so uptime
+ * checks never wait on (or wake) the sleeping Render service in the request path. Past
+ * {@code ai.metadata-cache.max-stale-seconds} the value is fetched again in the request, and if
+ * that fails the caller gets the upstream error, so a health probe cannot report a long-dead
+ * service as up. The one exception is an open circuit breaker for the upstream host: the last
+ * known value is then served whatever its age, since no call would be made anyway.
+ *
+ * <p>Only successful bodies are kept. {@link Entry#ageSeconds()} is what the controllers put
+ * in the {@code Age} header. Lookups are counted as
+ * {@code ai.metadata.requests{resource,result=fresh|stale|miss|fallback}} and failed background
+ * refreshes as {@code ai.metadata.refresh.failures{resource}}.
+ */
+@Slf4j
+@Component
+public class AiMetadataCache {
+
+    public static final String DOCUMENT_TYPES = "agent-document-types";
+    public static final String AGENT_HEALTH = "agent-health";
+    public static final String ML_HEALTH = "ml-health";
+
+    /**
+     * A body and when it was fetched; {@code result} is how this lookup was answered
+     * ({@code fresh}, {@code stale}, {@code fallback} or {@code miss}).
+     */
+    public record Entry(Map<String, Object> body, long fetchedAtMillis, long ageSeconds, String result) {
+
+        /**
+         * A {@code 200} carrying the data's age in {@code Age} and, when it came from the cache,
+         * {@code X-AI-Cache: HIT} or {@code STALE}.
+         */
+        public ResponseEntity.BodyBuilder ok() {
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok().header(HttpHeaders.AGE, Long.toString(ageSeconds));
+            return switch (result) {
+                case "fresh" -> builder.header(AiResponseCache.HEADER, "HIT");
+                case "stale", "fallback" -> builder.header(AiResponseCache.HEADER, "STALE");
+                default -> builder;
+            };
+        }
+    }
+
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final long maxStaleMillis;
+    private final AiProxyExecutor executor;
+    private final CircuitBreakerRegistry breakers;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public AiMetadataCache(MeterRegistry meterRegistry,
+                           AiProxyExecutor aiProxyExecutor,
+                           CircuitBreakerRegistry aiCircuitBreakerRegistry,
+                           @Value("${ai.metadata-cache.enabled:true}") boolean enabled,
+                           @Value("${ai.metadata-cache.ttl-seconds:30}") long ttlSeconds,
+                           @Value("${ai.metadata-cache.max-stale-seconds:300}") long maxStaleSeconds) {
+        this(meterRegistry, aiProxyExecutor, aiCircuitBreakerRegistry, enabled, ttlSeconds, maxStaleSeconds,
+                Clock.systemUTC());
+    }
+
+    AiMetadataCache(MeterRegistry meterRegistry, AiProxyExecutor executor, CircuitBreakerRegistry breakers,
+                    boolean enabled, long ttlSeconds, long maxStaleSeconds, Clock clock) {
+        this.meterRegistry = meterRegistry;
+        this.executor = executor;
+        this.breakers = breakers;
+        this.enabled = enabled;
+        this.ttlMillis = Math.max(0, ttlSeconds) * 1000;
+        this.maxStaleMillis = Math.max(ttlSeconds, maxStaleSeconds) * 1000;
+        this.clock = clock;
+    }
+
+    /**
+     * The body of {@code resource}, fetched from {@code url} by {@code fetch} when there is no
+     * usable cached value. Exceptions from a fetch in the request path propagate to the caller.
+     */
+    public Entry get(String resource, String url, Supplier<Map<String, Object>> fetch) {
+        Supplier<Map<String, Object>> upstream = () -> {
+            Map<String, Object> body = fetch.get();
+            return body == null ? Map.of() : body;
+        };
+        Entry cached = enabled ? entries.get(resource) : null;
+        if (cached == null) {
+            return fetched(resource, upstream);
+        }
+        long now = clock.millis();
+        long age = now - cached.fetchedAtMillis();
+        if (age < ttlMillis) {
+            return served(resource, cached, now, "fresh");
+        }
+        boolean breakerOpen = breakerOpen(url);
+        if (age < maxStaleMillis) {
+            if (!breakerOpen) {
+                refreshInBackground(resource, upstream);
+            }
+            return served(resource, cached, now, "stale");
+        }
+        if (breakerOpen) {
+            return served(resource, cached, now, "fallback");
+        }
+        return fetched(resource, upstream);
+    }
+
+    private Entry fetched(String resource, Supplier<Map<String, Object>> fetch) {
+        Entry entry = store(resource, fetch.get());
+        requests(resource, "miss").increment();
+        return entry;
+    }
+
+    private Entry store(String resource, Map<String, Object> body) {
+        Map<String, Object> copy = Collections.unmodifiableMap(new LinkedHashMap<>(body));
+        Entry entry = new Entry(copy, clock.millis(), 0, "miss");
+        if (enabled) {
+            entries.put(resource, entry);
+        }
+        return entry;
+    }
+
+    private Entry served(String resource, Entry cached, long now, String result) {
+        requests(resource, result).increment();
+        return new Entry(cached.body(), cached.fetchedAtMillis(), (now - cached.fetchedAtMillis()) / 1000, result);
+    }
+
+    private void refreshInBackground(String resource, Supplier<Map<String, Object>> fetch) {
+        if (!refreshing.add(resource)) {
+            return;
+        }
+        boolean started = executor.execute(() -> {
+            try {
+                store(resource, fetch.get());
+            } catch (RuntimeException e) {
+                log.debug("Background refresh of {} failed: {}", resource, e.getMessage());
+                Counter.builder("ai.metadata.refresh.failures")
+                        .tag("resource", resource)
+                        .description("Background refreshes of cached AI metadata that failed")
+                        .register(meterRegistry)
+                        .increment();
+            } finally {
+                refreshing.remove(resource);
+            }
+        });
+        if (!started) {
+            refreshing.remove(resource);
+        }
+    }
+
+    private boolean breakerOpen(String url) {
+        String host = URI.create(url).getHost();
+        if (host == null) {
+            return false;
+        }
+        CircuitBreaker.State state = breakers.circuitBreaker(host).getState();
+        return state == CircuitBreaker.State.OPEN || state == CircuitBreaker.State.FORCED_OPEN;
+    }
+
+    private Counter requests(String resource, String result) {
+        return Counter.builder("ai.metadata.requests")
+                .tag("resource", resource)
+                .tag("result", result)
+                .description("Lookups of cached AI metadata by resource and outcome")
+                .register(meterRegistry);
+    }
+}
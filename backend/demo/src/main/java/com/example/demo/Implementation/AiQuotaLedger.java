@@ -0,0 +1,189 @@
+package com.example.demo.Implementation;
+
+import com.example.demo.Classes.SubscriptionPlan;
+import com.example.demo.Classes.User;
+import com.example.demo.Repository.SubscriptionRepository;
+import com.example.demo.Repository.UserAll;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * AI query accounting without read-check-write. A unit is taken with one conditional
+ * {@code UPDATE} ({@code used = used + n WHERE used + n <= allowed} on the active subscription,
+ * or the same on the user's free trials), so concurrent calls can never spend more than the
+ * allowance: the database serializes them on the row and the losers update nothing.
+ *
+ * <p>Callers reserve before the upstream call and {@link #refund} when it fails. MySQL has no
+ * {@code UPDATE ... RETURNING}, so the remaining count is read back in the same transaction,
+ * under the row lock the update took.
+ *
+ * <p>A user with an active but exhausted subscription is denied; free trials are not spent on
+ * top of a plan. Free-trial updates bypass the JPA listener, so {@link UserCache} is evicted
+ * here the way {@link UserCacheEvictionListener} would.
+ */
+@Slf4j
+@Component
+public class AiQuotaLedger {
+
+    public static final String SUBSCRIPTION = "SUBSCRIPTION";
+    public static final String FREE_TRIAL = "FREE_TRIAL";
+    public static final String NONE = "NONE";
+
+    /** Attempts of {@link #reserveUpTo} when other calls keep taking what was left. */
+    private static final int MAX_PARTIAL_ATTEMPTS = 3;
+
+    /**
+     * Outcome of a reservation.
+     *
+     * @param units          queries taken; 0 when denied
+     * @param accessType     {@link #SUBSCRIPTION}, {@link #FREE_TRIAL} or {@link #NONE}
+     * @param subscriptionId charged subscription, {@code null} for free trials
+     * @param userId         user whose free trials were charged
+     * @param plan           active plan, {@code null} without a subscription
+     * @param remaining      queries left after this one; -1 on unlimited plans
+     */
+    public record Reservation(int units, String accessType, Long subscriptionId, Integer userId,
+                              SubscriptionPlan plan, int remaining) {
+
+        public boolean granted() {
+            return units > 0;
+        }
+
+        /** AI tier the call is scheduled in. */
+        public String tier() {
+            return (plan != null ? plan : SubscriptionPlan.FREE).getAiTier();
+        }
+    }
+
+    private final SubscriptionRepository subscriptionRepository;
+    private final UserAll userRepository;
+    private final UserCache userCache;
+    private final MeterRegistry meterRegistry;
+    private final Counter refunds;
+
+    public AiQuotaLedger(SubscriptionRepository subscriptionRepository, UserAll userRepository,
+                         UserCache userCache, MeterRegistry meterRegistry) {
+        this.subscriptionRepository = subscriptionRepository;
+        this.userRepository = userRepository;
+        this.userCache = userCache;
+        this.meterRegistry = meterRegistry;
+        this.refunds = Counter.builder("ai.quota.refunds")
+                .description("AI query units given back after a failed upstream call")
+                .register(meterRegistry);
+    }
+
+    /** Take exactly {@code units} queries, or none. */
+    @Transactional
+    public Reservation reserve(User user, int units) {
+        if (units <= 0) {
+            throw new IllegalArgumentException("units must be positive");
+        }
+        Integer userId = user.getId();
+        LocalDateTime now = LocalDateTime.now();
+
+        if (subscriptionRepository.reserveQueries(userId, units, now) > 0) {
+            SubscriptionRepository.ActiveQuota quota = first(subscriptionRepository.findActiveQuota(userId, now));
+            return count(new Reservation(units, SUBSCRIPTION, quota.getId(), userId, quota.getPlan(), remaining(quota)));
+        }
+        List<SubscriptionRepository.ActiveQuota> active = subscriptionRepository.findActiveQuota(userId, now);
+        if (!active.isEmpty()) {
+            SubscriptionRepository.ActiveQuota quota = active.get(0);
+            return count(new Reservation(0, NONE, quota.getId(), userId, quota.getPlan(), remaining(quota)));
+        }
+
+        boolean taken = userRepository.reserveFreeTrials(userId, units) > 0;
+        int left = Math.max(0, userRepository.freeTrialAttempts(userId));
+        if (taken) {
+            freeTrialsChanged(user, left);
+        }
+        return count(new Reservation(taken ? units : 0, taken ? FREE_TRIAL : NONE, null, userId, null, left));
+    }
+
+    /**
+     * Take up to {@code units} queries: all of them if they are left, otherwise what is left.
+     * Used by batches, which send only the cases they could charge.
+     */
+    @Transactional
+    public Reservation reserveUpTo(User user, int units) {
+        Reservation reservation = reserve(user, units);
+        for (int attempt = 1; attempt < MAX_PARTIAL_ATTEMPTS && !reservation.granted()
+                && reservation.remaining() > 0; attempt++) {
+            reservation = reserve(user, Math.min(units, reservation.remaining()));
+        }
+        return reservation;
+    }
+
+    /** Give back {@code units} of {@code reservation} after the call they paid for failed. */
+    @Transactional
+    public void refund(User user, Reservation reservation, int units) {
+        int count = Math.min(units, reservation.units());
+        if (count <= 0) {
+            return;
+        }
+        if (reservation.subscriptionId() != null) {
+            subscriptionRepository.refundQueries(reservation.subscriptionId(), count);
+        } else {
+            userRepository.refundFreeTrials(reservation.userId(), count);
+            freeTrialsChanged(user, Math.max(0, userRepository.freeTrialAttempts(reservation.userId())));
+        }
+        refunds.increment(count);
+        log.debug("Refunded {} AI queries to {}", count, user.getEmail());
+    }
+
+    @Transactional
+    public void refund(User user, Reservation reservation) {
+        refund(user, reservation, reservation.units());
+    }
+
+    private static SubscriptionRepository.ActiveQuota first(List<SubscriptionRepository.ActiveQuota> active) {
+        if (active.isEmpty()) {
+            throw new IllegalStateException("Subscription charged but no longer active");
+        }
+        return active.get(0);
+    }
+
+    private static int remaining(SubscriptionRepository.ActiveQuota quota) {
+        Integer allowed = quota.getAiQueriesAllowed();
+        if (allowed != null && allowed < 0) {
+            return -1;
+        }
+        int used = quota.getAiQueriesUsed() != null ? quota.getAiQueriesUsed() : 0;
+        return allowed == null ? 0 : Math.max(0, allowed - used);
+    }
+
+    /** Keep the caller's copy and the cache in step with a bulk free-trial update. */
+    private void freeTrialsChanged(User user, int left) {
+        user.setFreeTrialAttempts(left);
+        String email = user.getEmail();
+        if (email == null) {
+            return;
+        }
+        userCache.evict(email);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    userCache.evict(email);
+                }
+            });
+        }
+    }
+
+    private Reservation count(Reservation reservation) {
+        Counter.builder("ai.quota.reservations")
+                .tag("result", reservation.granted() ? "granted" : "denied")
+                .tag("access", reservation.accessType())
+                .description("AI query reservations by outcome and what paid for them")
+                .register(meterRegistry)
+                .increment();
+        return reservation;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.demo.Implementation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Canonical SHA-256 fingerprint of an AI request, used as the {@link AiResponseCache} key.
+ *
+ * <p>Requests that only differ in JSON key order or in leading, trailing or repeated whitespace
+ * inside string values produce the same fingerprint; anything else (case, numbers, nesting)
+ * is significant. Each part is canonicalized separately, so callers pass the request body
+ * followed by whatever scopes the answer — model, tier, user.
+ */
+public final class AiRequestFingerprint {
+
+    private static final ObjectMapper CANONICAL = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private AiRequestFingerprint() {
+    }
+
+    public static String of(Object... parts) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            for (Object part : parts) {
+                sha256.update(CANONICAL.writeValueAsBytes(normalize(part)));
+                sha256.update((byte) 0); // part separator, so ("ab","c") != ("a","bc")
+            }
+            return HexFormat.of().formatHex(sha256.digest());
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Cannot fingerprint AI request", e);
+        }
+    }
+
+    private static Object normalize(Object value) {
+        if (value instanceof String s) {
+            return WHITESPACE.matcher(s.strip()).replaceAll(" ");
+        }
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> sorted = new TreeMap<>();
+            map.forEach((k, v) -> sorted.put(String.valueOf(k), normalize(v)));
+            return sorted;
+        }
+        if (value instanceof List<?> list) {
+            List<Object> normalized = new ArrayList<>(list.size());
+            list.forEach(v -> normalized.add(normalize(v)));
+            return normalized;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.demo.Implementation;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Cache of successful AI upstream responses, consulted by the AI proxy controllers before they
+ * call Gemini or the Python service.
+ *
+ * <p>Entries are addressed by an endpoint name ({@link #CHAT}, {@link #CASE_ANALYSIS},
+ * {@link #AGENT_ANALYZE}) and a fingerprint from {@link AiRequestFingerprint}; the endpoint
+ * decides what goes into the fingerprint (model, tier, user). Only 2xx bodies are stored.
+ * {@link CaffeineAiResponseCache} is the default; a shared implementation can replace it by
+ * registering another bean of this type.
+ */
+public interface AiResponseCache {
+
+    String CHAT = "chat";
+    String CASE_ANALYSIS = "case-analysis";
+    String AGENT_ANALYZE = "agent-analyze";
+
+    /** Response header set to {@code HIT} when the body came from the cache. */
+    String HEADER = "X-AI-Cache";
+
+    /** The cached body for this request, counting a hit or miss for {@code endpoint}. */
+    Optional<Map<String, Object>> get(String endpoint, String fingerprint);
+
+    /** Store a successful upstream body. Ignored when {@code endpoint} is not cached. */
+    void put(String endpoint, String fingerprint, Map<String, Object> body);
+
+    /** Whether responses for {@code endpoint} are cached at all (per-endpoint opt-out). */
+    boolean isEnabled(String endpoint);
+
+    /** Whether a request served from cache still uses one of the caller's AI queries. */
+    boolean hitConsumesQuota();
+}
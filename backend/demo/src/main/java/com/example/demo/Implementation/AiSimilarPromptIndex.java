@@ -0,0 +1,223 @@
+package com.example.demo.Implementation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Recent chat prompts by {@link PromptSimHash}, so {@code /api/ai/chat} can answer a rephrased
+ * question ("what's bail" after "What is bail?") from {@link AiResponseCache}. The index only
+ * maps prompts to the cache fingerprint of their answer; the answer itself stays in the cache
+ * and expires with it.
+ *
+ * <p>A prompt matches an indexed one when both hashes are at most {@code ai.cache.similar.max-distance}
+ * bits apart and they contain the same numbers. Lookups do not scan: the 64 bits are cut into
+ * {@code max-distance + 1} blocks and each block value has its own table. Two hashes within
+ * the distance differ in at most {@code max-distance} blocks, so at least one block is equal
+ * and its bucket holds the match (pigeonhole).
+ *
+ * <p>At most {@code ai.cache.similar.max-size} prompts are kept, the oldest dropped first.
+ * Lookups count {@code ai.cache.similar.lookups{result=match|none}}. The distance of each match
+ * is recorded in {@code ai.cache.similar.distance} and logged with both prompts. Misses whose
+ * closest bucket neighbour was within twice the limit are logged at debug, to tune the limit.
+ */
+@Slf4j
+@Component
+public class AiSimilarPromptIndex {
+
+    /** A cached prompt close enough to the one looked up. */
+    public record Match(String fingerprint, String prompt, int distance) {
+    }
+
+    private record Entry(long hash, String numbers, String scope, String fingerprint, String prompt) {
+    }
+
+    private final boolean enabled;
+    private final int maxDistance;
+    private final int[] blockStart;
+    private final long[] blockMask;
+    private final List<Map<Long, List<Entry>>> tables;
+    private final Map<String, Entry> byFingerprint = new HashMap<>();
+    private final Entry[] ring;
+    private int next;
+    // Lookups, one per chat request, share the read lock; only adds and removals exclude them.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Counter matches;
+    private final Counter misses;
+    private final DistributionSummary distances;
+
+    @Autowired
+    public AiSimilarPromptIndex(MeterRegistry meterRegistry,
+                                @Value("${ai.cache.similar.enabled:true}") boolean enabled,
+                                @Value("${ai.cache.similar.max-distance:3}") int maxDistance,
+                                @Value("${ai.cache.similar.max-size:5000}") int maxSize) {
+        if (maxDistance < 0 || maxDistance > 15) {
+            throw new IllegalArgumentException("ai.cache.similar.max-distance must be between 0 and 15");
+        }
+        this.enabled = enabled && maxSize > 0;
+        this.maxDistance = maxDistance;
+        int blocks = maxDistance + 1;
+        this.blockStart = new int[blocks];
+        this.blockMask = new long[blocks];
+        this.tables = new ArrayList<>(blocks);
+        for (int b = 0; b < blocks; b++) {
+            int start = b * 64 / blocks;
+            int width = (b + 1) * 64 / blocks - start;
+            blockStart[b] = start;
+            blockMask[b] = width == 64 ? -1L : (1L << width) - 1;
+            tables.add(new HashMap<>());
+        }
+        this.ring = new Entry[Math.max(0, maxSize)];
+        this.matches = lookups(meterRegistry, "match");
+        this.misses = lookups(meterRegistry, "none");
+        this.distances = DistributionSummary.builder("ai.cache.similar.distance")
+                .description("SimHash distance of chat prompts answered from a similar cached prompt")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        meterRegistry.gauge("ai.cache.similar.size", this, AiSimilarPromptIndex::size);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The closest indexed prompt within the distance limit, answered under the same
+     * {@code scope} (the model).
+     */
+    public Optional<Match> find(String scope, String prompt) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        List<String> tokens = PromptSimHash.tokens(prompt);
+        if (tokens.isEmpty()) {
+            return Optional.empty();
+        }
+        long hash = PromptSimHash.of(tokens);
+        String numbers = PromptSimHash.numbers(tokens);
+
+        Entry best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        lock.readLock().lock();
+        try {
+            for (int b = 0; b < tables.size(); b++) {
+                List<Entry> bucket = tables.get(b).get(block(hash, b));
+                if (bucket == null) {
+                    continue;
+                }
+                for (int i = bucket.size() - 1; i >= 0; i--) {
+                    Entry entry = bucket.get(i);
+                    int distance = PromptSimHash.distance(hash, entry.hash());
+                    if (distance < bestDistance && entry.scope().equals(scope) && entry.numbers().equals(numbers)) {
+                        best = entry;
+                        bestDistance = distance;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (best == null || bestDistance > maxDistance) {
+            misses.increment();
+            if (best != null && bestDistance <= 2 * maxDistance) {
+                log.debug("Chat prompt not matched, closest cached prompt at distance {} > {}: \"{}\" ~ \"{}\"",
+                        bestDistance, maxDistance, prompt, best.prompt());
+            }
+            return Optional.empty();
+        }
+        matches.increment();
+        distances.record(bestDistance);
+        log.info("Chat prompt matched a cached prompt at distance {}/{}: \"{}\" ~ \"{}\"",
+                bestDistance, maxDistance, prompt, best.prompt());
+        return Optional.of(new Match(best.fingerprint(), best.prompt(), bestDistance));
+    }
+
+    /** Index a prompt whose answer was just cached under {@code fingerprint}. */
+    public void add(String scope, String prompt, String fingerprint) {
+        if (!enabled) {
+            return;
+        }
+        List<String> tokens = PromptSimHash.tokens(prompt);
+        if (tokens.isEmpty()) {
+            return;
+        }
+        Entry entry = new Entry(PromptSimHash.of(tokens), PromptSimHash.numbers(tokens), scope, fingerprint, prompt);
+        lock.writeLock().lock();
+        try {
+            if (byFingerprint.containsKey(fingerprint)) {
+                return;
+            }
+            Entry oldest = ring[next];
+            if (oldest != null && byFingerprint.get(oldest.fingerprint()) == oldest) {
+                unlink(oldest);
+            }
+            ring[next] = entry;
+            next = (next + 1) % ring.length;
+            byFingerprint.put(fingerprint, entry);
+            for (int b = 0; b < tables.size(); b++) {
+                tables.get(b).computeIfAbsent(block(entry.hash(), b), k -> new ArrayList<>(2)).add(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Drop a prompt whose answer is no longer in the cache. */
+    public void remove(String fingerprint) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = byFingerprint.get(fingerprint);
+            if (entry != null) {
+                unlink(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return byFingerprint.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void unlink(Entry entry) {
+        byFingerprint.remove(entry.fingerprint());
+        for (int b = 0; b < tables.size(); b++) {
+            Long key = block(entry.hash(), b);
+            List<Entry> bucket = tables.get(b).get(key);
+            if (bucket != null) {
+                bucket.remove(entry);
+                if (bucket.isEmpty()) {
+                    tables.get(b).remove(key);
+                }
+            }
+        }
+    }
+
+    private long block(long hash, int b) {
+        return (hash >>> blockStart[b]) & blockMask[b];
+    }
+
+    private static Counter lookups(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("ai.cache.similar.lookups")
+                .tag("result", result)
+                .description("Chat prompt lookups in the similar-prompt index by outcome")
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.demo.Implementation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent AI upstream calls: while a call for an endpoint and
+ * {@link AiRequestFingerprint} is in flight, further callers with the same key wait for it
+ * instead of starting their own, and every caller receives the same result or error.
+ *
+ * <p>Only the upstream call is shared. Each caller chains its own per-user work (quota
+ * accounting, plan enrichment) onto the future it gets back, so a waiter is charged exactly
+ * as if it had made the call itself. The key is dropped as soon as the call completes; callers
+ * arriving afterwards are served by {@link AiResponseCache} or start a new call. A caller
+ * that gives up cancels its own future; once every caller has given up, the call itself is
+ * cancelled, so a call still waiting for an upstream slot never takes one.
+ *
+ * <p>Exported as {@code ai.singleflight.coalesced{endpoint}} (callers that joined an existing
+ * call) and {@code ai.singleflight.inflight} (distinct calls currently shared).
+ */
+@Component
+public class AiSingleFlight {
+
+    private final ConcurrentMap<String, Flight<?>> inFlight = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public AiSingleFlight(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("ai.singleflight.inflight", inFlight, ConcurrentMap::size)
+                .description("Distinct AI upstream calls currently shared by concurrent callers")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Join the in-flight call for ({@code endpoint}, {@code fingerprint}), or start it with
+     * {@code call} if there is none. The returned future is the caller's own copy, so
+     * completing or cancelling it does not affect the other waiters; cancelling the last one
+     * cancels the future {@code call} returned.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String endpoint, String fingerprint,
+                                            Supplier<CompletableFuture<T>> call) {
+        String key = endpoint + '|' + fingerprint;
+        while (true) {
+            Flight<T> flight = new Flight<>();
+            CompletableFuture<T> mine = flight.join();
+            Flight<?> existing = inFlight.putIfAbsent(key, flight);
+            if (existing != null) {
+                CompletableFuture<T> joined = ((Flight<T>) existing).join();
+                if (joined == null) {
+                    // Everyone else gave up on it; it is on its way out of the map.
+                    inFlight.remove(key, existing);
+                    continue;
+                }
+                coalesced(endpoint).increment();
+                return joined;
+            }
+            try {
+                flight.upstream = call.get();
+                flight.upstream.whenComplete((value, error) -> {
+                    inFlight.remove(key, flight);
+                    if (error != null) {
+                        flight.shared.completeExceptionally(error);
+                    } else {
+                        flight.shared.complete(value);
+                    }
+                });
+                if (flight.abandoned()) {
+                    flight.upstream.cancel(false);
+                }
+            } catch (RuntimeException e) {
+                inFlight.remove(key, flight);
+                flight.shared.completeExceptionally(e);
+            }
+            return mine;
+        }
+    }
+
+    int inFlight() {
+        return inFlight.size();
+    }
+
+    /** One shared call and the number of callers still waiting for it. */
+    private static final class Flight<T> {
+
+        private final CompletableFuture<T> shared = new CompletableFuture<>();
+        private final AtomicInteger callers = new AtomicInteger();
+        private volatile CompletableFuture<T> upstream;
+
+        /** A copy for one more caller, or {@code null} if every earlier caller gave up. */
+        CompletableFuture<T> join() {
+            if (callers.getAndUpdate(n -> n < 0 ? n : n + 1) < 0) {
+                return null;
+            }
+            CompletableFuture<T> copy = shared.copy();
+            copy.whenComplete((value, error) -> {
+                if (copy.isCancelled() && callers.updateAndGet(n -> n == 1 ? -1 : n - 1) < 0) {
+                    CompletableFuture<T> call = upstream;
+                    if (call != null) {
+                        call.cancel(false);
+                    }
+                }
+            });
+            return copy;
+        }
+
+        boolean abandoned() {
+            return callers.get() < 0;
+        }
+    }
+
+    private Counter coalesced(String endpoint) {
+        return Counter.builder("ai.singleflight.coalesced")
+                .tag("endpoint", endpoint)
+                .description("AI requests that joined an identical in-flight upstream call")
+                .register(meterRegistry);
+    }
+}
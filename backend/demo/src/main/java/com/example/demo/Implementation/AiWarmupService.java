@@ -0,0 +1,377 @@
+package com.example.demo.Implementation;
+
+import com.example.demo.Config.AiProxyExecutor;
+import com.example.demo.Config.AiUpstreamActivity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the Python ML service awake when it is about to be needed. On Render the service spins
+ * down after {@code ai.warmup.idle-sleep-seconds} without traffic, and the next analysis then
+ * waits 30–60 s for a cold start, often long enough to trip the circuit breaker.
+ *
+ * <p>Every minute the service decides whether the ML service should be kept warm:
+ * <ul>
+ *   <li>inside a configured window ({@code ai.warmup.schedule}, court hours by default), or
+ *       {@code ai.warmup.lead-minutes} before one;</li>
+ *   <li>or when the learned demand for this hour of the week, or the one
+ *       {@code lead-minutes} ahead, reaches {@code ai.warmup.demand-threshold} calls.
+ *       Demand is learned from the timestamps of user calls to the ML service, per hour of
+ *       the week, smoothed from week to week.</li>
+ * </ul>
+ * If so, and nothing has reached the service for {@code ai.warmup.keep-alive-seconds}, it sends
+ * one {@code GET /health} marked with {@link AiUpstreamActivity#WARMUP_HEADER}. A user opening
+ * an AI page sends {@code POST /api/agent/prewarm}, which pings at once (in the background) if
+ * the service may have gone to sleep.
+ *
+ * <p>Upstream calls are observed through {@link AiUpstreamActivity}. A call that follows
+ * {@code idle-sleep-seconds} of silence and takes at least {@code ai.warmup.cold-start-ms} (or
+ * fails) was a cold start, counted in {@code ai.warmup.cold.starts{source=user|warmup}} with its
+ * latency in {@code ai.warmup.cold.start.latency{source}}. A user call after that much time
+ * without user calls that found the service warm because of a ping counts as
+ * {@code ai.warmup.cold.starts.avoided}. Pings are counted in {@code ai.warmup.pings{reason,result}}.
+ * The demand profile lives in memory, so each instance relearns it after a restart.
+ */
+@Slf4j
+@Component
+public class AiWarmupService {
+
+    static final int HOURS_PER_WEEK = 7 * 24;
+    /** Weight of the latest week when folding an hour's calls into the profile. */
+    static final double WEEKLY_SMOOTHING = 0.5;
+
+    /** Warm-up settings, from {@code ai.warmup.*}. */
+    public record Settings(boolean enabled, String aiServiceUrl, String apiKey, List<Window> schedule, ZoneId zone,
+                           Duration idleSleep, Duration keepAlive, Duration lead, double demandThreshold,
+                           Duration coldStart) {
+    }
+
+    /** Days and times of day, in the settings' zone, during which the service is kept warm. */
+    public record Window(Set<DayOfWeek> days, LocalTime from, LocalTime to) {
+
+        /**
+         * Parses {@code MON-FRI 09:30-17:30,SAT 10:00-14:00}: comma-separated windows, each a day
+         * or day range and a same-day time range. A blank spec has no windows.
+         */
+        public static List<Window> parse(String spec) {
+            List<Window> windows = new ArrayList<>();
+            if (spec == null || spec.isBlank()) {
+                return windows;
+            }
+            for (String part : spec.split(",")) {
+                String[] fields = part.trim().split("\\s+");
+                if (fields.length != 2) {
+                    throw new IllegalArgumentException("Expected '<days> <from>-<to>' in warm-up window: " + part);
+                }
+                String[] days = fields[0].toUpperCase(Locale.ROOT).split("-");
+                String[] times = fields[1].split("-");
+                if (days.length > 2 || times.length != 2) {
+                    throw new IllegalArgumentException("Malformed warm-up window: " + part);
+                }
+                DayOfWeek first = day(days[0]);
+                DayOfWeek last = days.length == 2 ? day(days[1]) : first;
+                Set<DayOfWeek> covered = EnumSet.noneOf(DayOfWeek.class);
+                for (DayOfWeek d = first; ; d = d.plus(1)) {
+                    covered.add(d);
+                    if (d == last) {
+                        break;
+                    }
+                }
+                LocalTime from = LocalTime.parse(times[0]);
+                LocalTime to = LocalTime.parse(times[1]);
+                if (!to.isAfter(from)) {
+                    throw new IllegalArgumentException("Warm-up window must end after it starts: " + part);
+                }
+                windows.add(new Window(covered, from, to));
+            }
+            return windows;
+        }
+
+        boolean covers(ZonedDateTime at) {
+            LocalTime time = at.toLocalTime();
+            return days.contains(at.getDayOfWeek()) && !time.isBefore(from) && time.isBefore(to);
+        }
+
+        private static DayOfWeek day(String name) {
+            for (DayOfWeek d : DayOfWeek.values()) {
+                if (name.length() >= 3 && d.name().startsWith(name)) {
+                    return d;
+                }
+            }
+            throw new IllegalArgumentException("Unknown day in warm-up window: " + name);
+        }
+    }
+
+    private final Settings settings;
+    private final RestTemplate restTemplate;
+    private final AiProxyExecutor aiProxyExecutor;
+    private final AiUpstreamActivity activity;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+    private final String mlHost;
+    private final String healthUrl;
+
+    // A lock rather than synchronized: the listener runs on virtual threads in that mode.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final double[] profile = new double[HOURS_PER_WEEK];
+    private int currentBucket = -1;
+    private int currentCalls;
+    private long lastContactMillis;
+    private long lastUserCallMillis;
+    private long lastWarmupMillis;
+
+    private final AtomicBoolean pinging = new AtomicBoolean();
+    private final Counter avoided;
+    private ScheduledExecutorService timer;
+
+    @Autowired
+    public AiWarmupService(RestTemplate restTemplate, AiProxyExecutor aiProxyExecutor,
+                           AiUpstreamActivity aiUpstreamActivity, MeterRegistry meterRegistry,
+                           @Value("${ai.warmup.enabled:true}") boolean enabled,
+                           @Value("${ai.service.url}") String aiServiceUrl,
+                           @Value("${ai.service.api.key:}") String aiServiceApiKey,
+                           @Value("${ai.warmup.schedule:MON-SAT 09:30-17:30}") String schedule,
+                           @Value("${ai.warmup.zone:Asia/Kolkata}") String zone,
+                           @Value("${ai.warmup.idle-sleep-seconds:900}") long idleSleepSeconds,
+                           @Value("${ai.warmup.keep-alive-seconds:600}") long keepAliveSeconds,
+                           @Value("${ai.warmup.lead-minutes:15}") long leadMinutes,
+                           @Value("${ai.warmup.demand-threshold:1.0}") double demandThreshold,
+                           @Value("${ai.warmup.cold-start-ms:10000}") long coldStartMs) {
+        this(new Settings(enabled, aiServiceUrl, aiServiceApiKey, Window.parse(schedule), ZoneId.of(zone),
+                        Duration.ofSeconds(idleSleepSeconds), Duration.ofSeconds(keepAliveSeconds),
+                        Duration.ofMinutes(leadMinutes), demandThreshold, Duration.ofMillis(coldStartMs)),
+                restTemplate, aiProxyExecutor, aiUpstreamActivity, meterRegistry, Clock.systemUTC());
+    }
+
+    AiWarmupService(Settings settings, RestTemplate restTemplate, AiProxyExecutor aiProxyExecutor,
+                    AiUpstreamActivity activity, MeterRegistry meterRegistry, Clock clock) {
+        this.settings = settings;
+        this.restTemplate = restTemplate;
+        this.aiProxyExecutor = aiProxyExecutor;
+        this.activity = activity;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+        this.mlHost = URI.create(settings.aiServiceUrl()).getHost();
+        this.healthUrl = settings.aiServiceUrl() + "/health";
+        this.avoided = Counter.builder("ai.warmup.cold.starts.avoided")
+                .description("User calls after an idle spell that found the ML service kept warm by a ping")
+                .register(meterRegistry);
+        activity.setListener(this::onCall);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!settings.enabled()) {
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ai-warmup");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleWithFixedDelay(this::tick, 1, 1, TimeUnit.MINUTES);
+        Gauge.builder("ai.warmup.expected.demand", this, s -> s.expectedDemand(s.now().plus(s.settings.lead())))
+                .description("Learned ML calls per hour for the hour the warm-up lead reaches into")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        activity.setListener(null);
+    }
+
+    /**
+     * The {@code /api/agent/prewarm} hint: ping the ML service in the background unless it was
+     * reached recently or a ping is already on its way. Never waits for the upstream.
+     */
+    public Map<String, Object> hint() {
+        if (!settings.enabled()) {
+            return Map.of("state", "disabled");
+        }
+        if (!quietFor(settings.keepAlive())) {
+            return Map.of("state", "warm");
+        }
+        if (pinging.get()) {
+            return Map.of("state", "warming");
+        }
+        boolean started = aiProxyExecutor.execute(() -> ping("hint"));
+        return Map.of("state", started ? "warming" : "busy");
+    }
+
+    /** One scheduling decision; runs every minute on the {@code ai-warmup} thread. */
+    void tick() {
+        try {
+            ZonedDateTime now = now();
+            lock.lock();
+            try {
+                roll(now);
+            } finally {
+                lock.unlock();
+            }
+            String reason = reasonToWarm(now);
+            if (reason != null && quietFor(settings.keepAlive())) {
+                ping(reason);
+            }
+        } catch (RuntimeException e) {
+            log.warn("AI warm-up tick failed: {}", e.getMessage());
+        }
+    }
+
+    /** Why the service should be warm at {@code now}: {@code schedule}, {@code predicted}, or {@code null}. */
+    String reasonToWarm(ZonedDateTime now) {
+        ZonedDateTime ahead = now.plus(settings.lead());
+        for (Window window : settings.schedule()) {
+            if (window.covers(now) || window.covers(ahead)) {
+                return "schedule";
+            }
+        }
+        if (expectedDemand(now) >= settings.demandThreshold() || expectedDemand(ahead) >= settings.demandThreshold()) {
+            return "predicted";
+        }
+        return null;
+    }
+
+    /** Learned user calls to the ML service in the hour of the week containing {@code at}. */
+    double expectedDemand(ZonedDateTime at) {
+        int bucket = bucket(at);
+        lock.lock();
+        try {
+            double learned = profile[bucket];
+            return bucket == currentBucket ? Math.max(learned, currentCalls) : learned;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void ping(String reason) {
+        if (!pinging.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(AiUpstreamActivity.WARMUP_HEADER, reason);
+            if (settings.apiKey() != null && !settings.apiKey().isBlank()) {
+                headers.set("X-API-Key", settings.apiKey());
+            }
+            restTemplate.exchange(healthUrl, HttpMethod.GET, new HttpEntity<>(headers), Map.class);
+            pings(reason, "ok").increment();
+        } catch (RestClientException e) {
+            log.debug("AI warm-up ping ({}) failed: {}", reason, e.getMessage());
+            pings(reason, "failed").increment();
+        } finally {
+            pinging.set(false);
+        }
+    }
+
+    private void onCall(String host, long startedAtMillis, long durationNanos, boolean failed, boolean warmup) {
+        if (mlHost == null || !mlHost.equals(host)) {
+            return;
+        }
+        long idleSleepMillis = settings.idleSleep().toMillis();
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        boolean slow = failed || durationMillis >= settings.coldStart().toMillis();
+        lock.lock();
+        try {
+            boolean wasAsleep = lastContactMillis > 0 && startedAtMillis - lastContactMillis >= idleSleepMillis;
+            if (wasAsleep && slow) {
+                String source = warmup ? "warmup" : "user";
+                Counter.builder("ai.warmup.cold.starts")
+                        .tag("source", source)
+                        .description("ML service calls that followed an idle spell and waited for it to wake")
+                        .register(meterRegistry)
+                        .increment();
+                Timer.builder("ai.warmup.cold.start.latency")
+                        .tag("source", source)
+                        .description("How long calls that woke the ML service took")
+                        .register(meterRegistry)
+                        .record(durationNanos, TimeUnit.NANOSECONDS);
+            } else if (!warmup && !wasAsleep && lastUserCallMillis > 0
+                    && startedAtMillis - lastUserCallMillis >= idleSleepMillis
+                    && lastWarmupMillis > lastUserCallMillis) {
+                avoided.increment();
+            }
+            long endedAtMillis = startedAtMillis + durationMillis;
+            lastContactMillis = Math.max(lastContactMillis, endedAtMillis);
+            if (warmup) {
+                lastWarmupMillis = Math.max(lastWarmupMillis, endedAtMillis);
+            } else {
+                lastUserCallMillis = Math.max(lastUserCallMillis, endedAtMillis);
+                roll(ZonedDateTime.ofInstant(Instant.ofEpochMilli(startedAtMillis), settings.zone()));
+                currentCalls++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Fold the finished hour into the profile once the clock has moved into another one. */
+    private void roll(ZonedDateTime now) {
+        int bucket = bucket(now);
+        if (currentBucket >= 0 && bucket != currentBucket) {
+            profile[currentBucket] = WEEKLY_SMOOTHING * currentCalls + (1 - WEEKLY_SMOOTHING) * profile[currentBucket];
+            currentCalls = 0;
+        }
+        currentBucket = bucket;
+    }
+
+    private boolean quietFor(Duration period) {
+        lock.lock();
+        try {
+            return clock.millis() - lastContactMillis >= period.toMillis();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ZonedDateTime now() {
+        return clock.instant().atZone(settings.zone());
+    }
+
+    private static int bucket(ZonedDateTime at) {
+        return (at.getDayOfWeek().getValue() - 1) * 24 + at.getHour();
+    }
+
+    private Counter pings(String reason, String result) {
+        return Counter.builder("ai.warmup.pings")
+                .tag("reason", reason)
+                .tag("result", result)
+                .description("Warm-up pings sent to the ML service")
+                .register(meterRegistry);
+    }
+}
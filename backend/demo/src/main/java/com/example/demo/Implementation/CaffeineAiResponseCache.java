@@ -0,0 +1,111 @@
+package com.example.demo.Implementation;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * In-process {@link AiResponseCache}: at most {@code ai.cache.max-size} responses, each kept
+ * for {@code ai.cache.ttl-seconds} after it was fetched.
+ *
+ * <p>{@code ai.cache.enabled=false} turns the cache off everywhere;
+ * {@code ai.cache.disabled-endpoints} (comma-separated endpoint names) turns it off for single
+ * endpoints. {@code ai.cache.hit-consumes-quota} decides whether a cached answer still uses one
+ * of the caller's AI queries; by default it does not, since no upstream work was done.
+ *
+ * <p>Per-endpoint hits and misses are counted as {@code ai.cache.requests{endpoint,result}},
+ * so the hit ratio is {@code hit / (hit + miss)}; overall size and evictions are published as
+ * {@code cache.*{cache=ai-responses}}.
+ */
+@Component
+public class CaffeineAiResponseCache implements AiResponseCache {
+
+    static final String CACHE_NAME = "ai-responses";
+
+    private final boolean enabled;
+    private final Set<String> disabledEndpoints;
+    private final boolean hitConsumesQuota;
+    private final Cache<String, Map<String, Object>> cache;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public CaffeineAiResponseCache(MeterRegistry meterRegistry,
+                                   @Value("${ai.cache.enabled:true}") boolean enabled,
+                                   @Value("${ai.cache.max-size:5000}") long maxSize,
+                                   @Value("${ai.cache.ttl-seconds:3600}") long ttlSeconds,
+                                   @Value("${ai.cache.disabled-endpoints:}") String disabledEndpoints,
+                                   @Value("${ai.cache.hit-consumes-quota:false}") boolean hitConsumesQuota) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.hitConsumesQuota = hitConsumesQuota;
+        this.disabledEndpoints = Arrays.stream(disabledEndpoints.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(0, maxSize))
+                .expireAfterWrite(Duration.ofSeconds(Math.max(0, ttlSeconds)))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    @Override
+    public Optional<Map<String, Object>> get(String endpoint, String fingerprint) {
+        if (!isEnabled(endpoint)) {
+            return Optional.empty();
+        }
+        Map<String, Object> body = cache.getIfPresent(key(endpoint, fingerprint));
+        requests(endpoint, body != null ? "hit" : "miss").increment();
+        return Optional.ofNullable(body);
+    }
+
+    @Override
+    public void put(String endpoint, String fingerprint, Map<String, Object> body) {
+        if (body != null && isEnabled(endpoint)) {
+            // Callers serialize or copy the body; never let one of them mutate the cached entry.
+            cache.put(key(endpoint, fingerprint), Collections.unmodifiableMap(new LinkedHashMap<>(body)));
+        }
+    }
+
+    @Override
+    public boolean isEnabled(String endpoint) {
+        return enabled && !disabledEndpoints.contains(endpoint);
+    }
+
+    @Override
+    public boolean hitConsumesQuota() {
+        return hitConsumesQuota;
+    }
+
+    long size() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+
+    private static String key(String endpoint, String fingerprint) {
+        return endpoint + '|' + fingerprint;
+    }
+
+    private Counter requests(String endpoint, String result) {
+        return Counter.builder("ai.cache.requests")
+                .tag("endpoint", endpoint)
+                .tag("result", result)
+                .description("AI response cache lookups by endpoint and outcome")
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.demo.Implementation;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parts of a Gemini {@code generateContent} (or {@code streamGenerateContent} chunk) reply
+ * that the chat endpoints use: the text of the first candidate.
+ *
+ * <p>{@link #read(JsonFactory, InputStream)} pulls those fields with a streaming
+ * {@link JsonParser} and skips everything else (safety ratings, usage metadata, further
+ * candidates) token by token, so no {@code Map}/{@code List} tree is built for a reply of which
+ * one string is kept. The records also bind with a regular {@code ObjectMapper}, unknown fields
+ * ignored.
+ *
+ * @param candidates {@code null} when the reply has no {@code candidates} field; otherwise at
+ *                   most the first candidate, or empty when Gemini returned none
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record GeminiResponse(List<Candidate> candidates) {
+
+    /** @param content {@code null} when the candidate has no {@code content} field */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Candidate(Content content) {
+
+        /** Text of all parts, concatenated; empty when there are none. */
+        public String text() {
+            StringBuilder text = new StringBuilder();
+            if (content != null && content.parts() != null) {
+                for (Part part : content.parts()) {
+                    if (part.text() != null) {
+                        text.append(part.text());
+                    }
+                }
+            }
+            return text.toString();
+        }
+    }
+
+    /** @param parts {@code null} when the content has no {@code parts} field */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Content(List<Part> parts) {
+    }
+
+    /** @param text {@code null} for non-text parts */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Part(String text) {
+    }
+
+    /** The first candidate, or {@code null} when there is none. */
+    public Candidate first() {
+        return candidates == null || candidates.isEmpty() ? null : candidates.get(0);
+    }
+
+    /** Read one reply from {@code in}, closing it. */
+    public static GeminiResponse read(JsonFactory factory, InputStream in) throws IOException {
+        try (JsonParser parser = factory.createParser(in)) {
+            return read(parser);
+        }
+    }
+
+    /** Read one reply from {@code json}. */
+    public static GeminiResponse read(JsonFactory factory, String json) throws IOException {
+        try (JsonParser parser = factory.createParser(json)) {
+            return read(parser);
+        }
+    }
+
+    private static GeminiResponse read(JsonParser parser) throws IOException {
+        expect(parser.nextToken(), JsonToken.START_OBJECT);
+        List<Candidate> candidates = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("candidates".equals(field) && value == JsonToken.START_ARRAY) {
+                candidates = new ArrayList<>(1);
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (candidates.isEmpty() && parser.currentToken() == JsonToken.START_OBJECT) {
+                        candidates.add(readCandidate(parser));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new GeminiResponse(candidates);
+    }
+
+    private static Candidate readCandidate(JsonParser parser) throws IOException {
+        Content content = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("content".equals(field) && value == JsonToken.START_OBJECT) {
+                content = readContent(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Candidate(content);
+    }
+
+    private static Content readContent(JsonParser parser) throws IOException {
+        List<Part> parts = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("parts".equals(field) && value == JsonToken.START_ARRAY) {
+                parts = new ArrayList<>(1);
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (parser.currentToken() == JsonToken.START_OBJECT) {
+                        parts.add(readPart(parser));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Content(parts);
+    }
+
+    private static Part readPart(JsonParser parser) throws IOException {
+        String text = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("text".equals(field) && value == JsonToken.VALUE_STRING) {
+                text = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Part(text);
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Expected " + expected + " in Gemini reply, found " + actual);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.demo.Implementation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * 64-bit SimHash of a chat prompt, used by {@link AiSimilarPromptIndex} to find rephrasings of
+ * a question already answered.
+ *
+ * <p>The prompt is lower-cased, common contractions are expanded ("what's" becomes "what is"),
+ * punctuation is dropped, filler words ("is", "the", "please", ...) are removed and a trailing
+ * plural "s" is stripped. Each remaining word and each pair of neighbouring words adds one
+ * feature. Prompts that differ only in those respects get the same hash; every changed word
+ * moves it by a few bits.
+ *
+ * <p>Numbers are not left to the hash: a section, year or amount changes the answer however
+ * close the wording, so {@link #numbers} is compared exactly alongside it.
+ */
+public final class PromptSimHash {
+
+    private static final Pattern CONTRACTION_NOT = Pattern.compile("n['’]t\\b");
+    private static final Pattern CONTRACTION = Pattern.compile("['’](s|re|ll|ve|m|d)\\b");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+
+    private static final Set<String> FILLER = Set.of(
+            "a", "an", "the", "is", "are", "am", "was", "were", "be", "been", "do", "does", "did",
+            "to", "of", "please", "kindly", "can", "could", "would", "will", "you", "me", "i",
+            "my", "had", "have", "has", "just", "tell", "us");
+
+    private PromptSimHash() {
+    }
+
+    /** SimHash of the prompt's normalized words and word pairs; 0 when nothing is left. */
+    public static long of(String prompt) {
+        return of(tokens(prompt));
+    }
+
+    static long of(List<String> tokens) {
+        int[] weights = new int[64];
+        for (int i = 0; i < tokens.size(); i++) {
+            add(weights, hash(tokens.get(i)));
+            if (i > 0) {
+                add(weights, hash(tokens.get(i - 1) + ' ' + tokens.get(i)));
+            }
+        }
+        long simHash = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                simHash |= 1L << bit;
+            }
+        }
+        return simHash;
+    }
+
+    /** The numbers in the prompt, sorted and space-separated; "" when there are none. */
+    public static String numbers(String prompt) {
+        return numbers(tokens(prompt));
+    }
+
+    static String numbers(List<String> tokens) {
+        Set<String> numbers = new TreeSet<>();
+        for (String token : tokens) {
+            if (token.chars().anyMatch(Character::isDigit)) {
+                numbers.add(token);
+            }
+        }
+        return String.join(" ", numbers);
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    static List<String> tokens(String prompt) {
+        String text = prompt.toLowerCase(Locale.ROOT);
+        text = CONTRACTION_NOT.matcher(text).replaceAll(" not");
+        text = CONTRACTION.matcher(text).replaceAll(" $1");
+        List<String> tokens = new ArrayList<>();
+        for (String word : NON_WORD.split(text)) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            String token = expand(word);
+            if (!FILLER.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static String expand(String word) {
+        return switch (word) {
+            case "s" -> "is";
+            case "re" -> "are";
+            case "ll" -> "will";
+            case "ve" -> "have";
+            case "m" -> "am";
+            case "d" -> "would";
+            default -> word.length() > 3 && word.endsWith("s") && !word.endsWith("ss")
+                    ? word.substring(0, word.length() - 1) : word;
+        };
+    }
+
+    private static void add(int[] weights, long featureHash) {
+        for (int bit = 0; bit < 64; bit++) {
+            weights[bit] += ((featureHash >>> bit) & 1) != 0 ? 1 : -1;
+        }
+    }
+
+    /** FNV-1a over the UTF-16 units, then MurmurHash3's finalizer to spread the bits. */
+    private static long hash(String feature) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < feature.length(); i++) {
+            h ^= feature.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -24,6 +24,9 @@ public class SubscriptionService {
     @Autowired
     private UserAll userRepository;
     
+    @Autowired
+    private AiQuotaLedger aiQuotaLedger;
+    
     @Value("${razorpay.key.id:}")
     private String razorpayKeyId;
     
@@ -195,53 +198,66 @@ public class SubscriptionService {
     }
     
     /**
-     * Use an AI query (increment usage counter)
+     * Use an AI query (increment usage counter). Taken atomically through {@link AiQuotaLedger},
+     * so concurrent calls cannot spend more than the plan or free trials allow.
      */
-    @Transactional
     public Map<String, Object> useAIQuery(User user) {
         Map<String, Object> result = new HashMap<>();
+        AiQuotaLedger.Reservation reservation = aiQuotaLedger.reserve(user, 1);
         
-        // Check for active subscription first
-        Optional<Subscription> activeSubscription = getActiveSubscription(user);
-        
-        if (activeSubscription.isPresent()) {
-            Subscription sub = activeSubscription.get();
-            
-            if (!sub.canMakeQuery()) {
-                result.put("success", false);
-                result.put("error", "Query limit reached for your plan");
-                result.put("queriesRemaining", 0);
-                return result;
-            }
-            
-            sub.incrementQueryCount();
-            subscriptionRepository.save(sub);
-            
+        if (reservation.granted()) {
             result.put("success", true);
-            result.put("accessType", "SUBSCRIPTION");
-            result.put("queriesRemaining", sub.getRemainingQueries());
-            return result;
-        }
-        
-        // Use free trial
-        Integer freeTrials = user.getFreeTrialAttempts();
-        if (freeTrials == null) freeTrials = 3;
-        
-        if (freeTrials > 0) {
-            user.setFreeTrialAttempts(freeTrials - 1);
-            userRepository.save(user);
-            
-            result.put("success", true);
-            result.put("accessType", "FREE_TRIAL");
-            result.put("freeTrialsRemaining", freeTrials - 1);
+            result.put("accessType", reservation.accessType());
+            result.put(AiQuotaLedger.SUBSCRIPTION.equals(reservation.accessType())
+                    ? "queriesRemaining" : "freeTrialsRemaining", reservation.remaining());
             return result;
         }
         
         result.put("success", false);
-        result.put("error", "No subscription or free trials available");
+        if (reservation.plan() != null) {
+            result.put("error", "Query limit reached for your plan");
+            result.put("queriesRemaining", 0);
+        } else {
+            result.put("error", "No subscription or free trials available");
+        }
         return result;
     }
     
+    /**
+     * Reserve one AI query before calling the AI service; the reservation also tells the
+     * plan and what is left. {@link #refundAIQuery} gives it back if the call fails.
+     */
+    public AiQuotaLedger.Reservation reserveAIQuery(User user) {
+        return aiQuotaLedger.reserve(user, 1);
+    }
+    
+    /**
+     * Give back a query reserved by {@link #reserveAIQuery}
+     */
+    public void refundAIQuery(User user, AiQuotaLedger.Reservation reservation) {
+        if (reservation != null && reservation.granted()) {
+            aiQuotaLedger.refund(user, reservation);
+        }
+    }
+    
+    /**
+     * Reserve up to {@code count} AI queries at once (a batch analysis, before any case is
+     * sent): all of them if they are left, otherwise what is left.
+     * {@link #refundAIQueries} gives back the ones that end up unused.
+     */
+    public AiQuotaLedger.Reservation reserveAIQueries(User user, int count) {
+        return aiQuotaLedger.reserveUpTo(user, count);
+    }
+
+    /**
+     * Give back {@code count} of the queries reserved by {@link #reserveAIQueries}
+     */
+    public void refundAIQueries(User user, AiQuotaLedger.Reservation reservation, int count) {
+        if (reservation != null && count > 0) {
+            aiQuotaLedger.refund(user, reservation, count);
+        }
+    }
+
     /**
      * Update expired subscriptions (called by scheduled task)
      */
@@ -0,0 +1,70 @@
+package com.example.demo.Implementation;
+
+import com.example.demo.Classes.User;
+import com.example.demo.Repository.UserAll;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Bounded, short-lived cache of {@link User} rows keyed by email, in front of
+ * {@link UserAll#searchByEmail(String)} — the most repeated query in the app, since every
+ * authenticated handler starts by loading the caller.
+ *
+ * <p>Entries expire {@code app.user-cache.ttl-seconds} after load and the cache never holds
+ * more than {@code app.user-cache.max-size} users. Any update or delete of a {@code User}
+ * evicts its entry through {@link UserCacheEvictionListener}, so profile edits, verification
+ * and free-trial changes are visible on the next request; the TTL only bounds staleness from
+ * writes made by other instances. Unknown emails are never cached.
+ *
+ * <p>Hit/miss/eviction counts are published as {@code cache.gets} / {@code cache.evictions}
+ * with {@code cache=users} on {@code /actuator/prometheus}.
+ */
+@Component
+public class UserCache {
+
+    static final String CACHE_NAME = "users";
+
+    private final UserAll userRepository;
+    private final Cache<String, User> cache;
+
+    @Autowired
+    public UserCache(UserAll userRepository,
+                     MeterRegistry meterRegistry,
+                     @Value("${app.user-cache.max-size:10000}") long maxSize,
+                     @Value("${app.user-cache.ttl-seconds:60}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(0, maxSize))
+                .expireAfterWrite(Duration.ofSeconds(Math.max(0, ttlSeconds)))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /** The user with {@code email}, from cache or the database; {@code null} if none exists. */
+    public User findByEmail(String email) {
+        if (email == null) {
+            return null;
+        }
+        return cache.get(email, userRepository::searchByEmail);
+    }
+
+    /** Drop the cached entry for {@code email}, if any. */
+    public void evict(String email) {
+        if (email != null) {
+            cache.invalidate(email);
+        }
+    }
+
+    long size() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.demo.Implementation;
+
+import com.example.demo.Classes.User;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * JPA listener that keeps {@link UserCache} coherent with every write to a {@link User},
+ * wherever it happens (profile updates, OTP verification, free-trial accounting, ...).
+ *
+ * <p>The entry is evicted as soon as Hibernate flushes the change and, when a transaction
+ * is active, once more after it completes, so a concurrent request cannot re-cache the
+ * pre-commit row in between. Instantiated by Hibernate through Spring's bean container,
+ * hence the lazy {@link ObjectProvider}: the cache depends on the repositories that the
+ * entity manager factory is still building when listeners are created.
+ */
+public class UserCacheEvictionListener {
+
+    private final ObjectProvider<UserCache> userCache;
+
+    public UserCacheEvictionListener(ObjectProvider<UserCache> userCache) {
+        this.userCache = userCache;
+    }
+
+    @PostUpdate
+    @PostRemove
+    void evict(User user) {
+        UserCache cache = userCache.getIfAvailable();
+        String email = user.getEmail();
+        if (cache == null || email == null) {
+            return;
+        }
+        cache.evict(email);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.evict(email);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.demo.Repository;
+
+import com.example.demo.Classes.AiJob;
+import com.example.demo.Classes.AiJobStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * State changes are conditional updates on the current status, so when several instances or
+ * a cancel race for the same job exactly one of them wins (update count 1).
+ */
+@Repository
+public interface AiJobRepository extends JpaRepository<AiJob, String> {
+
+    Optional<AiJob> findByIdAndUserId(String id, Integer userId);
+
+    @Query("SELECT j.id FROM AiJob j WHERE j.status = :status ORDER BY j.createdAt")
+    List<String> findIdsByStatus(@Param("status") AiJobStatus status, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE AiJob j SET j.status = :running, j.startedAt = :now, j.attempts = j.attempts + 1 "
+            + "WHERE j.id = :id AND j.status = :queued")
+    int claim(@Param("id") String id, @Param("queued") AiJobStatus queued,
+              @Param("running") AiJobStatus running, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE AiJob j SET j.status = :status, j.result = :result, j.error = :error, j.finishedAt = :now "
+            + "WHERE j.id = :id AND j.status IN :from")
+    int finish(@Param("id") String id, @Param("from") Collection<AiJobStatus> from,
+               @Param("status") AiJobStatus status, @Param("result") String result,
+               @Param("error") String error, @Param("now") LocalDateTime now);
+
+    /**
+     * Put a running job back in the queue. Matching {@code startedAt} makes sure it is still the
+     * same attempt, not one another instance has claimed since.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE AiJob j SET j.status = :queued, j.startedAt = null "
+            + "WHERE j.id = :id AND j.status = :running AND j.startedAt = :startedAt")
+    int requeue(@Param("id") String id, @Param("running") AiJobStatus running,
+                @Param("queued") AiJobStatus queued, @Param("startedAt") LocalDateTime startedAt);
+
+    /** Running jobs whose upstream call started before {@code cutoff}: their instance is gone. */
+    @Query("SELECT j FROM AiJob j WHERE j.status = :running AND j.startedAt < :cutoff")
+    List<AiJob> findStale(@Param("running") AiJobStatus running, @Param("cutoff") LocalDateTime cutoff);
+}
@@ -11,6 +11,7 @@ import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -78,6 +79,12 @@ public interface CaseAll extends JpaRepository<Case,Integer> {
     long countDisposedCasesByAdvocate(@Param("advocate") User advocate);
 
     
+    // Cases among :ids the user is a petitioner, advocate or judge on — used where a
+    // caller names case ids directly and must not learn about cases that aren't theirs.
+    @Query("SELECT c FROM Case c WHERE c.id IN :ids AND (c.presidingJudge = :user" +
+           " OR :user MEMBER OF c.petitioners OR :user MEMBER OF c.advocates OR :user MEMBER OF c.benchJudges)")
+    List<Case> findAccessibleByIdIn(@Param("ids") Collection<Integer> ids, @Param("user") User user);
+
     @Query("SELECT c FROM Case c WHERE c.presidingJudge = :judge")
     List<Case> findCasesByPresidingJudge(@Param("judge") User judge);
     
@@ -3,7 +3,9 @@ package com.example.demo.Repository;
 import com.example.demo.Classes.Subscription;
 import com.example.demo.Classes.SubscriptionStatus;
 import com.example.demo.Classes.User;
+import com.example.demo.Classes.SubscriptionPlan;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -37,6 +39,38 @@ public interface SubscriptionRepository extends JpaRepository<Subscription, Long
     @Query("SELECT s FROM Subscription s WHERE s.user.id = :userId AND s.status = 'ACTIVE' AND s.endDate > :now ORDER BY s.endDate DESC")
     Optional<Subscription> findActiveSubscriptionByUserId(@Param("userId") Integer userId, @Param("now") LocalDateTime now);
     
+    /**
+     * AI quota of the user's active subscription, without loading the entity
+     */
+    interface ActiveQuota {
+        Long getId();
+        SubscriptionPlan getPlan();
+        Integer getAiQueriesAllowed();
+        Integer getAiQueriesUsed();
+    }
+
+    @Query("SELECT s.id AS id, s.plan AS plan, s.aiQueriesAllowed AS aiQueriesAllowed, s.aiQueriesUsed AS aiQueriesUsed " +
+           "FROM Subscription s WHERE s.user.id = :userId AND s.status = 'ACTIVE' AND s.endDate > :now ORDER BY s.endDate DESC")
+    List<ActiveQuota> findActiveQuota(@Param("userId") Integer userId, @Param("now") LocalDateTime now);
+
+    /**
+     * Take {@code units} AI queries from the user's active subscription if that many are left
+     * (always on unlimited plans, whose allowance is negative). Returns the rows updated: 0 when
+     * there is no active subscription or too few queries remain.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Subscription s SET s.aiQueriesUsed = COALESCE(s.aiQueriesUsed, 0) + :units " +
+           "WHERE s.user.id = :userId AND s.status = 'ACTIVE' AND s.endDate > :now " +
+           "AND (s.aiQueriesAllowed < 0 OR COALESCE(s.aiQueriesUsed, 0) + :units <= s.aiQueriesAllowed)")
+    int reserveQueries(@Param("userId") Integer userId, @Param("units") int units, @Param("now") LocalDateTime now);
+
+    /**
+     * Give back {@code units} AI queries taken by {@link #reserveQueries}
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Subscription s SET s.aiQueriesUsed = s.aiQueriesUsed - :units WHERE s.id = :id AND s.aiQueriesUsed >= :units")
+    int refundQueries(@Param("id") Long id, @Param("units") int units);
+
     /**
      * Find by payment ID (for Razorpay verification)
      */
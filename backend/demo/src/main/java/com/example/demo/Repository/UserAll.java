@@ -4,6 +4,7 @@ import com.example.demo.Classes.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -37,4 +38,20 @@ public interface UserAll extends JpaRepository<User,Integer> {
            "u.id != :currentUserId")
     public List<User> searchUsersByQuery(@Param("query") String query, 
                                        @Param("currentUserId") Integer currentUserId);
+
+    // Free-trial ledger. Bulk updates skip entity listeners, so callers evict UserCache
+    // themselves; the version is bumped so a stale detached User cannot overwrite the count.
+    @Query("SELECT COALESCE(u.freeTrialAttempts, 3) FROM User u WHERE u.id = :id")
+    public Integer freeTrialAttempts(@Param("id") Integer id);
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE User u SET u.freeTrialAttempts = COALESCE(u.freeTrialAttempts, 3) - :units, " +
+           "u.version = COALESCE(u.version, 0) + 1 " +
+           "WHERE u.id = :id AND COALESCE(u.freeTrialAttempts, 3) >= :units")
+    public int reserveFreeTrials(@Param("id") Integer id, @Param("units") int units);
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE User u SET u.freeTrialAttempts = COALESCE(u.freeTrialAttempts, 0) + :units, " +
+           "u.version = COALESCE(u.version, 0) + 1 WHERE u.id = :id")
+    public int refundFreeTrials(@Param("id") Integer id, @Param("units") int units);
 }
@@ -0,0 +1,21 @@
+-- Background AI jobs (POST /api/agent/jobs). The table doubles as the work queue: instances
+-- claim QUEUED rows with a conditional UPDATE, so (status, created_at) is the dispatcher's index.
+-- IF NOT EXISTS: with ddl-auto=update, Hibernate may have created the table before Flyway ran.
+CREATE TABLE IF NOT EXISTS ai_jobs (
+    id          VARCHAR(36)  NOT NULL,
+    kind        VARCHAR(32)  NOT NULL,
+    user_id     INT          NOT NULL,
+    user_email  VARCHAR(255) NOT NULL,
+    tier        VARCHAR(32),
+    status      VARCHAR(16)  NOT NULL,
+    request     LONGTEXT     NOT NULL,
+    result      LONGTEXT,
+    error       VARCHAR(64),
+    attempts    INT          NOT NULL DEFAULT 0,
+    created_at  DATETIME(6)  NOT NULL,
+    started_at  DATETIME(6),
+    finished_at DATETIME(6),
+    PRIMARY KEY (id),
+    INDEX idx_ai_jobs_status_created (status, created_at),
+    INDEX idx_ai_jobs_user_created (user_id, created_at)
+) ENGINE = InnoDB;
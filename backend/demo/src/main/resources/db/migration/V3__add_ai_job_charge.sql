@@ -0,0 +1,10 @@
+-- Quota reserved when an AI job is submitted, so it can be refunded when the job fails or is
+-- cancelled, possibly by another instance. Guarded: with ddl-auto=update, Hibernate may have
+-- added the columns before Flyway ran, and MySQL has no ADD COLUMN IF NOT EXISTS.
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.COLUMNS
+               WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'ai_jobs' AND COLUMN_NAME = 'charged_queries') = 0,
+              'ALTER TABLE ai_jobs ADD COLUMN charged_queries INT NOT NULL DEFAULT 0, ADD COLUMN charged_subscription_id BIGINT NULL',
+              'DO 0');
+PREPARE add_ai_job_charge FROM @ddl;
+EXECUTE add_ai_job_charge;
+DEALLOCATE PREPARE add_ai_job_charge;
@@ -0,0 +1,150 @@
+package com.example.demo;
+
+import com.example.demo.Classes.User;
+import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.RoleAuthorities;
+import com.example.demo.Implementation.AiQuotaLedger;
+import com.example.demo.Implementation.SubscriptionService;
+import com.example.demo.Repository.UserAll;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * An analysis that outlasts {@code spring.mvc.async.request-timeout} is answered with
+ * {@code 504 ai_timeout} and its query refunded, even though the ML service answers later.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.mvc.async.request-timeout=500ms",
+        "ai.cache.enabled=false",
+        "ratelimit.enabled=false"
+})
+@ActiveProfiles("test")
+class AiAnalysisTimeoutIntegrationTest {
+
+    static {
+        if (System.getenv("JWT_SECRET") == null && System.getProperty("JWT_SECRET") == null) {
+            System.setProperty("JWT_SECRET", "test-only-jwt-secret-please-override-0123456789");
+        }
+    }
+
+    private static final String EMAIL = "slow@timeout.test";
+    private static final AiQuotaLedger.Reservation RESERVATION =
+            new AiQuotaLedger.Reservation(1, AiQuotaLedger.FREE_TRIAL, null, null, null, 1);
+
+    private static volatile CountDownLatch answered = new CountDownLatch(1);
+    private static HttpServer mlService;
+
+    @DynamicPropertySource
+    static void slowMlService(DynamicPropertyRegistry registry) throws IOException {
+        mlService = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mlService.createContext("/api", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(1_500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"judgment\":\"allowed\",\"confidence\":0.8}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            answered.countDown();
+        });
+        mlService.setExecutor(Executors.newCachedThreadPool());
+        mlService.start();
+        registry.add("ai.service.url", () -> "http://127.0.0.1:" + mlService.getAddress().getPort() + "/api");
+    }
+
+    @AfterAll
+    static void stopStandIn() {
+        mlService.stop(0);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserAll userRepository;
+
+    @MockitoBean
+    private SubscriptionService subscriptionService;
+
+    @BeforeEach
+    void user() {
+        if (userRepository.searchByEmail(EMAIL) == null) {
+            User user = new User();
+            user.setEmail(EMAIL);
+            user.setPassword("irrelevant-hash");
+            user.setRole(User.UserRole.CITIZEN);
+            userRepository.save(user);
+        }
+        clearInvocations(subscriptionService);
+        when(subscriptionService.reserveAIQuery(any())).thenReturn(RESERVATION);
+        answered = new CountDownLatch(1);
+    }
+
+    @Test
+    void aCaseAnalysisThatTimesOutIsRefunded() throws Exception {
+        assertTimedOutAndRefunded("/api/ai-analysis/analyze");
+    }
+
+    @Test
+    void anAgentAnalysisThatTimesOutIsRefunded() throws Exception {
+        assertTimedOutAndRefunded("/api/agent/analyze");
+    }
+
+    private void assertTimedOutAndRefunded(String path) throws Exception {
+        String token = JwtProvider.generateToken(new UsernamePasswordAuthenticationToken(
+                EMAIL, null, List.of(new SimpleGrantedAuthority(RoleAuthorities.ROLE_CITIZEN))));
+        HttpResponse<String> response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(
+                        URI.create("http://127.0.0.1:" + port + path))
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"case_type\":\"civil\",\"facts\":\"" + path + "\"}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(504, response.statusCode(), response.body());
+        assertTrue(response.body().contains("ai_timeout"));
+        verify(subscriptionService, times(1)).refundAIQuery(any(), eq(RESERVATION));
+
+        // The ML service answering afterwards neither charges nor refunds a second time.
+        assertTrue(answered.await(10, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        verify(subscriptionService, times(1)).refundAIQuery(any(), eq(RESERVATION));
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.demo;
+
+import com.example.demo.Classes.User;
+import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.RoleAuthorities;
+import com.example.demo.Implementation.AiQuotaLedger;
+import com.example.demo.Implementation.SubscriptionService;
+import com.example.demo.Repository.UserAll;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Load test for the asynchronous AI proxy mode: with Tomcat cut down to 4 worker threads and
+ * the AI service stand-in taking 1.5s per analysis, 16 concurrent analyses must not delay an
+ * unrelated endpoint. In the old blocking mode every worker sits on the upstream call and the
+ * health probe queues behind them for seconds.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "server.tomcat.threads.max=4",
+        "server.tomcat.threads.min-spare=4",
+        "ai.async.enabled=true",
+        "ai.async.threads=32",
+        "ai.concurrency.initial-limit=64",
+        "ratelimit.enabled=false"
+})
+@ActiveProfiles("test")
+class AiAsyncProxyLoadTest {
+
+    static {
+        if (System.getenv("JWT_SECRET") == null && System.getProperty("JWT_SECRET") == null) {
+            System.setProperty("JWT_SECRET", "test-only-jwt-secret-please-override-0123456789");
+        }
+    }
+
+    private static final long UPSTREAM_DELAY_MS = 1_500;
+    private static final int CONCURRENT_ANALYSES = 16;
+    private static final String EMAIL = "async-load@test.com";
+
+    private static HttpServer slowAiService;
+
+    @DynamicPropertySource
+    static void aiServiceStandIn(DynamicPropertyRegistry registry) throws IOException {
+        slowAiService = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        slowAiService.createContext("/api/agent/analyze", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(UPSTREAM_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"analysis\":\"done\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        slowAiService.setExecutor(Executors.newCachedThreadPool());
+        slowAiService.start();
+        registry.add("ai.service.url", () -> "http://127.0.0.1:" + slowAiService.getAddress().getPort() + "/api");
+    }
+
+    @AfterAll
+    static void stopStandIn() {
+        slowAiService.stop(0);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserAll userRepository;
+
+    @MockitoBean
+    private SubscriptionService subscriptionService;
+
+    @BeforeEach
+    void user() {
+        if (userRepository.searchByEmail(EMAIL) == null) {
+            User user = new User();
+            user.setEmail(EMAIL);
+            user.setPassword("irrelevant-hash");
+            user.setRole(User.UserRole.CITIZEN);
+            userRepository.save(user);
+        }
+        when(subscriptionService.checkAccess(any())).thenReturn(Map.of("hasAccess", true));
+        when(subscriptionService.getActiveSubscription(any())).thenReturn(Optional.empty());
+        when(subscriptionService.useAIQuery(any())).thenReturn(Map.of("success", true));
+        when(subscriptionService.reserveAIQuery(any())).thenReturn(
+                new AiQuotaLedger.Reservation(1, AiQuotaLedger.FREE_TRIAL, null, null, null, 1));
+    }
+
+    @Test
+    void unrelatedEndpointStaysFastWhileAiUpstreamIsSlow() throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        String token = JwtProvider.generateToken(new UsernamePasswordAuthenticationToken(
+                EMAIL, null, List.of(new SimpleGrantedAuthority(RoleAuthorities.ROLE_CITIZEN))));
+
+        // Warm up the health endpoint so the measurement isn't its first-call initialization.
+        for (int i = 0; i < 3; i++) {
+            client.send(HttpRequest.newBuilder(url("/actuator/health")).GET().build(),
+                    HttpResponse.BodyHandlers.discarding());
+        }
+
+        List<CompletableFuture<HttpResponse<String>>> analyses = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_ANALYSES; i++) {
+            analyses.add(client.sendAsync(HttpRequest.newBuilder(url("/api/agent/analyze"))
+                            .header("Authorization", "Bearer " + token)
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString("{\"query\":\"q" + i + "\"}"))
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString()));
+        }
+        Thread.sleep(300); // let the analyses reach the upstream
+
+        long worstMs = 0;
+        for (int i = 0; i < 10; i++) {
+            long start = System.nanoTime();
+            HttpResponse<String> health = client.send(HttpRequest.newBuilder(url("/actuator/health")).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            worstMs = Math.max(worstMs, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            assertEquals(200, health.statusCode());
+        }
+
+        for (CompletableFuture<HttpResponse<String>> analysis : analyses) {
+            HttpResponse<String> response = analysis.get(30, TimeUnit.SECONDS);
+            assertEquals(200, response.statusCode(), response.body());
+            assertTrue(response.body().contains("done"));
+        }
+        // Blocking mode measures ~7s here (4 workers x 4 rounds of 1.5s); one upstream delay is
+        // a generous ceiling for a single shared vCPU.
+        assertTrue(worstMs < UPSTREAM_DELAY_MS,
+                "health latency should not depend on the AI upstream, worst was " + worstMs + "ms");
+    }
+
+    private URI url(String path) {
+        return URI.create("http://127.0.0.1:" + port + path);
+    }
+}
@@ -0,0 +1,370 @@
+package com.example.demo;
+
+import com.example.demo.Classes.Case;
+import com.example.demo.Classes.User;
+import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.RoleAuthorities;
+import com.example.demo.Implementation.SubscriptionService;
+import com.example.demo.Repository.CaseAll;
+import com.example.demo.Repository.UserAll;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Batch case analysis against a local ML stand-in: cases are sent in bounded micro-batches with
+ * bounded parallelism, results stream back as NDJSON before the last batch returns, the queries
+ * are reserved in one transaction up front and refunded for cases that fail, and cases beyond
+ * the user's quota are never sent.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "ai.cache.enabled=false",
+        "ratelimit.enabled=false",
+        "ai.batch.size=10",
+        "ai.batch.parallelism=2"
+})
+@ActiveProfiles("test")
+class AiBatchAnalysisIntegrationTest {
+
+    static {
+        if (System.getenv("JWT_SECRET") == null && System.getProperty("JWT_SECRET") == null) {
+            System.setProperty("JWT_SECRET", "test-only-jwt-secret-please-override-0123456789");
+        }
+    }
+
+    private static final String FIRM = "firm@batch.test";
+    private static final String TRIAL = "trial@batch.test";
+    private static final String OUTAGE = "outage@batch.test";
+    private static final String BROKE = "broke@batch.test";
+    private static final long BATCH_DELAY_MS = 400;
+
+    private static final ConcurrentLinkedQueue<Integer> batchSizes = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static final AtomicInteger maxInFlight = new AtomicInteger();
+    private static HttpServer ml;
+
+    @DynamicPropertySource
+    static void mlStandIn(DynamicPropertyRegistry registry) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        ml = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ml.createContext("/api/analyze/batch", exchange -> {
+            int now = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(now, Math::max);
+            try {
+                Map<String, Object> request = mapper.readValue(exchange.getRequestBody(), new TypeReference<>() {});
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> cases = (List<Map<String, Object>>) request.get("cases");
+                batchSizes.add(cases.size());
+                Thread.sleep(BATCH_DELAY_MS);
+                if (cases.stream().anyMatch(c -> String.valueOf(c.get("description")).contains("outage"))) {
+                    exchange.sendResponseHeaders(500, -1);
+                    exchange.close();
+                    return;
+                }
+                List<Map<String, Object>> results = new ArrayList<>();
+                for (Map<String, Object> c : cases) {
+                    String description = String.valueOf(c.get("description"));
+                    results.add(description.contains("unreadable")
+                            ? Map.of("error", "could not parse case")
+                            : Map.of("judgment", "Acquitted", "confidence", 0.8, "echo", description));
+                }
+                byte[] body = mapper.writeValueAsBytes(Map.of("results", results));
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+        ml.setExecutor(Executors.newCachedThreadPool());
+        ml.start();
+        registry.add("ai.service.url", () -> "http://127.0.0.1:" + ml.getAddress().getPort() + "/api");
+    }
+
+    @AfterAll
+    static void stopStandIn() {
+        ml.stop(0);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserAll userRepository;
+
+    @Autowired
+    private CaseAll caseRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockitoSpyBean
+    private SubscriptionService subscriptionService;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @BeforeEach
+    void reset() {
+        batchSizes.clear();
+        maxInFlight.set(0);
+        clearInvocations(subscriptionService);
+    }
+
+    @Test
+    void casesAreBatchedStreamedAndChargedOncePerBatch() throws Exception {
+        User firm = user(FIRM, 100);
+        Case stored = storedCase("BATCH/1/2025", "Tenant withheld rent after flooding", firm);
+        List<Map<String, Object>> payloads = IntStream.range(0, 44)
+                .mapToObj(i -> Map.<String, Object>of("case_type", "Civil",
+                        "description", i == 7 ? "unreadable scan" : "dispute " + i))
+                .collect(Collectors.toList());
+        Map<String, Object> body = Map.of("caseIds", List.of(stored.getId(), 999_999), "cases", payloads);
+
+        long start = System.nanoTime();
+        HttpResponse<java.util.stream.Stream<String>> response = client.send(request(FIRM, body),
+                HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("application/x-ndjson"));
+
+        List<Map<String, Object>> lines = new ArrayList<>();
+        long firstLineMs = -1;
+        for (String line : (Iterable<String>) response.body()::iterator) {
+            if (line.isBlank()) {
+                continue;
+            }
+            if (firstLineMs < 0) {
+                firstLineMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            }
+            lines.add(json(line));
+        }
+        long totalMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Map<String, Object> summary = lines.remove(lines.size() - 1);
+        assertEquals(true, summary.get("done"));
+        assertEquals(46, summary.get("total"));
+        assertEquals(44, summary.get("succeeded"));
+        assertEquals(2, summary.get("failed"));
+        assertEquals(44, summary.get("charged"));
+
+        assertEquals(46, lines.size());
+        Set<Object> indexes = new HashSet<>();
+        lines.forEach(line -> indexes.add(line.get("index")));
+        assertEquals(46, indexes.size(), "every case is answered exactly once");
+        Map<String, Object> missing = lines.stream().filter(l -> Integer.valueOf(999_999).equals(l.get("caseId")))
+                .findFirst().orElseThrow();
+        assertEquals("case_not_found", missing.get("error"));
+        Map<String, Object> unreadable = lines.stream().filter(l -> Integer.valueOf(9).equals(l.get("index")))
+                .findFirst().orElseThrow();
+        assertFalse((Boolean) unreadable.get("ok"));
+        Map<String, Object> fromCase = lines.stream().filter(l -> stored.getId().equals(l.get("caseId")))
+                .findFirst().orElseThrow();
+        @SuppressWarnings("unchecked")
+        Map<String, Object> result = (Map<String, Object>) fromCase.get("result");
+        assertEquals("Tenant withheld rent after flooding", result.get("echo"));
+        assertEquals(true, result.get("limited_view"), "results are enriched for the user's plan");
+
+        // 45 cases in batches of at most 10, two at a time: 5 batches in 3 rounds.
+        assertEquals(45, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(batchSizes.stream().allMatch(size -> size <= 10), "batch sizes " + batchSizes);
+        assertEquals(2, maxInFlight.get());
+        assertTrue(firstLineMs < totalMs - BATCH_DELAY_MS,
+                "first line after " + firstLineMs + " ms, all done after " + totalMs + " ms");
+
+        verify(subscriptionService, times(1)).reserveAIQueries(any(), anyInt());
+        verify(subscriptionService).reserveAIQueries(any(), eq(45));
+        verify(subscriptionService, times(1)).refundAIQueries(any(), any(), eq(1));
+        assertEquals(100 - 44, userRepository.findById(firm.getId()).orElseThrow().getFreeTrialAttempts());
+    }
+
+    @Test
+    void someoneElsesCaseLooksLikeAnUnknownOne() throws Exception {
+        User firm = user(FIRM, 100);
+        Case theirs = storedCase("BATCH/2/2025", "Boundary wall dispute", user(OUTAGE, 20));
+
+        HttpResponse<String> response = client.send(request(FIRM, Map.of("caseIds", List.of(theirs.getId()))),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+
+        String[] lines = response.body().split("\n");
+        Map<String, Object> answer = json(lines[0]);
+        assertEquals("case_not_found", answer.get("error"));
+        assertEquals("No case with id " + theirs.getId(), answer.get("message"));
+        assertFalse(response.body().contains("Boundary wall"));
+        assertEquals(0, json(lines[lines.length - 1]).get("charged"));
+        assertTrue(batchSizes.isEmpty());
+        assertEquals(100, userRepository.findById(firm.getId()).orElseThrow().getFreeTrialAttempts());
+    }
+
+    @Test
+    void casesBeyondTheRemainingQuotaAreNeverSent() throws Exception {
+        User trial = user(TRIAL, 3);
+        List<Map<String, Object>> payloads = IntStream.range(0, 5)
+                .mapToObj(i -> Map.<String, Object>of("case_type", "Civil", "description", "trial case " + i))
+                .collect(Collectors.toList());
+
+        HttpResponse<String> response = client.send(request(TRIAL, Map.of("cases", payloads)),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+
+        List<Map<String, Object>> lines = new ArrayList<>();
+        for (String line : response.body().split("\n")) {
+            lines.add(json(line));
+        }
+        Map<String, Object> summary = lines.get(lines.size() - 1);
+        assertEquals(3, summary.get("succeeded"));
+        assertEquals(3, summary.get("charged"));
+        assertEquals(2, lines.stream().filter(l -> "quota_exhausted".equals(l.get("error"))).count());
+        assertEquals(List.of(3), List.copyOf(batchSizes));
+        assertEquals(0, userRepository.findById(trial.getId()).orElseThrow().getFreeTrialAttempts());
+        verify(subscriptionService, never()).refundAIQueries(any(), any(), anyInt());
+    }
+
+    @Test
+    void casesOfAFailedBatchAreRefundedWhenItFinishes() throws Exception {
+        User user = user(OUTAGE, 20);
+        List<Map<String, Object>> payloads = IntStream.range(0, 15)
+                .mapToObj(i -> Map.<String, Object>of("case_type", "Civil",
+                        "description", i == 12 ? "outage trigger" : "steady case " + i))
+                .collect(Collectors.toList());
+
+        HttpResponse<String> response = client.send(request(OUTAGE, Map.of("cases", payloads)),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+
+        String[] lines = response.body().split("\n");
+        Map<String, Object> summary = json(lines[lines.length - 1]);
+        assertEquals(10, summary.get("succeeded"));
+        assertEquals(5, summary.get("failed"));
+        assertEquals(10, summary.get("charged"));
+        verify(subscriptionService).reserveAIQueries(any(), eq(15));
+        verify(subscriptionService).refundAIQueries(any(), any(), eq(5));
+        assertEquals(20 - 10, userRepository.findById(user.getId()).orElseThrow().getFreeTrialAttempts());
+    }
+
+    @Test
+    void aBatchNothingCanBeChargedForIsRefused() throws Exception {
+        user(BROKE, 0);
+        List<Map<String, Object>> payloads = List.of(Map.of("case_type", "Civil", "description", "no quota"));
+
+        HttpResponse<String> response = client.send(request(BROKE, Map.of("cases", payloads)),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(403, response.statusCode());
+        assertEquals(false, json(response.body()).get("hasAccess"));
+        assertTrue(batchSizes.isEmpty());
+        verify(subscriptionService, never()).checkAccess(any());
+        verify(subscriptionService, never()).getActiveSubscription(any());
+    }
+
+    @Test
+    void oversizedAndEmptyRequestsAreRejectedUpFront() throws Exception {
+        user(FIRM, 100);
+        List<Map<String, Object>> tooMany = IntStream.range(0, 501)
+                .mapToObj(i -> Map.<String, Object>of("description", "case " + i))
+                .collect(Collectors.toList());
+
+        HttpResponse<String> oversized = client.send(request(FIRM, Map.of("cases", tooMany)),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(400, oversized.statusCode());
+        assertEquals("batch_too_large", json(oversized.body()).get("error"));
+
+        HttpResponse<String> empty = client.send(request(FIRM, Map.of("cases", List.of())),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(400, empty.statusCode());
+        assertTrue(batchSizes.isEmpty());
+    }
+
+    private User user(String email, int freeTrials) {
+        User user = userRepository.searchByEmail(email);
+        if (user == null) {
+            user = new User();
+            user.setEmail(email);
+            user.setPassword("irrelevant-hash");
+            user.setRole(User.UserRole.CITIZEN);
+            // The first insert resets free trials to their default.
+            user = userRepository.save(user);
+        }
+        user.setFreeTrialAttempts(freeTrials);
+        return userRepository.save(user);
+    }
+
+    private Case storedCase(String number, String description, User judge) {
+        return caseRepository.findByCaseNumber(number).orElseGet(() -> {
+            Case c = new Case();
+            c.setCaseNumber(number);
+            c.setTitle("Sharma vs. Gupta");
+            c.setDescription(description);
+            c.setCaseType(Case.CaseType.CIVIL);
+            c.setCourtType(Case.CourtType.DISTRICT_COURT);
+            c.setStatus(Case.CaseStatus.FILED);
+            c.setFilingDate(LocalDate.now());
+            c.setPresidingJudge(judge);
+            return caseRepository.save(c);
+        });
+    }
+
+    private HttpRequest request(String email, Object body) throws IOException {
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/api/ai-analysis/analyze/batch"))
+                .header("Authorization", "Bearer " + token(email))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)))
+                .build();
+    }
+
+    private static String token(String email) {
+        return JwtProvider.generateToken(new UsernamePasswordAuthenticationToken(
+                email, null, List.of(new SimpleGrantedAuthority(RoleAuthorities.ROLE_CITIZEN))));
+    }
+
+    private Map<String, Object> json(String body) throws IOException {
+        return objectMapper.readValue(body, new TypeReference<>() {});
+    }
+}
@@ -0,0 +1,331 @@
+package com.example.demo;
+
+import com.example.demo.Classes.AiJob;
+import com.example.demo.Classes.AiJobStatus;
+import com.example.demo.Classes.User;
+import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.RoleAuthorities;
+import com.example.demo.Implementation.AiQuotaLedger;
+import com.example.demo.Implementation.SubscriptionService;
+import com.example.demo.Repository.AiJobRepository;
+import com.example.demo.Repository.UserAll;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Background agent analyses against a local agent stand-in: submitting answers at once and the
+ * result is pushed over STOMP, the query is reserved at submit and refunded when a job is
+ * cancelled or fails, and a job left running by a crashed instance is picked up again.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "ai.cache.enabled=false",
+        "ratelimit.enabled=false",
+        "ai.jobs.poll-interval-ms=200",
+        "ai.jobs.lease-seconds=5",
+        // Own database: job dispatchers of other cached test contexts poll the shared one and
+        // would claim this class's jobs (and send them to their own upstream).
+        "spring.datasource.url=jdbc:h2:mem:aijobs;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE;MODE=MySQL"
+})
+@ActiveProfiles("test")
+class AiJobIntegrationTest {
+
+    static {
+        if (System.getenv("JWT_SECRET") == null && System.getProperty("JWT_SECRET") == null) {
+            System.setProperty("JWT_SECRET", "test-only-jwt-secret-please-override-0123456789");
+        }
+    }
+
+    private static final String OWNER = "owner@jobs.test";
+    private static final String CANCELLER = "canceller@jobs.test";
+    private static final String OTHER = "other@jobs.test";
+    private static final String FAILER = "failer@jobs.test";
+    private static final String BROKE = "broke@jobs.test";
+    private static final long AGENT_DELAY_MS = 1_000;
+
+    private static final AtomicInteger agentCalls = new AtomicInteger();
+    private static HttpServer agent;
+
+    @DynamicPropertySource
+    static void agentStandIn(DynamicPropertyRegistry registry) throws IOException {
+        agent = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        agent.createContext("/api/agent/analyze", exchange -> {
+            String request = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            agentCalls.incrementAndGet();
+            if (request.contains("fail")) {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+                return;
+            }
+            try {
+                Thread.sleep(request.contains("slow") ? 3 * AGENT_DELAY_MS : AGENT_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"verdict\":\"bail likely\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        agent.setExecutor(Executors.newCachedThreadPool());
+        agent.start();
+        registry.add("ai.service.url", () -> "http://127.0.0.1:" + agent.getAddress().getPort() + "/api");
+    }
+
+    @AfterAll
+    static void stopStandIn() {
+        agent.stop(0);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserAll userRepository;
+
+    @Autowired
+    private AiJobRepository jobRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockitoBean
+    private SubscriptionService subscriptionService;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @BeforeEach
+    void users() {
+        for (String email : List.of(OWNER, CANCELLER, OTHER, FAILER, BROKE)) {
+            if (userRepository.searchByEmail(email) == null) {
+                User user = new User();
+                user.setEmail(email);
+                user.setPassword("irrelevant-hash");
+                user.setRole(User.UserRole.CITIZEN);
+                userRepository.save(user);
+            }
+        }
+        when(subscriptionService.checkAccess(any())).thenReturn(Map.of("hasAccess", true));
+        when(subscriptionService.getActiveSubscription(any())).thenReturn(Optional.empty());
+        when(subscriptionService.useAIQuery(any())).thenReturn(Map.of("success", true));
+        when(subscriptionService.reserveAIQuery(any())).thenReturn(
+                new AiQuotaLedger.Reservation(1, AiQuotaLedger.FREE_TRIAL, null, null, null, 1));
+        when(subscriptionService.reserveAIQuery(argThat(user -> user != null && BROKE.equals(user.getEmail()))))
+                .thenReturn(new AiQuotaLedger.Reservation(0, AiQuotaLedger.NONE, null, null, null, 0));
+    }
+
+    @Test
+    void submitAnswersAtOnceAndTheResultIsPushed() throws Exception {
+        BlockingQueue<Map<String, Object>> pushed = new LinkedBlockingQueue<>();
+        StompSession session = subscribe(OWNER, pushed);
+        try {
+            long start = System.nanoTime();
+            HttpResponse<String> submitted = send(OWNER, "POST", "/api/agent/jobs", "{\"facts\":\"theft, first offence\"}");
+            long submitMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertEquals(202, submitted.statusCode(), submitted.body());
+            assertTrue(submitMs < AGENT_DELAY_MS, "submit took " + submitMs + " ms");
+            String jobId = (String) json(submitted.body()).get("jobId");
+            assertEquals("/api/agent/jobs/" + jobId, submitted.headers().firstValue("Location").orElse(""));
+
+            Map<String, Object> done = awaitPush(pushed, jobId, "SUCCEEDED");
+            assertEquals(Map.of("verdict", "bail likely"), done.get("result"));
+
+            Map<String, Object> polled = json(send(OWNER, "GET", "/api/agent/jobs/" + jobId, null).body());
+            assertEquals("SUCCEEDED", polled.get("status"));
+            assertEquals(404, send(OTHER, "GET", "/api/agent/jobs/" + jobId, null).statusCode(),
+                    "jobs are private to their owner");
+            assertEquals(409, send(OWNER, "DELETE", "/api/agent/jobs/" + jobId, null).statusCode(),
+                    "a finished job cannot be cancelled");
+            verify(subscriptionService, times(1)).reserveAIQuery(argThat(user -> OWNER.equals(user.getEmail())));
+            verify(subscriptionService, never()).refundAIQuery(argThat(user -> OWNER.equals(user.getEmail())), any());
+            verify(subscriptionService, never()).useAIQuery(any());
+        } finally {
+            session.disconnect();
+        }
+    }
+
+    @Test
+    void cancelledJobIsRefunded() throws Exception {
+        HttpResponse<String> submitted = send(CANCELLER, "POST", "/api/agent/jobs", "{\"facts\":\"slow case\"}");
+        String jobId = (String) json(submitted.body()).get("jobId");
+        awaitStatus(jobId, AiJobStatus.RUNNING);
+
+        HttpResponse<String> cancelled = send(CANCELLER, "DELETE", "/api/agent/jobs/" + jobId, null);
+        assertEquals(200, cancelled.statusCode(), cancelled.body());
+        assertEquals("CANCELLED", json(cancelled.body()).get("status"));
+
+        Thread.sleep(4 * AGENT_DELAY_MS); // the upstream call would have finished by now
+        assertEquals(AiJobStatus.CANCELLED, jobRepository.findById(jobId).orElseThrow().getStatus());
+        assertEquals(200, send(CANCELLER, "DELETE", "/api/agent/jobs/" + jobId, null).statusCode(),
+                "cancelling again is a no-op");
+        verify(subscriptionService, times(1)).refundAIQuery(argThat(user -> CANCELLER.equals(user.getEmail())),
+                argThat(reservation -> reservation.units() == 1));
+    }
+
+    @Test
+    void jobWithoutQuotaIsRefusedBeforeItIsQueued() throws Exception {
+        int callsBefore = agentCalls.get();
+
+        HttpResponse<String> submitted = send(BROKE, "POST", "/api/agent/jobs", "{\"facts\":\"no quota left\"}");
+
+        assertEquals(403, submitted.statusCode(), submitted.body());
+        Thread.sleep(500);
+        assertEquals(callsBefore, agentCalls.get());
+        assertTrue(jobRepository.findAll().stream().noneMatch(job -> BROKE.equals(job.getUserEmail())));
+    }
+
+    @Test
+    void jobThatFailsAfterItsLastAttemptIsRefundedOnce() throws Exception {
+        HttpResponse<String> submitted = send(FAILER, "POST", "/api/agent/jobs", "{\"facts\":\"fail upstream\"}");
+        String jobId = (String) json(submitted.body()).get("jobId");
+
+        AiJob failed = awaitStatus(jobId, AiJobStatus.FAILED);
+
+        assertEquals(2, failed.getAttempts());
+        verify(subscriptionService, times(1)).refundAIQuery(argThat(user -> FAILER.equals(user.getEmail())),
+                argThat(reservation -> reservation.units() == 1));
+    }
+
+    @Test
+    void jobLeftRunningByACrashedInstanceIsRunAgain() throws Exception {
+        User owner = userRepository.searchByEmail(OWNER);
+        AiJob orphan = new AiJob();
+        orphan.setId(UUID.randomUUID().toString());
+        orphan.setKind("agent-analyze");
+        orphan.setUserId(owner.getId());
+        orphan.setUserEmail(OWNER);
+        orphan.setTier("free");
+        orphan.setRequest("{\"facts\":\"orphaned by a restart\"}");
+        orphan.setStatus(AiJobStatus.RUNNING);
+        orphan.setAttempts(1);
+        orphan.setStartedAt(LocalDateTime.now().minusMinutes(10));
+        jobRepository.save(orphan);
+
+        AiJob recovered = awaitStatus(orphan.getId(), AiJobStatus.SUCCEEDED);
+        assertEquals(2, recovered.getAttempts());
+        assertNotNull(recovered.getResult());
+    }
+
+    private AiJob awaitStatus(String jobId, AiJobStatus status) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (System.nanoTime() < deadline) {
+            AiJob job = jobRepository.findById(jobId).orElseThrow();
+            if (job.getStatus() == status) {
+                return job;
+            }
+            Thread.sleep(50);
+        }
+        return fail("job " + jobId + " never reached " + status);
+    }
+
+    private static Map<String, Object> awaitPush(BlockingQueue<Map<String, Object>> pushed, String jobId,
+                                                 String status) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (System.nanoTime() < deadline) {
+            Map<String, Object> update = pushed.poll(100, TimeUnit.MILLISECONDS);
+            if (update != null && jobId.equals(update.get("jobId")) && status.equals(update.get("status"))) {
+                return update;
+            }
+        }
+        return fail("no " + status + " push for job " + jobId);
+    }
+
+    private StompSession subscribe(String email, BlockingQueue<Map<String, Object>> pushed) throws Exception {
+        WebSocketStompClient stomp = new WebSocketStompClient(
+                new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        stomp.setMessageConverter(new MappingJackson2MessageConverter());
+        StompHeaders connect = new StompHeaders();
+        connect.add("Authorization", "Bearer " + token(email));
+        StompSession session = stomp.connectAsync("http://127.0.0.1:" + port + "/ws", new WebSocketHttpHeaders(),
+                connect, new StompSessionHandlerAdapter() {}).get(10, TimeUnit.SECONDS);
+        session.subscribe("/user/queue/jobs", new StompFrameHandler() {
+            @Override
+            @NonNull
+            public Type getPayloadType(@NonNull StompHeaders headers) {
+                return Map.class;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void handleFrame(@NonNull StompHeaders headers, Object payload) {
+                pushed.add((Map<String, Object>) payload);
+            }
+        });
+        Thread.sleep(200); // let the subscription register before anything is pushed
+        return session;
+    }
+
+    private HttpResponse<String> send(String email, String method, String path, String json) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path))
+                .header("Authorization", "Bearer " + token(email))
+                .header("Content-Type", "application/json")
+                .method(method, json == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(json));
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String token(String email) {
+        return JwtProvider.generateToken(new UsernamePasswordAuthenticationToken(
+                email, null, List.of(new SimpleGrantedAuthority(RoleAuthorities.ROLE_CITIZEN))));
+    }
+
+    private Map<String, Object> json(String body) throws IOException {
+        return objectMapper.readValue(body, new TypeReference<>() {});
+    }
+}
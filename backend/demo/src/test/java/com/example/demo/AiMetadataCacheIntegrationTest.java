@@ -0,0 +1,155 @@
+package com.example.demo;
+
+import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.RoleAuthorities;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Health and document-type probes against a slow local stand-in: after the first call they are
+ * answered from {@link com.example.demo.Implementation.AiMetadataCache} with an {@code Age}
+ * header, and once stale they are still answered at once while one refresh reaches upstream.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "ratelimit.enabled=false",
+        "ai.metadata-cache.ttl-seconds=1"
+})
+@ActiveProfiles("test")
+class AiMetadataCacheIntegrationTest {
+
+    static {
+        if (System.getenv("JWT_SECRET") == null && System.getProperty("JWT_SECRET") == null) {
+            System.setProperty("JWT_SECRET", "test-only-jwt-secret-please-override-0123456789");
+        }
+    }
+
+    private static final long UPSTREAM_DELAY_MS = 300;
+
+    private static final AtomicInteger agentHealthCalls = new AtomicInteger();
+    private static final AtomicInteger documentTypeCalls = new AtomicInteger();
+    private static HttpServer ml;
+
+    @DynamicPropertySource
+    static void mlStandIn(DynamicPropertyRegistry registry) throws IOException {
+        ml = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ml.createContext("/api/agent/health", exchange -> {
+            agentHealthCalls.incrementAndGet();
+            slowJson(exchange, "{\"status\":\"ok\",\"model\":\"stand-in\"}");
+        });
+        ml.createContext("/api/agent/document-types", exchange -> {
+            documentTypeCalls.incrementAndGet();
+            slowJson(exchange, "{\"types\":[\"FIR\",\"CHARGESHEET\"]}");
+        });
+        ml.setExecutor(Executors.newCachedThreadPool());
+        ml.start();
+        registry.add("ai.service.url", () -> "http://127.0.0.1:" + ml.getAddress().getPort() + "/api");
+    }
+
+    private static void slowJson(HttpExchange exchange, String json) throws IOException {
+        try {
+            Thread.sleep(UPSTREAM_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @AfterAll
+    static void stopStandIn() {
+        ml.stop(0);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @Test
+    void repeatedProbesAreServedFromCacheWithTheirAge() throws Exception {
+        HttpResponse<String> first = get("/api/agent/health");
+        assertEquals(200, first.statusCode());
+        assertEquals("0", first.headers().firstValue("Age").orElseThrow());
+        assertFalse(first.headers().firstValue("X-AI-Cache").isPresent());
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            HttpResponse<String> cached = get("/api/agent/health");
+            assertEquals(200, cached.statusCode());
+            assertEquals("HIT", cached.headers().firstValue("X-AI-Cache").orElseThrow());
+            assertTrue(cached.body().contains("\"java_proxy\":\"healthy\""));
+            assertTrue(cached.body().contains("stand-in"));
+        }
+        long tenProbesMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(1, agentHealthCalls.get());
+        // Uncached, ten probes would take at least 10 * 300 ms.
+        assertTrue(tenProbesMs < 10 * UPSTREAM_DELAY_MS / 3, "10 cached probes took " + tenProbesMs + " ms");
+    }
+
+    @Test
+    void staleValuesAreServedAtOnceWhileOneRefreshRuns() throws Exception {
+        get("/api/agent/document-types");
+        Thread.sleep(1_100);
+
+        long start = System.nanoTime();
+        HttpResponse<String> stale = get("/api/agent/document-types");
+        long staleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        HttpResponse<String> alsoStale = get("/api/agent/document-types");
+
+        assertEquals("STALE", stale.headers().firstValue("X-AI-Cache").orElseThrow());
+        assertTrue(Integer.parseInt(stale.headers().firstValue("Age").orElseThrow()) >= 1);
+        assertTrue(stale.body().contains("CHARGESHEET"));
+        assertTrue(staleMs < UPSTREAM_DELAY_MS, "stale answer took " + staleMs + " ms");
+        assertEquals("STALE", alsoStale.headers().firstValue("X-AI-Cache").orElseThrow());
+
+        Thread.sleep(UPSTREAM_DELAY_MS + 200);
+        HttpResponse<String> refreshed = get("/api/agent/document-types");
+        assertEquals("HIT", refreshed.headers().firstValue("X-AI-Cache").orElseThrow());
+        assertEquals("0", refreshed.headers().firstValue("Age").orElseThrow());
+        assertEquals(2, documentTypeCalls.get(), "one background refresh for both stale reads");
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path))
+                        .header("Authorization", "Bearer " + token())
+                        .GET()
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String token() {
+        return JwtProvider.generateToken(new UsernamePasswordAuthenticationToken(
+                "probe@metadata.test", null, List.of(new SimpleGrantedAuthority(RoleAuthorities.ROLE_CITIZEN))));
+    }
+}
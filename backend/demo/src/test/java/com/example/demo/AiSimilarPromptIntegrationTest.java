@@ -0,0 +1,132 @@
+package com.example.demo;
+
+import com.example.demo.Classes.User;
+import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.RoleAuthorities;
+import com.example.demo.Repository.UserAll;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@code /api/ai/chat} against a local Gemini stand-in: a rephrased question is answered from
+ * the cache with {@code X-AI-Cache: SIMILAR}, while a different question or a different section
+ * number still goes to Gemini.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "gemini.api.key=test-key",
+        "gemini.api.model=similar-stand-in",
+        "ratelimit.enabled=false"
+})
+@ActiveProfiles("test")
+class AiSimilarPromptIntegrationTest {
+
+    static {
+        if (System.getenv("JWT_SECRET") == null && System.getProperty("JWT_SECRET") == null) {
+            System.setProperty("JWT_SECRET", "test-only-jwt-secret-please-override-0123456789");
+        }
+    }
+
+    private static final String EMAIL = "similar-prompts@test.com";
+
+    private static final AtomicInteger geminiCalls = new AtomicInteger();
+    private static HttpServer standIn;
+
+    @DynamicPropertySource
+    static void geminiStandIn(DynamicPropertyRegistry registry) throws IOException {
+        standIn = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        standIn.createContext("/v1beta/models/similar-stand-in:generateContent", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = ("{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"answer "
+                    + geminiCalls.incrementAndGet() + "\"}]}}]}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        standIn.start();
+        registry.add("gemini.api.base-url", () -> "http://127.0.0.1:" + standIn.getAddress().getPort() + "/v1beta");
+    }
+
+    @AfterAll
+    static void stopStandIn() {
+        standIn.stop(0);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserAll userRepository;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void user() {
+        if (userRepository.searchByEmail(EMAIL) == null) {
+            User user = new User();
+            user.setEmail(EMAIL);
+            user.setPassword("irrelevant-hash");
+            user.setRole(User.UserRole.CITIZEN);
+            userRepository.save(user);
+        }
+    }
+
+    @Test
+    void rephrasedQuestionsAreAnsweredFromTheCache() throws Exception {
+        HttpResponse<String> first = chat("What is bail?");
+        assertEquals(200, first.statusCode());
+        assertEquals(1, geminiCalls.get());
+
+        HttpResponse<String> rephrased = chat("what's bail");
+        assertEquals(200, rephrased.statusCode());
+        assertEquals("SIMILAR", rephrased.headers().firstValue("X-AI-Cache").orElse(""));
+        assertEquals(first.body(), rephrased.body());
+        assertEquals(1, geminiCalls.get());
+
+        assertEquals(200, chat("what is jail?").statusCode());
+        assertEquals(2, geminiCalls.get());
+
+        chat("What is the punishment for cheating under section 420?");
+        assertEquals(3, geminiCalls.get());
+        chat("what's the punishment for cheating under Section 406");
+        assertEquals(4, geminiCalls.get(), "a different section is a different question");
+        assertEquals("SIMILAR", chat("whats the punishment for cheating under section 420")
+                .headers().firstValue("X-AI-Cache").orElse(""));
+        assertEquals(4, geminiCalls.get());
+    }
+
+    private HttpResponse<String> chat(String message) throws Exception {
+        String token = JwtProvider.generateToken(new UsernamePasswordAuthenticationToken(
+                EMAIL, null, List.of(new SimpleGrantedAuthority(RoleAuthorities.ROLE_CITIZEN))));
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/api/ai/chat"))
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"message\":\"" + message + "\"}"))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.demo;
+
+import com.example.demo.Classes.User;
+import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.RoleAuthorities;
+import com.example.demo.Implementation.AiQuotaLedger;
+import com.example.demo.Implementation.SubscriptionService;
+import com.example.demo.Repository.UserAll;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Several team members opening the same case at once: identical concurrent case analyses
+ * must reach the ML service once, yet each caller gets the result and is charged one query.
+ * The response cache is off so that only in-flight coalescing is exercised.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "ai.cache.enabled=false",
+        "ratelimit.enabled=false"
+})
+@ActiveProfiles("test")
+class AiSingleFlightIntegrationTest {
+
+    static {
+        if (System.getenv("JWT_SECRET") == null && System.getProperty("JWT_SECRET") == null) {
+            System.setProperty("JWT_SECRET", "test-only-jwt-secret-please-override-0123456789");
+        }
+    }
+
+    private static final List<String> TEAM = List.of("member1@single-flight.test", "member2@single-flight.test",
+            "member3@single-flight.test");
+    private static final int REQUESTS_PER_MEMBER = 2;
+
+    private static final AtomicInteger mlCalls = new AtomicInteger();
+    private static HttpServer mlService;
+
+    @DynamicPropertySource
+    static void mlServiceStandIn(DynamicPropertyRegistry registry) throws IOException {
+        mlService = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mlService.createContext("/api/analyze", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            mlCalls.incrementAndGet();
+            try {
+                Thread.sleep(1_000); // long enough for every caller to join the call
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"judgment\":\"allowed\",\"confidence\":0.8}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        mlService.setExecutor(Executors.newCachedThreadPool());
+        mlService.start();
+        registry.add("ai.service.url", () -> "http://127.0.0.1:" + mlService.getAddress().getPort() + "/api");
+    }
+
+    @AfterAll
+    static void stopStandIn() {
+        mlService.stop(0);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserAll userRepository;
+
+    @MockitoBean
+    private SubscriptionService subscriptionService;
+
+    @BeforeEach
+    void team() {
+        for (String email : TEAM) {
+            if (userRepository.searchByEmail(email) == null) {
+                User user = new User();
+                user.setEmail(email);
+                user.setPassword("irrelevant-hash");
+                user.setRole(User.UserRole.ADVOCATE);
+                userRepository.save(user);
+            }
+        }
+        when(subscriptionService.checkAccess(any())).thenReturn(Map.of("hasAccess", true));
+        when(subscriptionService.getActiveSubscription(any())).thenReturn(Optional.empty());
+        when(subscriptionService.useAIQuery(any())).thenReturn(Map.of("success", true));
+        when(subscriptionService.reserveAIQuery(any())).thenReturn(
+                new AiQuotaLedger.Reservation(1, AiQuotaLedger.FREE_TRIAL, null, null, null, 1));
+    }
+
+    @Test
+    void identicalConcurrentAnalysesShareOneUpstreamCallButChargeEachCaller() throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        List<CompletableFuture<HttpResponse<String>>> analyses = new ArrayList<>();
+        for (String email : TEAM) {
+            String token = JwtProvider.generateToken(new UsernamePasswordAuthenticationToken(
+                    email, null, List.of(new SimpleGrantedAuthority(RoleAuthorities.ROLE_LAWYER))));
+            for (int i = 0; i < REQUESTS_PER_MEMBER; i++) {
+                // Same case with alternating key order: still one fingerprint.
+                String body = i % 2 == 0
+                        ? "{\"case_type\":\"civil\",\"facts\":\"Tenant evicted without notice\"}"
+                        : "{\"facts\":\"Tenant evicted without notice\",\"case_type\":\"civil\"}";
+                analyses.add(client.sendAsync(HttpRequest.newBuilder(
+                                        URI.create("http://127.0.0.1:" + port + "/api/ai-analysis/analyze"))
+                                .header("Authorization", "Bearer " + token)
+                                .header("Content-Type", "application/json")
+                                .POST(HttpRequest.BodyPublishers.ofString(body))
+                                .build(),
+                        HttpResponse.BodyHandlers.ofString()));
+            }
+        }
+
+        for (CompletableFuture<HttpResponse<String>> analysis : analyses) {
+            HttpResponse<String> response = analysis.get(30, TimeUnit.SECONDS);
+            assertEquals(200, response.statusCode(), response.body());
+            assertTrue(response.body().contains("allowed"));
+        }
+        assertEquals(1, mlCalls.get(), "identical in-flight analyses should reach the ML service once");
+        for (String email : TEAM) {
+            verify(subscriptionService, times(REQUESTS_PER_MEMBER))
+                    .reserveAIQuery(argThat(user -> email.equals(user.getEmail())));
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.demo;
+
+import com.example.demo.Classes.User;
+import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.RoleAuthorities;
+import com.example.demo.Repository.UserAll;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SSE passthrough against a local streaming stand-in for Gemini's {@code streamGenerateContent}
+ * and the agent's chunked chat: tokens reach the browser as they are generated, a browser
+ * disconnect aborts the upstream, and upstream failures are counted by the circuit breaker.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "gemini.api.key=test-key",
+        "gemini.api.model=stand-in",
+        "ratelimit.enabled=false"
+})
+@ActiveProfiles("test")
+class AiStreamingIntegrationTest {
+
+    static {
+        if (System.getenv("JWT_SECRET") == null && System.getProperty("JWT_SECRET") == null) {
+            System.setProperty("JWT_SECRET", "test-only-jwt-secret-please-override-0123456789");
+        }
+    }
+
+    private static final String EMAIL = "streaming@test.com";
+    private static final int GEMINI_CHUNKS = 5;
+    private static final long CHUNK_DELAY_MS = 200;
+
+    private static final CountDownLatch upstreamAborted = new CountDownLatch(1);
+    private static HttpServer standIn;
+
+    @DynamicPropertySource
+    static void streamingStandIn(DynamicPropertyRegistry registry) throws IOException {
+        standIn = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        standIn.createContext("/v1beta/models/stand-in:streamGenerateContent", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < GEMINI_CHUNKS; i++) {
+                    pause(CHUNK_DELAY_MS);
+                    write(out, "data: {\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"word" + i + " \"}]}}]}\n\n");
+                }
+            }
+        });
+        standIn.createContext("/api/agent/chat/stream", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            if (body.contains("fail")) {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+                return;
+            }
+            endlessTokens(exchange);
+        });
+        standIn.setExecutor(Executors.newCachedThreadPool());
+        standIn.start();
+        String base = "http://127.0.0.1:" + standIn.getAddress().getPort();
+        registry.add("gemini.api.base-url", () -> base + "/v1beta");
+        registry.add("ai.service.url", () -> base + "/api");
+    }
+
+    /** Newline-delimited JSON tokens for up to a minute, noting when the reader goes away. */
+    private static void endlessTokens(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            for (int i = 0; i < 600; i++) {
+                write(out, "{\"token\":\"t" + i + " \"}\n");
+                pause(100);
+            }
+            out.close();
+        } catch (IOException e) {
+            upstreamAborted.countDown();
+        }
+    }
+
+    private static void write(OutputStream out, String chunk) throws IOException {
+        out.write(chunk.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void pause(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @AfterAll
+    static void stopStandIn() {
+        standIn.stop(0);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserAll userRepository;
+
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @BeforeEach
+    void user() {
+        if (userRepository.searchByEmail(EMAIL) == null) {
+            User user = new User();
+            user.setEmail(EMAIL);
+            user.setPassword("irrelevant-hash");
+            user.setRole(User.UserRole.CITIZEN);
+            userRepository.save(user);
+        }
+    }
+
+    @Test
+    void geminiTokensArriveWhileTheAnswerIsStillGenerating() throws Exception {
+        HttpResponse<InputStream> response = client.send(post("/api/ai/chat/stream", "{\"message\":\"What is bail?\"}"),
+                HttpResponse.BodyHandlers.ofInputStream());
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/event-stream"));
+
+        long start = System.nanoTime();
+        long firstTokenMs = -1;
+        StringBuilder text = new StringBuilder();
+        String event = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("event:")) {
+                    event = line.substring(6);
+                } else if (line.startsWith("data:") && "token".equals(event)) {
+                    if (firstTokenMs < 0) {
+                        firstTokenMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    }
+                    text.append(line.substring(5).replaceAll(".*\"text\":\"(.*)\".*", "$1"));
+                } else if (line.startsWith("data:") && "done".equals(event)) {
+                    break;
+                }
+            }
+        }
+        long totalMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("word0 word1 word2 word3 word4 ", text.toString());
+        assertEquals("done", event);
+        assertTrue(firstTokenMs >= 0 && firstTokenMs < totalMs - 2 * CHUNK_DELAY_MS,
+                "first token at " + firstTokenMs + "ms should arrive well before the end at " + totalMs + "ms");
+
+        String uri = "/v1beta/models/stand-in:streamGenerateContent";
+        assertTrue(meterRegistry.get("ai.upstream.requests").tags("uri", uri, "status", "200").timer().count() >= 1,
+                "the stream is timed to its response status");
+        // The size is recorded once the relay has closed the upstream response, just after "done".
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.find("ai.upstream.response.size").tag("uri", uri).summary() == null
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(meterRegistry.get("ai.upstream.response.size").tag("uri", uri).summary().totalAmount() > 0);
+    }
+
+    @Test
+    void clientDisconnectCancelsTheUpstreamCall() throws Exception {
+        CircuitBreaker breaker = circuitBreakerRegistry.circuitBreaker("127.0.0.1");
+        int failuresBefore = breaker.getMetrics().getNumberOfFailedCalls();
+
+        HttpResponse<InputStream> response = client.send(post("/api/agent/chat/stream", "{\"message\":\"go on\"}"),
+                HttpResponse.BodyHandlers.ofInputStream());
+        assertEquals(200, response.statusCode());
+        InputStream body = response.body();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null && !line.startsWith("event:token")) {
+            // wait for the first token
+        }
+        body.close();
+
+        assertTrue(upstreamAborted.await(15, TimeUnit.SECONDS),
+                "closing the browser stream should abort the upstream request");
+        assertEquals(failuresBefore, breaker.getMetrics().getNumberOfFailedCalls(),
+                "a client disconnect is not an upstream failure");
+    }
+
+    @Test
+    void upstreamFailureIsReportedAndCountedByTheBreaker() throws Exception {
+        CircuitBreaker breaker = circuitBreakerRegistry.circuitBreaker("127.0.0.1");
+        int failuresBefore = breaker.getMetrics().getNumberOfFailedCalls();
+
+        HttpResponse<java.util.stream.Stream<String>> response = client.send(
+                post("/api/agent/chat/stream", "{\"message\":\"fail please\"}"), HttpResponse.BodyHandlers.ofLines());
+        List<String> lines = response.body().collect(Collectors.toList());
+
+        assertEquals(200, response.statusCode());
+        assertTrue(lines.contains("event:error"), String.join("\n", lines));
+        assertEquals(failuresBefore + 1, breaker.getMetrics().getNumberOfFailedCalls());
+        assertTrue(meterRegistry.get("ai.upstream.requests")
+                .tags("uri", "/api/agent/chat/stream", "outcome", "SERVER_ERROR").timer().count() >= 1);
+    }
+
+    private HttpRequest post(String path, String json) {
+        String token = JwtProvider.generateToken(new UsernamePasswordAuthenticationToken(
+                EMAIL, null, List.of(new SimpleGrantedAuthority(RoleAuthorities.ROLE_CITIZEN))));
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path))
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "application/json")
+                .header("Accept", "text/event-stream")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.demo;
+
+import com.example.demo.Classes.SubscriptionPlan;
+import com.example.demo.Classes.User;
+import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.RoleAuthorities;
+import com.example.demo.Implementation.AiQuotaLedger;
+import com.example.demo.Implementation.SubscriptionService;
+import com.example.demo.Repository.UserAll;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+
+/**
+ * Tier scheduling under load: with the AI limit pinned at 4 against a slow local stand-in, a
+ * flood of free-trial analyses must not hold up court-tier users, whose calls are admitted ahead
+ * of the free queue by weight, while the free calls still complete (or are shed) in their turn.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "ai.cache.enabled=false",
+        "ratelimit.enabled=false",
+        "ai.concurrency.initial-limit=4",
+        "ai.concurrency.min-limit=4",
+        "ai.concurrency.max-limit=4"
+})
+@ActiveProfiles("test")
+class AiTierSchedulingLoadTest {
+
+    static {
+        if (System.getenv("JWT_SECRET") == null && System.getProperty("JWT_SECRET") == null) {
+            System.setProperty("JWT_SECRET", "test-only-jwt-secret-please-override-0123456789");
+        }
+    }
+
+    private static final String COURT = "court@tiers.test";
+    private static final String FREE = "free@tiers.test";
+    private static final long UPSTREAM_DELAY_MS = 200;
+    private static final int FREE_CALLS = 40;
+    private static final int COURT_CALLS = 12;
+
+    private static final AtomicInteger served = new AtomicInteger();
+    private static HttpServer ml;
+
+    @DynamicPropertySource
+    static void mlStandIn(DynamicPropertyRegistry registry) throws IOException {
+        ml = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ml.createContext("/api/analyze", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(UPSTREAM_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            served.incrementAndGet();
+            byte[] body = "{\"judgment\":\"Acquitted\",\"confidence\":0.8}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        ml.setExecutor(Executors.newCachedThreadPool());
+        ml.start();
+        registry.add("ai.service.url", () -> "http://127.0.0.1:" + ml.getAddress().getPort() + "/api");
+    }
+
+    @AfterAll
+    static void stopStandIn() {
+        ml.stop(0);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserAll userRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockitoSpyBean
+    private SubscriptionService subscriptionService;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @Test
+    void courtTierStaysFastWhileFreeTierFloods() throws Exception {
+        User court = user(COURT);
+        user(FREE);
+        // Quota accounting is covered elsewhere; keep concurrent charges off the shared rows.
+        // The court user's reservation carries its unlimited plan.
+        doReturn(new AiQuotaLedger.Reservation(1, AiQuotaLedger.FREE_TRIAL, null, null, null, 1))
+                .when(subscriptionService).reserveAIQuery(any());
+        doReturn(new AiQuotaLedger.Reservation(1, AiQuotaLedger.SUBSCRIPTION, null, court.getId(),
+                SubscriptionPlan.UNLIMITED, -1))
+                .when(subscriptionService).reserveAIQuery(argThat(u -> u != null && COURT.equals(u.getEmail())));
+        doNothing().when(subscriptionService).refundAIQuery(any(), any());
+
+        for (int i = 0; i < 4; i++) { // warm up the request path so the first round is not skewed
+            timed(FREE, "warm-up " + i).join();
+            timed(COURT, "warm-up " + i).join();
+        }
+
+        List<CompletableFuture<long[]>> free = new ArrayList<>();
+        for (int i = 0; i < FREE_CALLS; i++) {
+            free.add(timed(FREE, "free flood " + i));
+        }
+        Thread.sleep(100); // the flood is queued before the court users arrive
+        List<CompletableFuture<long[]>> courtCalls = new ArrayList<>();
+        for (int i = 0; i < COURT_CALLS; i++) {
+            courtCalls.add(timed(COURT, "court matter " + i));
+        }
+
+        List<Long> courtMs = latencies(courtCalls, 200);
+        List<Long> freeOk = latencies(free, 200);
+        long freeShed = free.stream().map(CompletableFuture::join).filter(r -> r[0] == 503).count();
+
+        assertEquals(COURT_CALLS, courtMs.size(), "every court call is served");
+        assertEquals(FREE_CALLS, freeOk.size() + freeShed, "free calls are served or shed, nothing else");
+        long courtP99 = courtMs.get(courtMs.size() - 1);
+        long freeP50 = freeOk.get(freeOk.size() / 2);
+        // 12 court calls over 4 slots is 3 rounds of 200 ms; a FIFO would put them behind
+        // 10 rounds of free calls (~2 s).
+        assertTrue(courtP99 < 1500, "court p99 " + courtP99 + " ms");
+        assertTrue(courtP99 < freeP50, "court p99 " + courtP99 + " ms, free p50 " + freeP50 + " ms");
+    }
+
+    /** Completes with {status, millis}. */
+    private CompletableFuture<long[]> timed(String email, String description) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/api/ai-analysis/analyze"))
+                .header("Authorization", "Bearer " + token(email))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(
+                        Map.of("case_type", "Civil", "description", description))))
+                .build();
+        long start = System.nanoTime();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .thenApply(response -> new long[]{response.statusCode(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
+    }
+
+    /** Sorted latencies of the calls that answered {@code status}. */
+    private static List<Long> latencies(List<CompletableFuture<long[]>> calls, int status) {
+        return calls.stream().map(CompletableFuture::join)
+                .filter(r -> r[0] == status)
+                .map(r -> r[1])
+                .sorted()
+                .toList();
+    }
+
+    private User user(String email) {
+        User user = userRepository.searchByEmail(email);
+        if (user == null) {
+            user = new User();
+            user.setEmail(email);
+            user.setPassword("irrelevant-hash");
+            user.setRole(User.UserRole.CITIZEN);
+        }
+        user.setFreeTrialAttempts(1000);
+        return userRepository.save(user);
+    }
+
+    private static String token(String email) {
+        return JwtProvider.generateToken(new UsernamePasswordAuthenticationToken(
+                email, null, List.of(new SimpleGrantedAuthority(RoleAuthorities.ROLE_CITIZEN))));
+    }
+}
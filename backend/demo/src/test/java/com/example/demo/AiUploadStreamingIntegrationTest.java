@@ -0,0 +1,325 @@
+package com.example.demo;
+
+import com.example.demo.Classes.User;
+import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.RoleAuthorities;
+import com.example.demo.Repository.UserAll;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Document uploads are streamed to the agent instead of being copied onto the heap: a 200 MB
+ * upload reaches a local agent stand-in intact while the live heap stays flat. Documents the
+ * agent already ingested for the user are sent by hash, unless the agent reports it lost them.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "ratelimit.enabled=false",
+        // The stand-in agent below implements document_refs.
+        "ai.upload.dedup.enabled=true"
+})
+@ActiveProfiles("test")
+class AiUploadStreamingIntegrationTest {
+
+    static {
+        if (System.getenv("JWT_SECRET") == null && System.getProperty("JWT_SECRET") == null) {
+            System.setProperty("JWT_SECRET", "test-only-jwt-secret-please-override-0123456789");
+        }
+    }
+
+    private static final String EMAIL = "uploads@test.com";
+    private static final String BOUNDARY = "----upload-streaming-test";
+    private static final int FILES = 4;
+    private static final long FILE_SIZE = 50L * 1024 * 1024;
+    private static final long MAX_LIVE_HEAP_GROWTH = 48L * 1024 * 1024;
+
+    private static final AtomicLong bytesReceived = new AtomicLong();
+    private static final AtomicReference<String> declaredLength = new AtomicReference<>();
+    private static final AtomicReference<String> smallUpload = new AtomicReference<>();
+    private static volatile boolean agentLostDocuments;
+    private static HttpServer agent;
+
+    @DynamicPropertySource
+    static void agentStandIn(DynamicPropertyRegistry registry) throws IOException {
+        agent = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        agent.createContext("/api/agent/upload-documents", exchange -> {
+            declaredLength.set(exchange.getRequestHeaders().getFirst("Content-Length"));
+            long total = 0;
+            byte[] buffer = new byte[64 * 1024];
+            StringBuilder head = new StringBuilder();
+            try (InputStream in = exchange.getRequestBody()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    if (total < 4096) {
+                        head.append(new String(buffer, 0, read, StandardCharsets.ISO_8859_1));
+                    }
+                    total += read;
+                }
+            }
+            bytesReceived.set(total);
+            if (total < 4096) {
+                smallUpload.set(head.toString());
+            }
+            if (agentLostDocuments && head.indexOf("name=\"document_refs\"") >= 0) {
+                byte[] conflict = "{\"error\":\"unknown_document_refs\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(409, conflict.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(conflict);
+                }
+                return;
+            }
+            byte[] reply = ("{\"bytes\":" + total + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, reply.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(reply);
+            }
+        });
+        agent.setExecutor(Executors.newCachedThreadPool());
+        agent.start();
+        registry.add("ai.service.url", () -> "http://127.0.0.1:" + agent.getAddress().getPort() + "/api");
+    }
+
+    @AfterAll
+    static void stopStandIn() {
+        agent.stop(0);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserAll userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @BeforeEach
+    void user() {
+        if (userRepository.searchByEmail(EMAIL) == null) {
+            User user = new User();
+            user.setEmail(EMAIL);
+            user.setPassword("irrelevant-hash");
+            user.setRole(User.UserRole.CITIZEN);
+            userRepository.save(user);
+        }
+    }
+
+    @Test
+    void fieldsAndFilesReachTheAgentAsMultipart() throws Exception {
+        byte[] body = (part("session_id", null, "abc-123".getBytes(StandardCharsets.UTF_8))
+                + part("files", "notice.txt", "Eviction notice".getBytes(StandardCharsets.UTF_8))
+                + "--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+        HttpResponse<String> response = client.send(upload(HttpRequest.BodyPublishers.ofByteArray(body)),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode(), response.body());
+        String forwarded = smallUpload.get();
+        assertTrue(forwarded.contains("name=\"session_id\""), forwarded);
+        assertTrue(forwarded.contains("abc-123"), forwarded);
+        assertTrue(forwarded.contains("name=\"files\"; filename=\"notice.txt\""), forwarded);
+        assertTrue(forwarded.contains("Eviction notice"), forwarded);
+
+        Timer upstream = meterRegistry.get("ai.upstream.requests")
+                .tags("uri", "/api/agent/upload-documents", "status", "200").timer();
+        assertTrue(upstream.count() >= 1, "the upload is timed like a RestTemplate call");
+        assertTrue(meterRegistry.get("ai.upstream.request.size").tag("uri", "/api/agent/upload-documents")
+                .summary().max() >= body.length - 512, "the multipart body is sized");
+        assertTrue(meterRegistry.get("ai.upstream.response.size").tag("uri", "/api/agent/upload-documents")
+                .summary().count() >= 1);
+    }
+
+    @Test
+    void documentsTheAgentAlreadyHasAreSentByReference() throws Exception {
+        String contract = "Leave and licence agreement, Flat 4B";
+        double savedBefore = bytesSaved();
+
+        assertEquals(200, client.send(upload(singleFile("licence.pdf", contract)),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertTrue(smallUpload.get().contains(contract));
+
+        HttpResponse<String> again = client.send(upload(singleFile("licence-copy.pdf", contract)),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, again.statusCode(), again.body());
+        String forwarded = smallUpload.get();
+        assertTrue(forwarded.contains("name=\"document_refs\""), forwarded);
+        assertTrue(forwarded.contains(sha256(contract)), forwarded);
+        assertFalse(forwarded.contains(contract), "the document bytes should not be sent again");
+        assertEquals(savedBefore + contract.length(), bytesSaved());
+    }
+
+    @Test
+    void documentsTheAgentLostAreUploadedAgain() throws Exception {
+        String chargesheet = "Chargesheet under section 420 IPC";
+        assertEquals(200, client.send(upload(singleFile("chargesheet.pdf", chargesheet)),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        agentLostDocuments = true;
+        try {
+            HttpResponse<String> again = client.send(upload(singleFile("chargesheet.pdf", chargesheet)),
+                    HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(200, again.statusCode(), again.body());
+            String forwarded = smallUpload.get();
+            assertTrue(forwarded.contains(chargesheet), forwarded);
+            assertFalse(forwarded.contains("name=\"document_refs\""), forwarded);
+        } finally {
+            agentLostDocuments = false;
+        }
+    }
+
+    @Test
+    void twoHundredMegabyteUploadKeepsTheLiveHeapFlat() throws Exception {
+        List<InputStream> parts = new ArrayList<>();
+        long length = 0;
+        for (int i = 0; i < FILES; i++) {
+            byte[] header = partHeader("files", "scan-" + i + ".pdf").getBytes(StandardCharsets.ISO_8859_1);
+            parts.add(new ByteArrayInputStream(header));
+            parts.add(new PatternInputStream(FILE_SIZE));
+            parts.add(new ByteArrayInputStream("\r\n".getBytes(StandardCharsets.ISO_8859_1)));
+            length += header.length + FILE_SIZE + 2;
+        }
+        byte[] end = ("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        parts.add(new ByteArrayInputStream(end));
+        length += end.length;
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.fromPublisher(
+                HttpRequest.BodyPublishers.ofInputStream(() -> new SequenceInputStream(Collections.enumeration(parts))),
+                length);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long baseline = liveHeap(memory);
+        CompletableFuture<HttpResponse<String>> upload = client.sendAsync(upload(body),
+                HttpResponse.BodyHandlers.ofString());
+        long peak = baseline;
+        while (!upload.isDone()) {
+            peak = Math.max(peak, liveHeap(memory));
+            Thread.sleep(250);
+        }
+        HttpResponse<String> response = upload.get(1, TimeUnit.MINUTES);
+
+        assertEquals(200, response.statusCode(), response.body());
+        assertTrue(bytesReceived.get() > FILES * FILE_SIZE, "agent received " + bytesReceived.get() + " bytes");
+        assertEquals(String.valueOf(bytesReceived.get()), declaredLength.get(),
+                "the agent should get a Content-Length, not a chunked body");
+        assertTrue(peak - baseline < MAX_LIVE_HEAP_GROWTH,
+                "live heap grew by " + (peak - baseline) / (1024 * 1024) + " MB during a "
+                        + FILES * FILE_SIZE / (1024 * 1024) + " MB upload");
+    }
+
+    /** Heap still in use after a full collection. */
+    private static long liveHeap(MemoryMXBean memory) {
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static String partHeader(String name, String filename) {
+        return "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\""
+                + (filename != null ? "; filename=\"" + filename + "\"\r\nContent-Type: application/pdf" : "")
+                + "\r\n\r\n";
+    }
+
+    private static String part(String name, String filename, byte[] content) {
+        return partHeader(name, filename) + new String(content, StandardCharsets.ISO_8859_1) + "\r\n";
+    }
+
+    private static HttpRequest.BodyPublisher singleFile(String filename, String content) {
+        return HttpRequest.BodyPublishers.ofString(part("files", filename, content.getBytes(StandardCharsets.UTF_8))
+                + "--" + BOUNDARY + "--\r\n", StandardCharsets.ISO_8859_1);
+    }
+
+    private static String sha256(String content) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private double bytesSaved() {
+        return meterRegistry.get("ai.upload.dedup.bytes.saved").counter().count();
+    }
+
+    private HttpRequest upload(HttpRequest.BodyPublisher body) {
+        String token = JwtProvider.generateToken(new UsernamePasswordAuthenticationToken(
+                EMAIL, null, List.of(new SimpleGrantedAuthority(RoleAuthorities.ROLE_CITIZEN))));
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/api/agent/upload-documents"))
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(body)
+                .build();
+    }
+
+    /** {@code size} bytes of a repeating pattern without a boundary in it, generated on the fly. */
+    private static final class PatternInputStream extends InputStream {
+
+        private long remaining;
+
+        PatternInputStream(long size) {
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() {
+            if (remaining <= 0) {
+                return -1;
+            }
+            remaining--;
+            return 'a' + (int) (remaining % 26);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = (int) Math.min(len, remaining);
+            for (int i = 0; i < n; i++) {
+                remaining--;
+                b[off + i] = (byte) ('a' + (int) (remaining % 26));
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.demo;
+
+import com.example.demo.Classes.User;
+import com.example.demo.Config.JwtProvider;
+import com.example.demo.Config.RoleAuthorities;
+import com.example.demo.Repository.UserAll;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Warm-up against a stand-in that behaves like a Render free instance: it falls asleep after
+ * {@link #IDLE_MS} without requests and the next request waits {@link #COLD_START_MS} for it to
+ * wake. Opening an AI page ({@code POST /api/agent/prewarm}) wakes it before the user's first
+ * analysis, and cold starts, pings and avoided cold starts are counted.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "ratelimit.enabled=false",
+        "ai.warmup.enabled=true",
+        "ai.warmup.schedule=",
+        "ai.warmup.idle-sleep-seconds=1",
+        "ai.warmup.keep-alive-seconds=1",
+        "ai.warmup.cold-start-ms=1000"
+})
+@ActiveProfiles("test")
+class AiWarmupIntegrationTest {
+
+    static {
+        if (System.getenv("JWT_SECRET") == null && System.getProperty("JWT_SECRET") == null) {
+            System.setProperty("JWT_SECRET", "test-only-jwt-secret-please-override-0123456789");
+        }
+    }
+
+    private static final String EMAIL = "warmup@warmup.test";
+    private static final long IDLE_MS = 1_000;
+    private static final long COLD_START_MS = 1_500;
+
+    private static final Object standInLock = new Object();
+    private static long lastSeenNanos;
+    private static long awakeAtNanos;
+    private static HttpServer ml;
+
+    @DynamicPropertySource
+    static void sleepyStandIn(DynamicPropertyRegistry registry) throws IOException {
+        ml = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ml.createContext("/api/health", exchange -> answer(exchange, "{\"status\":\"ok\"}"));
+        ml.createContext("/api/analyze/quick", exchange -> answer(exchange, "{\"judgment\":\"Acquitted\"}"));
+        ml.setExecutor(Executors.newCachedThreadPool());
+        ml.start();
+        registry.add("ai.service.url", () -> "http://127.0.0.1:" + ml.getAddress().getPort() + "/api");
+    }
+
+    /** Wait for the instance to wake if it was asleep, then answer. */
+    private static void answer(HttpExchange exchange, String json) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        long waitNanos;
+        synchronized (standInLock) {
+            long now = System.nanoTime();
+            if (now >= awakeAtNanos && (lastSeenNanos == 0 || now - lastSeenNanos >= TimeUnit.MILLISECONDS.toNanos(IDLE_MS))) {
+                awakeAtNanos = now + TimeUnit.MILLISECONDS.toNanos(COLD_START_MS);
+            }
+            waitNanos = Math.max(0, awakeAtNanos - now);
+            lastSeenNanos = now + waitNanos;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        synchronized (standInLock) {
+            lastSeenNanos = Math.max(lastSeenNanos, System.nanoTime());
+        }
+    }
+
+    @AfterAll
+    static void stopStandIn() {
+        ml.stop(0);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserAll userRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @Test
+    void prewarmHintWakesTheServiceBeforeTheFirstAnalysis() throws Exception {
+        user();
+        timedAnalysis(); // the first call after start-up has nothing to compare against
+        Thread.sleep(IDLE_MS + 300);
+
+        long coldMs = timedAnalysis();
+        assertTrue(coldMs >= COLD_START_MS, "first analysis waited " + coldMs + " ms for the wake-up");
+        Thread.sleep(IDLE_MS + 300); // the instance falls asleep again
+
+        HttpResponse<String> hint = post("/api/agent/prewarm", "");
+        assertEquals(202, hint.statusCode());
+        assertEquals("warming", json(hint.body()).get("state"));
+        Thread.sleep(2_000); // the user reads the page and types a question
+
+        long warmMs = timedAnalysis();
+        assertTrue(warmMs < COLD_START_MS / 3, "analysis after the hint took " + warmMs + " ms");
+
+        assertEquals(1, count("ai.warmup.cold.starts", "source", "user"));
+        assertEquals(1, count("ai.warmup.cold.starts", "source", "warmup"));
+        assertEquals(1, count("ai.warmup.pings", "reason", "hint", "result", "ok"));
+        assertEquals(1, meterRegistry.get("ai.warmup.cold.starts.avoided").counter().count());
+        assertEquals("warm", json(post("/api/agent/prewarm", "").body()).get("state"));
+    }
+
+    private long timedAnalysis() throws Exception {
+        long start = System.nanoTime();
+        HttpResponse<String> response = post("/api/ai-analysis/analyze/quick", "{\"text\":\"Tenant withheld rent\"}");
+        long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(200, response.statusCode(), response.body());
+        return ms;
+    }
+
+    private double count(String name, String... tags) {
+        return meterRegistry.get(name).tags(tags).counter().count();
+    }
+
+    private HttpResponse<String> post(String path, String body) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path))
+                        .header("Authorization", "Bearer " + token())
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void user() {
+        User user = userRepository.searchByEmail(EMAIL);
+        if (user == null) {
+            user = new User();
+            user.setEmail(EMAIL);
+            user.setPassword("irrelevant-hash");
+            user.setRole(User.UserRole.CITIZEN);
+        }
+        user.setFreeTrialAttempts(1000);
+        userRepository.save(user);
+    }
+
+    private static String token() {
+        return JwtProvider.generateToken(new UsernamePasswordAuthenticationToken(
+                EMAIL, null, List.of(new SimpleGrantedAuthority(RoleAuthorities.ROLE_CITIZEN))));
+    }
+
+    private Map<String, Object> json(String body) throws IOException {
+        return objectMapper.readValue(body, new TypeReference<>() {});
+    }
+}
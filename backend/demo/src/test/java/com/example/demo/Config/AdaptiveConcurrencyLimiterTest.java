@@ -0,0 +1,96 @@
+package com.example.demo.Config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.SECONDS.toNanos(2);
+
+    @Test
+    void admitsUpToLimitThenRejectsUntilReleased() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(3, 1, 10);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire(), "4th concurrent request is shed");
+
+        limiter.release();
+        assertTrue(limiter.tryAcquire(), "a released slot is reusable");
+        assertEquals(3, limiter.getInflight());
+    }
+
+    @Test
+    void limitGrowsWhileSaturatedAndLatencyIsSteady() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 100);
+        fill(limiter, 10);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.onSample(FAST, false);
+        }
+
+        assertTrue(limiter.getLimit() > 10, "limit should grow, got " + limiter.getLimit());
+    }
+
+    @Test
+    void limitDoesNotGrowWhenMostlyIdle() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 100);
+        fill(limiter, 1);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.onSample(FAST, false);
+        }
+
+        assertEquals(10, limiter.getLimit(), "no evidence the upstream can take more");
+    }
+
+    @Test
+    void limitShrinksWhenUpstreamSlowsDown() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(40, 2, 100);
+        fill(limiter, 40);
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(FAST, false);
+        }
+        int before = limiter.getLimit();
+
+        // The Python service starts queueing: latency jumps 10x.
+        for (int i = 0; i < 10; i++) {
+            limiter.onSample(FAST * 10, false);
+        }
+
+        assertTrue(limiter.getLimit() < before / 2,
+                "limit should back off sharply, was " + before + " now " + limiter.getLimit());
+    }
+
+    @Test
+    void failuresBackOffButNeverBelowMinimum() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 4, 100);
+
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(FAST, true);
+        }
+
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void retryAfterTracksTypicalLatency() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 100);
+        assertEquals(1, limiter.retryAfterSeconds(), "no samples yet -> minimum hint");
+
+        limiter.onSample(TimeUnit.SECONDS.toNanos(8), false);
+        assertEquals(8, limiter.retryAfterSeconds());
+    }
+
+    private static void fill(AdaptiveConcurrencyLimiter limiter, int n) {
+        for (int i = 0; i < n; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.demo.Config;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link AiHttpClientPool} against a local JDK {@link HttpServer} standing in for the AI service.
+ */
+class AiHttpClientPoolTest {
+
+    private HttpServer server;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch releaseSlow = new CountDownLatch(1);
+    private AiHttpClientPool pool;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            byte[] body = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                releaseSlow.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        releaseSlow.countDown();
+        if (pool != null) {
+            pool.close();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    void sequentialCallsReuseOneKeepAliveConnection() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        pool = new AiHttpClientPool(settings(4, 2_000), registry);
+        RestTemplate restTemplate = new RestTemplate(pool.requestFactory());
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("{\"ok\":true}", restTemplate.getForObject(url("/ok"), String.class));
+        }
+
+        assertEquals(1, clientPorts.size(), "all five calls should share one pooled socket");
+        assertEquals(1.0, registry.get("ai.http.pool.connections")
+                .tag("host", "127.0.0.1").tag("state", "available").gauge().value());
+        assertEquals(4.0, registry.get("ai.http.pool.max").tag("host", "127.0.0.1").gauge().value());
+    }
+
+    @Test
+    void callerGivesUpWhenHostPoolIsExhausted() throws Exception {
+        pool = new AiHttpClientPool(settings(1, 200), new SimpleMeterRegistry());
+        RestTemplate restTemplate = new RestTemplate(pool.requestFactory());
+
+        Thread holder = new Thread(() -> restTemplate.getForObject(url("/slow"), String.class));
+        holder.start();
+        // Wait until the only connection for this host is leased.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pool.statsFor("127.0.0.1").getLeased() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        long start = System.nanoTime();
+        assertThrows(ResourceAccessException.class, () -> restTemplate.getForObject(url("/ok"), String.class));
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(waitedMs < 5_000, "acquire timeout, not the read timeout, should end the wait: " + waitedMs);
+
+        releaseSlow.countDown();
+        holder.join(5_000);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private static AiHttpClientPool.Settings settings(int maxPerHost, long acquireTimeoutMs) {
+        return new AiHttpClientPool.Settings(10, maxPerHost, 2_000, 30_000, acquireTimeoutMs, 60, 30);
+    }
+}
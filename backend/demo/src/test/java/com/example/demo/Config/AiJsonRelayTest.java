@@ -0,0 +1,97 @@
+package com.example.demo.Config;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@link AiJsonRelay} against a local JDK {@link HttpServer} standing in for the AI service.
+ */
+class AiJsonRelayTest {
+
+    // Key order, spacing and number formatting a Map round trip would not preserve.
+    private static final String REPLY = "{ \"reply\" : \"Section 420 applies\", \"confidence\": 0.90, \"a\": 1 }";
+
+    private HttpServer server;
+    private final AtomicReference<String> received = new AtomicReference<>();
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/agent/chat", exchange -> {
+            received.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            byte[] body = REPLY.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json;charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/agent/broken", exchange -> {
+            exchange.sendResponseHeaders(502, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void passthroughCopiesTheUpstreamBytes() {
+        ResponseEntity<?> response = new AiJsonRelay(restTemplate, true)
+                .relay(url("/agent/chat"), HttpMethod.POST, jsonRequest());
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(MediaType.parseMediaType("application/json;charset=UTF-8"), response.getHeaders().getContentType());
+        assertArrayEquals(REPLY.getBytes(StandardCharsets.UTF_8), (byte[]) response.getBody());
+        assertEquals("{\"message\":\"and bail?\"}", received.get());
+    }
+
+    @Test
+    void withoutPassthroughTheReplyIsReadAsAMap() {
+        ResponseEntity<?> response = new AiJsonRelay(restTemplate, false)
+                .relay(url("/agent/chat"), HttpMethod.POST, jsonRequest());
+
+        assertEquals(Map.of("reply", "Section 420 applies", "confidence", 0.9, "a", 1), response.getBody());
+    }
+
+    @Test
+    void upstreamErrorsThrowAsTheTemplateDoes() {
+        AiJsonRelay relay = new AiJsonRelay(restTemplate, true);
+
+        assertThrows(HttpServerErrorException.class, () -> relay.relay(url("/agent/broken"), HttpMethod.GET, HttpEntity.EMPTY));
+    }
+
+    private static HttpEntity<Map<String, Object>> jsonRequest() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return new HttpEntity<>(Map.of("message", "and bail?"), headers);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.demo.Config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AiTierSchedulerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AiTierScheduler scheduler;
+
+    @AfterEach
+    void close() {
+        if (scheduler != null) {
+            scheduler.close();
+        }
+    }
+
+    @Test
+    void runsAtOnceWhileThereIsCapacity() {
+        scheduler = scheduler(new AdaptiveConcurrencyLimiter(2, 2, 2), 10, 60_000);
+
+        CompletableFuture<AiTierScheduler.Permit> first = scheduler.acquire("free");
+        CompletableFuture<AiTierScheduler.Permit> second = scheduler.acquire("court");
+
+        assertNotNull(first.join());
+        assertNotNull(second.join());
+        assertFalse(scheduler.acquire("court").isDone(), "third call waits for a slot");
+    }
+
+    @Test
+    void freedSlotsAreSharedByWeight() {
+        scheduler = scheduler(new AdaptiveConcurrencyLimiter(1, 1, 1), 100, 60_000);
+        AiTierScheduler.Permit running = scheduler.acquire("court").join();
+
+        List<String> order = new ArrayList<>();
+        List<AiTierScheduler.Permit> granted = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            scheduler.acquire("free").thenAccept(permit -> {
+                order.add("free");
+                granted.add(permit);
+            });
+        }
+        for (int i = 0; i < 12; i++) {
+            scheduler.acquire("court").thenAccept(permit -> {
+                order.add("court");
+                granted.add(permit);
+            });
+        }
+        running.release();
+        for (int i = 0; i < 8; i++) {
+            granted.get(i).release();
+        }
+
+        // Court (weight 8) is admitted 8 times for each free (weight 1) admission.
+        assertEquals(9, order.size());
+        assertEquals(8, order.stream().filter("court"::equals).count(), "order " + order);
+        assertEquals(4, scheduler.queued("court"));
+        assertEquals(11, scheduler.queued("free"));
+    }
+
+    @Test
+    void shedsWhenTheTierQueueIsFull() {
+        scheduler = scheduler(new AdaptiveConcurrencyLimiter(1, 1, 1), 2, 60_000);
+        scheduler.acquire("free").join();
+
+        assertFalse(scheduler.acquire("free").isDone());
+        assertFalse(scheduler.acquire("free").isDone());
+        assertNull(scheduler.acquire("free").join(), "third waiter is over the free queue bound");
+        assertFalse(scheduler.acquire("court").isDone(), "other tiers have their own queue");
+        assertEquals(1, meterRegistry.get("ai.scheduler.shed").tag("tier", "free").tag("reason", "queue_full")
+                .counter().count());
+        assertEquals(2, meterRegistry.get("ai.scheduler.queue.depth").tag("tier", "free").gauge().value());
+    }
+
+    @Test
+    void shedsWaitersPastTheirTiersMaxWait() throws Exception {
+        scheduler = scheduler(new AdaptiveConcurrencyLimiter(1, 1, 1), 10, 100);
+        scheduler.acquire("court").join();
+
+        CompletableFuture<AiTierScheduler.Permit> free = scheduler.acquire("free");
+        CompletableFuture<AiTierScheduler.Permit> court = scheduler.acquire("court");
+
+        assertNull(free.get(2, TimeUnit.SECONDS), "free waits at most 100 ms");
+        assertFalse(court.isDone(), "court may wait a minute");
+        assertEquals(1, meterRegistry.get("ai.scheduler.shed").tag("tier", "free").tag("reason", "max_wait")
+                .counter().count());
+    }
+
+    @Test
+    void submitHoldsTheSlotUntilTheCallCompletesAndAnswers503WhenShed() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        scheduler = scheduler(limiter, 0, 60_000);
+        CompletableFuture<ResponseEntity<?>> upstream = new CompletableFuture<>();
+
+        CompletableFuture<ResponseEntity<?>> first = scheduler.submit("court", () -> upstream);
+        CompletableFuture<ResponseEntity<?>> shed = scheduler.submit("free", () -> {
+            throw new AssertionError("a shed call must not run");
+        });
+
+        assertEquals(1, limiter.getInflight());
+        assertEquals(503, shed.join().getStatusCode().value());
+        upstream.complete(ResponseEntity.ok().build());
+        assertEquals(200, first.join().getStatusCode().value());
+        assertEquals(0, limiter.getInflight(), "slot released when the call completed");
+    }
+
+    @Test
+    void aCancelledCallLeavesTheQueueWithoutTakingASlot() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        scheduler = scheduler(limiter, 10, 60_000);
+        CompletableFuture<ResponseEntity<?>> upstream = new CompletableFuture<>();
+        CompletableFuture<ResponseEntity<?>> running = scheduler.submit("court", () -> upstream);
+
+        CompletableFuture<ResponseEntity<?>> gaveUp = scheduler.submit("free", () -> {
+            throw new AssertionError("a cancelled call must not run");
+        });
+        CompletableFuture<ResponseEntity<?>> next = scheduler.submit("free",
+                () -> CompletableFuture.completedFuture(ResponseEntity.ok().build()));
+        assertEquals(2, scheduler.queued("free"));
+
+        gaveUp.cancel(false);
+        assertEquals(1, scheduler.queued("free"));
+        upstream.complete(ResponseEntity.ok().build());
+
+        assertEquals(200, running.join().getStatusCode().value());
+        assertEquals(200, next.join().getStatusCode().value());
+        assertEquals(0, limiter.getInflight());
+    }
+
+    @Test
+    void disabledSchedulerRunsEveryCallAtOnce() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        scheduler = new AiTierScheduler(false, limiter, List.of(), meterRegistry);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(scheduler.submit("free", () -> CompletableFuture.completedFuture(ResponseEntity.ok().build()))
+                    .isDone());
+        }
+        assertEquals(0, limiter.getInflight());
+    }
+
+    /** Court, unlimited and free at weights 8, 4 and 1; free gets the given queue bound and max wait. */
+    private AiTierScheduler scheduler(AdaptiveConcurrencyLimiter limiter, int freeMaxQueue, long freeMaxWaitMs) {
+        return new AiTierScheduler(true, limiter, List.of(
+                new AiTierScheduler.Tier("court", 8, 100, 60_000),
+                new AiTierScheduler.Tier("unlimited", 4, 100, 60_000),
+                new AiTierScheduler.Tier("free", 1, freeMaxQueue, freeMaxWaitMs)), meterRegistry);
+    }
+}
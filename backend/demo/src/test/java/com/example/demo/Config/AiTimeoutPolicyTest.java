@@ -0,0 +1,203 @@
+package com.example.demo.Config;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AiTimeoutPolicyTest {
+
+    private static final String HOST = "ml.test";
+
+    private HttpServer server;
+    private final Map<String, HttpHeaders> received = new ConcurrentHashMap<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private AiHttpClientPool pool;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            HttpHeaders headers = new HttpHeaders();
+            exchange.getRequestHeaders().forEach(headers::addAll);
+            received.put(path, headers);
+            try {
+                if (path.startsWith("/agent/document-types")) {
+                    release.await(10, TimeUnit.SECONDS);
+                } else if (path.startsWith("/agent/analyze")) {
+                    Thread.sleep(600);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        release.countDown();
+        if (pool != null) {
+            pool.close();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    void routesTakeTheTimeoutOfTheirLongestMatchingPrefix() {
+        AiTimeoutPolicy policy = new AiTimeoutPolicy(settings(false, 0, "/agent=60000,/agent/session=15000,"
+                + "/agent/document-types=5000,/agent/analyze=90000"), null);
+
+        assertEquals(5_000, policy.timeoutMs(HOST, "/agent/document-types"));
+        assertEquals(15_000, policy.timeoutMs(HOST, "/agent/session/42"));
+        assertEquals(90_000, policy.timeoutMs(HOST, "/agent/analyze"));
+        assertEquals(60_000, policy.timeoutMs(HOST, "/agent/analyze-with-docs"), "prefixes match whole segments");
+        assertEquals(120_000, policy.timeoutMs(HOST, "/analyze/batch"));
+    }
+
+    @Test
+    void adaptiveTimeoutsFollowTheRoutePercentileWithinTheCap() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        AiTimeoutPolicy policy = new AiTimeoutPolicy(settings(true, 200, "/agent/document-types=10000"), registry);
+
+        for (int i = 0; i < 19; i++) {
+            policy.record(HOST, "/agent/document-types", TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        assertEquals(10_000, policy.timeoutMs(HOST, "/agent/document-types"), "capped until min-samples");
+
+        policy.record(HOST, "/agent/document-types", TimeUnit.MILLISECONDS.toNanos(120));
+        assertEquals(360, policy.timeoutMs(HOST, "/agent/document-types"), "p99 of 20 samples x 3");
+        assertEquals(360, registry.get("ai.upstream.timeout").tag("uri", "/agent/document-types")
+                .timeGauge().value(TimeUnit.MILLISECONDS));
+
+        for (int i = 0; i < 40; i++) {
+            policy.record(HOST, "/agent/document-types", TimeUnit.SECONDS.toNanos(8));
+        }
+        assertEquals(10_000, policy.timeoutMs(HOST, "/agent/document-types"), "never above the route cap");
+
+        for (int i = 0; i < 20; i++) {
+            policy.record(HOST, "/agent/session/" + i, TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        assertEquals(200, policy.timeoutMs(HOST, "/agent/session/7"), "never below min-ms, one route per template");
+    }
+
+    @Test
+    void anIdleHostGetsTheRouteCapUntilItAnswersAgain() throws InterruptedException {
+        AiTimeoutPolicy policy = new AiTimeoutPolicy(settings(true, 0,
+                "/agent/document-types=10000,/agent/session=15000", 200), null);
+        for (int i = 0; i < 20; i++) {
+            policy.record(HOST, "/agent/document-types", TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        for (int i = 0; i < 19; i++) {
+            policy.record(HOST, "/agent/session/1", TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        assertEquals(300, policy.timeoutMs(HOST, "/agent/document-types"));
+
+        Thread.sleep(300);
+        assertEquals(10_000, policy.timeoutMs(HOST, "/agent/document-types"), "the host may have been spun down");
+
+        policy.record(HOST, "/agent/session/1", TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(300, policy.timeoutMs(HOST, "/agent/document-types"), "warm again once a call returned");
+        assertEquals(15_000, policy.timeoutMs(HOST, "/agent/session/1"), "the call that found it idle is not sampled");
+
+        policy.record(HOST, "/agent/session/1", TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(300, policy.timeoutMs(HOST, "/agent/session/1"));
+    }
+
+    @Test
+    void fixedTimeoutsIgnoreObservedLatency() {
+        AiTimeoutPolicy policy = new AiTimeoutPolicy(settings(false, 0, "/agent/chat=30000"), null);
+
+        for (int i = 0; i < 100; i++) {
+            policy.record(HOST, "/agent/chat", TimeUnit.MILLISECONDS.toNanos(10));
+        }
+
+        assertEquals(30_000, policy.timeoutMs(HOST, "/agent/chat"));
+    }
+
+    @Test
+    void aHungRouteTimesOutOnItsOwnTimeoutAndSendsTheDeadline() {
+        AiTimeoutPolicy policy = new AiTimeoutPolicy(settings(false, 0, "/agent/document-types=300"), null);
+        RestTemplate restTemplate = restTemplate(policy);
+
+        long start = System.nanoTime();
+        assertThrows(ResourceAccessException.class,
+                () -> restTemplate.getForObject(url("/agent/document-types"), String.class));
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(waitedMs >= 250 && waitedMs < 3_000, "waited " + waitedMs + " ms");
+
+        long before = System.currentTimeMillis();
+        assertEquals("{\"ok\":true}", restTemplate.getForObject(url("/agent/analyze"), String.class),
+                "a slower route keeps the default timeout");
+        HttpHeaders headers = received.get("/agent/analyze");
+        assertEquals("120000", headers.getFirst(AiTimeoutPolicy.TIMEOUT_HEADER));
+        long deadline = Long.parseLong(headers.getFirst(AiTimeoutPolicy.DEADLINE_HEADER));
+        assertTrue(deadline >= before + 120_000 && deadline <= System.currentTimeMillis() + 120_000);
+        assertEquals("300", received.get("/agent/document-types").getFirst(AiTimeoutPolicy.TIMEOUT_HEADER));
+    }
+
+    @Test
+    void warmupPingsKeepTheDefaultTimeout() {
+        AiTimeoutPolicy policy = new AiTimeoutPolicy(settings(false, 0, "/agent/document-types=300"), null);
+        RestTemplate restTemplate = restTemplate(policy);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(AiUpstreamActivity.WARMUP_HEADER, "test");
+        release.countDown();
+
+        restTemplate.exchange(url("/agent/document-types"), HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        assertEquals("120000", received.get("/agent/document-types").getFirst(AiTimeoutPolicy.TIMEOUT_HEADER));
+    }
+
+    private RestTemplate restTemplate(AiTimeoutPolicy policy) {
+        pool = new AiHttpClientPool(new AiHttpClientPool.Settings(4, 4, 1_000, 120_000, 1_000, 60, 30),
+                new SimpleMeterRegistry());
+        RestTemplate restTemplate = new RestTemplate(pool.requestFactory(policy));
+        restTemplate.getInterceptors().add(new AiResilienceInterceptor(CircuitBreakerRegistry.ofDefaults(), null,
+                new AiUpstreamActivity(), null, policy));
+        return restTemplate;
+    }
+
+    private static AiTimeoutPolicy.Settings settings(boolean adaptive, long minMs, String routes) {
+        return settings(adaptive, minMs, routes, 0);
+    }
+
+    private static AiTimeoutPolicy.Settings settings(boolean adaptive, long minMs, String routes, long idleMs) {
+        return new AiTimeoutPolicy.Settings(120_000, AiTimeoutPolicy.parseRoutes(routes), adaptive, 0.99, 3,
+                minMs, 20, 256, idleMs);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+}
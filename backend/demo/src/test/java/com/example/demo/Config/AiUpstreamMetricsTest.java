@@ -0,0 +1,136 @@
+package com.example.demo.Config;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link AiUpstreamMetrics} as fed by {@link AiResilienceInterceptor}, scraped the way Prometheus
+ * sees it: path templates, status and outcome tags, payload sizes, SLO buckets and the
+ * open-breaker gauge.
+ */
+class AiUpstreamMetricsTest {
+
+    private final PrometheusMeterRegistry meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    private final CircuitBreakerRegistry breakers = CircuitBreakerRegistry.ofDefaults();
+    private final AiUpstreamMetrics metrics = new AiUpstreamMetrics(meterRegistry, breakers,
+            AiUpstreamMetrics.parseList("2500, 250,1000"), AiUpstreamMetrics.parseList("1024,10240"));
+    private final AiResilienceInterceptor interceptor = new AiResilienceInterceptor(breakers, null, null, metrics);
+
+    @Test
+    void pathsAreReducedToTemplates() {
+        assertEquals("/api/agent/session/{id}", AiUpstreamMetrics.uriTemplate("/api/agent/session/3f2b9c1e-8d7a-4e55-9a0b-1c2d3e4f5a6b"));
+        assertEquals("/api/cases/{id}/documents", AiUpstreamMetrics.uriTemplate("/api/cases/1234/documents"));
+        assertEquals("/api/jobs/{id}", AiUpstreamMetrics.uriTemplate("/api/jobs/a1b2c3d4e5f60718293a"));
+        assertEquals("/v1beta/models/gemini-1.5-flash:generateContent",
+                AiUpstreamMetrics.uriTemplate("/v1beta/models/gemini-1.5-flash:generateContent"));
+        assertEquals("/api/agent/document-types", AiUpstreamMetrics.uriTemplate("/api/agent/document-types"));
+        assertEquals("/", AiUpstreamMetrics.uriTemplate(""));
+    }
+
+    @Test
+    void callsAreTimedByHostTemplateStatusAndOutcome() throws IOException {
+        byte[] reply = "{\"reply\":\"Section 420 applies\"}".getBytes(StandardCharsets.UTF_8);
+        ClientHttpResponse response = interceptor.intercept(
+                request(HttpMethod.GET, "http://ai.test/api/agent/session/42?key=secret"), new byte[0],
+                answering(new MockClientHttpResponse(reply, HttpStatus.OK)));
+        assertEquals(reply.length, response.getBody().readAllBytes().length);
+        response.close();
+        response.close();
+
+        interceptor.intercept(request(HttpMethod.POST, "http://ai.test/api/agent/chat"), new byte[2048],
+                answering(new MockClientHttpResponse(new byte[0], HttpStatus.SERVICE_UNAVAILABLE)));
+
+        Timer ok = meterRegistry.find(AiUpstreamMetrics.REQUESTS)
+                .tags("host", "ai.test", "method", "GET", "uri", "/api/agent/session/{id}",
+                        "status", "200", "outcome", "SUCCESS").timer();
+        assertNotNull(ok);
+        assertEquals(1, ok.count());
+        assertNotNull(meterRegistry.find(AiUpstreamMetrics.REQUESTS)
+                .tags("uri", "/api/agent/chat", "status", "503", "outcome", "SERVER_ERROR").timer());
+
+        DistributionSummary responseSize = meterRegistry.find(AiUpstreamMetrics.RESPONSE_SIZE)
+                .tags("uri", "/api/agent/session/{id}").summary();
+        assertEquals(1, responseSize.count(), "recorded once, on the first close");
+        assertEquals(reply.length, responseSize.totalAmount());
+        assertEquals(2048, meterRegistry.find(AiUpstreamMetrics.REQUEST_SIZE)
+                .tags("uri", "/api/agent/chat").summary().totalAmount());
+
+        String scrape = meterRegistry.scrape();
+        assertTrue(scrape.contains("ai_upstream_requests_seconds_bucket{host=\"ai.test\",method=\"GET\",outcome=\"SUCCESS\","
+                + "status=\"200\",uri=\"/api/agent/session/{id}\",le=\"2.5\"} 1"), scrape);
+        assertTrue(scrape.contains("le=\"10240.0\""), scrape);
+        assertTrue(!scrape.contains("secret"), "query strings never reach a tag");
+    }
+
+    @Test
+    void connectionFailuresAreTimedAsIoErrors() {
+        ClientHttpRequestExecution refused = (request, body) -> {
+            throw new IOException("Connection refused");
+        };
+        assertThrows(IOException.class, () ->
+                interceptor.intercept(request(HttpMethod.POST, "http://ml.test/predict"), new byte[10], refused));
+
+        Timer failed = meterRegistry.find(AiUpstreamMetrics.REQUESTS)
+                .tags("host", "ml.test", "status", "IO_ERROR", "outcome", "IO_ERROR").timer();
+        assertEquals(1, failed.count());
+    }
+
+    @Test
+    void unknownPathsBeyondTheCapAreGroupedAsOther() {
+        for (int i = 0; i < AiUpstreamMetrics.MAX_URIS + 5; i++) {
+            metrics.recordResponse("ai.test", "GET", "/api/topic-" + (char) ('a' + i % 26) + "/" + "x".repeat(i / 26 + 1),
+                    200, TimeUnit.MILLISECONDS.toNanos(5), 0);
+        }
+        assertEquals(AiUpstreamMetrics.MAX_URIS + 1,
+                meterRegistry.find(AiUpstreamMetrics.REQUESTS).timers().size());
+        assertEquals(5, meterRegistry.find(AiUpstreamMetrics.REQUESTS).tag("uri", "OTHER").timer().count());
+    }
+
+    @Test
+    void openBreakersAreCounted() {
+        breakers.circuitBreaker("ai.test");
+        breakers.circuitBreaker("ml.test").transitionToOpenState();
+        breakers.circuitBreaker("gemini.test").transitionToForcedOpenState();
+
+        assertEquals(2.0, meterRegistry.get(AiUpstreamMetrics.OPEN_BREAKERS).gauge().value());
+        assertTrue(meterRegistry.scrape().contains("ai_upstream_breakers_open 2.0"));
+    }
+
+    private static HttpRequest request(HttpMethod method, String url) {
+        HttpRequest request = mock(HttpRequest.class);
+        when(request.getURI()).thenReturn(URI.create(url));
+        when(request.getMethod()).thenReturn(method);
+        when(request.getHeaders()).thenReturn(new HttpHeaders());
+        return request;
+    }
+
+    private static ClientHttpRequestExecution answering(ClientHttpResponse response) throws IOException {
+        ClientHttpRequestExecution execution = mock(ClientHttpRequestExecution.class);
+        when(execution.execute(any(), any())).thenReturn(response);
+        return execution;
+    }
+}
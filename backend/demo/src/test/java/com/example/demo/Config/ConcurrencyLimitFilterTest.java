@@ -0,0 +1,68 @@
+package com.example.demo.Config;
+
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimitFilterTest {
+
+    private MockHttpServletRequest post(String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setMethod("POST");
+        request.setRequestURI(uri);
+        return request;
+    }
+
+    @Test
+    void shedsAiRequestsOverTheLimitWith503() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(limiter);
+        MockHttpServletResponse shed = new MockHttpServletResponse();
+
+        // While the first request is still inside the chain, a second one arrives.
+        FilterChain slowUpstream = (req, res) ->
+                filter.doFilter(post("/api/agent/chat"), shed, (r, s) -> { });
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        filter.doFilter(post("/api/ai/chat"), first, slowUpstream);
+
+        assertEquals(200, first.getStatus());
+        assertEquals(503, shed.getStatus());
+        assertTrue(Integer.parseInt(shed.getHeader("Retry-After")) >= 1);
+        assertTrue(shed.getContentAsString().contains("ai_overloaded"));
+        assertEquals(0, limiter.getInflight(), "slot is released once the response completes");
+    }
+
+    @Test
+    void healthAndNonAiRoutesAreNeverLimited() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(limiter);
+        assertTrue(limiter.tryAcquire()); // limit already exhausted
+        AtomicInteger passed = new AtomicInteger();
+
+        filter.doFilter(post("/api/agent/health"), new MockHttpServletResponse(), (r, s) -> passed.incrementAndGet());
+        filter.doFilter(post("/api/cases"), new MockHttpServletResponse(), (r, s) -> passed.incrementAndGet());
+
+        assertEquals(2, passed.get());
+    }
+
+    @Test
+    void releasesSlotOnlyWhenAsyncRequestCompletes() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(5, 1, 5);
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(limiter);
+        MockHttpServletRequest request = post("/api/ai-analysis/analyze");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, (req, res) -> req.startAsync());
+        assertEquals(1, limiter.getInflight(), "still held while the async handler runs");
+
+        request.getAsyncContext().complete();
+        assertEquals(0, limiter.getInflight());
+    }
+}
@@ -1,8 +1,18 @@
 package com.example.demo.Config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -49,8 +59,132 @@ class InMemoryRateLimitStoreTest {
         assertEquals(-1L, store.tryConsume("k", 1, refillPerMs), "request allowed after refill");
     }
 
+    @Test
+    void refillTakesExactlyOneEmissionInterval() {
+        AtomicLong clock = new AtomicLong(0);
+        InMemoryRateLimitStore store = manualStore(new SimpleMeterRegistry(), 1_000, clock);
+        // capacity 1, refill 100 tokens/sec -> one token every 10ms, on a clock no JIT pause can move.
+        double refillPerMs = 100 / 1000.0;
+
+        assertEquals(-1L, store.tryConsume("k", 1, refillPerMs), "1st request allowed");
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(9));
+        assertTrue(store.tryConsume("k", 1, refillPerMs) > 0, "rejected before the interval has passed");
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(-1L, store.tryConsume("k", 1, refillPerMs), "allowed once it has");
+    }
+
+    @Test
+    void admissionsStayExactUnderContention() throws Exception {
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore();
+        // 500 tokens, ~no refill: no matter how 64 threads interleave, exactly 500 get through.
+        double refillPerMs = 1 / 3_600_000.0;
+        int threads = 64;
+        int attemptsPerThread = 50;
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < attemptsPerThread; i++) {
+                        if (store.tryConsume("shared", 500, refillPerMs) < 0) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(500, allowed.get(), "every admitted request must correspond to exactly one token");
+    }
+
     @Test
     void reportsMemoryBackend() {
         assertEquals("memory", new InMemoryRateLimitStore().backend());
     }
+
+    @Test
+    void idleBucketsAreSweptInBackgroundNotOnRequestPath() {
+        AtomicLong clock = new AtomicLong(0);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        InMemoryRateLimitStore store = manualStore(registry, 1_000, clock);
+        double refillPerMs = 1.0;
+
+        store.tryConsume("a", 5, refillPerMs);
+        store.tryConsume("b", 5, refillPerMs);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(90)); // > 60s idle + one 10s tick
+        store.tryConsume("c", 5, refillPerMs);
+        assertEquals(3, store.size(), "requests never evict inline");
+
+        store.sweep();
+        assertEquals(1, store.size(), "only the idle keys are swept");
+        assertEquals(2.0, evicted(registry, "idle"));
+        assertEquals(0.0, evicted(registry, "pressure"));
+    }
+
+    @Test
+    void recentlyUsedKeysSurviveSweep() {
+        AtomicLong clock = new AtomicLong(0);
+        InMemoryRateLimitStore store = manualStore(new SimpleMeterRegistry(), 1_000, clock);
+
+        store.tryConsume("a", 5, 1.0);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(50));
+        store.tryConsume("a", 5, 1.0); // re-filed under a newer wheel slot
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(40));
+
+        store.sweep();
+        assertEquals(1, store.size(), "key used 40s ago is not idle yet");
+    }
+
+    @Test
+    void bucketStillRefillingIsNotEvicted() {
+        AtomicLong clock = new AtomicLong(0);
+        InMemoryRateLimitStore store = manualStore(new SimpleMeterRegistry(), 1_000, clock);
+        // capacity 1, one token per 10 minutes: the bucket stays below full long after the idle window.
+        double refillPerMs = 1 / 600_000.0;
+
+        assertEquals(-1L, store.tryConsume("k", 1, refillPerMs));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(90));
+        store.sweep();
+
+        assertEquals(1, store.size(), "evicting would hand the client a fresh token");
+        assertTrue(store.tryConsume("k", 1, refillPerMs) > 0, "bucket state was kept");
+    }
+
+    @Test
+    void pressureEvictsLeastRecentlyUsedKeysFirst() {
+        AtomicLong clock = new AtomicLong(0);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        InMemoryRateLimitStore store = manualStore(registry, 2, clock);
+
+        store.tryConsume("old", 5, 1.0);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(20));
+        store.tryConsume("x", 5, 1.0);
+        store.tryConsume("y", 5, 1.0);
+        assertEquals(3, store.size());
+
+        store.sweep();
+        assertEquals(2, store.size(), "map is trimmed back to maxBuckets");
+        assertEquals(1.0, evicted(registry, "pressure"));
+        // "old" was evicted, so it starts again from a full bucket of 5.
+        for (int i = 0; i < 5; i++) {
+            assertEquals(-1L, store.tryConsume("old", 5, 1 / 60_000.0));
+        }
+        assertFalse(store.tryConsume("old", 5, 1 / 60_000.0) < 0);
+    }
+
+    private static InMemoryRateLimitStore manualStore(MeterRegistry registry, int maxBuckets, AtomicLong clock) {
+        return new InMemoryRateLimitStore(registry, maxBuckets, TimeUnit.SECONDS.toNanos(60), clock::get, false);
+    }
+
+    private static double evicted(MeterRegistry registry, String reason) {
+        return registry.get("ratelimit.buckets.evicted").tag("reason", reason).counter().count();
+    }
 }
@@ -0,0 +1,209 @@
+package com.example.demo.Config;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link RedisCircuitBreakerSync} between simulated instances (a breaker registry each) over a
+ * real, embedded {@code redis-server}. Skipped when the binary cannot start on the build host.
+ */
+class RedisCircuitBreakerSyncTest {
+
+    private static final String HOST = "ml.test";
+
+    private static RedisServer server;
+    private static LettuceConnectionFactory connectionFactory;
+
+    private final List<AutoCloseable> instances = new ArrayList<>();
+
+    @BeforeAll
+    static void startRedis() {
+        try {
+            int port = freePort();
+            server = new RedisServer(port);
+            server.start();
+            connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+            connectionFactory.afterPropertiesSet();
+            connectionFactory.start();
+        } catch (IOException | RuntimeException e) {
+            Assumptions.abort("embedded redis-server unavailable: " + e);
+        }
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @AfterEach
+    void stopInstances() throws Exception {
+        for (AutoCloseable instance : instances) {
+            instance.close();
+        }
+        template(connectionFactory).execute((RedisCallback<Void>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+    }
+
+    @Test
+    void anOpeningOnOneInstanceOpensTheOthers() throws Exception {
+        CircuitBreakerRegistry a = instance("a", connectionFactory);
+        CircuitBreakerRegistry b = instance("b", connectionFactory);
+        b.circuitBreaker(HOST);
+
+        failUntilOpen(a);
+
+        await(() -> b.circuitBreaker(HOST).getState() == CircuitBreaker.State.OPEN, "b opens from a's event");
+        ClientHttpRequestExecution upstream = mock(ClientHttpRequestExecution.class);
+        assertThrows(IOException.class, () -> new AiResilienceInterceptor(b).intercept(request(), new byte[0], upstream));
+        verifyNoInteractions(upstream);
+    }
+
+    @Test
+    void aRecoveryClosesBreakersOpenedRemotely() throws Exception {
+        CircuitBreakerRegistry a = instance("a", connectionFactory);
+        CircuitBreakerRegistry b = instance("b", connectionFactory);
+        failUntilOpen(a);
+        await(() -> b.circuitBreaker(HOST).getState() == CircuitBreaker.State.OPEN, "b opens");
+
+        CircuitBreaker breaker = a.circuitBreaker(HOST);
+        breaker.transitionToHalfOpenState();
+        breaker.onSuccess(1, TimeUnit.MILLISECONDS);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        await(() -> b.circuitBreaker(HOST).getState() == CircuitBreaker.State.CLOSED, "b closes after a's probe");
+    }
+
+    @Test
+    void aLaterInstanceFindsTheOpeningInRedis() throws Exception {
+        CircuitBreakerRegistry a = instance("a", connectionFactory);
+        failUntilOpen(a);
+        await(() -> template(connectionFactory).hasKey(RedisCircuitBreakerSync.KEY_PREFIX + HOST), "a's key is set");
+
+        CircuitBreakerRegistry late = instance("late", connectionFactory);
+        late.circuitBreaker(HOST);
+
+        await(() -> late.circuitBreaker(HOST).getState() == CircuitBreaker.State.OPEN, "the new breaker opens");
+    }
+
+    @Test
+    void breakersStayLocalWhenRedisIsUnreachable() throws Exception {
+        LettuceConnectionFactory dead = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", freePort()));
+        dead.afterPropertiesSet();
+        dead.start();
+        try {
+            CircuitBreakerRegistry registry = registry();
+            RedisCircuitBreakerSync sync = new RedisCircuitBreakerSync(registry, template(dead), "alone",
+                    Duration.ofMillis(50), new SimpleMeterRegistry());
+            instances.add(sync);
+
+            failUntilOpen(registry);
+            sync.syncAll();
+
+            assertEquals(CircuitBreaker.State.OPEN, registry.circuitBreaker(HOST).getState());
+        } finally {
+            dead.destroy();
+        }
+    }
+
+    private CircuitBreakerRegistry instance(String id, RedisConnectionFactory factory) {
+        CircuitBreakerRegistry registry = registry();
+        RedisCircuitBreakerSync sync = new RedisCircuitBreakerSync(registry, template(factory), id,
+                Duration.ofSeconds(10), new SimpleMeterRegistry());
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        container.addMessageListener(sync, new ChannelTopic(RedisCircuitBreakerSync.CHANNEL));
+        container.afterPropertiesSet();
+        container.start();
+        instances.add(container::destroy);
+        instances.add(sync);
+        return registry;
+    }
+
+    private static CircuitBreakerRegistry registry() {
+        return CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .slidingWindowSize(2)
+                .minimumNumberOfCalls(2)
+                .failureRateThreshold(50)
+                .waitDurationInOpenState(Duration.ofSeconds(30))
+                .permittedNumberOfCallsInHalfOpenState(1)
+                .build());
+    }
+
+    private static void failUntilOpen(CircuitBreakerRegistry registry) throws IOException {
+        ClientHttpRequestExecution failing = mock(ClientHttpRequestExecution.class);
+        when(failing.execute(any(), any())).thenThrow(new IOException("read timed out"));
+        AiResilienceInterceptor interceptor = new AiResilienceInterceptor(registry);
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IOException.class, () -> interceptor.intercept(request(), new byte[0], failing));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, registry.circuitBreaker(HOST).getState());
+    }
+
+    private static HttpRequest request() {
+        HttpRequest request = mock(HttpRequest.class);
+        when(request.getURI()).thenReturn(URI.create("http://" + HOST + "/predict"));
+        return request;
+    }
+
+    private static StringRedisTemplate template(RedisConnectionFactory factory) {
+        StringRedisTemplate template = new StringRedisTemplate(factory);
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    private static void await(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out waiting until " + what);
+            Thread.sleep(10);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.demo.Config;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+/**
+ * {@link RedisRateLimitStore} against a real, embedded {@code redis-server}, so the Lua bucket
+ * script is exercised exactly as in production. Skipped when the binary cannot start on the
+ * build host.
+ */
+class RedisRateLimitStoreTest {
+
+    // ~no refill within the test: admissions are bounded by capacity alone.
+    private static final double NO_REFILL = 1 / 3_600_000.0;
+
+    private static RedisServer server;
+    private static LettuceConnectionFactory connectionFactory;
+
+    private StringRedisTemplate redis;
+
+    @BeforeAll
+    static void startRedis() {
+        try {
+            int port = freePort();
+            server = new RedisServer(port);
+            server.start();
+            connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+            connectionFactory.afterPropertiesSet();
+            connectionFactory.start();
+        } catch (IOException | RuntimeException e) {
+            Assumptions.abort("embedded redis-server unavailable: " + e);
+        }
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis = new StringRedisTemplate(connectionFactory);
+        redis.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void flush() {
+        redis.execute((RedisCallback<Void>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+    }
+
+    @Test
+    void exactModeAllowsCapacityThenRejects() {
+        RedisRateLimitStore store = new RedisRateLimitStore(redis, new InMemoryRateLimitStore());
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(-1L, store.tryConsume("k", 5, NO_REFILL), "request " + (i + 1) + " allowed");
+        }
+        assertTrue(store.tryConsume("k", 5, NO_REFILL) > 0, "6th request rejected with a wait");
+        assertEquals("redis", store.backend());
+    }
+
+    @Test
+    void leasingCutsRoundTripsByLeaseSize() {
+        StringRedisTemplate counting = spy(redis);
+        RedisRateLimitStore store = new RedisRateLimitStore(counting, new InMemoryRateLimitStore(), 10, 0.2, 60_000);
+
+        int allowed = 0;
+        for (int i = 0; i < 101; i++) {
+            if (store.tryConsume("k", 100, NO_REFILL) < 0) {
+                allowed++;
+            }
+        }
+
+        assertEquals(100, allowed, "leasing admits exactly the bucket's capacity");
+        // 10 leases of 10 tokens, plus the round-trip that found the bucket empty.
+        verify(counting, atMost(11)).execute(any(RedisScript.class), anyList(), any(Object[].class));
+        store.close();
+    }
+
+    @Test
+    void instancesLeasingFromOneBucketNeverExceedIt() {
+        RedisRateLimitStore a = new RedisRateLimitStore(redis, new InMemoryRateLimitStore(), 4, 0.2, 60_000);
+        RedisRateLimitStore b = new RedisRateLimitStore(redis, new InMemoryRateLimitStore(), 4, 0.2, 60_000);
+
+        int allowed = 0;
+        for (int i = 0; i < 40; i++) {
+            RedisRateLimitStore instance = i % 2 == 0 ? a : b;
+            if (instance.tryConsume("shared", 20, NO_REFILL) < 0) {
+                allowed++;
+            }
+        }
+
+        assertEquals(20, allowed, "leased tokens are debited from Redis up front");
+        a.close();
+        b.close();
+    }
+
+    @Test
+    void unspentLeasedTokensAreReturnedToRedis() {
+        RedisRateLimitStore leasing = new RedisRateLimitStore(redis, new InMemoryRateLimitStore(), 5, 0.5, 60_000);
+        RedisRateLimitStore exact = new RedisRateLimitStore(redis, new InMemoryRateLimitStore());
+
+        assertEquals(-1L, leasing.tryConsume("k", 10, NO_REFILL)); // leases 5, spends 1
+        leasing.close(); // hands the 4 unspent tokens back
+
+        int allowed = 0;
+        for (int i = 0; i < 10; i++) {
+            if (exact.tryConsume("k", 10, NO_REFILL) < 0) {
+                allowed++;
+            }
+        }
+        assertEquals(9, allowed, "only the one spent token is gone from the shared bucket");
+    }
+
+    @Test
+    void leaseIsCappedByAccuracyBound() {
+        RedisRateLimitStore store = new RedisRateLimitStore(redis, new InMemoryRateLimitStore(), 10, 0.2, 1_000);
+
+        assertEquals(1, store.effectiveLeaseSize(8), "OTP-sized buckets stay exact");
+        assertEquals(6, store.effectiveLeaseSize(30));
+        assertEquals(10, store.effectiveLeaseSize(1_000), "never more than the configured lease size");
+        store.close();
+    }
+
+    @Test
+    void fallsBackToMemoryWhenRedisIsUnreachable() throws IOException {
+        LettuceConnectionFactory dead = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", freePort()));
+        dead.afterPropertiesSet();
+        dead.start();
+        try {
+            StringRedisTemplate unreachable = new StringRedisTemplate(dead);
+            unreachable.afterPropertiesSet();
+            RedisRateLimitStore store = new RedisRateLimitStore(unreachable, new InMemoryRateLimitStore(), 10, 0.2, 1_000);
+
+            assertEquals(-1L, store.tryConsume("k", 1, NO_REFILL));
+            assertTrue(store.tryConsume("k", 1, NO_REFILL) > 0, "in-memory fallback still limits");
+            assertEquals("redis-degraded", store.backend());
+            store.close();
+        } finally {
+            dead.destroy();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
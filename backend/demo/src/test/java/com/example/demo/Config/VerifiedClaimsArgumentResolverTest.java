@@ -0,0 +1,86 @@
+package com.example.demo.Config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.MethodParameter;
+import org.springframework.lang.Nullable;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifies the single-parse pipeline: {@link JwtValidator} verifies the bearer token once
+ * and publishes {@link VerifiedClaims}, which {@link VerifiedClaimsArgumentResolver} hands
+ * to controllers without touching the raw header again.
+ */
+class VerifiedClaimsArgumentResolverTest {
+
+    static {
+        if (System.getenv("JWT_SECRET") == null && System.getProperty("JWT_SECRET") == null) {
+            System.setProperty("JWT_SECRET", "test-only-jwt-secret-please-override-0123456789");
+        }
+    }
+
+    private final VerifiedClaimsArgumentResolver resolver = new VerifiedClaimsArgumentResolver();
+
+    @SuppressWarnings("unused")
+    void handler(VerifiedClaims required, @Nullable VerifiedClaims optional) {
+    }
+
+    private static MethodParameter parameter(int index) throws NoSuchMethodException {
+        Method method = VerifiedClaimsArgumentResolverTest.class
+                .getDeclaredMethod("handler", VerifiedClaims.class, VerifiedClaims.class);
+        return new MethodParameter(method, index);
+    }
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void filterPublishesClaimsThatResolverInjects() throws Exception {
+        String token = JwtProvider.generateToken(new UsernamePasswordAuthenticationToken(
+                "lawyer@test.com", null, List.of(new SimpleGrantedAuthority(RoleAuthorities.ROLE_LAWYER))));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/chat/list");
+        request.addHeader(JwtConstants.HEADER, JwtConstants.TOKEN_PREFIX + token);
+
+        new JwtValidator().doFilter(request, new MockHttpServletResponse(), (req, res) -> { });
+
+        Object published = request.getAttribute(VerifiedClaims.REQUEST_ATTRIBUTE);
+        VerifiedClaims claims = assertInstanceOf(VerifiedClaims.class, published);
+        assertEquals("lawyer@test.com", claims.email());
+        assertTrue(claims.expiresAtMs() > System.currentTimeMillis());
+        assertEquals("lawyer@test.com", SecurityContextHolder.getContext().getAuthentication().getName());
+
+        Object resolved = resolver.resolveArgument(parameter(0), null, new ServletWebRequest(request), null);
+        assertSame(published, resolved, "controllers must receive the claims the filter verified");
+    }
+
+    @Test
+    void requiredParameterWithoutVerifiedTokenIsUnauthorized() throws Exception {
+        ServletWebRequest request = new ServletWebRequest(new MockHttpServletRequest("GET", "/api/cases"));
+        assertThrows(BadCredentialsException.class,
+                () -> resolver.resolveArgument(parameter(0), null, request, null));
+    }
+
+    @Test
+    void nullableParameterWithoutVerifiedTokenResolvesToNull() throws Exception {
+        ServletWebRequest request = new ServletWebRequest(new MockHttpServletRequest("GET", "/api/hearings/upcoming"));
+        assertNull(resolver.resolveArgument(parameter(1), null, request, null));
+    }
+}
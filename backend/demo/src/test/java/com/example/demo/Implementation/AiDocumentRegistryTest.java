@@ -0,0 +1,76 @@
+package com.example.demo.Implementation;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link AiDocumentRegistry}: chunked hashing, per-user records, forgetting
+ * documents the agent lost, and the bytes-saved metric.
+ */
+class AiDocumentRegistryTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private AiDocumentRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        registry = new AiDocumentRegistry(meterRegistry, true, 100, 60, 7);
+    }
+
+    @Test
+    void chunkedHashMatchesTheDigestOfTheWholeFile() throws Exception {
+        byte[] content = "FIR No. 112/2024, Police Station Saket, New Delhi".getBytes(StandardCharsets.UTF_8);
+
+        String expected = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+
+        assertEquals(expected, registry.sha256(new MockMultipartFile("files", "fir.pdf", "application/pdf", content)));
+    }
+
+    @Test
+    void documentsAreKnownOnlyToTheUserTheyWereUploadedFor() {
+        registry.recordUploaded(1, "abc");
+
+        assertTrue(registry.isKnown(1, "abc"));
+        assertFalse(registry.isKnown(2, "abc"));
+        assertFalse(registry.isKnown(1, "def"));
+    }
+
+    @Test
+    void forgottenDocumentsMustBeUploadedAgain() {
+        registry.recordUploaded(1, "abc");
+        registry.forget(1, "abc");
+
+        assertFalse(registry.isKnown(1, "abc"));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void reusedDocumentsCountTheBytesSaved() {
+        registry.recordUploaded(1, "abc");
+        registry.recordReused(4096);
+        registry.recordReused(1024);
+
+        assertEquals(5120, meterRegistry.get("ai.upload.dedup.bytes.saved").counter().count());
+        assertEquals(2, meterRegistry.get("ai.upload.dedup.files").tag("result", "reused").counter().count());
+        assertEquals(1, meterRegistry.get("ai.upload.dedup.files").tag("result", "uploaded").counter().count());
+    }
+
+    @Test
+    void disabledRegistryNeverReportsKnownDocuments() {
+        registry = new AiDocumentRegistry(meterRegistry, false, 100, 60, 7);
+
+        registry.recordUploaded(1, "abc");
+
+        assertFalse(registry.isKnown(1, "abc"));
+        assertEquals(0, registry.size());
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.demo.Implementation;
+
+import com.example.demo.Config.AiProxyExecutor;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link AiMetadataCache}: fresh and stale serving, one background refresh at a
+ * time, the max-stale bound, and the last known value while the upstream's breaker is open.
+ * The proxy executor is disabled, so background refreshes run inline and deterministically.
+ */
+class AiMetadataCacheTest {
+
+    private static final String URL = "http://ml.test/api/health";
+
+    private SimpleMeterRegistry meterRegistry;
+    private CircuitBreakerRegistry breakers;
+    private MutableClock clock;
+    private AiMetadataCache cache;
+    private AtomicInteger calls;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        breakers = CircuitBreakerRegistry.ofDefaults();
+        clock = new MutableClock();
+        cache = new AiMetadataCache(meterRegistry, new AiProxyExecutor(false, 1, 1, meterRegistry), breakers,
+                true, 30, 300, clock);
+        calls = new AtomicInteger();
+    }
+
+    private Supplier<Map<String, Object>> upstream() {
+        return () -> Map.of("status", "ok", "call", calls.incrementAndGet());
+    }
+
+    private static Supplier<Map<String, Object>> failing() {
+        return () -> {
+            throw new ResourceAccessException("connection refused");
+        };
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("ai.metadata.requests").tag("resource", AiMetadataCache.ML_HEALTH)
+                .tag("result", result).counter().count();
+    }
+
+    @Test
+    void freshValuesAreServedWithoutCallingUpstream() {
+        AiMetadataCache.Entry first = cache.get(AiMetadataCache.ML_HEALTH, URL, upstream());
+        clock.advance(10_000);
+        AiMetadataCache.Entry second = cache.get(AiMetadataCache.ML_HEALTH, URL, upstream());
+
+        assertEquals(1, calls.get());
+        assertEquals("miss", first.result());
+        assertEquals("fresh", second.result());
+        assertEquals(10, second.ageSeconds());
+        assertEquals(1, second.body().get("call"));
+        assertEquals(1, requests("miss"));
+        assertEquals(1, requests("fresh"));
+    }
+
+    @Test
+    void staleValuesAreServedWhileOneRefreshRuns() {
+        cache.get(AiMetadataCache.ML_HEALTH, URL, upstream());
+        clock.advance(45_000);
+
+        AiMetadataCache.Entry stale = cache.get(AiMetadataCache.ML_HEALTH, URL, upstream());
+        AiMetadataCache.Entry refreshed = cache.get(AiMetadataCache.ML_HEALTH, URL, upstream());
+
+        assertEquals("stale", stale.result());
+        assertEquals(45, stale.ageSeconds());
+        assertEquals(1, stale.body().get("call"), "the caller is not held up by the refresh");
+        assertEquals("fresh", refreshed.result());
+        assertEquals(0, refreshed.ageSeconds());
+        assertEquals(2, refreshed.body().get("call"));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void failedRefreshKeepsTheLastValueUntilMaxStale() {
+        cache.get(AiMetadataCache.ML_HEALTH, URL, upstream());
+        clock.advance(60_000);
+
+        AiMetadataCache.Entry stale = cache.get(AiMetadataCache.ML_HEALTH, URL, failing());
+        assertEquals(1, stale.body().get("call"));
+        assertEquals(1, meterRegistry.get("ai.metadata.refresh.failures")
+                .tag("resource", AiMetadataCache.ML_HEALTH).counter().count());
+
+        clock.advance(300_000);
+        assertThrows(ResourceAccessException.class, () -> cache.get(AiMetadataCache.ML_HEALTH, URL, failing()),
+                "past max-stale a failing upstream is reported, not hidden");
+    }
+
+    @Test
+    void lastKnownValueIsServedAtAnyAgeWhileTheBreakerIsOpen() {
+        cache.get(AiMetadataCache.ML_HEALTH, URL, upstream());
+        clock.advance(3_600_000);
+        breakers.circuitBreaker("ml.test").transitionToOpenState();
+
+        AiMetadataCache.Entry fallback = cache.get(AiMetadataCache.ML_HEALTH, URL, failing());
+
+        assertEquals("fallback", fallback.result());
+        assertEquals(3600, fallback.ageSeconds());
+        assertEquals(1, fallback.body().get("call"));
+        ResponseEntity<?> response = fallback.ok().build();
+        assertEquals("3600", response.getHeaders().getFirst("Age"));
+        assertEquals("STALE", response.getHeaders().getFirst(AiResponseCache.HEADER));
+    }
+
+    @Test
+    void disabledCacheAlwaysCallsUpstream() {
+        cache = new AiMetadataCache(meterRegistry, new AiProxyExecutor(false, 1, 1, meterRegistry), breakers,
+                false, 30, 300, clock);
+
+        cache.get(AiMetadataCache.ML_HEALTH, URL, upstream());
+        AiMetadataCache.Entry second = cache.get(AiMetadataCache.ML_HEALTH, URL, upstream());
+
+        assertEquals(2, calls.get());
+        assertEquals("0", second.ok().build().getHeaders().getFirst("Age"));
+        assertNull(second.ok().build().getHeaders().getFirst(AiResponseCache.HEADER));
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private long millis = 1_700_000_000_000L;
+
+        void advance(long deltaMillis) {
+            millis += deltaMillis;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
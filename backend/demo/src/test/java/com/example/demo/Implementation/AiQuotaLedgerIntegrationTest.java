@@ -0,0 +1,166 @@
+package com.example.demo.Implementation;
+
+import com.example.demo.Classes.Subscription;
+import com.example.demo.Classes.SubscriptionPlan;
+import com.example.demo.Classes.SubscriptionStatus;
+import com.example.demo.Classes.User;
+import com.example.demo.Repository.SubscriptionRepository;
+import com.example.demo.Repository.UserAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * {@link AiQuotaLedger} against the test database: 100 parallel calls on a 10-query plan
+ * spend exactly 10 queries, and refunds give them back.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class AiQuotaLedgerIntegrationTest {
+
+    static {
+        if (System.getenv("JWT_SECRET") == null && System.getProperty("JWT_SECRET") == null) {
+            System.setProperty("JWT_SECRET", "test-only-jwt-secret-please-override-0123456789");
+        }
+    }
+
+    private static final int CALLS = 100;
+
+    @Autowired
+    private AiQuotaLedger aiQuotaLedger;
+
+    @Autowired
+    private UserAll userRepository;
+
+    @Autowired
+    private SubscriptionRepository subscriptionRepository;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Test
+    void parallelCallsNeverSpendMoreThanThePlanAllows() throws Exception {
+        User user = user("quota-plan@test.com");
+        Subscription subscription = subscribe(user, 10);
+
+        List<AiQuotaLedger.Reservation> reservations = reserveInParallel(user);
+
+        List<AiQuotaLedger.Reservation> granted = reservations.stream().filter(AiQuotaLedger.Reservation::granted).toList();
+        assertEquals(10, granted.size());
+        assertEquals(CALLS - 10, reservations.stream().filter(r -> !r.granted()).count());
+        assertEquals(10, used(subscription));
+
+        Set<Integer> remaining = new TreeSet<>();
+        granted.forEach(r -> remaining.add(r.remaining()));
+        assertEquals(Set.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), remaining, "each grant saw its own count");
+        granted.forEach(r -> {
+            assertEquals(AiQuotaLedger.SUBSCRIPTION, r.accessType());
+            assertEquals(subscription.getId(), r.subscriptionId());
+        });
+
+        aiQuotaLedger.refund(user, granted.get(0));
+        assertEquals(9, used(subscription));
+        AiQuotaLedger.Reservation again = aiQuotaLedger.reserve(user, 1);
+        assertEquals(0, again.remaining());
+        assertFalse(aiQuotaLedger.reserve(user, 1).granted());
+    }
+
+    @Test
+    void exhaustedPlanDoesNotFallBackToFreeTrials() {
+        User user = user("quota-exhausted@test.com");
+        subscribe(user, 0);
+
+        AiQuotaLedger.Reservation reservation = aiQuotaLedger.reserve(user, 1);
+
+        assertFalse(reservation.granted());
+        assertEquals(SubscriptionPlan.PRO, reservation.plan());
+        assertEquals(3, userRepository.freeTrialAttempts(user.getId()));
+    }
+
+    @Test
+    void parallelFreeTrialsStopAtZeroAndRefreshTheCache() throws Exception {
+        User user = user("quota-trial@test.com");
+        assertEquals(3, userCache.findByEmail("quota-trial@test.com").getFreeTrialAttempts());
+
+        List<AiQuotaLedger.Reservation> reservations = reserveInParallel(user);
+
+        assertEquals(3, reservations.stream().filter(AiQuotaLedger.Reservation::granted).count());
+        assertEquals(0, userRepository.freeTrialAttempts(user.getId()));
+        assertEquals(0, userCache.findByEmail("quota-trial@test.com").getFreeTrialAttempts());
+
+        AiQuotaLedger.Reservation spent = new AiQuotaLedger.Reservation(1, AiQuotaLedger.FREE_TRIAL,
+                null, user.getId(), null, 0);
+        aiQuotaLedger.refund(user, spent);
+        assertEquals(1, userCache.findByEmail("quota-trial@test.com").getFreeTrialAttempts());
+    }
+
+    @Test
+    void reserveUpToTakesWhatIsLeft() {
+        User user = user("quota-batch@test.com");
+        Subscription subscription = subscribe(user, 10);
+
+        assertEquals(7, aiQuotaLedger.reserveUpTo(user, 7).units());
+        assertEquals(3, aiQuotaLedger.reserveUpTo(user, 7).units());
+        assertFalse(aiQuotaLedger.reserveUpTo(user, 7).granted());
+        assertEquals(10, used(subscription));
+    }
+
+    private List<AiQuotaLedger.Reservation> reserveInParallel(User user) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(CALLS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<AiQuotaLedger.Reservation>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLS; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return aiQuotaLedger.reserve(user, 1);
+                }));
+            }
+            start.countDown();
+            List<AiQuotaLedger.Reservation> reservations = new ArrayList<>();
+            for (Future<AiQuotaLedger.Reservation> future : futures) {
+                reservations.add(future.get());
+            }
+            return reservations;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private User user(String email) {
+        User user = new User();
+        user.setEmail(email);
+        user.setPassword("irrelevant-hash");
+        user.setRole(User.UserRole.CITIZEN);
+        return userRepository.save(user);
+    }
+
+    private Subscription subscribe(User user, int allowed) {
+        Subscription subscription = new Subscription();
+        subscription.setUser(user);
+        subscription.setPlan(SubscriptionPlan.PRO);
+        subscription.setStatus(SubscriptionStatus.ACTIVE);
+        subscription.setStartDate(LocalDateTime.now().minusDays(1));
+        subscription.setEndDate(LocalDateTime.now().plusDays(30));
+        subscription.setAiQueriesAllowed(allowed);
+        return subscriptionRepository.save(subscription);
+    }
+
+    private int used(Subscription subscription) {
+        return subscriptionRepository.findById(subscription.getId()).orElseThrow().getAiQueriesUsed();
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.demo.Implementation;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link PromptSimHash} normalization and {@link AiSimilarPromptIndex} lookups: rephrasings
+ * match, other questions and other numbers do not, and the block tables find exactly what a
+ * full scan would.
+ */
+class AiSimilarPromptIndexTest {
+
+    private static final String MODEL = "gemini-1.5-flash";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void rephrasingsHashAlikeAndOtherQuestionsDoNot() {
+        assertEquals(0, distance("What is bail?", "what's bail"));
+        assertEquals(0, distance("How do I get bail?", "how to get bail"));
+        assertEquals(0, distance("Can my landlord evict me without notice?", "can a landlord evict me without a notice"));
+        assertEquals(0, distance("What is an FIR and how do I file one?", "what is FIR and how to file one"));
+
+        assertTrue(distance("what is bail?", "what is jail?") > 3);
+        assertTrue(distance("is dowry illegal in india", "is dowry legal in india") > 3);
+        assertTrue(distance("how to get bail", "how not to get bail") > 3);
+        assertTrue(distance("can police arrest me without a warrant", "can police search me without a warrant") > 3);
+    }
+
+    @Test
+    void numbersAreComparedExactly() {
+        assertEquals("420", PromptSimHash.numbers("What's the punishment under Section 420?"));
+        assertEquals("1860 420", PromptSimHash.numbers("section 420 of the IPC, 1860"));
+        assertEquals("", PromptSimHash.numbers("what is bail"));
+    }
+
+    @Test
+    void findsRephrasingWithinScopeAndNumbers() {
+        AiSimilarPromptIndex index = new AiSimilarPromptIndex(meterRegistry, true, 3, 100);
+        index.add(MODEL, "What is bail?", "fp-bail");
+        index.add(MODEL, "What is the punishment for cheating under section 420", "fp-420");
+
+        Optional<AiSimilarPromptIndex.Match> match = index.find(MODEL, "what's bail");
+        assertTrue(match.isPresent());
+        assertEquals("fp-bail", match.get().fingerprint());
+        assertEquals(0, match.get().distance());
+
+        assertTrue(index.find(MODEL, "what is jail").isEmpty());
+        assertTrue(index.find("gemini-1.5-pro", "what's bail").isEmpty(), "other models answer differently");
+        assertTrue(index.find(MODEL, "what's the punishment for cheating under section 406").isEmpty());
+        assertEquals("fp-420", index.find(MODEL, "what's the punishment for cheating under section 420?").orElseThrow().fingerprint());
+        assertTrue(index.find(MODEL, "?!").isEmpty());
+
+        assertEquals(3.0, meterRegistry.counter("ai.cache.similar.lookups", "result", "none").count());
+        assertEquals(2.0, meterRegistry.counter("ai.cache.similar.lookups", "result", "match").count());
+    }
+
+    @Test
+    void keepsOnlyTheMostRecentPromptsAndForgetsRemovedOnes() {
+        AiSimilarPromptIndex index = new AiSimilarPromptIndex(meterRegistry, true, 3, 2);
+        index.add(MODEL, "What is bail?", "fp-bail");
+        index.add(MODEL, "What is an FIR?", "fp-fir");
+        index.add(MODEL, "What is a summons?", "fp-summons");
+
+        assertEquals(2, index.size());
+        assertTrue(index.find(MODEL, "what's bail").isEmpty());
+        assertTrue(index.find(MODEL, "what's an FIR").isPresent());
+
+        index.remove("fp-fir");
+        assertTrue(index.find(MODEL, "what's an FIR").isEmpty());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void blockTablesFindWhatAFullScanFinds() {
+        Random random = new Random(42);
+        String[] words = {"bail", "court", "tenant", "landlord", "notice", "appeal", "divorce", "custody",
+                "police", "warrant", "property", "contract", "cheque", "bounce", "fir", "complaint"};
+        for (int maxDistance : new int[]{0, 3, 6}) {
+            AiSimilarPromptIndex index = new AiSimilarPromptIndex(meterRegistry, true, maxDistance, 10_000);
+            List<String> prompts = new ArrayList<>();
+            for (int i = 0; i < 2_000; i++) {
+                String prompt = sentence(random, words);
+                prompts.add(prompt);
+                index.add(MODEL, prompt, "fp-" + i);
+            }
+            for (int q = 0; q < 500; q++) {
+                String query = sentence(random, words);
+                long hash = PromptSimHash.of(query);
+                int closest = prompts.stream()
+                        .mapToInt(p -> PromptSimHash.distance(hash, PromptSimHash.of(p)))
+                        .min().orElseThrow();
+                Optional<AiSimilarPromptIndex.Match> match = index.find(MODEL, query);
+                if (closest <= maxDistance) {
+                    assertEquals(closest, match.orElseThrow().distance(), query);
+                } else {
+                    assertTrue(match.isEmpty(), query);
+                }
+            }
+        }
+    }
+
+    private static String sentence(Random random, String[] words) {
+        StringBuilder sentence = new StringBuilder();
+        int length = 2 + random.nextInt(3);
+        for (int i = 0; i < length; i++) {
+            sentence.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        return sentence.toString();
+    }
+
+    private static int distance(String a, String b) {
+        return PromptSimHash.distance(PromptSimHash.of(a), PromptSimHash.of(b));
+    }
+}
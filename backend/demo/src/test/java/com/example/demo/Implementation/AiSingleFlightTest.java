@@ -0,0 +1,118 @@
+package com.example.demo.Implementation;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link AiSingleFlight}: identical in-flight calls are shared, results and
+ * errors reach every waiter, and the key is released once the call completes.
+ */
+class AiSingleFlightTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private AiSingleFlight singleFlight;
+    private AtomicInteger upstreamCalls;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        singleFlight = new AiSingleFlight(meterRegistry);
+        upstreamCalls = new AtomicInteger();
+    }
+
+    private CompletableFuture<String> call(CompletableFuture<String> upstream) {
+        return singleFlight.execute(AiResponseCache.CASE_ANALYSIS, "fp", () -> {
+            upstreamCalls.incrementAndGet();
+            return upstream;
+        });
+    }
+
+    private double coalesced() {
+        return meterRegistry.get("ai.singleflight.coalesced").tag("endpoint", AiResponseCache.CASE_ANALYSIS)
+                .counter().count();
+    }
+
+    @Test
+    void concurrentIdenticalCallsShareOneUpstreamCall() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        CompletableFuture<String> first = call(upstream);
+        CompletableFuture<String> second = call(new CompletableFuture<>());
+        CompletableFuture<String> third = call(new CompletableFuture<>());
+        assertEquals(1, singleFlight.inFlight());
+
+        upstream.complete("analysis");
+
+        assertEquals("analysis", first.join());
+        assertEquals("analysis", second.join());
+        assertEquals("analysis", third.join());
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(2, coalesced());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void errorsReachEveryWaiter() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> first = call(upstream);
+        CompletableFuture<String> second = call(new CompletableFuture<>());
+
+        upstream.completeExceptionally(new IllegalStateException("ML service down"));
+
+        assertThrows(CompletionException.class, first::join);
+        CompletionException e = assertThrows(CompletionException.class, second::join);
+        assertEquals("ML service down", e.getCause().getMessage());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void completedCallsAreNotReused() {
+        assertEquals("one", call(CompletableFuture.completedFuture("one")).join());
+        assertEquals("two", call(CompletableFuture.completedFuture("two")).join());
+
+        assertEquals(2, upstreamCalls.get());
+    }
+
+    @Test
+    void cancellingOneWaiterDoesNotCancelTheSharedCall() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> first = call(upstream);
+        CompletableFuture<String> second = call(new CompletableFuture<>());
+
+        first.cancel(true);
+        upstream.complete("analysis");
+
+        assertEquals("analysis", second.join());
+    }
+
+    @Test
+    void cancellingEveryWaiterCancelsTheSharedCall() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> first = call(upstream);
+        CompletableFuture<String> second = call(new CompletableFuture<>());
+
+        first.cancel(false);
+        assertFalse(upstream.isCancelled());
+        second.cancel(false);
+
+        assertTrue(upstream.isCancelled());
+        assertEquals(0, singleFlight.inFlight());
+        assertEquals("fresh", call(CompletableFuture.completedFuture("fresh")).join());
+    }
+
+    @Test
+    void differentFingerprintsAreNotCoalesced() {
+        CompletableFuture<String> a = singleFlight.execute(AiResponseCache.CHAT, "a", CompletableFuture::new);
+        CompletableFuture<String> b = singleFlight.execute(AiResponseCache.CHAT, "b", CompletableFuture::new);
+
+        assertNotSame(a, b);
+        assertEquals(2, singleFlight.inFlight());
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.demo.Implementation;
+
+import com.example.demo.Config.AiProxyExecutor;
+import com.example.demo.Config.AiUpstreamActivity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link AiWarmupService}: schedule windows, the learned demand profile,
+ * keep-alive pings, the prewarm hint, and cold-start accounting. Pings go to a mocked
+ * {@link RestTemplate} that reports them the way the resilience interceptor would.
+ */
+class AiWarmupServiceTest {
+
+    private static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+    private static final String HOST = "ml.test";
+    private static final long COLD_START_NANOS = TimeUnit.SECONDS.toNanos(40);
+
+    private SimpleMeterRegistry meterRegistry;
+    private AiUpstreamActivity activity;
+    private RestTemplate restTemplate;
+    private MutableClock clock;
+    private AiWarmupService warmup;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        activity = new AiUpstreamActivity();
+        restTemplate = mock(RestTemplate.class);
+        clock = new MutableClock(at(2025, 6, 2, 3, 0)); // a Monday, 03:00 IST
+        when(restTemplate.exchange(eq("http://ml.test/api/health"), eq(HttpMethod.GET), any(HttpEntity.class),
+                eq(Map.class))).thenAnswer(invocation -> {
+            activity.record(HOST, clock.millis(), TimeUnit.MILLISECONDS.toNanos(200), false, true);
+            return ResponseEntity.ok(Map.of("status", "ok"));
+        });
+        warmup = service(true, "MON-FRI 10:00-17:00");
+    }
+
+    private AiWarmupService service(boolean enabled, String schedule) {
+        AiWarmupService.Settings settings = new AiWarmupService.Settings(enabled, "http://ml.test/api", "",
+                AiWarmupService.Window.parse(schedule), IST, Duration.ofMinutes(15), Duration.ofMinutes(10),
+                Duration.ofMinutes(15), 1.0, Duration.ofSeconds(10));
+        return new AiWarmupService(settings, restTemplate, new AiProxyExecutor(false, 1, 1, meterRegistry),
+                activity, meterRegistry, clock);
+    }
+
+    private static Instant at(int year, int month, int day, int hour, int minute) {
+        return LocalDateTime.of(year, month, day, hour, minute).atZone(IST).toInstant();
+    }
+
+    private void userCall(long durationNanos) {
+        activity.record(HOST, clock.millis(), durationNanos, false, false);
+        clock.advance(TimeUnit.NANOSECONDS.toMillis(durationNanos));
+    }
+
+    private double count(String name, String... tags) {
+        return meterRegistry.get(name).tags(tags).counter().count();
+    }
+
+    @Test
+    void windowsAreParsedAndCoverTheLeadBeforeThem() {
+        List<AiWarmupService.Window> windows = AiWarmupService.Window.parse("MON-FRI 10:00-17:00, sat 10:00-13:00");
+        assertEquals(2, windows.size());
+        assertEquals(5, windows.get(0).days().size());
+        assertThrows(IllegalArgumentException.class, () -> AiWarmupService.Window.parse("MON 17:00-10:00"));
+        assertThrows(IllegalArgumentException.class, () -> AiWarmupService.Window.parse("someday 10:00-11:00"));
+
+        assertEquals("schedule", warmup.reasonToWarm(ZonedDateTime.of(2025, 6, 2, 9, 50, 0, 0, IST)));
+        assertEquals("schedule", warmup.reasonToWarm(ZonedDateTime.of(2025, 6, 6, 16, 59, 0, 0, IST)));
+        assertNull(warmup.reasonToWarm(ZonedDateTime.of(2025, 6, 2, 9, 40, 0, 0, IST)));
+        assertNull(warmup.reasonToWarm(ZonedDateTime.of(2025, 6, 7, 11, 0, 0, 0, IST)), "Saturday is not scheduled");
+    }
+
+    @Test
+    void tickPingsDuringTheScheduleOnlyWhenTheServiceWasQuietForTheKeepAlive() {
+        warmup.tick();
+        verify(restTemplate, never()).exchange(any(String.class), any(), any(HttpEntity.class), eq(Map.class));
+
+        clock.set(at(2025, 6, 2, 9, 50));
+        warmup.tick();
+        clock.advance(Duration.ofMinutes(5).toMillis());
+        warmup.tick();
+        clock.advance(Duration.ofMinutes(6).toMillis());
+        warmup.tick();
+
+        verify(restTemplate, times(2)).exchange(any(String.class), any(), any(HttpEntity.class), eq(Map.class));
+        assertEquals(2, count("ai.warmup.pings", "reason", "schedule", "result", "ok"));
+    }
+
+    @Test
+    void demandIsLearnedPerHourOfTheWeekAndPredictsTheNextWeek() {
+        warmup = service(true, "");
+        clock.set(at(2025, 6, 3, 14, 5)); // Tuesday
+        for (int i = 0; i < 4; i++) {
+            userCall(TimeUnit.SECONDS.toNanos(1));
+        }
+        clock.set(at(2025, 6, 3, 15, 1));
+        warmup.tick();
+
+        assertEquals(2.0, warmup.expectedDemand(ZonedDateTime.of(2025, 6, 10, 14, 30, 0, 0, IST)), 1e-9);
+        assertEquals("predicted", warmup.reasonToWarm(ZonedDateTime.of(2025, 6, 10, 13, 50, 0, 0, IST)));
+        assertNull(warmup.reasonToWarm(ZonedDateTime.of(2025, 6, 10, 12, 0, 0, 0, IST)));
+
+        clock.set(at(2025, 6, 10, 13, 50));
+        warmup.tick();
+        assertEquals(1, count("ai.warmup.pings", "reason", "predicted", "result", "ok"));
+    }
+
+    @Test
+    void coldStartsAreCountedAndPingsThatKeptTheServiceWarmCountAsAvoided() {
+        clock.set(at(2025, 6, 2, 8, 0));
+        userCall(TimeUnit.SECONDS.toNanos(1));
+
+        clock.advance(Duration.ofMinutes(20).toMillis());
+        userCall(COLD_START_NANOS);
+        assertEquals(1, count("ai.warmup.cold.starts", "source", "user"));
+        assertEquals(40, meterRegistry.get("ai.warmup.cold.start.latency").tag("source", "user").timer()
+                .totalTime(TimeUnit.SECONDS), 0.01);
+
+        clock.advance(Duration.ofMinutes(12).toMillis());
+        warmup.ping("schedule");
+        clock.advance(Duration.ofMinutes(12).toMillis());
+        userCall(TimeUnit.SECONDS.toNanos(2));
+
+        assertEquals(1, count("ai.warmup.cold.starts", "source", "user"), "the ping kept the service awake");
+        assertEquals(1, count("ai.warmup.cold.starts.avoided"));
+    }
+
+    @Test
+    void hintPingsOnlyWhenTheServiceMayBeAsleep() {
+        assertEquals("warming", warmup.hint().get("state"));
+        assertEquals("warm", warmup.hint().get("state"), "the hint's own ping counts as contact");
+        clock.advance(Duration.ofMinutes(11).toMillis());
+        assertEquals("warming", warmup.hint().get("state"));
+
+        assertEquals(2, count("ai.warmup.pings", "reason", "hint", "result", "ok"));
+        assertEquals("disabled", service(false, "").hint().get("state"));
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private long millis;
+
+        MutableClock(Instant start) {
+            this.millis = start.toEpochMilli();
+        }
+
+        void set(Instant instant) {
+            millis = instant.toEpochMilli();
+        }
+
+        void advance(long deltaMillis) {
+            millis += deltaMillis;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.demo.Implementation;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link CaffeineAiResponseCache} and the {@link AiRequestFingerprint} keys it
+ * is used with: canonical keys, per-endpoint opt-out, immutable entries and hit/miss metrics.
+ */
+class CaffeineAiResponseCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private CaffeineAiResponseCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new CaffeineAiResponseCache(meterRegistry, true, 100, 60, "", false);
+    }
+
+    private double requests(String endpoint, String result) {
+        return meterRegistry.get("ai.cache.requests").tag("endpoint", endpoint).tag("result", result)
+                .counter().count();
+    }
+
+    @Test
+    void fingerprintIgnoresKeyOrderAndWhitespace() {
+        Map<String, Object> a = new LinkedHashMap<>();
+        a.put("facts", "Tenant   was evicted\nwithout notice ");
+        a.put("parties", List.of(Map.of("role", "tenant", "name", "A")));
+        Map<String, Object> b = new LinkedHashMap<>();
+        b.put("parties", List.of(Map.of("name", "A", "role", "tenant")));
+        b.put("facts", " Tenant was evicted without notice");
+
+        assertEquals(AiRequestFingerprint.of(a), AiRequestFingerprint.of(b));
+        assertNotEquals(AiRequestFingerprint.of(a), AiRequestFingerprint.of(a, "gemini-1.5-pro"));
+        assertNotEquals(AiRequestFingerprint.of("ab", "c"), AiRequestFingerprint.of("a", "bc"));
+        assertNotEquals(AiRequestFingerprint.of("What is bail?"), AiRequestFingerprint.of("what is bail?"));
+    }
+
+    @Test
+    void storedAnswersAreServedAndCounted() {
+        String key = AiRequestFingerprint.of("What is bail?", "gemini-1.5-flash");
+
+        assertTrue(cache.get(AiResponseCache.CHAT, key).isEmpty());
+        cache.put(AiResponseCache.CHAT, key, Map.of("response", "• Bail lets you wait at home"));
+
+        assertEquals("• Bail lets you wait at home", cache.get(AiResponseCache.CHAT, key).orElseThrow().get("response"));
+        assertTrue(cache.get(AiResponseCache.AGENT_ANALYZE, key).isEmpty(), "endpoints do not share entries");
+        assertEquals(1, requests(AiResponseCache.CHAT, "hit"));
+        assertEquals(1, requests(AiResponseCache.CHAT, "miss"));
+    }
+
+    @Test
+    void cachedEntriesCannotBeMutatedByCallers() {
+        Map<String, Object> body = new HashMap<>(Map.of("judgment", "allowed"));
+        cache.put(AiResponseCache.CASE_ANALYSIS, "k", body);
+        body.put("judgment", "dismissed");
+
+        Map<String, Object> cached = cache.get(AiResponseCache.CASE_ANALYSIS, "k").orElseThrow();
+        assertEquals("allowed", cached.get("judgment"));
+        assertThrows(UnsupportedOperationException.class, () -> cached.put("judgment", "dismissed"));
+    }
+
+    @Test
+    void disabledEndpointsBypassTheCache() {
+        cache = new CaffeineAiResponseCache(meterRegistry, true, 100, 60, " agent-analyze ,chat", true);
+
+        cache.put(AiResponseCache.AGENT_ANALYZE, "k", Map.of("answer", 1));
+        cache.put(AiResponseCache.CASE_ANALYSIS, "k", Map.of("answer", 2));
+
+        assertFalse(cache.isEnabled(AiResponseCache.CHAT));
+        assertTrue(cache.get(AiResponseCache.AGENT_ANALYZE, "k").isEmpty());
+        assertTrue(cache.get(AiResponseCache.CASE_ANALYSIS, "k").isPresent());
+        assertEquals(1, cache.size());
+        assertTrue(cache.hitConsumesQuota());
+    }
+
+    @Test
+    void globalSwitchDisablesEveryEndpoint() {
+        cache = new CaffeineAiResponseCache(meterRegistry, false, 100, 60, "", false);
+
+        cache.put(AiResponseCache.CHAT, "k", Map.of("response", "x"));
+
+        assertTrue(cache.get(AiResponseCache.CHAT, "k").isEmpty());
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.demo.Implementation;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link GeminiResponse#read} against Gemini-shaped replies: the streaming reader keeps the
+ * first candidate's text, skips everything else, and agrees with plain data binding.
+ */
+class GeminiResponseTest {
+
+    private static final String REPLY = """
+            {
+              "candidates": [
+                {
+                  "content": {
+                    "parts": [{"text": "• A lawyer helps you "}, {"inlineData": {"mimeType": "image/png"}},
+                              {"text": "in court."}],
+                    "role": "model"
+                  },
+                  "finishReason": "STOP",
+                  "safetyRatings": [{"category": "HARM_CATEGORY_HARASSMENT", "probability": "NEGLIGIBLE"}]
+                },
+                {"content": {"parts": [{"text": "second candidate"}]}}
+              ],
+              "usageMetadata": {"promptTokenCount": 112, "candidatesTokenCount": 9, "totalTokenCount": 121},
+              "modelVersion": "gemini-1.5-flash"
+            }
+            """;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonFactory factory = objectMapper.getFactory();
+
+    @Test
+    void readsOnlyTheFirstCandidatesText() throws IOException {
+        GeminiResponse response = GeminiResponse.read(factory,
+                new ByteArrayInputStream(REPLY.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(1, response.candidates().size(), "later candidates are skipped");
+        assertEquals(3, response.first().content().parts().size());
+        assertNull(response.first().content().parts().get(1).text());
+        assertEquals("• A lawyer helps you in court.", response.first().text());
+    }
+
+    @Test
+    void missingAndEmptyFieldsAreDistinguished() throws IOException {
+        assertNull(GeminiResponse.read(factory, "{\"promptFeedback\":{\"blockReason\":\"SAFETY\"}}").candidates());
+
+        GeminiResponse none = GeminiResponse.read(factory, "{\"candidates\":[]}");
+        assertTrue(none.candidates().isEmpty());
+        assertNull(none.first());
+
+        GeminiResponse noContent = GeminiResponse.read(factory, "{\"candidates\":[{\"finishReason\":\"SAFETY\"}]}");
+        assertNull(noContent.first().content());
+        assertEquals("", noContent.first().text());
+
+        assertThrows(IOException.class, () -> GeminiResponse.read(factory, "[]"));
+    }
+
+    @Test
+    void streamingReadMatchesDataBinding() throws IOException {
+        GeminiResponse bound = objectMapper.readValue(REPLY, GeminiResponse.class);
+
+        assertEquals(2, bound.candidates().size());
+        assertEquals(bound.first(), GeminiResponse.read(factory, REPLY).first());
+    }
+}
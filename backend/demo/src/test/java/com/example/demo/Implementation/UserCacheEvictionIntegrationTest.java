@@ -0,0 +1,53 @@
+package com.example.demo.Implementation;
+
+import com.example.demo.Classes.User;
+import com.example.demo.Repository.UserAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Verifies that {@link UserCacheEvictionListener} is wired into Hibernate: a save through
+ * the plain repository (as profile and verification endpoints do) evicts the cached user,
+ * so the next lookup reflects the write instead of the stale cached copy.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class UserCacheEvictionIntegrationTest {
+
+    static {
+        if (System.getenv("JWT_SECRET") == null && System.getProperty("JWT_SECRET") == null) {
+            System.setProperty("JWT_SECRET", "test-only-jwt-secret-please-override-0123456789");
+        }
+    }
+
+    @Autowired
+    private UserAll userRepository;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Test
+    void repositorySaveEvictsCachedUser() {
+        User user = new User();
+        user.setEmail("cache-evict@test.com");
+        user.setPassword("irrelevant-hash");
+        user.setRole(User.UserRole.CITIZEN);
+        user.setFirstName("Before");
+        userRepository.save(user);
+
+        User cached = userCache.findByEmail("cache-evict@test.com");
+        assertNotNull(cached);
+        assertEquals("Before", cached.getFirstName());
+
+        User fresh = userRepository.searchByEmail("cache-evict@test.com");
+        fresh.setFirstName("After");
+        userRepository.save(fresh);
+
+        assertEquals("After", userCache.findByEmail("cache-evict@test.com").getFirstName());
+    }
+}
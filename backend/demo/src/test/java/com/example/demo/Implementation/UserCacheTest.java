@@ -0,0 +1,87 @@
+package com.example.demo.Implementation;
+
+import com.example.demo.Classes.User;
+import com.example.demo.Repository.UserAll;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link UserCache}: repeat lookups are served from memory, unknown emails
+ * are not cached, eviction forces a reload, and hit/miss counts reach the meter registry.
+ */
+class UserCacheTest {
+
+    private UserAll userRepository;
+    private SimpleMeterRegistry meterRegistry;
+    private UserCache cache;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserAll.class);
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new UserCache(userRepository, meterRegistry, 100, 60);
+    }
+
+    private static User user(String email) {
+        User user = new User();
+        user.setEmail(email);
+        return user;
+    }
+
+    private double gets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", "users").tag("result", result)
+                .functionCounter().count();
+    }
+
+    @Test
+    void repeatLookupsHitTheCache() {
+        User alice = user("alice@test.com");
+        when(userRepository.searchByEmail("alice@test.com")).thenReturn(alice);
+
+        assertSame(alice, cache.findByEmail("alice@test.com"));
+        assertSame(alice, cache.findByEmail("alice@test.com"));
+        assertSame(alice, cache.findByEmail("alice@test.com"));
+
+        verify(userRepository, times(1)).searchByEmail("alice@test.com");
+        assertEquals(2, gets("hit"));
+        assertEquals(1, gets("miss"));
+    }
+
+    @Test
+    void unknownEmailsAreNotCached() {
+        when(userRepository.searchByEmail("ghost@test.com")).thenReturn(null);
+
+        assertNull(cache.findByEmail("ghost@test.com"));
+        assertNull(cache.findByEmail("ghost@test.com"));
+
+        // A later signup must be visible immediately, so misses go back to the DB.
+        verify(userRepository, times(2)).searchByEmail("ghost@test.com");
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void evictForcesReload() {
+        when(userRepository.searchByEmail("bob@test.com")).thenReturn(user("bob@test.com"));
+
+        cache.findByEmail("bob@test.com");
+        cache.evict("bob@test.com");
+        cache.findByEmail("bob@test.com");
+
+        verify(userRepository, times(2)).searchByEmail("bob@test.com");
+    }
+
+    @Test
+    void sizeIsBounded() {
+        UserCache small = new UserCache(userRepository, new SimpleMeterRegistry(), 2, 60);
+        for (int i = 0; i < 10; i++) {
+            String email = "u" + i + "@test.com";
+            when(userRepository.searchByEmail(email)).thenReturn(user(email));
+            small.findByEmail(email);
+        }
+        assertTrue(small.size() <= 2, "cache must never exceed max-size, was " + small.size());
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.demo;
+
+import com.example.demo.Config.AdaptiveConcurrencyLimiter;
+import com.example.demo.Config.AiHttpClientPool;
+import com.example.demo.Config.AiProxyExecutor;
+import com.example.demo.Config.AiResilienceInterceptor;
+import com.example.demo.Config.InMemoryRateLimitStore;
+import com.sun.net.httpserver.HttpServer;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * JFR-based pinning check for virtual-thread mode. Drives the request hot paths that run on
+ * virtual threads — rate limiting, the adaptive limiter, the pooled AI client behind
+ * {@link AiResilienceInterceptor}, and {@link AiProxyExecutor} — from hundreds of virtual
+ * threads under contention, records {@code jdk.VirtualThreadPinned} with no threshold, and
+ * fails if any pinned park has one of our frames or the HTTP client's on its stack. A summary
+ * is written to {@code target/pinning-report.txt} for CI to archive.
+ *
+ * <p>JDBC is not covered: tests run on H2, which synchronizes internally and says nothing
+ * about MySQL Connector/J 9 (lock-based) in production.
+ */
+class VirtualThreadPinningTest {
+
+    private static final Path REPORT = Path.of("target", "pinning-report.txt");
+
+    @Test
+    void detectorSeesAPinnedParkInTheControlCase() throws Exception {
+        List<RecordedEvent> pinned = recordPinning(() -> {
+            Object monitor = new Object();
+            try (ExecutorService vts = Executors.newVirtualThreadPerTaskExecutor()) {
+                vts.submit(() -> {
+                    synchronized (monitor) {
+                        Thread.sleep(30); // parks while holding a monitor -> pinned
+                    }
+                    return null;
+                }).get();
+            }
+        });
+        assertFalse(pinned.isEmpty(), "JFR should report the deliberately pinned park");
+    }
+
+    @Test
+    void aiRequestHotPathsDoNotPinCarriers() throws Exception {
+        HttpServer upstream = slowUpstream();
+        try {
+            String url = "http://127.0.0.1:" + upstream.getAddress().getPort() + "/analyze";
+            List<RecordedEvent> pinned = recordPinning(() -> exerciseHotPaths(url));
+
+            List<RecordedEvent> ours = pinned.stream()
+                    .filter(e -> stackOf(e).stream().anyMatch(VirtualThreadPinningTest::isAppOrHttpClientFrame))
+                    .toList();
+            writeReport(pinned, ours);
+            assertTrue(ours.isEmpty(), "virtual threads pinned in app/HTTP client code; see " + REPORT);
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    private static void exerciseHotPaths(String url) throws Exception {
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(64, 1, 256);
+        // Four connections for hundreds of callers: most of them park waiting for the pool.
+        AiHttpClientPool pool = new AiHttpClientPool(
+                new AiHttpClientPool.Settings(8, 4, 2_000, 10_000, 10_000, 60, 30), new SimpleMeterRegistry());
+        RestTemplate restTemplate = new RestTemplate(pool.requestFactory());
+        restTemplate.getInterceptors().add(new AiResilienceInterceptor(CircuitBreakerRegistry.ofDefaults(), limiter));
+        AiProxyExecutor proxy = new AiProxyExecutor(true, true, 64, 1_000, new SimpleMeterRegistry());
+        try (ExecutorService vts = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<CompletableFuture<?>> calls = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                calls.add(CompletableFuture.runAsync(() -> {
+                    for (int j = 0; j < 20; j++) {
+                        store.tryConsume("shared", 1_000_000, 1.0);
+                        limiter.onSample(TimeUnit.MILLISECONDS.toNanos(5), false);
+                    }
+                    if (limiter.tryAcquire()) {
+                        try {
+                            restTemplate.getForObject(url, String.class);
+                        } finally {
+                            limiter.release();
+                        }
+                    }
+                }, vts));
+            }
+            for (int i = 0; i < 50; i++) {
+                calls.add(proxy.submit(() -> ResponseEntity.ok(restTemplate.getForObject(url, String.class))));
+            }
+            CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+        } finally {
+            proxy.close();
+            pool.close();
+            store.close();
+        }
+    }
+
+    private interface Workload {
+        void run() throws Exception;
+    }
+
+    private static List<RecordedEvent> recordPinning(Workload workload) throws Exception {
+        Path file = Files.createTempFile("pinning", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+            workload.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(e -> e.getEventType().getName().equals("jdk.VirtualThreadPinned"))
+                    .toList();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static List<String> stackOf(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return List.of();
+        }
+        return event.getStackTrace().getFrames().stream()
+                .map(RecordedFrame::getMethod)
+                .map(m -> m.getType().getName() + "." + m.getName())
+                .toList();
+    }
+
+    private static boolean isAppOrHttpClientFrame(String frame) {
+        return (frame.startsWith("com.example.demo.") && !frame.startsWith("com.example.demo.VirtualThreadPinningTest"))
+                || frame.startsWith("org.apache.hc.");
+    }
+
+    private static void writeReport(List<RecordedEvent> all, List<RecordedEvent> ours) throws IOException {
+        Map<String, Long> byTopFrame = new TreeMap<>(all.stream().collect(Collectors.groupingBy(
+                e -> stackOf(e).stream().findFirst().orElse("<no stack>"), Collectors.counting())));
+        StringBuilder report = new StringBuilder()
+                .append("jdk.VirtualThreadPinned events: ").append(all.size())
+                .append(" (app/HTTP client: ").append(ours.size()).append(")\n");
+        byTopFrame.forEach((frame, count) -> report.append(String.format("%6d  %s%n", count, frame)));
+        for (RecordedEvent event : ours) {
+            report.append("\n--- pinned for ").append(event.getDuration().toMillis()).append(" ms\n");
+            stackOf(event).forEach(frame -> report.append("    at ").append(frame).append('\n'));
+        }
+        Files.createDirectories(REPORT.getParent());
+        Files.writeString(REPORT, report.toString(), StandardCharsets.UTF_8);
+    }
+
+    private static HttpServer slowUpstream() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/analyze", exchange -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return server;
+    }
+}
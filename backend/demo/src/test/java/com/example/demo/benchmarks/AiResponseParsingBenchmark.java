@@ -0,0 +1,115 @@
+package com.example.demo.benchmarks;
+
+import com.example.demo.Implementation.GeminiResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of reading AI replies. Run with {@code -prof gc} and compare
+ * {@code gc.alloc.rate.norm} (bytes allocated per call):
+ * <ul>
+ *   <li>{@code gemini*}: getting the answer text out of a Gemini {@code generateContent} reply
+ *       with safety ratings and usage metadata, as a {@code Map} tree (the previous chat code),
+ *       by binding {@link GeminiResponse} records, and with the streaming
+ *       {@link GeminiResponse#read} reader.</li>
+ *   <li>{@code agent*}: relaying a 10 KB agent analysis reply to the client, by reading
+ *       it into a {@code Map} and writing it back out (what returning {@code response.getBody()}
+ *       did), and as a byte copy ({@link com.example.demo.Config.AiJsonRelay} passthrough).</li>
+ * </ul>
+ *
+ * <pre>./mvnw -Pbenchmarks test-compile exec:exec -Dbenchmark=AiResponseParsingBenchmark -Djmh.args="-prof gc"</pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AiResponseParsingBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] geminiReply;
+    private byte[] agentReply;
+
+    @Setup(Level.Trial)
+    public void replies() throws IOException {
+        geminiReply = """
+                {"candidates":[{"content":{"parts":[{"text":"• A lawyer is a person who knows the rules.\\n\
+                • They help you when you have a problem with someone.\\n• They speak for you in court."}],\
+                "role":"model"},"finishReason":"STOP","index":0,"safetyRatings":[\
+                {"category":"HARM_CATEGORY_SEXUALLY_EXPLICIT","probability":"NEGLIGIBLE"},\
+                {"category":"HARM_CATEGORY_HATE_SPEECH","probability":"NEGLIGIBLE"},\
+                {"category":"HARM_CATEGORY_HARASSMENT","probability":"NEGLIGIBLE"},\
+                {"category":"HARM_CATEGORY_DANGEROUS_CONTENT","probability":"NEGLIGIBLE"}]}],\
+                "usageMetadata":{"promptTokenCount":187,"candidatesTokenCount":41,"totalTokenCount":228},\
+                "modelVersion":"gemini-1.5-flash"}""".getBytes(StandardCharsets.UTF_8);
+
+        Map<String, Object> analysis = new LinkedHashMap<>();
+        analysis.put("session_id", "7c1e4a52-0d5b-4bb1-9d0e-2f1f3c7a9e10");
+        analysis.put("judgment", "Likely conviction under Section 420 IPC");
+        analysis.put("confidence", 0.82);
+        List<Map<String, Object>> precedents = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            precedents.add(Map.of(
+                    "title", "State of Maharashtra v. Accused No. " + i,
+                    "citation", "(20" + (10 + i % 10) + ") " + (3 + i) + " SCC " + (100 + 7 * i),
+                    "similarity", 0.91 - i * 0.01,
+                    "summary", "The court held that dishonest inducement to deliver property, proved by the "
+                            + "documents on record, satisfied the ingredients of cheating in case " + i + ".",
+                    "statutes", List.of("IPC 420", "IPC 406", "IPC 120B")));
+        }
+        analysis.put("precedents", precedents);
+        analysis.put("reasoning", "The complainant's transfer was induced by a false representation. ".repeat(40));
+        agentReply = objectMapper.writeValueAsBytes(analysis);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public String geminiMap() throws IOException {
+        Map<String, Object> body = objectMapper.readValue(geminiReply, Map.class);
+        List<Map<String, Object>> candidates = (List<Map<String, Object>>) body.get("candidates");
+        Map<String, Object> content = (Map<String, Object>) candidates.get(0).get("content");
+        List<Map<String, Object>> parts = (List<Map<String, Object>>) content.get("parts");
+        return (String) parts.get(0).get("text");
+    }
+
+    @Benchmark
+    public String geminiRecords() throws IOException {
+        return objectMapper.readValue(geminiReply, GeminiResponse.class).first().text();
+    }
+
+    @Benchmark
+    public String geminiStreaming() throws IOException {
+        return GeminiResponse.read(objectMapper.getFactory(), new ByteArrayInputStream(geminiReply)).first().text();
+    }
+
+    @Benchmark
+    public byte[] agentMapRoundTrip() throws IOException {
+        return objectMapper.writeValueAsBytes(objectMapper.readValue(agentReply, Map.class));
+    }
+
+    @Benchmark
+    public byte[] agentPassthrough() throws IOException {
+        return StreamUtils.copyToByteArray(new ByteArrayInputStream(agentReply));
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.demo.benchmarks;
+
+import com.example.demo.Implementation.AiSimilarPromptIndex;
+import com.example.demo.Implementation.PromptSimHash;
+import ch.qos.logback.classic.Logger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup latency of {@link AiSimilarPromptIndex} holding {@code size} chat prompts:
+ * <ul>
+ *   <li>{@code rephrased}: a stored question asked again in other words (a match);</li>
+ *   <li>{@code unseen}: a new question (no match);</li>
+ *   <li>{@code hashOnly}: tokenizing and hashing the question, the floor for any lookup;</li>
+ *   <li>{@code linearScan}: hashing the question and comparing it with every stored hash,
+ *       the cost the block tables avoid.</li>
+ * </ul>
+ * Prompts are 5–12 words drawn from a legal vocabulary, so the timings include tokenizing and
+ * hashing the question, as in the controller. The index's match log is switched off so the
+ * numbers are the lookup, not the console.
+ *
+ * <pre>./mvnw -Pbenchmarks test-compile exec:exec -Dbenchmark=SimilarPromptLookupBenchmark</pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SimilarPromptLookupBenchmark {
+
+    private static final String MODEL = "gemini-1.5-flash";
+    private static final String[] WORDS = ("bail anticipatory regular court high supreme district tenant landlord "
+            + "eviction notice rent agreement deposit appeal divorce mutual consent custody child maintenance "
+            + "alimony police arrest warrant search seizure fir complaint magistrate property inheritance will "
+            + "succession partition land record mutation contract breach damages cheque bounce dishonour loan "
+            + "recovery consumer refund defective employer salary gratuity termination harassment workplace "
+            + "dowry domestic violence protection order cyber fraud defamation privacy information right "
+            + "document stamp registration sale deed power attorney guardian adoption marriage registration "
+            + "limitation period criminal civil suit summons hearing adjournment lawyer fee legal aid").split(" ");
+    private static final int QUERIES = 1024;
+
+    @Param("100000")
+    private int size;
+
+    private AiSimilarPromptIndex index;
+    private long[] hashes;
+    private String[] rephrased;
+    private String[] unseen;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        ((Logger) LoggerFactory.getLogger(AiSimilarPromptIndex.class)).setLevel(ch.qos.logback.classic.Level.WARN);
+        Random random = new Random(7);
+        index = new AiSimilarPromptIndex(new SimpleMeterRegistry(), true, 3, size);
+        hashes = new long[size];
+        rephrased = new String[QUERIES];
+        for (int i = 0; i < size; i++) {
+            String prompt = prompt(random);
+            index.add(MODEL, prompt, "fp-" + i);
+            hashes[i] = PromptSimHash.of(prompt);
+            if (i < QUERIES) {
+                rephrased[i] = "Please tell me, " + prompt.toUpperCase() + "?";
+            }
+        }
+        unseen = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            unseen[i] = prompt(random);
+        }
+    }
+
+    @Benchmark
+    public Optional<AiSimilarPromptIndex.Match> rephrased() {
+        return index.find(MODEL, rephrased[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public Optional<AiSimilarPromptIndex.Match> unseen() {
+        return index.find(MODEL, unseen[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public long hashOnly() {
+        return PromptSimHash.of(unseen[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public int linearScan() {
+        long hash = PromptSimHash.of(unseen[next++ & (QUERIES - 1)]);
+        int closest = Integer.MAX_VALUE;
+        for (long stored : hashes) {
+            closest = Math.min(closest, PromptSimHash.distance(hash, stored));
+        }
+        return closest;
+    }
+
+    private static String prompt(Random random) {
+        StringBuilder prompt = new StringBuilder("what is");
+        int length = 5 + random.nextInt(8);
+        for (int i = 0; i < length; i++) {
+            prompt.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return prompt.toString();
+    }
+}
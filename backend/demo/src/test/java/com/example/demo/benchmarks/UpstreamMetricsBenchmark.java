@@ -0,0 +1,80 @@
+package com.example.demo.benchmarks;
+
+import com.example.demo.Config.AiResilienceInterceptor;
+import com.example.demo.Config.AiUpstreamMetrics;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What {@link AiUpstreamMetrics} adds to each call through {@link AiResilienceInterceptor},
+ * against an upstream stub that answers at once with a 2 KB body which the caller reads and
+ * closes: {@code breakerOnly} is the interceptor as before, {@code withMetrics} also records
+ * the timer, both size summaries and the counted response body.
+ *
+ * <pre>./mvnw -Pbenchmarks test-compile exec:exec -Dbenchmark=UpstreamMetricsBenchmark -Djmh.args="-prof gc"</pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UpstreamMetricsBenchmark {
+
+    private final byte[] reply = new byte[2048];
+    private final byte[] requestBody = new byte[512];
+    private MockClientHttpRequest request;
+    private AiResilienceInterceptor breakerOnly;
+    private AiResilienceInterceptor withMetrics;
+    private final ClientHttpRequestExecution upstream = (request, body) -> new MockClientHttpResponse(reply, HttpStatus.OK);
+
+    @Setup(Level.Trial)
+    public void interceptors() {
+        request = new MockClientHttpRequest(HttpMethod.GET, URI.create("http://ai.test/api/agent/session/42"));
+        breakerOnly = new AiResilienceInterceptor(CircuitBreakerRegistry.ofDefaults());
+        CircuitBreakerRegistry breakers = CircuitBreakerRegistry.ofDefaults();
+        AiUpstreamMetrics metrics = new AiUpstreamMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT), breakers,
+                new long[]{250, 500, 1000, 2500, 5000, 10000, 30000, 60000}, new long[]{1024, 10240, 102400, 1048576, 10485760});
+        withMetrics = new AiResilienceInterceptor(breakers, null, null, metrics);
+    }
+
+    @Benchmark
+    public int breakerOnly() throws IOException {
+        return call(breakerOnly);
+    }
+
+    @Benchmark
+    public int withMetrics() throws IOException {
+        return call(withMetrics);
+    }
+
+    private int call(AiResilienceInterceptor interceptor) throws IOException {
+        try (ClientHttpResponse response = interceptor.intercept(request, requestBody, upstream);
+             InputStream body = response.getBody()) {
+            return body.readAllBytes().length;
+        }
+    }
+}
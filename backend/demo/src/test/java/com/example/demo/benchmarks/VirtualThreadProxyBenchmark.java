@@ -0,0 +1,117 @@
+package com.example.demo.benchmarks;
+
+import com.example.demo.Config.AiHttpClientPool;
+import com.example.demo.Config.AiProxyExecutor;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Platform vs virtual threads in {@link AiProxyExecutor}: one batch of 256 concurrent proxy
+ * calls through the pooled {@link RestTemplate} against a stand-in AI service that takes 50ms
+ * per call. The platform pool uses the production default of 64 threads, so a batch runs in
+ * four waves; virtual mode starts one thread per call under the same total bound. The HTTP
+ * pool is sized so that it is not the bottleneck in either mode.
+ *
+ * <pre>./mvnw -Pbenchmarks test-compile exec:exec -Dbenchmark=VirtualThreadProxyBenchmark</pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VirtualThreadProxyBenchmark {
+
+    private static final int BATCH = 256;
+    private static final long UPSTREAM_DELAY_MS = 50;
+
+    private HttpServer upstream;
+    private AiHttpClientPool pool;
+    private RestTemplate restTemplate;
+    private AiProxyExecutor platform;
+    private AiProxyExecutor virtual;
+    private String url;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        upstream = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 512);
+        upstream.createContext("/api/agent/analyze", exchange -> {
+            try {
+                Thread.sleep(UPSTREAM_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"analysis\":\"done\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        ExecutorService upstreamThreads = Executors.newVirtualThreadPerTaskExecutor();
+        upstream.setExecutor(upstreamThreads);
+        upstream.start();
+        url = "http://127.0.0.1:" + upstream.getAddress().getPort() + "/api/agent/analyze";
+
+        pool = new AiHttpClientPool(new AiHttpClientPool.Settings(BATCH, BATCH, 2_000, 10_000, 10_000, 60, 30),
+                new SimpleMeterRegistry());
+        restTemplate = new RestTemplate(pool.requestFactory());
+        platform = new AiProxyExecutor(true, false, 64, BATCH, new SimpleMeterRegistry());
+        virtual = new AiProxyExecutor(true, true, 64, BATCH, new SimpleMeterRegistry());
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        platform.close();
+        virtual.close();
+        pool.close();
+        upstream.stop(0);
+    }
+
+    @Benchmark
+    public int platformThreads64() {
+        return runBatch(platform);
+    }
+
+    @Benchmark
+    public int virtualThreads() {
+        return runBatch(virtual);
+    }
+
+    private int runBatch(AiProxyExecutor executor) {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<ResponseEntity<?>>[] calls = new CompletableFuture[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            calls[i] = executor.submit(() -> ResponseEntity.ok(restTemplate.postForObject(url, "{}", String.class)));
+        }
+        int ok = 0;
+        for (CompletableFuture<ResponseEntity<?>> call : calls) {
+            if (call.join().getStatusCode().is2xxSuccessful()) {
+                ok++;
+            }
+        }
+        return ok;
+    }
+}
@@ -42,8 +42,9 @@ const AILawyer = () => {
   const [generatedDoc, setGeneratedDoc] = useState(null);
   const [docInstructions, setDocInstructions] = useState("");
 
-  // Load document types on mount
+  // Wake the agent and load document types on mount
   useEffect(() => {
+    agentService.prewarm();
     agentService.getDocumentTypes()
       .then(res => setDocTypes(res.data?.document_types || []))
       .catch(() => {});
@@ -48,7 +48,10 @@ export default function AILawyerChat() {
     scrollRef.current?.scrollIntoView({ behavior: "smooth" });
   }, [messages, status]);
 
-  useEffect(() => () => abortRef.current?.(), []);
+  useEffect(() => {
+    agentService.prewarm();
+    return () => abortRef.current?.();
+  }, []);
 
   const handleSubmit = (e) => {
     e?.preventDefault();
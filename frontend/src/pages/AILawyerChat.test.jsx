@@ -5,7 +5,7 @@ import AILawyerChat from "./AILawyerChat";
 import { agentService } from "../services/api";
 
 jest.mock("../services/api", () => ({
-  agentService: { stream: jest.fn() },
+  agentService: { stream: jest.fn(), prewarm: jest.fn() },
   feedbackService: { submit: jest.fn(() => Promise.resolve()) },
 }));
 
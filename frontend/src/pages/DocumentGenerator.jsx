@@ -26,6 +26,7 @@ export default function DocumentGenerator() {
   const [doc, setDoc] = useState(null);
 
   useEffect(() => {
+    agentService.prewarm();
     (async () => {
       try {
         const res = await agentService.getDocumentTypes();
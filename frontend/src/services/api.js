@@ -432,6 +432,12 @@ export const agentService = {
    */
   getDocumentTypes: () => api.get('/api/agent/document-types'),
 
+  /**
+   * Hint that the user opened an AI page, so a sleeping agent starts waking up before the
+   * first request. Fire-and-forget: the backend answers at once and failures are ignored.
+   */
+  prewarm: () => api.post('/api/agent/prewarm').catch(() => {}),
+
   /**
    * Get session info (conversation history, case context)
    */